@@ -0,0 +1,227 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.plugin.common;
+
+import io.cdap.delta.api.DeltaRuntimeContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Writes state to the delta state store on a background thread.
+ *
+ * Writes are queued in order and applied in that order. A write to the same key as the last queued write replaces
+ * it, so a burst of updates to one key only results in one state store call, without ever reordering writes to
+ * different keys. The queue is bounded, callers block when it is full. Failed writes are retried with exponential
+ * backoff, and once the retries are exhausted the failure is reported by every following call.
+ *
+ * Reads first wait for all queued writes, so they always see the latest state.
+ */
+class AsyncStateWriter implements Closeable {
+  static final int DEFAULT_CAPACITY = 16;
+  static final int DEFAULT_MAX_RETRIES = 10;
+  static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 100;
+  static final long DEFAULT_MAX_BACKOFF_MILLIS = 10000;
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncStateWriter.class);
+
+  private final DeltaRuntimeContext context;
+  private final int capacity;
+  private final int maxRetries;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final Deque<PendingWrite> queue = new ArrayDeque<>();
+  private Thread writerThread;
+  // the write at the head of the queue that is being written, it can no longer be replaced
+  private PendingWrite inFlight;
+  private IOException failure;
+  private boolean closed;
+
+  AsyncStateWriter(DeltaRuntimeContext context) {
+    this(context, DEFAULT_CAPACITY, DEFAULT_MAX_RETRIES, DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+  }
+
+  AsyncStateWriter(DeltaRuntimeContext context, int capacity, int maxRetries, long initialBackoffMillis,
+                   long maxBackoffMillis) {
+    this.context = context;
+    this.capacity = capacity;
+    this.maxRetries = maxRetries;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+  }
+
+  /**
+   * Queues a write of the given value. Blocks while the queue is full.
+   *
+   * @throws IOException if an earlier write failed, or if interrupted while waiting for space in the queue
+   */
+  synchronized void put(String key, byte[] value) throws IOException {
+    checkState();
+    PendingWrite last = queue.peekLast();
+    if (last != null && last != inFlight && last.key.equals(key)) {
+      last.value = value;
+      return;
+    }
+    while (queue.size() >= capacity) {
+      await();
+      checkState();
+    }
+    queue.addLast(new PendingWrite(key, value));
+    if (writerThread == null) {
+      writerThread = new Thread(this::run, "schema-history-writer");
+      writerThread.setDaemon(true);
+      writerThread.start();
+    }
+    notifyAll();
+  }
+
+  /**
+   * Waits for all queued writes and then reads the given key.
+   */
+  @Nullable
+  byte[] get(String key) throws IOException {
+    flush();
+    return context.getState(key);
+  }
+
+  /**
+   * Blocks until every queued write has been applied.
+   *
+   * @throws IOException if a write failed, or if interrupted while waiting
+   */
+  synchronized void flush() throws IOException {
+    while (!queue.isEmpty() && failure == null) {
+      await();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Applies all queued writes and stops the background thread.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      synchronized (this) {
+        closed = true;
+        notifyAll();
+      }
+    }
+  }
+
+  private void run() {
+    while (true) {
+      PendingWrite write;
+      synchronized (this) {
+        while (queue.isEmpty() && !closed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (queue.isEmpty()) {
+          writerThread = null;
+          return;
+        }
+        write = queue.peekFirst();
+        inFlight = write;
+      }
+
+      IOException error = write(write);
+      synchronized (this) {
+        inFlight = null;
+        if (error == null) {
+          queue.removeFirst();
+        } else {
+          failure = error;
+          queue.clear();
+        }
+        notifyAll();
+        if (error != null) {
+          writerThread = null;
+          return;
+        }
+      }
+    }
+  }
+
+  @Nullable
+  private IOException write(PendingWrite write) {
+    long backoff = initialBackoffMillis;
+    for (int attempt = 0; ; attempt++) {
+      try {
+        context.putState(write.key, write.value);
+        return null;
+      } catch (IOException e) {
+        if (attempt >= maxRetries) {
+          return new IOException(String.format("Unable to write state '%s' after %d attempts.",
+                                               write.key, attempt + 1), e);
+        }
+        LOG.debug("Unable to write state '{}', retrying in {} ms.", write.key, backoff, e);
+        try {
+          TimeUnit.MILLISECONDS.sleep(backoff);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return new InterruptedIOException("Interrupted while retrying write of state " + write.key);
+        }
+        backoff = Math.min(backoff * 2, maxBackoffMillis);
+      }
+    }
+  }
+
+  private void checkState() throws IOException {
+    if (failure != null) {
+      throw failure;
+    }
+    if (closed) {
+      throw new IOException("State writer is closed.");
+    }
+  }
+
+  private void await() throws IOException {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for state to be written.");
+    }
+  }
+
+  /**
+   * A queued write.
+   */
+  private static class PendingWrite {
+    private final String key;
+    private byte[] value;
+
+    PendingWrite(String key, byte[] value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+}
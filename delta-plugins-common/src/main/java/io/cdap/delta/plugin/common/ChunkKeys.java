@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.plugin.common;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.math.BigDecimal;
+import java.util.Base64;
+import javax.annotation.Nullable;
+
+/**
+ * Encodes the primary key a chunk of existing rows starts at, so it can be stored in an offset.
+ *
+ * Numbers and strings are kept as they are, binary values are base64 encoded and all other values are stored as
+ * strings. Sources convert strings back to the type of their key column if the database doesn't do it when they are
+ * compared to the column.
+ */
+public final class ChunkKeys {
+  private static final String BASE64 = "base64";
+
+  private ChunkKeys() {
+  }
+
+  /**
+   * @param key the key, or null if there is none
+   * @return the encoded key, which is empty if there is no key
+   */
+  public static String encode(@Nullable Object[] key) {
+    if (key == null) {
+      return "";
+    }
+    JsonArray array = new JsonArray();
+    for (Object value : key) {
+      if (value == null) {
+        array.add((JsonElement) null);
+      } else if (value instanceof Number) {
+        array.add(new JsonPrimitive(new BigDecimal(value.toString())));
+      } else if (value instanceof byte[]) {
+        JsonObject binary = new JsonObject();
+        binary.addProperty(BASE64, Base64.getEncoder().encodeToString((byte[]) value));
+        array.add(binary);
+      } else {
+        array.add(new JsonPrimitive(value.toString()));
+      }
+    }
+    return array.toString();
+  }
+
+  /**
+   * Decodes a key encoded with {@link #encode(Object[])}. Numbers are decoded as {@link BigDecimal}, binary values
+   * as byte arrays and all other values as strings.
+   *
+   * @return the key, or null if there is none
+   */
+  @Nullable
+  public static Object[] decode(@Nullable String encoded) {
+    if (encoded == null || encoded.isEmpty()) {
+      return null;
+    }
+    JsonArray array = new JsonParser().parse(encoded).getAsJsonArray();
+    Object[] key = new Object[array.size()];
+    for (int i = 0; i < key.length; i++) {
+      JsonElement element = array.get(i);
+      if (element.isJsonNull()) {
+        key[i] = null;
+      } else if (element.isJsonObject()) {
+        key[i] = Base64.getDecoder().decode(element.getAsJsonObject().get(BASE64).getAsString());
+      } else if (element.getAsJsonPrimitive().isNumber()) {
+        key[i] = element.getAsBigDecimal();
+      } else {
+        key[i] = element.getAsString();
+      }
+    }
+    return key;
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.plugin.common;
+
+import io.debezium.jdbc.JdbcConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads chunks of existing rows over a pool of connections at the same time, and hands out their rows in the order
+ * the chunks were submitted.
+ *
+ * Up to twice as many chunks as there are connections are read ahead, so every connection has a chunk to read while
+ * the rows of the previous ones are emitted. Closing the read ahead stops the reads and closes the connections.
+ */
+public final class ChunkReadAhead implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(ChunkReadAhead.class);
+
+  private final int parallelism;
+  private final List<JdbcConnection> connections;
+  private final BlockingQueue<JdbcConnection> pool;
+  private final ExecutorService executor;
+  private final Deque<Future<List<Object[]>>> reads;
+
+  /**
+   * @param parallelism the number of connections chunks are read over, which have to be added with
+   *   {@link #addConnection(JdbcConnection)}
+   */
+  public ChunkReadAhead(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+    this.connections = new ArrayList<>(this.parallelism);
+    this.pool = new ArrayBlockingQueue<>(this.parallelism);
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+      Thread thread = new Thread(runnable, "snapshot-chunk-reader-" + threadCount.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.reads = new ArrayDeque<>();
+  }
+
+  /**
+   * Adds a connection chunks are read over, which is closed with the read ahead.
+   */
+  public void addConnection(JdbcConnection connection) {
+    connections.add(connection);
+    pool.add(connection);
+  }
+
+  /**
+   * @return whether as many chunks as are read ahead were submitted, and their rows have to be taken first
+   */
+  public boolean isFull() {
+    return reads.size() >= parallelism * 2;
+  }
+
+  /**
+   * Submits a chunk to read over the next connection that is free.
+   */
+  public void submit(Read read) {
+    reads.add(executor.submit(() -> {
+      JdbcConnection connection = pool.take();
+      try {
+        return read.read(connection);
+      } finally {
+        pool.put(connection);
+      }
+    }));
+  }
+
+  /**
+   * Waits for the oldest chunk that was submitted to be read.
+   *
+   * @return the rows of the chunk
+   */
+  public List<Object[]> next() throws SQLException, InterruptedException {
+    Future<List<Object[]>> read = reads.poll();
+    if (read == null) {
+      throw new IllegalStateException("No chunk was submitted.");
+    }
+    try {
+      return read.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      }
+      if (cause instanceof InterruptedException) {
+        throw (InterruptedException) cause;
+      }
+      throw new SQLException("Unable to read a chunk of rows.", cause);
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    for (JdbcConnection connection : connections) {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        LOG.warn("Unable to close snapshot connection.", e);
+      }
+    }
+  }
+
+  /**
+   * Reads the rows of a chunk.
+   */
+  public interface Read {
+
+    /**
+     * @param connection the connection to read the rows over
+     * @return the rows of the chunk
+     */
+    List<Object[]> read(JdbcConnection connection) throws SQLException;
+  }
+}
@@ -16,88 +16,192 @@
 
 package io.cdap.delta.plugin.common;
 
-import io.cdap.cdap.api.common.Bytes;
 import io.cdap.delta.api.DeltaRuntimeContext;
 import io.debezium.config.Configuration;
+import io.debezium.config.Field;
 import io.debezium.connector.AbstractSourceInfo;
-import io.debezium.document.DocumentReader;
-import io.debezium.document.DocumentWriter;
+import io.debezium.function.Predicates;
+import io.debezium.relational.ddl.DdlParser;
 import io.debezium.relational.history.AbstractDatabaseHistory;
+import io.debezium.relational.history.DatabaseHistory;
 import io.debezium.relational.history.DatabaseHistoryException;
 import io.debezium.relational.history.DatabaseHistoryListener;
 import io.debezium.relational.history.HistoryRecord;
 import io.debezium.relational.history.HistoryRecordComparator;
+import org.apache.kafka.common.config.ConfigDef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 /**
  * History of DB changes.
  */
 public class DBSchemaHistory extends AbstractDatabaseHistory {
-  private static final String KEY = "history";
-  // Hacky, fix when usage of EmbeddedEngine is replaced
-  public static DeltaRuntimeContext deltaRuntimeContext;
-  private final DocumentWriter writer = DocumentWriter.defaultWriter();
-  private final DocumentReader reader = DocumentReader.defaultReader();
+  public static final Field COMPACTION_THRESHOLD =
+    Field.create(DatabaseHistory.CONFIGURATION_FIELD_PREFIX_STRING + "compaction.threshold")
+      .withDisplayName("Schema history compaction threshold")
+      .withType(ConfigDef.Type.INT)
+      .withWidth(ConfigDef.Width.SHORT)
+      .withImportance(ConfigDef.Importance.LOW)
+      .withDefault(10000)
+      .withDescription("Number of recovered history records after which the history is compacted into a "
+                         + "checkpoint of the current tables when the connector starts. 0 disables compaction.");
+  public static final Field WRITE_BEHIND =
+    Field.create(DatabaseHistory.CONFIGURATION_FIELD_PREFIX_STRING + "write.behind")
+      .withDisplayName("Write schema history in the background")
+      .withType(ConfigDef.Type.BOOLEAN)
+      .withWidth(ConfigDef.Width.SHORT)
+      .withImportance(ConfigDef.Importance.LOW)
+      .withDefault(true)
+      .withDescription("Whether schema history is written to the state store on a background thread. History is "
+                         + "flushed before any later change event is handled.");
+  private static final Logger LOG = LoggerFactory.getLogger(DBSchemaHistory.class);
+  // stores of the running readers, by reader name
+  private static final ConcurrentMap<String, SchemaHistoryStore> STORES = new ConcurrentHashMap<>();
+  private String readerName;
   private HistoryRecordComparator comparator;
+  private SchemaHistoryStore store;
+  private SchemaHistoryCompactor compactor;
+  private int compactionThreshold;
+  // index of the record being recovered, and of the last one debezium applied to its schema
+  private int recoveringIndex = -1;
+  private int lastAppliedIndex = -1;
 
-  public static void wipeHistory() throws IOException {
-    deltaRuntimeContext.putState(KEY, new byte[] { });
+  public static void wipeHistory(DeltaRuntimeContext context) throws IOException {
+    new SchemaHistoryStore(context).wipe();
+  }
+
+  /**
+   * Blocks until all schema history the reader bound to the current thread recorded so far is persisted. This must
+   * be called before handling a change event, so that the offset of the event is never committed before the history
+   * leading up to it.
+   */
+  public static void flush() {
+    ReaderContext reader = ReaderContextRegistry.current();
+    SchemaHistoryStore store = reader == null ? null : STORES.get(reader.getName());
+    if (store == null) {
+      return;
+    }
+    try {
+      store.flush();
+    } catch (IOException e) {
+      throw new DatabaseHistoryException("Unable to store schema history.", e);
+    }
   }
 
   @Override
   public void configure(Configuration config, HistoryRecordComparator comparator, DatabaseHistoryListener listener,
     boolean useCatalogBeforeSchema) {
     this.comparator = comparator == null ? HistoryRecordComparator.INSTANCE : comparator;
-    super.configure(config, comparator, listener, useCatalogBeforeSchema);
+    // debezium creates the history itself, so its context is looked up from the reader bound to this thread
+    ReaderContext reader = ReaderContextRegistry.requireCurrent();
+    DeltaRuntimeContext context = reader.getRuntimeContext();
+    this.readerName = reader.getName();
+    this.store = config.getBoolean(WRITE_BEHIND) ?
+      new SchemaHistoryStore(context, SchemaHistoryStore.DEFAULT_RECORDS_PER_CHUNK, new AsyncStateWriter(context)) :
+      new SchemaHistoryStore(context);
+    STORES.put(readerName, store);
+    String ddlFilter = config.getString(DatabaseHistory.DDL_FILTER);
+    this.compactor = new SchemaHistoryCompactor(createDdlParser(),
+                                                ddlFilter == null ? x -> Optional.empty() :
+                                                  Predicates.matchedBy(ddlFilter),
+                                                useCatalogBeforeSchema);
+    this.compactionThreshold = config.getInteger(COMPACTION_THRESHOLD);
+    super.configure(config, comparator, new RecoveryTrackingListener(listener), useCatalogBeforeSchema);
+  }
+
+  /**
+   * Returns the parser used to replay DDL statements when compacting history. Connectors that record plain DDL
+   * instead of table changes need to provide one, otherwise their history is never compacted.
+   */
+  @Nullable
+  protected DdlParser createDdlParser() {
+    return null;
   }
 
   @Override
   protected synchronized void storeRecord(HistoryRecord record) throws DatabaseHistoryException {
+    try {
+      HistoryRecord lastRecord = store.getLastRecord();
+      //ignore the history record already seen
+      //we serialize the history record once DDL event is seen in the source
+      //however offset is committed once event is applied in the target
+      //so it's possible that debezium is resuming from a point that is earlier than the last
+      //serialized history record. And when recover the history record, debezium will ignore those
+      //history record that is later than the resuming point.
+      //Thus it's possible for Debezium to store some history record that is already serialized.
+      //And all snapshot history record will have same position
+      if (Boolean.TRUE != record.document().getDocument(HistoryRecord.Fields.POSITION)
+        .getBoolean(AbstractSourceInfo.SNAPSHOT_KEY) && lastRecord != null &&
+        comparator.isAtOrBefore(record, lastRecord)) {
+        return;
+      }
+      store.append(record);
+    } catch (IOException e) {
+      throw new DatabaseHistoryException("Unable to store schema history record.", e);
+    }
+  }
+
+  @Override
+  protected synchronized void recoverRecords(Consumer<HistoryRecord> consumer) {
     List<HistoryRecord> history = getHistory();
-    //ignore the history record already seen
-    //we serialize the history record once DDL event is seen in the source
-    //however offset is committed once event is applied in the target
-    //so it's possible that debezium is resuming from a point that is earlier than the last
-    //serialized history record. And when recover the history record, debezium will ignore those
-    //history record that is later than the resuming point.
-    //Thus it's possible for Debezium to store some history record that is already serialized.
-    //And all snapshot history record will have same position
-    if (Boolean.TRUE != record.document().getDocument(HistoryRecord.Fields.POSITION)
-      .getBoolean(AbstractSourceInfo.SNAPSHOT_KEY) && !history.isEmpty() &&
-      comparator.isAtOrBefore(record, history.get(history.size() - 1))) {
+    lastAppliedIndex = -1;
+    try {
+      for (recoveringIndex = 0; recoveringIndex < history.size(); recoveringIndex++) {
+        consumer.accept(history.get(recoveringIndex));
+      }
+    } finally {
+      recoveringIndex = -1;
+    }
+    // everything up to the last applied record is at or before the position replication resumes from,
+    // so it can be replaced by a checkpoint of the tables it describes. Only recovery knows that position,
+    // which is why history is compacted when the connector starts rather than while it runs.
+    if (compactionThreshold > 0 && lastAppliedIndex + 1 >= compactionThreshold) {
+      compact(history, lastAppliedIndex + 1);
+    }
+  }
+
+  private void compact(List<HistoryRecord> history, int prefixSize) {
+    long start = System.currentTimeMillis();
+    List<HistoryRecord> checkpoint = compactor.compact(history.subList(0, prefixSize));
+    if (checkpoint == null || checkpoint.size() >= prefixSize) {
       return;
     }
-    history.add(record);
-    String historyStr = history.stream().map(r -> {
-      try {
-        return writer.write(r.document());
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
-    }).collect(Collectors.joining("\n"));
+    List<HistoryRecord> compacted = new ArrayList<>(checkpoint);
+    compacted.addAll(history.subList(prefixSize, history.size()));
     try {
-      deltaRuntimeContext.putState(KEY, Bytes.toBytes(historyStr));
+      store.replace(compacted);
+      LOG.info("Compacted schema history from {} to {} records in {} ms.", history.size(), compacted.size(),
+               System.currentTimeMillis() - start);
     } catch (IOException e) {
-      // TODO: retry
+      // the history is still complete, compaction will be tried again on the next start
+      LOG.warn("Unable to store compacted schema history.", e);
     }
   }
 
   @Override
-  protected synchronized void recoverRecords(Consumer<HistoryRecord> consumer) {
-    for (HistoryRecord historyRecord : getHistory()) {
-      consumer.accept(historyRecord);
+  public void stop() {
+    super.stop();
+    STORES.remove(readerName, store);
+    try {
+      store.close();
+    } catch (IOException e) {
+      LOG.warn("Unable to store schema history while stopping.", e);
     }
   }
 
   @Override
   public synchronized boolean exists() {
     try {
-      return deltaRuntimeContext.getState(KEY) != null;
+      return store.exists();
     } catch (IOException e) {
       return false;
     }
@@ -108,22 +212,55 @@ public class DBSchemaHistory extends AbstractDatabaseHistory {
     return true;
   }
 
-  // TODO: cache history, should only have to read once
   private List<HistoryRecord> getHistory() {
-    List<HistoryRecord> history = new ArrayList<>();
     try {
-      byte[] historyBytes = deltaRuntimeContext.getState(KEY);
-      if (historyBytes == null || historyBytes.length == 0) {
-        return history;
-      }
-      String historyStr = Bytes.toString(historyBytes);
-      String[] historyRecords = historyStr.split("\n");
-      for (String historyRecord : historyRecords) {
-        history.add(new HistoryRecord(reader.read(historyRecord)));
-      }
+      return store.getRecords();
     } catch (IOException e) {
-      // TODO: retry
+      throw new DatabaseHistoryException("Unable to read schema history.", e);
+    }
+  }
+
+  /**
+   * Keeps track of the last history record debezium applied to its schema during recovery.
+   */
+  private class RecoveryTrackingListener implements DatabaseHistoryListener {
+    private final DatabaseHistoryListener delegate;
+
+    RecoveryTrackingListener(DatabaseHistoryListener delegate) {
+      this.delegate = delegate == null ? DatabaseHistoryListener.NOOP : delegate;
+    }
+
+    @Override
+    public void started() {
+      delegate.started();
+    }
+
+    @Override
+    public void stopped() {
+      delegate.stopped();
+    }
+
+    @Override
+    public void recoveryStarted() {
+      delegate.recoveryStarted();
+    }
+
+    @Override
+    public void recoveryStopped() {
+      delegate.recoveryStopped();
+    }
+
+    @Override
+    public void onChangeFromHistory(HistoryRecord record) {
+      delegate.onChangeFromHistory(record);
+    }
+
+    @Override
+    public void onChangeApplied(HistoryRecord record) {
+      if (recoveringIndex >= 0) {
+        lastAppliedIndex = recoveringIndex;
+      }
+      delegate.onChangeApplied(record);
     }
-    return history;
   }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.plugin.common;
+
+import io.cdap.delta.api.DeltaRuntimeContext;
+import io.debezium.config.Configuration;
+import io.debezium.jdbc.JdbcConnection;
+
+/**
+ * Everything the classes that Debezium instantiates need to know about the event reader they run for.
+ */
+public class ReaderContext {
+  private final String name;
+  private final DeltaRuntimeContext runtimeContext;
+  private final Configuration config;
+  private final ClassLoader driverClassLoader;
+  private final JdbcConnection.ConnectionFactory connectionFactory;
+
+  public ReaderContext(String name, DeltaRuntimeContext runtimeContext, Configuration config,
+                       ClassLoader driverClassLoader, JdbcConnection.ConnectionFactory connectionFactory) {
+    this.name = name;
+    this.runtimeContext = runtimeContext;
+    this.config = config;
+    this.driverClassLoader = driverClassLoader;
+    this.connectionFactory = connectionFactory;
+  }
+
+  /**
+   * @return the name the reader is registered under
+   */
+  public String getName() {
+    return name;
+  }
+
+  public DeltaRuntimeContext getRuntimeContext() {
+    return runtimeContext;
+  }
+
+  /**
+   * @return the Debezium configuration of the reader
+   */
+  public Configuration getConfig() {
+    return config;
+  }
+
+  /**
+   * @return the class loader of the jdbc driver plugin
+   */
+  public ClassLoader getDriverClassLoader() {
+    return driverClassLoader;
+  }
+
+  /**
+   * @return the factory Debezium uses to open jdbc connections
+   */
+  public JdbcConnection.ConnectionFactory getConnectionFactory() {
+    return connectionFactory;
+  }
+}
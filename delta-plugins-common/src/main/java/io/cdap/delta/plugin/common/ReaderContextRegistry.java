@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.plugin.common;
+
+import io.cdap.delta.api.DeltaPipelineId;
+import io.cdap.delta.api.DeltaRuntimeContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps the {@link ReaderContext} of every running event reader, keyed by reader name.
+ *
+ * Debezium instantiates the connector classes itself, so they can't be handed the context of the reader they belong
+ * to. Instead, the reader runs its engine bound to its name, and those classes look up the context of the reader that
+ * is bound to the current thread. The binding is inherited by the threads the engine starts, so several readers can
+ * run in the same JVM without sharing any state.
+ */
+public final class ReaderContextRegistry {
+  private static final Logger LOG = LoggerFactory.getLogger(ReaderContextRegistry.class);
+  private static final ConcurrentMap<String, ReaderContext> CONTEXTS = new ConcurrentHashMap<>();
+  private static final InheritableThreadLocal<String> CURRENT = new InheritableThreadLocal<>();
+
+  private ReaderContextRegistry() {
+    // no-op
+  }
+
+  /**
+   * Returns a reader name that is unique within the JVM, made of the pipeline and the connector name.
+   */
+  public static String getReaderName(DeltaRuntimeContext context, String connectorName) {
+    DeltaPipelineId pipelineId = context.getPipelineId();
+    return String.format("%s.%s.%d.%s", pipelineId.getNamespace(), pipelineId.getApp(), pipelineId.getGeneration(),
+                         connectorName);
+  }
+
+  public static void register(ReaderContext context) {
+    if (CONTEXTS.put(context.getName(), context) != null) {
+      LOG.warn("Replacing the context of event reader '{}', which was not stopped.", context.getName());
+    }
+  }
+
+  public static void unregister(ReaderContext context) {
+    CONTEXTS.remove(context.getName(), context);
+  }
+
+  @Nullable
+  public static ReaderContext get(String name) {
+    return CONTEXTS.get(name);
+  }
+
+  /**
+   * @return the context of the reader bound to the current thread, or null if there is none
+   */
+  @Nullable
+  public static ReaderContext current() {
+    String name = CURRENT.get();
+    return name == null ? null : CONTEXTS.get(name);
+  }
+
+  /**
+   * @return the context of the reader bound to the current thread
+   * @throws IllegalStateException if no registered reader is bound to the current thread
+   */
+  public static ReaderContext requireCurrent() {
+    ReaderContext context = current();
+    if (context == null) {
+      throw new IllegalStateException("No event reader is bound to thread " + Thread.currentThread().getName());
+    }
+    return context;
+  }
+
+  /**
+   * Returns a runnable that runs the given one bound to the named reader.
+   */
+  public static Runnable bind(String name, Runnable runnable) {
+    return () -> call(name, () -> {
+      runnable.run();
+      return null;
+    });
+  }
+
+  /**
+   * Calls the supplier on the current thread, bound to the named reader.
+   */
+  public static <T> T call(String name, Supplier<T> supplier) {
+    String previous = CURRENT.get();
+    CURRENT.set(name);
+    try {
+      return supplier.get();
+    } finally {
+      if (previous == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previous);
+      }
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.plugin.common;
+
+import io.debezium.document.Array;
+import io.debezium.document.Document;
+import io.debezium.relational.Table;
+import io.debezium.relational.TableId;
+import io.debezium.relational.Tables;
+import io.debezium.relational.ddl.DdlParser;
+import io.debezium.relational.history.HistoryRecord;
+import io.debezium.relational.history.JsonTableChangeSerializer;
+import io.debezium.relational.history.TableChanges;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Replaces a prefix of the schema history with a checkpoint of the tables it describes.
+ *
+ * The prefix is replayed into a {@link Tables} model the same way Debezium recovers history, and every table that
+ * results is written as a synthetic CREATE table change at the position of the last record in the prefix. Records
+ * that did not change any table, like MySQL's SET statements, are kept after the checkpoint since later DDL may
+ * depend on them.
+ *
+ * Serialized table changes don't include column default values, so tables with defaults are left out of the
+ * checkpoint and the records that changed them are kept instead, along with every other table those records
+ * changed.
+ */
+class SchemaHistoryCompactor {
+  private static final Logger LOG = LoggerFactory.getLogger(SchemaHistoryCompactor.class);
+
+  private final JsonTableChangeSerializer serializer = new JsonTableChangeSerializer();
+  private final DdlParser ddlParser;
+  private final Function<String, Optional<Pattern>> ddlFilter;
+  private final boolean useCatalogBeforeSchema;
+
+  SchemaHistoryCompactor(@Nullable DdlParser ddlParser, Function<String, Optional<Pattern>> ddlFilter,
+                         boolean useCatalogBeforeSchema) {
+    this.ddlParser = ddlParser;
+    this.ddlFilter = ddlFilter;
+    this.useCatalogBeforeSchema = useCatalogBeforeSchema;
+  }
+
+  /**
+   * @param prefix the history records to compact, all of them at or before the position replication resumes from
+   * @return the records that replace the prefix, or null if the prefix could not be replayed
+   */
+  @Nullable
+  List<HistoryRecord> compact(List<HistoryRecord> prefix) {
+    if (prefix.isEmpty()) {
+      return null;
+    }
+    Tables tables = new Tables();
+    // the tables each record changed
+    List<Set<TableId>> changed = new ArrayList<>();
+    for (HistoryRecord record : prefix) {
+      Document document = record.document();
+      Array tableChanges = document.getArray(HistoryRecord.Fields.TABLE_CHANGES);
+      String ddl = document.getString(HistoryRecord.Fields.DDL_STATEMENTS);
+      if (tableChanges != null) {
+        for (TableChanges.TableChange change : serializer.deserialize(tableChanges, useCatalogBeforeSchema)) {
+          if (change.getType() == TableChanges.TableChangeType.DROP) {
+            tables.removeTable(change.getId());
+          } else {
+            tables.overwriteTable(change.getTable());
+          }
+        }
+      } else if (ddl != null) {
+        if (ddlParser == null) {
+          LOG.debug("Schema history contains DDL statements but no DDL parser is available, skipping compaction.");
+          return null;
+        }
+        if (ddlFilter.apply(ddl).isPresent()) {
+          changed.add(null);
+          continue;
+        }
+        String databaseName = document.getString(HistoryRecord.Fields.DATABASE_NAME);
+        String schemaName = document.getString(HistoryRecord.Fields.SCHEMA_NAME);
+        if (databaseName != null) {
+          ddlParser.setCurrentDatabase(databaseName);
+        }
+        if (schemaName != null) {
+          ddlParser.setCurrentSchema(schemaName);
+        }
+        try {
+          ddlParser.parse(ddl, tables);
+        } catch (RuntimeException e) {
+          LOG.warn("Unable to replay schema history statement '{}', skipping compaction.", ddl, e);
+          return null;
+        }
+      }
+      changed.add(tables.drainChanges());
+    }
+
+    // tables with defaults are replayed from their records, as are the other tables those records change.
+    // nullable columns without a default have a null one, which a table change without defaults results in too
+    Set<TableId> replayed = new HashSet<>();
+    for (TableId tableId : tables.tableIds()) {
+      if (tables.forTable(tableId).columns().stream().anyMatch(c -> c.defaultValue() != null)) {
+        replayed.add(tableId);
+      }
+    }
+    boolean added = !replayed.isEmpty();
+    while (added) {
+      added = false;
+      for (Set<TableId> tableIds : changed) {
+        if (tableIds != null && !Collections.disjoint(tableIds, replayed)) {
+          added |= replayed.addAll(tableIds);
+        }
+      }
+    }
+
+    Document last = prefix.get(prefix.size() - 1).document();
+    List<HistoryRecord> compacted = new ArrayList<>();
+    for (TableId tableId : tables.tableIds()) {
+      if (replayed.contains(tableId)) {
+        continue;
+      }
+      Table table = tables.forTable(tableId);
+      Document document = Document.create();
+      document.setDocument(HistoryRecord.Fields.SOURCE, last.getDocument(HistoryRecord.Fields.SOURCE).clone());
+      document.setDocument(HistoryRecord.Fields.POSITION, last.getDocument(HistoryRecord.Fields.POSITION).clone());
+      if (tableId.catalog() != null) {
+        document.setString(HistoryRecord.Fields.DATABASE_NAME, tableId.catalog());
+      }
+      if (tableId.schema() != null) {
+        document.setString(HistoryRecord.Fields.SCHEMA_NAME, tableId.schema());
+      }
+      document.setArray(HistoryRecord.Fields.TABLE_CHANGES, serializer.serialize(new TableChanges().create(table)));
+      compacted.add(new HistoryRecord(document));
+    }
+    // the kept records only change tables that are not in the checkpoint
+    for (int i = 0; i < prefix.size(); i++) {
+      Set<TableId> tableIds = changed.get(i);
+      if (tableIds != null && (tableIds.isEmpty() || !Collections.disjoint(tableIds, replayed))) {
+        compacted.add(prefix.get(i));
+      }
+    }
+    return compacted;
+  }
+}
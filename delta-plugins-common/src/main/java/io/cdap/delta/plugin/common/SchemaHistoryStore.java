@@ -0,0 +1,357 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.plugin.common;
+
+import com.google.common.collect.Lists;
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.delta.api.DeltaRuntimeContext;
+import io.debezium.document.DocumentReader;
+import io.debezium.document.DocumentWriter;
+import io.debezium.relational.history.HistoryRecord;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Persists schema history records in the delta state store, and caches them in memory.
+ *
+ * Records are stored in chunks under numbered state keys, each holding up to a fixed number of newline separated
+ * records. Appending a record only rewrites the last chunk, and a small meta entry whenever a new chunk is started,
+ * so storing N records costs O(N) instead of rewriting the whole history every time. History written in the old
+ * single key format is read back and migrated to chunks the first time it is loaded.
+ *
+ * Chunk keys include a generation, which is bumped whenever the whole history is replaced. The meta entry is always
+ * written after the chunks it refers to, so a failure part way through never leaves it pointing at missing data.
+ *
+ * Chunks are written in a versioned binary format: a marker byte and a format version, followed by a deflate
+ * compressed frame that holds the record count and each record as a length prefixed JSON document. The marker can
+ * never start a JSON document, so chunks written as newline separated text are still read back as before. When the
+ * history is loaded, chunks are decoded and parsed in parallel.
+ *
+ * State can be written behind through an {@link AsyncStateWriter}, in which case records are only guaranteed to be
+ * persisted once {@link #flush()} returns.
+ */
+public class SchemaHistoryStore {
+  static final String LEGACY_KEY = "history";
+  static final String META_KEY = "history.meta";
+  static final int DEFAULT_RECORDS_PER_CHUNK = 100;
+  private static final int META_VERSION = 1;
+  private static final byte FORMAT_MARKER = 0;
+  private static final byte FORMAT_VERSION = 1;
+
+  private final DeltaRuntimeContext context;
+  private final int recordsPerChunk;
+  private final AsyncStateWriter asyncWriter;
+  private final DocumentWriter writer = DocumentWriter.defaultWriter();
+  private final DocumentReader reader = DocumentReader.defaultReader();
+  // serialized records of the last chunk
+  private final List<byte[]> tail = new ArrayList<>();
+  private List<HistoryRecord> records;
+  private int generation;
+  private int chunks;
+
+  public SchemaHistoryStore(DeltaRuntimeContext context) {
+    this(context, DEFAULT_RECORDS_PER_CHUNK);
+  }
+
+  SchemaHistoryStore(DeltaRuntimeContext context, int recordsPerChunk) {
+    this(context, recordsPerChunk, null);
+  }
+
+  SchemaHistoryStore(DeltaRuntimeContext context, int recordsPerChunk, @Nullable AsyncStateWriter asyncWriter) {
+    this.context = context;
+    this.recordsPerChunk = recordsPerChunk;
+    this.asyncWriter = asyncWriter;
+  }
+
+  /**
+   * @return whether any history, in either the chunked or the old format, has been persisted
+   */
+  public synchronized boolean exists() throws IOException {
+    return records != null || getState(META_KEY) != null || getState(LEGACY_KEY) != null;
+  }
+
+  /**
+   * @return all history records in the order they were stored. Records are read from the state store only the
+   *   first time this is called.
+   */
+  public synchronized List<HistoryRecord> getRecords() throws IOException {
+    load();
+    return Collections.unmodifiableList(records);
+  }
+
+  /**
+   * @return the last stored record, or null if there is no history
+   */
+  @Nullable
+  public synchronized HistoryRecord getLastRecord() throws IOException {
+    load();
+    return records.isEmpty() ? null : records.get(records.size() - 1);
+  }
+
+  /**
+   * Appends a record to the history and persists it.
+   */
+  public synchronized void append(HistoryRecord record) throws IOException {
+    load();
+    boolean newChunk = chunks == 0 || tail.size() >= recordsPerChunk;
+    if (newChunk) {
+      tail.clear();
+    }
+    tail.add(Bytes.toBytes(writer.write(record.document())));
+    records.add(record);
+
+    if (newChunk) {
+      putState(chunkKey(generation, chunks), encode(tail));
+      chunks++;
+      writeMeta();
+    } else {
+      putState(chunkKey(generation, chunks - 1), encode(tail));
+    }
+  }
+
+  /**
+   * Removes all history.
+   */
+  public synchronized void wipe() throws IOException {
+    replace(Collections.emptyList());
+  }
+
+  /**
+   * Replaces the whole history with the given records. The new records are written under a new generation before
+   * the meta entry is switched over to them, and the chunks of the old generation are cleared afterwards.
+   */
+  public synchronized void replace(List<HistoryRecord> newRecords) throws IOException {
+    // a store that was not loaded yet only knows the generation after reading the meta entry
+    int oldChunks = readMeta() ? chunks : 0;
+    int oldGeneration = generation;
+
+    generation = oldGeneration + 1;
+    chunks = 0;
+    tail.clear();
+    List<byte[]> serialized = new ArrayList<>(newRecords.size());
+    for (HistoryRecord record : newRecords) {
+      serialized.add(Bytes.toBytes(writer.write(record.document())));
+    }
+    for (int start = 0; start < serialized.size(); start += recordsPerChunk) {
+      List<byte[]> chunk = serialized.subList(start, Math.min(start + recordsPerChunk, serialized.size()));
+      putState(chunkKey(generation, chunks), encode(chunk));
+      chunks++;
+      if (start + recordsPerChunk >= serialized.size()) {
+        tail.addAll(chunk);
+      }
+    }
+    writeMeta();
+    records = new ArrayList<>(newRecords);
+
+    // the old format and the old chunks are no longer referenced
+    if (getState(LEGACY_KEY) != null) {
+      putState(LEGACY_KEY, new byte[0]);
+    }
+    for (int i = 0; i < oldChunks; i++) {
+      putState(chunkKey(oldGeneration, i), new byte[0]);
+    }
+  }
+
+  private void load() throws IOException {
+    if (records != null) {
+      return;
+    }
+    if (readMeta()) {
+      List<byte[]> chunkBytes = new ArrayList<>(chunks);
+      for (int i = 0; i < chunks; i++) {
+        byte[] chunk = getState(chunkKey(generation, i));
+        if (chunk == null) {
+          throw new IOException(String.format("Schema history chunk %d of generation %d is missing.", i, generation));
+        }
+        chunkBytes.add(chunk);
+      }
+      List<List<byte[]>> documents = parallel(chunkBytes, SchemaHistoryStore::decode);
+      tail.clear();
+      if (!documents.isEmpty()) {
+        tail.addAll(documents.get(documents.size() - 1));
+      }
+      records = parse(documents);
+      return;
+    }
+
+    // no chunked history yet, migrate the old single key format if there is one
+    List<HistoryRecord> legacy = new ArrayList<>();
+    byte[] legacyBytes = getState(LEGACY_KEY);
+    if (legacyBytes != null) {
+      legacy = parse(Lists.partition(decode(legacyBytes), recordsPerChunk));
+    }
+    records = new ArrayList<>();
+    if (!legacy.isEmpty()) {
+      replace(legacy);
+    }
+  }
+
+  /**
+   * Parses the documents of each chunk in parallel, and returns all records in order.
+   */
+  private List<HistoryRecord> parse(List<List<byte[]>> chunkDocuments) throws IOException {
+    List<List<HistoryRecord>> parsed = parallel(chunkDocuments, documents -> {
+      List<HistoryRecord> chunkRecords = new ArrayList<>(documents.size());
+      for (byte[] document : documents) {
+        chunkRecords.add(new HistoryRecord(reader.read(document)));
+      }
+      return chunkRecords;
+    });
+    List<HistoryRecord> all = new ArrayList<>(parsed.stream().mapToInt(List::size).sum());
+    parsed.forEach(all::addAll);
+    return all;
+  }
+
+  /**
+   * Applies the function to every input on the common fork join pool, keeping the order of the inputs.
+   */
+  private static <T, R> List<R> parallel(List<T> inputs, IOFunction<T, R> function) throws IOException {
+    if (inputs.size() < 2) {
+      List<R> results = new ArrayList<>(inputs.size());
+      for (T input : inputs) {
+        results.add(function.apply(input));
+      }
+      return results;
+    }
+    try {
+      return inputs.parallelStream().map(input -> {
+        try {
+          return function.apply(input);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }).collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  static byte[] encode(List<byte[]> documents) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    bos.write(FORMAT_MARKER);
+    bos.write(FORMAT_VERSION);
+    try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bos))) {
+      out.writeInt(documents.size());
+      for (byte[] document : documents) {
+        out.writeInt(document.length);
+        out.write(document);
+      }
+    }
+    return bos.toByteArray();
+  }
+
+  static List<byte[]> decode(byte[] bytes) throws IOException {
+    List<byte[]> documents = new ArrayList<>();
+    if (bytes.length == 0) {
+      return documents;
+    }
+    if (bytes[0] != FORMAT_MARKER) {
+      // newline separated text written by earlier versions
+      for (String line : Bytes.toString(bytes).split("\n")) {
+        documents.add(Bytes.toBytes(line));
+      }
+      return documents;
+    }
+    if (bytes.length < 2 || bytes[1] != FORMAT_VERSION) {
+      throw new IOException("Unsupported schema history format version " + (bytes.length < 2 ? "" : bytes[1]));
+    }
+    try (DataInputStream in = new DataInputStream(
+      new InflaterInputStream(new ByteArrayInputStream(bytes, 2, bytes.length - 2)))) {
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        byte[] document = new byte[in.readInt()];
+        in.readFully(document);
+        documents.add(document);
+      }
+    }
+    return documents;
+  }
+
+  /**
+   * Blocks until all appended records are persisted.
+   */
+  public void flush() throws IOException {
+    if (asyncWriter != null) {
+      asyncWriter.flush();
+    }
+  }
+
+  /**
+   * Persists all appended records and releases the resources used to write them.
+   */
+  public void close() throws IOException {
+    if (asyncWriter != null) {
+      asyncWriter.close();
+    }
+  }
+
+  @Nullable
+  private byte[] getState(String key) throws IOException {
+    return asyncWriter == null ? context.getState(key) : asyncWriter.get(key);
+  }
+
+  private void putState(String key, byte[] value) throws IOException {
+    if (asyncWriter == null) {
+      context.putState(key, value);
+    } else {
+      asyncWriter.put(key, value);
+    }
+  }
+
+  private boolean readMeta() throws IOException {
+    byte[] meta = getState(META_KEY);
+    if (meta == null || meta.length == 0) {
+      return false;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(meta);
+    int version = buffer.getInt();
+    if (version != META_VERSION) {
+      throw new IOException("Unsupported schema history meta version " + version);
+    }
+    generation = buffer.getInt();
+    chunks = buffer.getInt();
+    return true;
+  }
+
+  private void writeMeta() throws IOException {
+    putState(META_KEY, ByteBuffer.allocate(12).putInt(META_VERSION).putInt(generation).putInt(chunks).array());
+  }
+
+  static String chunkKey(int generation, int index) {
+    return String.format("history.%d.%d", generation, index);
+  }
+
+  /**
+   * A function that can throw {@link IOException}.
+   */
+  private interface IOFunction<T, R> {
+    R apply(T input) throws IOException;
+  }
+}
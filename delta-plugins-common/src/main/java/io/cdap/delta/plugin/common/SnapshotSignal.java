@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.plugin.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Signals to read the existing rows of some tables again while changes are replicated.
+ *
+ * A signal is a row inserted into the signal table of the source, which has the columns 'id', 'type' and 'data'. A
+ * snapshot signal has the type 'execute-snapshot' and the comma separated names of the tables to read as data.
+ */
+public final class SnapshotSignal {
+  public static final String TYPE = "type";
+  public static final String DATA = "data";
+  public static final String EXECUTE_SNAPSHOT = "execute-snapshot";
+  private static final String SEPARATOR = ",";
+
+  private SnapshotSignal() {
+  }
+
+  /**
+   * @param type the type column of the signal
+   * @param data the data column of the signal
+   * @return the names of the tables to read, or an empty list if this is not a snapshot signal
+   */
+  public static List<String> getTables(@Nullable Object type, @Nullable Object data) {
+    if (!EXECUTE_SNAPSHOT.equals(type) || data == null) {
+      return Collections.emptyList();
+    }
+    return decode(data.toString());
+  }
+
+  /**
+   * @return the names of the tables, to be stored in an offset
+   */
+  public static String encode(Collection<String> tables) {
+    return String.join(SEPARATOR, tables);
+  }
+
+  /**
+   * @return the names of the tables in a value created by {@link #encode(Collection)}, without blank ones
+   */
+  public static List<String> decode(@Nullable String tables) {
+    List<String> names = new ArrayList<>();
+    if (tables == null) {
+      return names;
+    }
+    for (String name : tables.split(SEPARATOR)) {
+      if (!name.trim().isEmpty()) {
+        names.add(name.trim());
+      }
+    }
+    return names;
+  }
+}
@@ -24,6 +24,7 @@ import io.cdap.delta.api.DeltaSourceContext;
 import io.cdap.delta.api.ReplicationError;
 import io.cdap.delta.api.SourceTable;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -110,7 +111,7 @@ public class MockContext implements DeltaSourceContext {
   }
 
   @Override
-  public void putState(String s, byte[] bytes) {
+  public void putState(String s, byte[] bytes) throws IOException {
     state.put(s, bytes);
   }
 
@@ -0,0 +1,212 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.plugin.common;
+
+import io.cdap.delta.plugin.mock.MockContext;
+import io.debezium.relational.history.HistoryRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link AsyncStateWriter}.
+ */
+public class AsyncStateWriterTest {
+
+  @Test
+  public void testSlowStateStore() throws IOException {
+    SlowContext context = new SlowContext(50);
+    SchemaHistoryStore store = new SchemaHistoryStore(context, 10, new AsyncStateWriter(context));
+    List<HistoryRecord> expected = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int i = 0; i < 20; i++) {
+      HistoryRecord record = SchemaHistoryStoreTest.record(i);
+      store.append(record);
+      expected.add(record);
+    }
+    long appendMillis = (System.nanoTime() - start) / 1000000;
+    // writing every record inline would take at least 20 * 50 ms
+    Assert.assertTrue("Appending took " + appendMillis + " ms", appendMillis < 20 * 50);
+
+    store.flush();
+    // consecutive writes to the last chunk are coalesced
+    Assert.assertTrue(context.writes.get() < 20);
+    assertRecords(expected, new SchemaHistoryStore(context, 10).getRecords());
+    store.close();
+  }
+
+  @Test
+  public void testRetry() throws IOException {
+    FaultyContext context = new FaultyContext(3);
+    SchemaHistoryStore store = new SchemaHistoryStore(context, 10, new AsyncStateWriter(context, 4, 5, 1, 10));
+    HistoryRecord record = SchemaHistoryStoreTest.record(0);
+    store.append(record);
+    store.flush();
+    Assert.assertEquals(0, context.failuresLeft.get());
+    assertRecords(Collections.singletonList(record), new SchemaHistoryStore(context, 10).getRecords());
+    store.close();
+  }
+
+  @Test
+  public void testRetriesExhausted() throws IOException {
+    FaultyContext context = new FaultyContext(Integer.MAX_VALUE);
+    AsyncStateWriter writer = new AsyncStateWriter(context, 4, 2, 1, 10);
+    writer.put("key", new byte[] { 1 });
+    try {
+      writer.flush();
+      Assert.fail("Flush should fail once retries are exhausted.");
+    } catch (IOException e) {
+      // expected
+    }
+    try {
+      writer.put("key", new byte[] { 2 });
+      Assert.fail("Writes after a failure should fail.");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testBoundedQueue() throws Exception {
+    BlockingContext context = new BlockingContext();
+    AsyncStateWriter writer = new AsyncStateWriter(context, 2, 0, 1, 1);
+    writer.put("a", new byte[] { 1 });
+    Assert.assertTrue(context.started.await(10, TimeUnit.SECONDS));
+    // "a" is being written, so this is queued behind it instead of replacing it
+    writer.put("a", new byte[] { 2 });
+
+    AtomicBoolean added = new AtomicBoolean();
+    Thread producer = new Thread(() -> {
+      try {
+        writer.put("b", new byte[] { 3 });
+        added.set(true);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    producer.start();
+    producer.join(200);
+    Assert.assertFalse("Put should block while the queue is full", added.get());
+
+    context.release.countDown();
+    producer.join(10000);
+    Assert.assertTrue(added.get());
+    writer.close();
+    Assert.assertArrayEquals(new byte[] { 2 }, context.getState("a"));
+    Assert.assertArrayEquals(new byte[] { 3 }, context.getState("b"));
+  }
+
+  private static void assertRecords(List<HistoryRecord> expected, List<HistoryRecord> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(expected.get(i).document(), actual.get(i).document());
+    }
+  }
+
+  /**
+   * Takes a fixed amount of time for every write.
+   */
+  private static class SlowContext extends MockContext {
+    private final long delayMillis;
+    private final AtomicInteger writes = new AtomicInteger();
+
+    SlowContext(long delayMillis) {
+      super(null);
+      this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public synchronized void putState(String s, byte[] bytes) throws IOException {
+      try {
+        TimeUnit.MILLISECONDS.sleep(delayMillis);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      writes.incrementAndGet();
+      super.putState(s, bytes);
+    }
+
+    @Override
+    public synchronized byte[] getState(String s) {
+      return super.getState(s);
+    }
+  }
+
+  /**
+   * Fails a number of writes before it starts accepting them.
+   */
+  private static class FaultyContext extends MockContext {
+    private final AtomicInteger failuresLeft;
+
+    FaultyContext(int failures) {
+      super(null);
+      this.failuresLeft = new AtomicInteger(failures);
+    }
+
+    @Override
+    public synchronized void putState(String s, byte[] bytes) throws IOException {
+      if (failuresLeft.get() > 0) {
+        failuresLeft.decrementAndGet();
+        throw new IOException("State store is unavailable.");
+      }
+      super.putState(s, bytes);
+    }
+
+    @Override
+    public synchronized byte[] getState(String s) {
+      return super.getState(s);
+    }
+  }
+
+  /**
+   * Blocks the first write until it is released.
+   */
+  private static class BlockingContext extends MockContext {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    BlockingContext() {
+      super(null);
+    }
+
+    @Override
+    public void putState(String s, byte[] bytes) throws IOException {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      synchronized (this) {
+        super.putState(s, bytes);
+      }
+    }
+
+    @Override
+    public synchronized byte[] getState(String s) {
+      return super.getState(s);
+    }
+  }
+}
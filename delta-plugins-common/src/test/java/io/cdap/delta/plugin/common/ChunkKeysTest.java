@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.plugin.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+/**
+ * Tests for {@link ChunkKeys}.
+ */
+public class ChunkKeysTest {
+
+  @Test
+  public void testEncoding() {
+    Object[] key = new Object[] { 42, "a\"b", new byte[] { 0, 1, -1 }, null, new BigDecimal("1.5") };
+    Object[] decoded = ChunkKeys.decode(ChunkKeys.encode(key));
+    Assert.assertEquals(new BigDecimal(42), decoded[0]);
+    Assert.assertEquals("a\"b", decoded[1]);
+    Assert.assertArrayEquals(new byte[] { 0, 1, -1 }, (byte[]) decoded[2]);
+    Assert.assertNull(decoded[3]);
+    Assert.assertEquals(new BigDecimal("1.5"), decoded[4]);
+
+    // the start of a table
+    Assert.assertEquals("", ChunkKeys.encode(null));
+    Assert.assertNull(ChunkKeys.decode(""));
+    Assert.assertNull(ChunkKeys.decode(null));
+  }
+}
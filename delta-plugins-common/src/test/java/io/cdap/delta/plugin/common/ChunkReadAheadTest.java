@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.plugin.common;
+
+import io.debezium.config.Configuration;
+import io.debezium.jdbc.JdbcConnection;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.Collections;
+
+/**
+ * Tests for {@link ChunkReadAhead}.
+ */
+public class ChunkReadAheadTest {
+
+  @Test
+  public void testOrder() throws Exception {
+    try (ChunkReadAhead readAhead = new ChunkReadAhead(2)) {
+      readAhead.addConnection(new JdbcConnection(Configuration.empty(), config -> null));
+      readAhead.addConnection(new JdbcConnection(Configuration.empty(), config -> null));
+      int next = 0;
+      for (int i = 0; i < 10; i++) {
+        while (next < 10 && !readAhead.isFull()) {
+          int chunk = next++;
+          // earlier chunks take longer, so they finish after the ones submitted after them
+          readAhead.submit(connection -> {
+            sleep(10 - chunk);
+            return Collections.singletonList(new Object[] { chunk });
+          });
+        }
+        Assert.assertEquals(i, readAhead.next().get(0)[0]);
+      }
+    }
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    try (ChunkReadAhead readAhead = new ChunkReadAhead(1)) {
+      readAhead.addConnection(new JdbcConnection(Configuration.empty(), config -> null));
+      readAhead.submit(connection -> {
+        throw new SQLException("missing");
+      });
+      readAhead.submit(connection -> {
+        throw new IllegalStateException("broken");
+      });
+      try {
+        readAhead.next();
+        Assert.fail("Failed read should throw its exception.");
+      } catch (SQLException e) {
+        Assert.assertEquals("missing", e.getMessage());
+      }
+      try {
+        readAhead.next();
+        Assert.fail("Failed read should throw.");
+      } catch (SQLException e) {
+        Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+    }
+  }
+
+  private static void sleep(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.plugin.common;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.delta.plugin.mock.MockContext;
+import io.debezium.config.Configuration;
+import io.debezium.relational.Tables;
+import io.debezium.relational.ddl.DdlParser;
+import io.debezium.relational.ddl.DdlParserSql2003;
+import io.debezium.relational.history.DatabaseHistoryListener;
+import io.debezium.relational.history.HistoryRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests for compacting schema history with {@link SchemaHistoryCompactor}.
+ */
+public class SchemaHistoryCompactorTest {
+  private static final Map<String, Object> SOURCE = ImmutableMap.of("server", "dummy");
+  private static final int TABLES = 50;
+  private static final String READER = "compactor-test";
+
+  @Test
+  public void testCompactionOnRecovery() throws IOException {
+    int count = 5000;
+    int resumeFrom = count - 20;
+    MockContext context = history(count);
+
+    // recover the full history, compacting everything up to the resume position
+    Tables full = recover(context, 1000, resumeFrom);
+    List<HistoryRecord> compacted = new SchemaHistoryStore(context).getRecords();
+    Assert.assertTrue(compacted.size() < count);
+    // the statement that did not change any table is kept, and records after the resume position are untouched
+    Assert.assertTrue(compacted.stream()
+                        .anyMatch(r -> "SET character_set_server = utf8".equals(r.document().getString("ddl"))));
+    for (int i = 1; i <= count - resumeFrom - 1; i++) {
+      Assert.assertEquals(record(count - i, null).document().getDocument("position"),
+                          compacted.get(compacted.size() - i).document().getDocument("position"));
+    }
+
+    // recovering from the checkpoint results in the same tables, and does not compact again
+    Tables fromCheckpoint = recover(context, 1000, resumeFrom);
+    Assert.assertEquals(full, fromCheckpoint);
+    Assert.assertEquals(compacted.size(), new SchemaHistoryStore(context).getRecords().size());
+
+    // and so does recovering up to the end of the history
+    Assert.assertEquals(recover(history(count), 0, count), recover(context, 0, count));
+  }
+
+  @Test
+  public void testNoCompactionBelowThreshold() throws IOException {
+    MockContext context = history(100);
+    recover(context, 1000, 100);
+    Assert.assertEquals(100, new SchemaHistoryStore(context).getRecords().size());
+  }
+
+  private static Tables recover(MockContext context, int threshold, int position) {
+    Configuration config = Configuration.create().with(DBSchemaHistory.COMPACTION_THRESHOLD, threshold).build();
+    ReaderContext reader = new ReaderContext(READER, context, config, null, null);
+    ReaderContextRegistry.register(reader);
+    try {
+      return ReaderContextRegistry.call(READER, () -> {
+        DBSchemaHistory history = new DBSchemaHistory() {
+          @Override
+          protected DdlParser createDdlParser() {
+            return new DdlParserSql2003();
+          }
+        };
+        history.configure(config, null, DatabaseHistoryListener.NOOP, true);
+        Tables tables = new Tables();
+        history.recover(SOURCE, position(position), tables, new DdlParserSql2003());
+        // persists the compacted history
+        history.stop();
+        return tables;
+      });
+    } finally {
+      ReaderContextRegistry.unregister(reader);
+    }
+  }
+
+  private static MockContext history(int count) throws IOException {
+    MockContext context = new MockContext(null);
+    SchemaHistoryStore store = new SchemaHistoryStore(context);
+    Set<Integer> created = new HashSet<>();
+    for (int i = 0; i < count; i++) {
+      store.append(record(i, ddl(i, created)));
+    }
+    return context;
+  }
+
+  private static String ddl(int i, Set<Integer> created) {
+    if (i == 0) {
+      return "SET character_set_server = utf8";
+    }
+    int table = i % TABLES;
+    if (!created.contains(table)) {
+      created.add(table);
+      return String.format("CREATE TABLE t%d (id INT NOT NULL, name VARCHAR(255), PRIMARY KEY (id))", table);
+    }
+    if (i % 7 == 0) {
+      created.remove(table);
+      return String.format("DROP TABLE t%d", table);
+    }
+    return String.format("ALTER TABLE t%d ADD COLUMN c%d BIGINT", table, i);
+  }
+
+  private static HistoryRecord record(int i, String ddl) {
+    return new HistoryRecord(SOURCE, position(i), "db", null, ddl, null);
+  }
+
+  private static Map<String, Object> position(int i) {
+    return ImmutableMap.of("file", "mysql-bin.000001", "pos", 1000L + i);
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.plugin.common;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.delta.plugin.mock.MockContext;
+import io.debezium.document.DocumentWriter;
+import io.debezium.relational.history.HistoryRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Tests for {@link SchemaHistoryStore}.
+ */
+public class SchemaHistoryStoreTest {
+
+  @Test
+  public void testAppendAndReload() throws IOException {
+    MockContext context = new MockContext(null);
+    SchemaHistoryStore store = new SchemaHistoryStore(context, 3);
+    List<HistoryRecord> expected = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      HistoryRecord record = record(i);
+      store.append(record);
+      expected.add(record);
+    }
+    assertRecords(expected, store.getRecords());
+    Assert.assertEquals(expected.get(9).document(), store.getLastRecord().document());
+
+    // a new store only sees what was persisted
+    SchemaHistoryStore reloaded = new SchemaHistoryStore(context, 3);
+    Assert.assertTrue(reloaded.exists());
+    assertRecords(expected, reloaded.getRecords());
+
+    // appending after a reload continues the last chunk
+    HistoryRecord record = record(10);
+    reloaded.append(record);
+    expected.add(record);
+    assertRecords(expected, new SchemaHistoryStore(context, 3).getRecords());
+  }
+
+  @Test
+  public void testLegacyFormatIsMigrated() throws IOException {
+    MockContext context = new MockContext(null);
+    List<HistoryRecord> expected = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      expected.add(record(i));
+    }
+    DocumentWriter writer = DocumentWriter.defaultWriter();
+    String legacy = expected.stream().map(r -> {
+      try {
+        return writer.write(r.document());
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }).collect(Collectors.joining("\n"));
+    context.putState(SchemaHistoryStore.LEGACY_KEY, Bytes.toBytes(legacy));
+
+    SchemaHistoryStore store = new SchemaHistoryStore(context, 2);
+    Assert.assertTrue(store.exists());
+    assertRecords(expected, store.getRecords());
+    Assert.assertEquals(0, context.getState(SchemaHistoryStore.LEGACY_KEY).length);
+    assertRecords(expected, new SchemaHistoryStore(context, 2).getRecords());
+  }
+
+  @Test
+  public void testWipe() throws IOException {
+    MockContext context = new MockContext(null);
+    SchemaHistoryStore store = new SchemaHistoryStore(context, 2);
+    Assert.assertFalse(store.exists());
+    for (int i = 0; i < 5; i++) {
+      store.append(record(i));
+    }
+
+    new SchemaHistoryStore(context, 2).wipe();
+    SchemaHistoryStore wiped = new SchemaHistoryStore(context, 2);
+    Assert.assertTrue(wiped.exists());
+    Assert.assertTrue(wiped.getRecords().isEmpty());
+    Assert.assertNull(wiped.getLastRecord());
+    // chunks of the wiped history are cleared
+    Assert.assertEquals(0, context.getState(SchemaHistoryStore.chunkKey(0, 0)).length);
+
+    HistoryRecord record = record(42);
+    wiped.append(record);
+    assertRecords(Collections.singletonList(record), new SchemaHistoryStore(context, 2).getRecords());
+  }
+
+  @Test
+  public void testWipeAfterCompaction() throws IOException {
+    MockContext context = new MockContext(null);
+    SchemaHistoryStore store = new SchemaHistoryStore(context, 2);
+    for (int i = 0; i < 5; i++) {
+      store.append(record(i));
+    }
+    List<HistoryRecord> compacted = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      compacted.add(record(i));
+    }
+    store.replace(compacted);
+    int compactedGeneration = generation(context);
+    Assert.assertEquals(1, compactedGeneration);
+
+    // a new store, as used when the pipeline is deleted, clears the chunks of the generation that is stored
+    new SchemaHistoryStore(context, 2).wipe();
+    Assert.assertTrue(generation(context) > compactedGeneration);
+    for (int i = 0; i < 2; i++) {
+      Assert.assertEquals(0, context.getState(SchemaHistoryStore.chunkKey(compactedGeneration, i)).length);
+    }
+    Assert.assertTrue(new SchemaHistoryStore(context, 2).getRecords().isEmpty());
+  }
+
+  @Test
+  public void testLargeHistory() throws IOException {
+    CountingContext context = new CountingContext();
+    SchemaHistoryStore store = new SchemaHistoryStore(context);
+    int count = 50000;
+    for (int i = 0; i < count; i++) {
+      store.append(record(i));
+    }
+
+    List<HistoryRecord> recovered = new SchemaHistoryStore(context).getRecords();
+    Assert.assertEquals(count, recovered.size());
+    Assert.assertEquals(record(count - 1).document(), recovered.get(count - 1).document());
+
+    // each append only rewrites the last chunk, so no single write grows with the size of the history
+    int recordSize = Bytes.toBytes(DocumentWriter.defaultWriter().write(record(count).document())).length;
+    Assert.assertTrue(context.largestWrite <= (recordSize + 1) * SchemaHistoryStore.DEFAULT_RECORDS_PER_CHUNK);
+  }
+
+  @Test
+  public void testTextChunksAreRead() throws IOException {
+    MockContext context = new MockContext(null);
+    SchemaHistoryStore store = new SchemaHistoryStore(context, 3);
+    List<HistoryRecord> expected = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      HistoryRecord record = record(i);
+      store.append(record);
+      expected.add(record);
+    }
+    // rewrite the chunks as newline separated text, the way they were written before the binary format
+    for (int i = 0; i < 2; i++) {
+      List<String> lines = new ArrayList<>();
+      for (byte[] document : SchemaHistoryStore.decode(context.getState(SchemaHistoryStore.chunkKey(0, i)))) {
+        lines.add(Bytes.toString(document));
+      }
+      context.putState(SchemaHistoryStore.chunkKey(0, i), Bytes.toBytes(String.join("\n", lines)));
+    }
+
+    SchemaHistoryStore reloaded = new SchemaHistoryStore(context, 3);
+    assertRecords(expected, reloaded.getRecords());
+    HistoryRecord record = record(5);
+    reloaded.append(record);
+    expected.add(record);
+    assertRecords(expected, new SchemaHistoryStore(context, 3).getRecords());
+  }
+
+  @Test
+  public void testCompressedSize() throws IOException {
+    CountingContext context = new CountingContext();
+    SchemaHistoryStore store = new SchemaHistoryStore(context);
+    int tables = 10000;
+    List<HistoryRecord> history = new ArrayList<>();
+    for (int i = 0; i < tables; i++) {
+      history.add(record(i));
+    }
+    store.replace(history);
+    long binaryBytes = context.bytesWritten;
+
+    List<HistoryRecord> recovered = new SchemaHistoryStore(context).getRecords();
+    Assert.assertEquals(tables, recovered.size());
+
+    DocumentWriter writer = DocumentWriter.defaultWriter();
+    long textBytes = 0;
+    for (HistoryRecord record : history) {
+      textBytes += Bytes.toBytes(writer.write(record.document())).length + 1;
+    }
+    Assert.assertTrue(String.format("Compressed history is %d bytes, text is %d bytes", binaryBytes, textBytes),
+                      binaryBytes * 4 < textBytes);
+  }
+
+  @Test
+  public void testParallelLoad() throws IOException {
+    MockContext context = new MockContext(null);
+    int count = 100000;
+    List<HistoryRecord> history = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      history.add(record(i));
+    }
+    new SchemaHistoryStore(context).replace(history);
+
+    assertRecords(history, new SchemaHistoryStore(context).getRecords());
+  }
+
+  private static void assertRecords(List<HistoryRecord> expected, List<HistoryRecord> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(expected.get(i).document(), actual.get(i).document());
+    }
+  }
+
+  private static int generation(MockContext context) throws IOException {
+    ByteBuffer meta = ByteBuffer.wrap(context.getState(SchemaHistoryStore.META_KEY));
+    // the version comes before the generation
+    meta.getInt();
+    return meta.getInt();
+  }
+
+  static HistoryRecord record(int i) {
+    Map<String, Object> source = ImmutableMap.of("server", "dummy");
+    Map<String, Object> position = ImmutableMap.of("file", "mysql-bin.000001", "pos", 1000L + i);
+    return new HistoryRecord(source, position, "db", null,
+                             String.format("CREATE TABLE t%d (id INT PRIMARY KEY, name VARCHAR(255))", i), null);
+  }
+
+  /**
+   * Keeps track of how much is written to the state store.
+   */
+  private static class CountingContext extends MockContext {
+    private long bytesWritten;
+    private int largestWrite;
+
+    CountingContext() {
+      super(null);
+    }
+
+    @Override
+    public void putState(String s, byte[] bytes) throws IOException {
+      bytesWritten += bytes.length;
+      largestWrite = Math.max(largestWrite, bytes.length);
+      super.putState(s, bytes);
+    }
+  }
+}
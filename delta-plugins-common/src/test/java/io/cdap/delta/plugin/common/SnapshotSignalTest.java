@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.plugin.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests for {@link SnapshotSignal}.
+ */
+public class SnapshotSignalTest {
+
+  @Test
+  public void testGetTables() {
+    Assert.assertEquals(Arrays.asList("t1", "dbo.t2"),
+                        SnapshotSignal.getTables(SnapshotSignal.EXECUTE_SNAPSHOT, " t1, dbo.t2 ,"));
+    Assert.assertEquals(Collections.emptyList(), SnapshotSignal.getTables("log", "t1"));
+    Assert.assertEquals(Collections.emptyList(), SnapshotSignal.getTables(SnapshotSignal.EXECUTE_SNAPSHOT, null));
+    Assert.assertEquals(Collections.emptyList(), SnapshotSignal.getTables(null, null));
+  }
+
+  @Test
+  public void testEncoding() {
+    Assert.assertEquals(Arrays.asList("t1", "t2"),
+                        SnapshotSignal.decode(SnapshotSignal.encode(Arrays.asList("t1", "t2"))));
+    Assert.assertEquals(Collections.emptyList(), SnapshotSignal.decode(SnapshotSignal.encode(Collections.emptyList())));
+    Assert.assertEquals(Collections.emptyList(), SnapshotSignal.decode(null));
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.mysql;
+
+import io.debezium.connector.mysql.MySqlConnectorConfig;
+import io.debezium.connector.mysql.MySqlValueConverters;
+import io.debezium.connector.mysql.antlr.MySqlAntlrDdlParser;
+import io.debezium.data.Envelope;
+import io.debezium.relational.Column;
+import io.debezium.relational.Table;
+import io.debezium.relational.TableId;
+import io.debezium.relational.TableSchema;
+import io.debezium.relational.TableSchemaBuilder;
+import io.debezium.relational.Tables;
+import io.debezium.relational.ddl.DdlParser;
+import io.debezium.util.SchemaNameAdjuster;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the rows of chunks of a table, and turns them into insert records like the ones Debezium emits for them.
+ */
+class ChunkReader {
+  private static final Logger LOG = LoggerFactory.getLogger(ChunkReader.class);
+  private static final int ER_NO_SUCH_TABLE = 1146;
+  private static final Map<String, String> PARTITION = Collections.singletonMap("server", "dummy");
+  private static final Schema SOURCE_SCHEMA = SchemaBuilder.struct()
+    .name("io.cdap.delta.mysql.Source")
+    .field("db", Schema.STRING_SCHEMA)
+    .field("table", Schema.STRING_SCHEMA)
+    .field(MySqlConstantOffsetBackingStore.FILE, Schema.OPTIONAL_STRING_SCHEMA)
+    .field(MySqlConstantOffsetBackingStore.POS, Schema.OPTIONAL_INT64_SCHEMA)
+    .build();
+  private static final Schema SCHEMA_CHANGE_SCHEMA = SchemaBuilder.struct()
+    .name("io.cdap.delta.mysql.SchemaChangeValue")
+    .field("source", SOURCE_SCHEMA)
+    .field("databaseName", Schema.STRING_SCHEMA)
+    .field("ddl", Schema.STRING_SCHEMA)
+    .build();
+
+  private final DdlParser ddlParser;
+  private final TableSchemaBuilder schemaBuilder;
+
+  ChunkReader(MySqlConnectorConfig config, MySqlValueConverters converters) {
+    this.ddlParser = new MySqlAntlrDdlParser(converters, tableId -> true);
+    this.schemaBuilder = new TableSchemaBuilder(converters, SchemaNameAdjuster.create(LOG),
+                                                config.customConverterRegistry(), SOURCE_SCHEMA,
+                                                config.getSanitizeFieldNames());
+  }
+
+  /**
+   * @return the definition of the table, or null if it does not exist
+   */
+  @Nullable
+  Table loadTable(Connection connection, TableId tableId) throws SQLException {
+    String ddl = showCreateTable(connection, tableId);
+    return ddl == null ? null : parse(tableId, ddl);
+  }
+
+  /**
+   * @return the statement that creates the table, or null if it does not exist
+   */
+  @Nullable
+  static String showCreateTable(Connection connection, TableId tableId) throws SQLException {
+    try (Statement statement = connection.createStatement();
+         ResultSet rs = statement.executeQuery("SHOW CREATE TABLE " + ChunkSplitter.quote(tableId))) {
+      return rs.next() ? rs.getString(2) : null;
+    } catch (SQLException e) {
+      if (e.getErrorCode() == ER_NO_SUCH_TABLE) {
+        return null;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * @return the definition of the table created by the statement
+   */
+  Table parse(TableId tableId, String ddl) {
+    Tables definitions = new Tables();
+    ddlParser.setCurrentDatabase(tableId.catalog());
+    ddlParser.parse(ddl, definitions);
+    return definitions.forTable(tableId);
+  }
+
+  /**
+   * @return a schema change record of the statements, like the ones Debezium emits for the DDL it reads
+   */
+  static SourceRecord createSchemaChange(TableId tableId, String ddl, Map<String, ?> offset) {
+    Struct source = new Struct(SOURCE_SCHEMA)
+      .put("db", tableId.catalog())
+      .put("table", tableId.table())
+      .put(MySqlConstantOffsetBackingStore.FILE, offset.get(MySqlConstantOffsetBackingStore.FILE))
+      .put(MySqlConstantOffsetBackingStore.POS, offset.get(MySqlConstantOffsetBackingStore.POS));
+    Struct value = new Struct(SCHEMA_CHANGE_SCHEMA)
+      .put("source", source)
+      .put("databaseName", tableId.catalog())
+      .put("ddl", ddl);
+    return new SourceRecord(PARTITION, offset, "dummy", null, SCHEMA_CHANGE_SCHEMA, value);
+  }
+
+  /**
+   * @return the records the rows of the table are turned into
+   */
+  TableRecords getRecords(Table table) {
+    return new TableRecords(table.id(), schemaBuilder.create("dummy.", "dummy." + table.id() + ".Envelope",
+                                                             table, null, null, null));
+  }
+
+  /**
+   * @param signalTable the table signals are inserted into, which is not replicated, or null if there is none
+   * @return the names of the tables of the database, in order
+   */
+  static List<String> listTables(Connection connection, String database,
+                                 @Nullable String signalTable) throws SQLException {
+    List<String> names = new ArrayList<>();
+    try (Statement statement = connection.createStatement();
+         ResultSet rs = statement.executeQuery(String.format("SHOW FULL TABLES IN %s WHERE Table_type = 'BASE TABLE'",
+                                                             ChunkSplitter.quote(database)))) {
+      while (rs.next()) {
+        String name = rs.getString(1);
+        if (!name.equals(signalTable)) {
+          names.add(name);
+        }
+      }
+    }
+    Collections.sort(names);
+    return names;
+  }
+
+  /**
+   * @return the rows of the chunk, with their values in the order of the columns of the table
+   */
+  static List<Object[]> readRows(Connection connection, ChunkSplitter splitter, ChunkSplitter.Chunk chunk,
+                                 Table table) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(splitter.getQuery(chunk))) {
+      ChunkSplitter.setParameters(statement, chunk);
+      List<Column> columns = table.columns();
+      List<Object[]> rows = new ArrayList<>();
+      try (ResultSet rs = statement.executeQuery()) {
+        while (rs.next()) {
+          rows.add(readRow(rs, columns, table));
+        }
+      }
+      return rows;
+    }
+  }
+
+  /**
+   * Reads all rows of a table without a primary key, which can't be split into chunks, and hands each of them to the
+   * handler as it is read instead of holding them. The connection can't run other queries until they are all read.
+   *
+   * @return the number of rows read
+   */
+  static long streamRows(Connection connection, ChunkSplitter splitter, Table table,
+                         Consumer<Object[]> handler) throws SQLException {
+    try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      // makes the driver stream the rows from the server, like Debezium's SnapshotReader does for large tables
+      statement.setFetchSize(Integer.MIN_VALUE);
+      List<Column> columns = table.columns();
+      long rowCount = 0;
+      try (ResultSet rs = statement.executeQuery(splitter.getQuery(new ChunkSplitter.Chunk(table.id(), null, null)))) {
+        while (rs.next()) {
+          handler.accept(readRow(rs, columns, table));
+          rowCount++;
+        }
+      }
+      return rowCount;
+    }
+  }
+
+  private static Object[] readRow(ResultSet rs, List<Column> columns, Table table) throws SQLException {
+    Object[] row = new Object[columns.size()];
+    for (int i = 0; i < row.length; i++) {
+      row[i] = readField(rs, i + 1, columns.get(i), table);
+    }
+    return row;
+  }
+
+  // This reads values the same way as Debezium's SnapshotReader, so they are converted the same way as its rows
+  private static Object readField(ResultSet rs, int fieldNo, Column column, Table table) throws SQLException {
+    switch (column.jdbcType()) {
+      case Types.TIME:
+        String time = readString(rs, fieldNo);
+        return time == null ? null : MySqlValueConverters.stringToDuration(time);
+      case Types.DATE:
+        String date = readString(rs, fieldNo);
+        return date == null ? null : MySqlValueConverters.stringToLocalDate(date, column, table);
+      case Types.TIMESTAMP:
+        String timestamp = readString(rs, fieldNo);
+        if (timestamp == null || MySqlValueConverters.containsZeroValuesInDatePart(timestamp, column, table)) {
+          return null;
+        }
+        return rs.getTimestamp(fieldNo, Calendar.getInstance());
+      case Types.TINYINT:
+      case Types.SMALLINT:
+        return rs.getObject(fieldNo) == null ? null : rs.getInt(fieldNo);
+      default:
+        return rs.getObject(fieldNo);
+    }
+  }
+
+  private static String readString(ResultSet rs, int fieldNo) throws SQLException {
+    Blob blob = rs.getBlob(fieldNo);
+    return blob == null ? null : new String(blob.getBytes(1, (int) blob.length()), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Turns the rows of a table into insert records.
+   */
+  static class TableRecords {
+    private final TableId tableId;
+    private final TableSchema schema;
+    private final Envelope envelope;
+    private final String topic;
+
+    private TableRecords(TableId tableId, TableSchema schema) {
+      this.tableId = tableId;
+      this.schema = schema;
+      this.envelope = schema.getEnvelopeSchema();
+      this.topic = "dummy." + tableId;
+    }
+
+    /**
+     * @return the primary key of the row, or null if the table does not have one
+     */
+    @Nullable
+    Struct getKey(Object[] row) {
+      return schema.keyFromColumnData(row);
+    }
+
+    /**
+     * @return an insert record of the row, with the binlog position of the offset as its position
+     */
+    SourceRecord create(Object[] row, Map<String, ?> offset, Instant timestamp) {
+      Struct source = new Struct(SOURCE_SCHEMA)
+        .put("db", tableId.catalog())
+        .put("table", tableId.table())
+        .put(MySqlConstantOffsetBackingStore.FILE, offset.get(MySqlConstantOffsetBackingStore.FILE))
+        .put(MySqlConstantOffsetBackingStore.POS, offset.get(MySqlConstantOffsetBackingStore.POS));
+      Struct value = envelope.create(schema.valueFromColumnData(row), source, timestamp);
+      return new SourceRecord(PARTITION, offset, topic, schema.keySchema(), getKey(row), envelope.schema(), value);
+    }
+  }
+}
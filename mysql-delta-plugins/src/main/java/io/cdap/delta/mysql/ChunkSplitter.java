@@ -0,0 +1,262 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.mysql;
+
+import io.debezium.relational.Column;
+import io.debezium.relational.Table;
+import io.debezium.relational.TableId;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/**
+ * Splits a table into chunks of consecutive primary keys, so they can be read at the same time.
+ *
+ * A table with a single integer primary key is split into key ranges of equal width, as long as its keys are dense
+ * enough for a range to hold about the chunk size in rows. Other tables are split by scanning their primary key, each
+ * chunk ends at the key that comes the chunk size in rows after its start. A table without a primary key is a single
+ * chunk, whose rows are streamed with {@link ChunkReader#streamRows} rather than held.
+ */
+public class ChunkSplitter {
+  // integer keys further apart than this on average are split by scanning them
+  static final int MAX_KEY_SPREAD = 10;
+
+  private final Connection connection;
+  private final Table table;
+  private final int chunkSize;
+  private final List<Column> keyColumns;
+  private final String keyList;
+  private final String keyTuple;
+  private final String parameterTuple;
+  // only set if the table is split into key ranges
+  private long min;
+  private long max;
+  private long step;
+
+  public ChunkSplitter(Connection connection, Table table, int chunkSize) {
+    this.connection = connection;
+    this.table = table;
+    this.chunkSize = chunkSize;
+    this.keyColumns = table.primaryKeyColumns();
+    this.keyList = keyColumns.stream().map(c -> quote(c.name())).collect(Collectors.joining(", "));
+    this.keyTuple = "(" + keyList + ")";
+    this.parameterTuple = "(" + keyColumns.stream().map(c -> "?").collect(Collectors.joining(", ")) + ")";
+  }
+
+  /**
+   * @param start the key the first chunk starts at, or null to start at the beginning of the table
+   * @return the first chunk of the table
+   */
+  public Chunk first(@Nullable Object[] start) throws SQLException {
+    if (keyColumns.isEmpty() || (isInteger(keyColumns) && !initRanges(start))) {
+      return new Chunk(table.id(), start, null);
+    }
+    return chunkAt(start);
+  }
+
+  /**
+   * @return the chunk after the given one, or null if it was the last one
+   */
+  @Nullable
+  public Chunk next(Chunk chunk) throws SQLException {
+    return chunk.getEnd() == null ? null : chunkAt(chunk.getEnd());
+  }
+
+  /**
+   * @return the query that reads the rows of a chunk, with parameters for its start and end keys
+   */
+  public String getQuery(Chunk chunk) {
+    String columns = table.columns().stream().map(c -> quote(c.name())).collect(Collectors.joining(", "));
+    StringBuilder query = new StringBuilder("SELECT ").append(columns).append(" FROM ").append(quote(table.id()));
+    if (chunk.getStart() != null) {
+      query.append(" WHERE ").append(keyTuple).append(" >= ").append(parameterTuple);
+    }
+    if (chunk.getEnd() != null) {
+      query.append(chunk.getStart() == null ? " WHERE " : " AND ")
+        .append(keyTuple).append(" < ").append(parameterTuple);
+    }
+    return query.toString();
+  }
+
+  /**
+   * Sets the start and end keys of a chunk as the parameters of its query.
+   */
+  public static void setParameters(PreparedStatement statement, Chunk chunk) throws SQLException {
+    int index = 1;
+    for (Object[] key : new Object[][] { chunk.getStart(), chunk.getEnd() }) {
+      if (key == null) {
+        continue;
+      }
+      for (Object value : key) {
+        statement.setObject(index++, value);
+      }
+    }
+  }
+
+  private Chunk chunkAt(@Nullable Object[] start) throws SQLException {
+    if (step == 0) {
+      return new Chunk(table.id(), start, scanEnd(start));
+    }
+    long from = start == null ? min : ((Number) start[0]).longValue();
+    boolean last;
+    try {
+      last = Math.subtractExact(max, from) < step;
+    } catch (ArithmeticException e) {
+      // the remaining keys span more than a long, which is more than a step
+      last = false;
+    }
+    return new Chunk(table.id(), start, last ? null : new Object[] { from + step });
+  }
+
+  /**
+   * Looks up the range of keys of a table with an integer key, and decides how wide the chunks are.
+   *
+   * @return whether the table has any rows at or after the start key
+   */
+  private boolean initRanges(@Nullable Object[] start) throws SQLException {
+    long rows;
+    try (PreparedStatement statement = connection.prepareStatement(
+      String.format("SELECT MIN(%s), MAX(%s) FROM %s", keyList, keyList, quote(table.id())))) {
+      try (ResultSet rs = statement.executeQuery()) {
+        if (!rs.next() || rs.getObject(1) == null) {
+          return false;
+        }
+        min = start == null ? rs.getLong(1) : ((Number) start[0]).longValue();
+        max = rs.getLong(2);
+        if (min > max) {
+          return false;
+        }
+      }
+    }
+    try (PreparedStatement statement = connection.prepareStatement(
+      "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?")) {
+      statement.setString(1, table.id().catalog());
+      statement.setString(2, table.id().table());
+      try (ResultSet rs = statement.executeQuery()) {
+        rows = rs.next() ? rs.getLong(1) : 0;
+      }
+    }
+    step = getStep((double) max - min + 1, rows, chunkSize);
+    return true;
+  }
+
+  /**
+   * @param range the number of keys between the smallest and largest key
+   * @param rows the estimated number of rows
+   * @param chunkSize the number of rows to put in a chunk
+   * @return the width of the key range of a chunk, or 0 if the keys are too sparse to be split into ranges
+   */
+  static long getStep(double range, long rows, int chunkSize) {
+    double spread = range / Math.max(1, rows);
+    if (spread > MAX_KEY_SPREAD) {
+      return 0;
+    }
+    return (long) Math.ceil(chunkSize * Math.max(1, spread));
+  }
+
+  @Nullable
+  private Object[] scanEnd(@Nullable Object[] start) throws SQLException {
+    StringBuilder query = new StringBuilder("SELECT ").append(keyList).append(" FROM ").append(quote(table.id()));
+    if (start != null) {
+      query.append(" WHERE ").append(keyTuple).append(" >= ").append(parameterTuple);
+    }
+    query.append(" ORDER BY ").append(keyList).append(" LIMIT 1 OFFSET ").append(chunkSize);
+    try (PreparedStatement statement = connection.prepareStatement(query.toString())) {
+      if (start != null) {
+        setParameters(statement, new Chunk(table.id(), start, null));
+      }
+      try (ResultSet rs = statement.executeQuery()) {
+        if (!rs.next()) {
+          return null;
+        }
+        Object[] end = new Object[keyColumns.size()];
+        for (int i = 0; i < end.length; i++) {
+          end[i] = rs.getObject(i + 1);
+        }
+        return end;
+      }
+    }
+  }
+
+  private static boolean isInteger(List<Column> keyColumns) {
+    if (keyColumns.size() != 1) {
+      return false;
+    }
+    Column column = keyColumns.get(0);
+    switch (column.jdbcType()) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+        return true;
+      case Types.BIGINT:
+        // unsigned values do not fit in a long
+        return !column.typeName().toUpperCase().contains("UNSIGNED");
+      default:
+        return false;
+    }
+  }
+
+  static String quote(String name) {
+    return "`" + name.replace("`", "``") + "`";
+  }
+
+  static String quote(TableId tableId) {
+    return quote(tableId.catalog()) + "." + quote(tableId.table());
+  }
+
+  /**
+   * A range of primary keys of a table.
+   */
+  public static class Chunk {
+    private final TableId table;
+    private final Object[] start;
+    private final Object[] end;
+
+    Chunk(TableId table, @Nullable Object[] start, @Nullable Object[] end) {
+      this.table = table;
+      this.start = start;
+      this.end = end;
+    }
+
+    public TableId getTable() {
+      return table;
+    }
+
+    /**
+     * @return the first key of the chunk, or null if it starts at the beginning of the table
+     */
+    @Nullable
+    public Object[] getStart() {
+      return start;
+    }
+
+    /**
+     * @return the key after the last key of the chunk, or null if it ends at the end of the table
+     */
+    @Nullable
+    public Object[] getEnd() {
+      return end;
+    }
+  }
+}
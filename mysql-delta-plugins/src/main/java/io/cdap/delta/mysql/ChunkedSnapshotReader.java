@@ -0,0 +1,249 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.mysql;
+
+import io.cdap.delta.plugin.common.ChunkKeys;
+import io.cdap.delta.plugin.common.ChunkReadAhead;
+import io.debezium.connector.mysql.MySqlConnectorConfig;
+import io.debezium.connector.mysql.MySqlValueConverters;
+import io.debezium.jdbc.JdbcConnection;
+import io.debezium.relational.Table;
+import io.debezium.relational.TableId;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the existing rows of tables in chunks of primary keys, over several connections at the same time.
+ *
+ * It runs after Debezium took a schema only snapshot, and before the binlog is read from the position that snapshot
+ * captured. Each chunk is read with a single query some time after that position, and binlog events carry whole rows,
+ * so reading the binlog from that position brings every row to the same state as in the source. Chunks are read ahead
+ * at the same time, but their rows are emitted in order, with the table and the start of their chunk in their offset.
+ * A restarted reader resumes at the chunk it was in. Chunks read from a replica are only read once it caught up to
+ * that position, see {@link ReplicaLagGate}. Tables without a primary key are read with a single query instead,
+ * whose rows are emitted as they are read.
+ */
+public class ChunkedSnapshotReader {
+  public static final String CHUNK_SIZE = "snapshot.chunk.size";
+  static final int DEFAULT_CHUNK_SIZE = 10000;
+  public static final String REPLICA_TIMEOUT = "snapshot.replica.timeout.ms";
+  static final long DEFAULT_REPLICA_TIMEOUT_MS = 3600000L;
+  // offset keys of the chunk being read, every offset has them until all tables were read
+  static final String TABLE = "chunk.table";
+  static final String START = "chunk.start";
+  private static final Logger LOG = LoggerFactory.getLogger(ChunkedSnapshotReader.class);
+
+  private final String database;
+  private final List<String> tables;
+  private final int parallelism;
+  private final int chunkSize;
+  private final Supplier<JdbcConnection> connections;
+  private final boolean replica;
+  private final long replicaTimeoutMs;
+  private final String signalTable;
+  private final ChunkReader chunkReader;
+  private volatile boolean pending;
+  private volatile String table;
+  private volatile String start;
+
+  /**
+   * Creates a reader of the existing rows of the given tables, which resumes at the chunk recorded in the state.
+   *
+   * @param database the database of the tables
+   * @param tables the tables to read, or empty to read all tables of the database
+   * @param parallelism the number of connections to read chunks over
+   * @param config the configuration of the connector
+   * @param converters the converters of column values
+   * @param connections creates the connections chunks are read over
+   * @param replica whether the connections are to a replica of the server the binlog is read from
+   * @param signalTable the table in the database that signals are inserted into, which is not read, or null if there
+   *   is none
+   * @param state the offset to resume at, or an empty map to read all tables
+   */
+  public ChunkedSnapshotReader(String database, Collection<String> tables, int parallelism,
+                               MySqlConnectorConfig config, MySqlValueConverters converters,
+                               Supplier<JdbcConnection> connections, boolean replica, @Nullable String signalTable,
+                               Map<String, String> state) {
+    this.database = database;
+    this.tables = new ArrayList<>(tables);
+    Collections.sort(this.tables);
+    this.parallelism = Math.max(1, parallelism);
+    this.chunkSize = Math.max(1, config.getConfig().getInteger(CHUNK_SIZE, DEFAULT_CHUNK_SIZE));
+    this.connections = connections;
+    this.replica = replica;
+    this.replicaTimeoutMs = config.getConfig().getLong(REPLICA_TIMEOUT, DEFAULT_REPLICA_TIMEOUT_MS);
+    this.signalTable = signalTable;
+    this.chunkReader = new ChunkReader(config, converters);
+    this.pending = true;
+    this.table = emptyToNull(state.get(TABLE));
+    this.start = emptyToNull(state.get(START));
+  }
+
+  /**
+   * @return whether the offset is in the middle of a chunked snapshot
+   */
+  public static boolean isInProgress(Map<String, String> state) {
+    return state.containsKey(TABLE);
+  }
+
+  /**
+   * @return whether the rows of the tables still have to be read
+   */
+  public boolean isPending() {
+    return pending;
+  }
+
+  /**
+   * Adds the chunk to resume at to an offset that does not have it, as long as there are rows to read.
+   */
+  public void addProgress(Map<String, String> offset) {
+    if (pending && !offset.containsKey(TABLE)) {
+      String currentTable = table;
+      String currentStart = start;
+      offset.put(TABLE, currentTable == null ? "" : currentTable);
+      offset.put(START, currentStart == null ? "" : currentStart);
+    }
+  }
+
+  /**
+   * Reads the rows of all tables that were not read yet, and hands them to the consumer as insert records.
+   *
+   * @param baseOffset the binlog offset of the schema only snapshot, which the records get with their chunk added
+   * @param consumer the consumer of the records
+   */
+  public void read(Map<String, ?> baseOffset, Consumer<SourceRecord> consumer)
+    throws SQLException, InterruptedException {
+    long startTime = System.currentTimeMillis();
+    JdbcConnection coordinator = connections.get();
+    try (ChunkReadAhead readAhead = new ChunkReadAhead(parallelism)) {
+      if (replica) {
+        ReplicaLagGate.await(coordinator.connection(), baseOffset, replicaTimeoutMs);
+      }
+      for (int i = 0; i < parallelism; i++) {
+        readAhead.addConnection(connections.get());
+      }
+      List<String> tableNames = tables.isEmpty()
+        ? ChunkReader.listTables(coordinator.connection(), database, signalTable) : tables;
+      String resumeTable = table;
+      for (String tableName : tableNames) {
+        // tables are read in order of their names
+        if (resumeTable != null && tableName.compareTo(resumeTable) < 0) {
+          continue;
+        }
+        String tableStart = tableName.equals(resumeTable) ? start : null;
+        table = tableName;
+        start = tableStart;
+        readTable(coordinator.connection(), new TableId(database, null, tableName),
+                  ChunkKeys.decode(tableStart), readAhead, baseOffset, consumer);
+      }
+      pending = false;
+      LOG.info("Read the existing rows of {} tables in {} seconds.", tableNames.size(),
+               (System.currentTimeMillis() - startTime) / 1000);
+    } finally {
+      close(coordinator);
+    }
+  }
+
+  private void readTable(Connection connection, TableId tableId, Object[] tableStart,
+                         ChunkReadAhead readAhead, Map<String, ?> baseOffset, Consumer<SourceRecord> consumer)
+    throws SQLException, InterruptedException {
+    Table tableDefinition = chunkReader.loadTable(connection, tableId);
+    if (tableDefinition == null) {
+      LOG.warn("Table {} does not exist, its rows are not read.", tableId);
+      return;
+    }
+    ChunkReader.TableRecords records = chunkReader.getRecords(tableDefinition);
+    ChunkSplitter splitter = new ChunkSplitter(connection, tableDefinition, chunkSize);
+    if (tableDefinition.primaryKeyColumns().isEmpty()) {
+      readKeylessTable(connection, splitter, tableDefinition, records, baseOffset, consumer);
+      return;
+    }
+    LOG.info("Reading the rows of table {} in chunks of {} rows.", tableId, chunkSize);
+
+    Deque<ChunkSplitter.Chunk> chunks = new ArrayDeque<>();
+    ChunkSplitter.Chunk next = splitter.first(tableStart);
+    long rowCount = 0;
+    while (next != null || !chunks.isEmpty()) {
+      while (next != null && !readAhead.isFull()) {
+        ChunkSplitter.Chunk chunk = next;
+        chunks.add(chunk);
+        readAhead.submit(jdbc -> ChunkReader.readRows(jdbc.connection(), splitter, chunk, tableDefinition));
+        next = splitter.next(chunk);
+      }
+
+      ChunkSplitter.Chunk chunk = chunks.poll();
+      List<Object[]> rows = readAhead.next();
+      start = ChunkKeys.encode(chunk.getStart());
+      Map<String, Object> offset = new HashMap<>(baseOffset);
+      offset.put(TABLE, tableId.table());
+      offset.put(START, start);
+      Instant now = Instant.now();
+      for (Object[] row : rows) {
+        consumer.accept(records.create(row, offset, now));
+      }
+      rowCount += rows.size();
+    }
+    LOG.info("Read {} rows of table {}.", rowCount, tableId);
+  }
+
+  /**
+   * Reads the rows of a table without a primary key, which can't be split into chunks, with a single query. Its rows
+   * are handed to the consumer as they are read rather than held by the read ahead, so the size of the table doesn't
+   * matter. A restarted reader reads the table from its first row.
+   */
+  private void readKeylessTable(Connection connection, ChunkSplitter splitter, Table tableDefinition,
+                                ChunkReader.TableRecords records, Map<String, ?> baseOffset,
+                                Consumer<SourceRecord> consumer) throws SQLException {
+    TableId tableId = tableDefinition.id();
+    LOG.info("Reading the rows of table {}, which has no primary key, with a single query.", tableId);
+    start = null;
+    Map<String, Object> offset = new HashMap<>(baseOffset);
+    offset.put(TABLE, tableId.table());
+    offset.put(START, ChunkKeys.encode(null));
+    long rowCount = ChunkReader.streamRows(connection, splitter, tableDefinition,
+                                           row -> consumer.accept(records.create(row, offset, Instant.now())));
+    LOG.info("Read {} rows of table {}.", rowCount, tableId);
+  }
+
+  static void close(JdbcConnection connection) {
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      LOG.warn("Unable to close snapshot connection.", e);
+    }
+  }
+
+  static String emptyToNull(String value) {
+    return value == null || value.isEmpty() ? null : value;
+  }
+}
@@ -0,0 +1,490 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.mysql;
+
+import io.cdap.delta.plugin.common.ChunkKeys;
+import io.cdap.delta.plugin.common.SnapshotSignal;
+import io.debezium.connector.mysql.MySqlConnectorConfig;
+import io.debezium.connector.mysql.MySqlValueConverters;
+import io.debezium.jdbc.JdbcConnection;
+import io.debezium.relational.Table;
+import io.debezium.relational.TableId;
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the existing rows of tables in chunks of primary keys while changes are read from the binlog, the way DBLog
+ * does.
+ *
+ * A chunk is read while reading the binlog is paused, so the binlog position it was read at is the low watermark.
+ * Once it is read, the current binlog position of the server is the high watermark. Rows of the chunk are held back
+ * until the binlog is read up to the high watermark, and each change read until then drops the row of the chunk with
+ * the same key, because the change may not be in the chunk and carries the latest state of the row anyway. The rest
+ * of the rows are emitted as inserts before the first change after the high watermark, so every row is emitted in the
+ * same order as the changes to it. The table and the start of the next chunk are in the offset of every event, so a
+ * restarted or paused reader resumes at the chunk it was in.
+ *
+ * Tables named by a signal inserted into the signal table are read again the same way, after the tables that are
+ * still to be read. Each of them is dropped and created again before its first chunk, so its target only has the rows
+ * read from it and the changes made after that. The tables still to be read are in the offset of every event until
+ * all of them are read.
+ *
+ * Tables without a primary key are skipped, since their rows can't be matched to the changes read while they wait.
+ */
+public class IncrementalSnapshotReader {
+  public static final String PAUSED = "snapshot.incremental.paused";
+  // offset key of the tables to read after the current one, only set once a table was named by a signal
+  static final String TABLES = "chunk.tables";
+  private static final Logger LOG = LoggerFactory.getLogger(IncrementalSnapshotReader.class);
+
+  private final String database;
+  private final List<String> configuredTables;
+  private final int chunkSize;
+  private final boolean paused;
+  private final Supplier<JdbcConnection> connections;
+  private final ChunkReader chunkReader;
+  private final String signalTable;
+  private JdbcConnection jdbc;
+  private List<String> tables;
+  // the tables to read after the current one, or null to read the tables in order of their names
+  private Deque<String> queue;
+  private boolean pending;
+  private String table;
+  private String start;
+  // the table being read, loaded again whenever the schema changes
+  private Table tableDefinition;
+  private ChunkReader.TableRecords records;
+  private ChunkSplitter splitter;
+  private ChunkSplitter.Chunk nextChunk;
+  // the chunk whose rows wait for the binlog to be read up to the high watermark, null if there is none
+  private ChunkSplitter.Chunk chunk;
+  private BinlogPosition highWatermark;
+  private Map<Object, Object[]> window;
+  // the offset of the last change or heartbeat, which emitted rows get with their chunk added
+  private Map<String, ?> lastOffset;
+
+  /**
+   * Creates a reader of the existing rows of the given tables, which resumes at the chunk recorded in the state.
+   *
+   * @param database the database of the tables
+   * @param tables the tables to read, or empty to read all tables of the database
+   * @param config the configuration of the connector
+   * @param converters the converters of column values
+   * @param connections creates the connection chunks are read over
+   * @param state the offset to resume at, or an empty map to read all tables
+   */
+  public IncrementalSnapshotReader(String database, Collection<String> tables, MySqlConnectorConfig config,
+                                   MySqlValueConverters converters, Supplier<JdbcConnection> connections,
+                                   Map<String, String> state) {
+    this(database, tables, config, converters, connections, state, true, null);
+  }
+
+  /**
+   * Creates a reader of the existing rows of the given tables, which also reads the tables named by signals.
+   *
+   * @param database the database of the tables
+   * @param tables the tables to read, or empty to read all tables of the database
+   * @param config the configuration of the connector
+   * @param converters the converters of column values
+   * @param connections creates the connection chunks are read over
+   * @param state the offset to resume at
+   * @param readExisting whether the existing rows of all tables have to be read, if the offset is not in the middle of
+   *   reading them
+   * @param signalTable the table in the database that signals are inserted into, or null if there is none
+   */
+  public IncrementalSnapshotReader(String database, Collection<String> tables, MySqlConnectorConfig config,
+                                   MySqlValueConverters converters, Supplier<JdbcConnection> connections,
+                                   Map<String, String> state, boolean readExisting, @Nullable String signalTable) {
+    this.database = database;
+    this.configuredTables = new ArrayList<>(tables);
+    Collections.sort(this.configuredTables);
+    this.chunkSize = Math.max(1, config.getConfig().getInteger(ChunkedSnapshotReader.CHUNK_SIZE,
+                                                               ChunkedSnapshotReader.DEFAULT_CHUNK_SIZE));
+    this.paused = config.getConfig().getBoolean(PAUSED, false);
+    this.connections = connections;
+    this.chunkReader = new ChunkReader(config, converters);
+    this.signalTable = signalTable;
+    this.pending = readExisting || ChunkedSnapshotReader.isInProgress(state);
+    this.table = ChunkedSnapshotReader.emptyToNull(state.get(ChunkedSnapshotReader.TABLE));
+    this.start = ChunkedSnapshotReader.emptyToNull(state.get(ChunkedSnapshotReader.START));
+    if (state.containsKey(TABLES)) {
+      this.queue = new ArrayDeque<>(SnapshotSignal.decode(state.get(TABLES)));
+    }
+    if (paused && pending) {
+      LOG.info("Reading existing rows is paused at table {}.", table);
+    }
+  }
+
+  /**
+   * @return whether the offset is in the middle of reading tables named by a signal
+   */
+  public static boolean isSignalled(Map<String, String> state) {
+    return state.containsKey(TABLES);
+  }
+
+  /**
+   * @return whether the rows of the tables still have to be read
+   */
+  public boolean isPending() {
+    return pending;
+  }
+
+  /**
+   * Adds the chunk to resume at to an offset that does not have it, as long as there are rows to read.
+   */
+  public void addProgress(Map<String, String> offset) {
+    if (!pending) {
+      return;
+    }
+    if (!offset.containsKey(ChunkedSnapshotReader.TABLE)) {
+      offset.put(ChunkedSnapshotReader.TABLE, table == null ? "" : table);
+      offset.put(ChunkedSnapshotReader.START, start == null ? "" : start);
+    }
+    if (queue != null) {
+      offset.put(TABLES, SnapshotSignal.encode(queue));
+    }
+  }
+
+  /**
+   * Handles a change to the signal table, by adding the tables named by a snapshot signal to the tables to read.
+   *
+   * @return whether the record is a change to the signal table, which is not replicated
+   */
+  public boolean signal(SourceRecord record) throws SQLException {
+    Struct value = (Struct) record.value();
+    if (signalTable == null || value.schema().field("op") == null) {
+      return false;
+    }
+    Struct source = value.getStruct("source");
+    if (!database.equals(source.getString("db")) || !signalTable.equals(source.getString("table"))) {
+      return false;
+    }
+    Struct after = value.getStruct("after");
+    // signals that were inserted before the snapshot are rows of the snapshot
+    boolean snapshot = Boolean.TRUE.equals(record.sourceOffset().get(MySqlConstantOffsetBackingStore.SNAPSHOT));
+    if ("c".equals(value.getString("op")) && after != null && !snapshot) {
+      addTables(SnapshotSignal.getTables(after.get(SnapshotSignal.TYPE), after.get(SnapshotSignal.DATA)));
+    }
+    return true;
+  }
+
+  /**
+   * Reads the rows of the given tables again, once the tables that are being read are read.
+   */
+  public void addTables(Collection<String> names) throws SQLException {
+    List<String> added = new ArrayList<>();
+    for (String name : names) {
+      if (!configuredTables.isEmpty() && !configuredTables.contains(name)) {
+        LOG.warn("Table {}.{} is not replicated, its rows are not read again.", database, name);
+      } else {
+        added.add(name);
+      }
+    }
+    if (added.isEmpty()) {
+      return;
+    }
+    if (queue == null) {
+      queue = new ArrayDeque<>();
+      if (pending) {
+        // the tables that were not read yet are read first
+        String current = table;
+        getTables().stream().filter(t -> current == null || t.compareTo(current) > 0).forEach(queue::add);
+      }
+    }
+    for (String name : added) {
+      if (!queue.contains(name)) {
+        queue.add(name);
+      }
+    }
+    pending = true;
+    LOG.info("Reading the rows of tables {} again.", added);
+  }
+
+  /**
+   * Handles a heartbeat, whose offset is the position the binlog was read up to. Chunks are read one after the other
+   * for as long as nothing is written to the binlog while they are read, since their rows can be emitted right away.
+   */
+  public void heartbeat(Map<String, ?> offset, Consumer<SourceRecord> consumer) throws SQLException {
+    lastOffset = offset;
+    BinlogPosition position = BinlogPosition.of(offset);
+    if (chunk != null && position.compareTo(highWatermark) >= 0) {
+      emitChunk(consumer);
+    }
+    while (chunk == null && pending && !paused) {
+      readChunk(consumer);
+      if (chunk != null && position.compareTo(highWatermark) >= 0) {
+        emitChunk(consumer);
+      }
+    }
+  }
+
+  /**
+   * Handles a change read from the binlog, before it is emitted. If it comes after the high watermark, the rows of the
+   * open chunk are emitted before it. Otherwise the row of the chunk it changes is dropped.
+   */
+  public void beforeChange(SourceRecord record, Consumer<SourceRecord> consumer) {
+    if (chunk == null) {
+      return;
+    }
+    Struct value = (Struct) record.value();
+    Struct source = value.getStruct("source");
+    if (BinlogPosition.of(source.getString(MySqlConstantOffsetBackingStore.FILE),
+                          source.getInt64(MySqlConstantOffsetBackingStore.POS)).compareTo(highWatermark) >= 0) {
+      emitChunk(consumer);
+      return;
+    }
+    if (isSchemaChange(record)) {
+      // the rows may not match the new schema, so the chunk is read again
+      discardChunk();
+      return;
+    }
+    if (!chunk.getTable().catalog().equals(source.getString("db")) ||
+      !chunk.getTable().table().equals(source.getString("table"))) {
+      return;
+    }
+    window.remove(getKey((Struct) record.key()));
+  }
+
+  /**
+   * Handles a change read from the binlog, after it was emitted, by reading the next chunk if none is open.
+   */
+  public void afterChange(SourceRecord record, Consumer<SourceRecord> consumer) throws SQLException {
+    lastOffset = record.sourceOffset();
+    if (isSchemaChange(record)) {
+      tableDefinition = null;
+    }
+    if (Boolean.TRUE.equals(lastOffset.get(MySqlConstantOffsetBackingStore.SNAPSHOT))) {
+      // the schema of all tables is emitted before any row
+      return;
+    }
+    while (chunk == null && pending && !paused) {
+      readChunk(consumer);
+    }
+  }
+
+  /**
+   * Closes the connection chunks are read over.
+   */
+  public void close() {
+    if (jdbc != null) {
+      ChunkedSnapshotReader.close(jdbc);
+      jdbc = null;
+    }
+  }
+
+  private void readChunk(Consumer<SourceRecord> consumer) throws SQLException {
+    Connection connection = getConnection();
+    if (table == null) {
+      nextTable();
+      if (!pending) {
+        return;
+      }
+    }
+    if (tableDefinition == null) {
+      TableId tableId = new TableId(database, null, table);
+      String ddl = ChunkReader.showCreateTable(connection, tableId);
+      if (ddl == null) {
+        LOG.warn("Table {} does not exist, its rows are not read.", tableId);
+        nextTable();
+        return;
+      }
+      tableDefinition = chunkReader.parse(tableId, ddl);
+      if (tableDefinition.primaryKeyColumns().isEmpty()) {
+        // the rows of a chunk can't be matched to the changes read while it waits, so it would be read over and over
+        LOG.warn("Table {} has no primary key, its existing rows can't be read while changes are read.", tableId);
+        nextTable();
+        return;
+      }
+      if (queue != null && start == null) {
+        // a table named by a signal only gets the rows read from it, changes made after them are read from the binlog
+        consumer.accept(ChunkReader.createSchemaChange(
+          tableId, String.format("USE %s;%nDROP TABLE IF EXISTS %s;%n%s", ChunkSplitter.quote(database),
+                                 ChunkSplitter.quote(tableId), ddl), lastOffset));
+      }
+      LOG.info("Reading the rows of table {} in chunks of {} rows.", tableId, chunkSize);
+      records = chunkReader.getRecords(tableDefinition);
+      splitter = new ChunkSplitter(connection, tableDefinition, chunkSize);
+      nextChunk = splitter.first(ChunkKeys.decode(start));
+    }
+
+    List<Object[]> rows = ChunkReader.readRows(connection, splitter, nextChunk, tableDefinition);
+    highWatermark = BinlogPosition.current(connection);
+    window = new LinkedHashMap<>();
+    for (Object[] row : rows) {
+      window.put(getKey(records.getKey(row)), row);
+    }
+    chunk = nextChunk;
+  }
+
+  private void emitChunk(Consumer<SourceRecord> consumer) {
+    ChunkSplitter.Chunk emitted = chunk;
+    Map<String, Object> offset = new HashMap<>(lastOffset);
+    offset.put(ChunkedSnapshotReader.TABLE, table);
+    offset.put(ChunkedSnapshotReader.START, ChunkKeys.encode(chunk.getStart()));
+    Instant now = Instant.now();
+    for (Object[] row : window.values()) {
+      consumer.accept(records.create(row, offset, now));
+    }
+    chunk = null;
+    window = null;
+    try {
+      nextChunk = splitter.next(emitted);
+      if (nextChunk == null) {
+        nextTable();
+      } else {
+        start = ChunkKeys.encode(nextChunk.getStart());
+      }
+    } catch (SQLException e) {
+      throw new RuntimeException("Unable to find the next chunk of table " + table, e);
+    }
+  }
+
+  private void discardChunk() {
+    chunk = null;
+    window = null;
+  }
+
+  private void nextTable() throws SQLException {
+    if (table != null) {
+      LOG.info("Read the rows of table {}.{}.", database, table);
+    }
+    if (queue != null) {
+      table = queue.poll();
+    } else {
+      String current = table;
+      table = getTables().stream().filter(t -> current == null || t.compareTo(current) > 0).findFirst().orElse(null);
+    }
+    start = null;
+    tableDefinition = null;
+    if (table == null) {
+      pending = false;
+      queue = null;
+      LOG.info("Read the existing rows of the tables.");
+      close();
+    }
+  }
+
+  private Connection getConnection() throws SQLException {
+    if (jdbc == null) {
+      jdbc = connections.get();
+    }
+    return jdbc.connection();
+  }
+
+  // the tables to read in order of their names
+  private List<String> getTables() throws SQLException {
+    if (tables == null) {
+      tables = configuredTables.isEmpty()
+        ? ChunkReader.listTables(getConnection(), database, signalTable) : configuredTables;
+    }
+    return tables;
+  }
+
+  private static boolean isSchemaChange(SourceRecord record) {
+    return ((Struct) record.value()).schema().field("ddl") != null;
+  }
+
+  private static List<Object> getKey(Struct key) {
+    List<Object> values = new ArrayList<>();
+    for (Field field : key.schema().fields()) {
+      Object value = key.get(field);
+      // arrays are not equal to arrays with the same content
+      values.add(value instanceof byte[] ? ByteBuffer.wrap((byte[]) value) : value);
+    }
+    return values;
+  }
+
+  /**
+   * A position in the binlog.
+   */
+  static final class BinlogPosition implements Comparable<BinlogPosition> {
+    private final String file;
+    private final long position;
+
+    private BinlogPosition(String file, long position) {
+      this.file = file;
+      this.position = position;
+    }
+
+    static BinlogPosition of(String file, long position) {
+      return new BinlogPosition(file, position);
+    }
+
+    static BinlogPosition of(Map<String, ?> offset) {
+      return of((String) offset.get(MySqlConstantOffsetBackingStore.FILE),
+                ((Number) offset.get(MySqlConstantOffsetBackingStore.POS)).longValue());
+    }
+
+    /**
+     * @return the position the server writes the next change to
+     */
+    static BinlogPosition current(Connection connection) throws SQLException {
+      try (Statement statement = connection.createStatement();
+           ResultSet rs = statement.executeQuery("SHOW MASTER STATUS")) {
+        if (!rs.next()) {
+          throw new SQLException("Unable to read the binlog position, make sure the binlog is enabled.");
+        }
+        return of(rs.getString(1), rs.getLong(2));
+      }
+    }
+
+    @Override
+    public int compareTo(BinlogPosition other) {
+      int result = Long.compare(getIndex(file), getIndex(other.file));
+      return result == 0 ? Long.compare(position, other.position) : result;
+    }
+
+    // binlog files are named with an increasing number as their extension
+    private static long getIndex(@Nullable String file) {
+      if (file == null) {
+        return -1;
+      }
+      try {
+        return Long.parseLong(file.substring(file.lastIndexOf('.') + 1));
+      } catch (NumberFormatException e) {
+        return -1;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return file + ":" + position;
+    }
+  }
+}
@@ -63,8 +63,66 @@ public class MySqlConfig extends PluginConfig {
     "tables will be ignored and only changes happening after the pipeline started will be replicated.")
   private Boolean replicateExistingData;
 
+  @Nullable
+  @Description("Number of connections to read existing data over. When set, each table is split into chunks of " +
+    "primary key ranges that are read at the same time, and a restarted pipeline resumes reading existing data at " +
+    "the chunk it was in. By default, each table is read with a single query over one connection.")
+  private Integer snapshotParallelism;
+
+  @Nullable
+  @Description("Whether to read existing data while changes are replicated, instead of before. Each table is read " +
+    "in chunks of primary key ranges in between changes, so changes are replicated while existing data is read, and " +
+    "a restarted pipeline resumes reading existing data at the chunk it was in. By default, existing data is read " +
+    "before any change is replicated.")
+  private Boolean incrementalSnapshot;
+
+  @Nullable
+  @Description("Table in the database to read signals from while changes are replicated. The table must have the " +
+    "columns 'id', 'type' and 'data'. Inserting a row with the type 'execute-snapshot' and a comma separated list of " +
+    "tables as data drops and creates those tables in the target, and reads their existing data again while changes " +
+    "are replicated. By default, no signals are read.")
+  private String signalTable;
+
+  @Nullable
+  @Description("Hostname or IP address of a replica of the MySQL server to read existing data from. Changes and the " +
+    "schema of the tables are still read from the server, and existing data is read in chunks over the number of " +
+    "connections set by Snapshot Parallelism, once the replica caught up to the binlog position of the server. " +
+    "By default, existing data is read from the server.")
+  private String snapshotHost;
+
+  @Nullable
+  @Description("Port to use to connect to the replica existing data is read from. By default, the port of the " +
+    "server is used.")
+  private Integer snapshotPort;
+
   public MySqlConfig(String host, int port, String user, String password, int consumerID,
                      String database, @Nullable String serverTimezone) {
+    this(host, port, user, password, consumerID, database, serverTimezone, null);
+  }
+
+  public MySqlConfig(String host, int port, String user, String password, int consumerID,
+                     String database, @Nullable String serverTimezone, @Nullable Integer snapshotParallelism) {
+    this(host, port, user, password, consumerID, database, serverTimezone, snapshotParallelism, null);
+  }
+
+  public MySqlConfig(String host, int port, String user, String password, int consumerID,
+                     String database, @Nullable String serverTimezone, @Nullable Integer snapshotParallelism,
+                     @Nullable Boolean incrementalSnapshot) {
+    this(host, port, user, password, consumerID, database, serverTimezone, snapshotParallelism, incrementalSnapshot,
+         null);
+  }
+
+  public MySqlConfig(String host, int port, String user, String password, int consumerID,
+                     String database, @Nullable String serverTimezone, @Nullable Integer snapshotParallelism,
+                     @Nullable Boolean incrementalSnapshot, @Nullable String signalTable) {
+    this(host, port, user, password, consumerID, database, serverTimezone, snapshotParallelism, incrementalSnapshot,
+         signalTable, null, null);
+  }
+
+  public MySqlConfig(String host, int port, String user, String password, int consumerID,
+                     String database, @Nullable String serverTimezone, @Nullable Integer snapshotParallelism,
+                     @Nullable Boolean incrementalSnapshot, @Nullable String signalTable,
+                     @Nullable String snapshotHost, @Nullable Integer snapshotPort) {
     this.host = host;
     this.port = port;
     this.user = user;
@@ -72,6 +130,11 @@ public class MySqlConfig extends PluginConfig {
     this.consumerID = consumerID;
     this.database = database;
     this.serverTimezone = serverTimezone;
+    this.snapshotParallelism = snapshotParallelism;
+    this.incrementalSnapshot = incrementalSnapshot;
+    this.signalTable = signalTable;
+    this.snapshotHost = snapshotHost;
+    this.snapshotPort = snapshotPort;
   }
 
   public String getHost() {
@@ -126,4 +189,45 @@ public class MySqlConfig extends PluginConfig {
   public boolean getReplicateExistingData() {
     return replicateExistingData != null ? replicateExistingData : true;
   }
+
+  /**
+   * @return the number of connections to read existing data over in chunks, or 0 to read it with Debezium's snapshot
+   */
+  public int getSnapshotParallelism() {
+    if (snapshotParallelism == null || snapshotParallelism <= 0) {
+      // Debezium's snapshot reads the server, so existing data is read from a replica in chunks
+      return getSnapshotHost() == null ? 0 : 1;
+    }
+    return snapshotParallelism;
+  }
+
+  /**
+   * @return whether existing data is read in chunks while changes are read from the binlog
+   */
+  public boolean getIncrementalSnapshot() {
+    return incrementalSnapshot != null && incrementalSnapshot;
+  }
+
+  /**
+   * @return the table signals are read from, or null if no signals are read
+   */
+  @Nullable
+  public String getSignalTable() {
+    return signalTable == null || signalTable.trim().isEmpty() ? null : signalTable.trim();
+  }
+
+  /**
+   * @return the replica existing data is read from, or null if it is read from the server
+   */
+  @Nullable
+  public String getSnapshotHost() {
+    return snapshotHost == null || snapshotHost.trim().isEmpty() ? null : snapshotHost.trim();
+  }
+
+  /**
+   * @return the port of the replica existing data is read from
+   */
+  public int getSnapshotPort() {
+    return snapshotPort == null ? port : snapshotPort;
+  }
 }
@@ -49,18 +49,32 @@ public class MySqlConstantOffsetBackingStore extends MemoryOffsetBackingStore {
   @Override
   public void configure(WorkerConfig config) {
     Map<String, String> originalConfig = config.originalsStrings();
-    String fileStr = originalConfig.get(FILE);
-    String posStr = originalConfig.get(POS);
-    String snapshotStr = originalConfig.get(SNAPSHOT);
-    String rowStr = originalConfig.get(ROW);
-    String eventStr = originalConfig.get(EVENT);
-    String gtidSetStr = originalConfig.get(GTID_SET);
     String replicationConnectorName = originalConfig.get(REPLICATION_CONNECTOR_NAME);
 
     ByteBuffer key =
       StandardCharsets.UTF_8.encode("{\"schema\":null,\"payload\":[\""
                                       + replicationConnectorName
                                       + "\",{\"server\":\"dummy\"}]}");
+    Map<String, Object> offset = toDebeziumOffset(originalConfig);
+
+    if (offset.isEmpty()) {
+      return;
+    }
+
+    data.put(key, StandardCharsets.UTF_8.encode(GSON.toJson(offset)));
+  }
+
+  /**
+   * Converts the string values of an offset to the types Debezium uses for them, and drops all other values.
+   */
+  static Map<String, Object> toDebeziumOffset(Map<String, String> state) {
+    String fileStr = state.get(FILE);
+    String posStr = state.get(POS);
+    String snapshotStr = state.get(SNAPSHOT);
+    String rowStr = state.get(ROW);
+    String eventStr = state.get(EVENT);
+    String gtidSetStr = state.get(GTID_SET);
+
     Map<String, Object> offset = new HashMap<>();
     if (!Strings.isNullOrEmpty(fileStr)) {
       offset.put(FILE, fileStr);
@@ -80,11 +94,6 @@ public class MySqlConstantOffsetBackingStore extends MemoryOffsetBackingStore {
     if (!Strings.isNullOrEmpty(gtidSetStr)) {
       offset.put(GTID_SET, gtidSetStr);
     }
-
-    if (offset.isEmpty()) {
-      return;
-    }
-
-    data.put(key, StandardCharsets.UTF_8.encode(GSON.toJson(offset)));
+    return offset;
   }
 }
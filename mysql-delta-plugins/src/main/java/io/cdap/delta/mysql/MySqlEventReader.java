@@ -25,6 +25,8 @@ import io.cdap.delta.api.SourceTable;
 import io.cdap.delta.api.StopContext;
 import io.cdap.delta.plugin.common.DBSchemaHistory;
 import io.cdap.delta.plugin.common.NotifyingCompletionCallback;
+import io.cdap.delta.plugin.common.ReaderContext;
+import io.cdap.delta.plugin.common.ReaderContextRegistry;
 import io.cdap.delta.plugin.common.RuntimeArguments;
 import io.debezium.DebeziumException;
 import io.debezium.config.CommonConnectorConfig;
@@ -35,6 +37,8 @@ import io.debezium.connector.mysql.MySqlJdbcContext;
 import io.debezium.connector.mysql.MySqlValueConverters;
 import io.debezium.connector.mysql.antlr.MySqlAntlrDdlParser;
 import io.debezium.embedded.EmbeddedEngine;
+import io.debezium.embedded.StopConnectorException;
+import io.debezium.heartbeat.Heartbeat;
 import io.debezium.jdbc.JdbcConnection;
 import io.debezium.jdbc.JdbcValueConverters;
 import io.debezium.jdbc.TemporalPrecisionMode;
@@ -48,6 +52,8 @@ import java.sql.Driver;
 import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.Temporal;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -61,6 +67,8 @@ import java.util.stream.Collectors;
 public class MySqlEventReader implements EventReader {
   public static final Logger LOG = LoggerFactory.getLogger(MySqlEventReader.class);
   protected static final String SOURCE_CONNECTOR_PREFIX = "source.connector.";
+  // heartbeats start reading existing rows once the schema was read, and tell how far the binlog was read
+  private static final int HEARTBEAT_INTERVAL_MS = 1000;
   private final MySqlConfig config;
   private final EventEmitter emitter;
   private final ExecutorService executorService;
@@ -68,6 +76,8 @@ public class MySqlEventReader implements EventReader {
   private final Set<SourceTable> sourceTables;
   private final Map<String, String> debeziumConnectorConfigs;
   private EmbeddedEngine engine;
+  private ReaderContext readerContext;
+  private IncrementalSnapshotReader incrementalSnapshotReader;
   private volatile boolean failedToStop;
 
   public MySqlEventReader(Set<SourceTable> sourceTables, MySqlConfig config,
@@ -84,21 +94,35 @@ public class MySqlEventReader implements EventReader {
 
   @Override
   public void start(Offset offset) {
-    // load mysql jdbc driver into class loader here and use this loaded jdbc class and class loader to set static
-    // variable 'connectionFactory' in MySqlJdbcContext and static variable 'jdbcClassLoader' in MySqlValueConverters.
-    // note that, this is a short-term hacky solution for us to solve the problem of excluding mysql-jdbc jar from MySql
-    // delta plugin's dependencies in CDAP.
+    // load mysql jdbc driver into class loader here, MySqlJdbcContext and MySqlValueConverters look up the connection
+    // factory and class loader built from it through the reader context registry. This is how we exclude the
+    // mysql-jdbc jar from MySql delta plugin's dependencies in CDAP.
     Class<? extends Driver> jdbcDriverClass = context.loadPluginClass(config.getJDBCPluginId());
-    MySqlJdbcContext.connectionFactory = JdbcConnection.patternBasedFactory(MySqlJdbcContext.MYSQL_CONNECTION_URL,
-                                                                            jdbcDriverClass.getName(),
-                                                                            jdbcDriverClass.getClassLoader());
-    MySqlValueConverters.jdbcClassLoader = jdbcDriverClass.getClassLoader();
+    JdbcConnection.ConnectionFactory connectionFactory =
+      JdbcConnection.patternBasedFactory(MySqlJdbcContext.MYSQL_CONNECTION_URL, jdbcDriverClass.getName(),
+                                         jdbcDriverClass.getClassLoader());
 
     // For MySQL, the unique table identifier in debezium is 'databaseName.tableName'
     Map<String, SourceTable> sourceTableMap = sourceTables.stream().collect(
       Collectors.toMap(t -> config.getDatabase() + "." + t.getTable(), t -> t));
     Map<String, String> state = offset.get(); // state map is always not null
     String isSnapshot = state.getOrDefault(MySqlConstantOffsetBackingStore.SNAPSHOT, "");
+    // a snapshot that was interrupted starts over
+    boolean snapshotPending = state.isEmpty() || "true".equalsIgnoreCase(isSnapshot);
+    // tables named by signals are read again while changes are read from the binlog
+    String signalTable = config.getSignalTable();
+    boolean signalled = IncrementalSnapshotReader.isSignalled(state);
+    // existing rows are read in chunks after Debezium read the schema, if they were not read yet
+    boolean chunkedSnapshot = config.getReplicateExistingData() && !config.getIncrementalSnapshot() &&
+      config.getSnapshotParallelism() > 0 &&
+      (snapshotPending || (ChunkedSnapshotReader.isInProgress(state) && !signalled));
+    // or while changes are read from the binlog
+    boolean incrementalSnapshot = config.getReplicateExistingData() && config.getIncrementalSnapshot() &&
+      (snapshotPending || ChunkedSnapshotReader.isInProgress(state));
+    Set<String> includedTables = new HashSet<>(sourceTableMap.keySet());
+    if (signalTable != null && !includedTables.isEmpty()) {
+      includedTables.add(config.getDatabase() + "." + signalTable);
+    }
     String replicationConnectorName = "delta" + context.getInstanceId();
     Configuration.Builder configBuilder = Configuration.create()
       .with("connector.class", MySqlConnector.class.getName())
@@ -117,13 +141,14 @@ public class MySqlEventReader implements EventReader {
       .with("database.port", config.getPort())
       .with("database.user", config.getUser())
       .with("database.password", config.getPassword())
-      .with("database.history", DBSchemaHistory.class.getName())
+      .with("database.history", MySqlSchemaHistory.class.getName())
       .with("database.include.list", config.getDatabase())
       .with("database.server.name", "dummy") // this is the kafka topic for hosted debezium - it doesn't matter
       .with("database.serverTimezone", config.getServerTimezone())
       .with("database.history.store.only.monitored.tables.ddl", true)
-      .with("table.include.list", String.join(",", sourceTableMap.keySet()))
-      .with("snapshot.mode", config.getReplicateExistingData() ? "initial" : "schema_only")
+      .with("table.include.list", String.join(",", includedTables))
+      .with("snapshot.mode", config.getReplicateExistingData() && !chunkedSnapshot && !config.getIncrementalSnapshot() ?
+        "initial" : "schema_only")
       .with(MySqlConstantOffsetBackingStore.REPLICATION_CONNECTOR_NAME, replicationConnectorName);
 
     if (config.getConsumerID() != null) {
@@ -136,37 +161,92 @@ public class MySqlEventReader implements EventReader {
       configBuilder = configBuilder.with(entry.getKey(), entry.getValue());
     }
 
+    if ((chunkedSnapshot && snapshotPending) || incrementalSnapshot || signalTable != null) {
+      // the heartbeat sent after the schema only snapshot starts reading the rows
+      configBuilder = configBuilder.with(Heartbeat.HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL_MS);
+    }
+
     Configuration debeziumConf = configBuilder.build();
     LOG.info("Debezium configuration : {}", debeziumConf);
     MySqlConnectorConfig mysqlConf = new MySqlConnectorConfig(debeziumConf);
-    DBSchemaHistory.deltaRuntimeContext = context;
+    // debezium creates the history, jdbc context and value converters itself, they find the context of this reader
+    // through the registry since the engine runs bound to it.
+    readerContext = new ReaderContext(ReaderContextRegistry.getReaderName(context, replicationConnectorName), context,
+                                      debeziumConf, jdbcDriverClass.getClassLoader(), connectionFactory);
+    ReaderContextRegistry.register(readerContext);
     /*
      * All snapshot events or schema history record have same position/offset
      * if replicator was stopped  or paused from middle of snapshot, it
      * will resume from beginning.
      */
-    if (offset.get().isEmpty() || "true".equalsIgnoreCase(isSnapshot)) {
+    if (snapshotPending) {
       try {
-        DBSchemaHistory.wipeHistory();
+        DBSchemaHistory.wipeHistory(context);
       } catch (IOException e) {
         throw new RuntimeException("Unable to wipe schema history at start of replication.", e);
       }
     }
 
-    MySqlValueConverters mySqlValueConverters = getValueConverters(mysqlConf);
+    MySqlValueConverters mySqlValueConverters =
+      ReaderContextRegistry.call(readerContext.getName(), () -> getValueConverters(mysqlConf));
     DdlParser ddlParser = new MySqlAntlrDdlParser(mySqlValueConverters, tableId -> true);
+    ChunkedSnapshotReader snapshotReader = null;
+    if (chunkedSnapshot) {
+      // chunks are read from the replica if there is one, the binlog and the schema are still read from the server
+      String snapshotHost = config.getSnapshotHost();
+      MySqlConnectorConfig snapshotConf = snapshotHost == null ? mysqlConf : new MySqlConnectorConfig(
+        debeziumConf.edit()
+          .with("database.hostname", snapshotHost)
+          .with("database.port", config.getSnapshotPort())
+          .build());
+      snapshotReader = new ChunkedSnapshotReader(
+        config.getDatabase(), sourceTables.stream().map(SourceTable::getTable).collect(Collectors.toList()),
+        config.getSnapshotParallelism(), mysqlConf, mySqlValueConverters,
+        () -> new MySqlJdbcContext(snapshotConf).jdbc(), snapshotHost != null, signalTable,
+        snapshotPending ? Collections.emptyMap() : state);
+    }
+    if (incrementalSnapshot || signalTable != null || signalled) {
+      // the progress of a chunked snapshot is not the incremental reader's to resume
+      boolean resume = !snapshotPending && (incrementalSnapshot || signalled);
+      incrementalSnapshotReader = new IncrementalSnapshotReader(
+        config.getDatabase(), sourceTables.stream().map(SourceTable::getTable).collect(Collectors.toList()),
+        mysqlConf, mySqlValueConverters, () -> new MySqlJdbcContext(mysqlConf).jdbc(),
+        resume ? state : Collections.emptyMap(), incrementalSnapshot, signalTable);
+    }
 
     ClassLoader oldCL = Thread.currentThread().getContextClassLoader();
     Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
     try {
+      MySqlRecordConsumer consumer = new MySqlRecordConsumer(context, emitter, ddlParser, mySqlValueConverters,
+                                                             new Tables(), sourceTableMap,
+                                                             config.getReplicateExistingData(), snapshotReader,
+                                                             incrementalSnapshotReader);
+      NotifyingCompletionCallback completionCallback = new NotifyingCompletionCallback(context);
       // Create the engine with this configuration ...
       engine = EmbeddedEngine.create()
         .using(debeziumConf)
-        .notifying(new MySqlRecordConsumer(context, emitter, ddlParser, mySqlValueConverters,
-                                           new Tables(), sourceTableMap, config.getReplicateExistingData()))
-        .using(new NotifyingCompletionCallback(context))
+        .notifying(consumer)
+        .using(completionCallback)
         .build();
-      executorService.submit(engine);
+      Runnable task = engine;
+      if (chunkedSnapshot && !snapshotPending) {
+        // the schema was read before the restart, so the rest of the rows are read before the binlog
+        Map<String, Object> binlogOffset = MySqlConstantOffsetBackingStore.toDebeziumOffset(state);
+        EmbeddedEngine binlogEngine = engine;
+        task = () -> {
+          try {
+            consumer.readChunkedSnapshot(binlogOffset);
+          } catch (StopConnectorException e) {
+            return;
+          } catch (RuntimeException e) {
+            LOG.error("Unable to read the existing rows of the tables.", e);
+            completionCallback.handle(false, e.getMessage(), e);
+            return;
+          }
+          binlogEngine.run();
+        };
+      }
+      executorService.submit(ReaderContextRegistry.bind(readerContext.getName(), task));
     } finally {
       Thread.currentThread().setContextClassLoader(oldCL);
     }
@@ -181,6 +261,12 @@ public class MySqlEventReader implements EventReader {
       LOG.warn("Unable to cleanly shutdown reader within the timeout.");
       failedToStop = true;
     }
+    if (incrementalSnapshotReader != null) {
+      incrementalSnapshotReader.close();
+    }
+    if (readerContext != null) {
+      ReaderContextRegistry.unregister(readerContext);
+    }
   }
 
   @VisibleForTesting
@@ -25,10 +25,12 @@ import io.cdap.delta.api.DeltaSourceContext;
 import io.cdap.delta.api.EventEmitter;
 import io.cdap.delta.api.Offset;
 import io.cdap.delta.api.SourceTable;
+import io.cdap.delta.plugin.common.DBSchemaHistory;
 import io.cdap.delta.plugin.common.Records;
 import io.cdap.delta.plugin.common.SchemaMappingCache;
 import io.debezium.connector.mysql.MySqlValueConverters;
 import io.debezium.embedded.StopConnectorException;
+import io.debezium.heartbeat.Heartbeat;
 import io.debezium.relational.Table;
 import io.debezium.relational.TableId;
 import io.debezium.relational.Tables;
@@ -40,10 +42,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import javax.annotation.Nullable;
 
 /**
  * Record consumer for MySQL.
@@ -51,6 +55,7 @@ import java.util.function.Consumer;
 public class MySqlRecordConsumer implements Consumer<SourceRecord> {
   private static final Logger LOG = LoggerFactory.getLogger(MySqlRecordConsumer.class);
   private static final String TRX_ID_SEP = ":";
+  private static final String HEARTBEAT_TOPIC_PREFIX = Heartbeat.HEARTBEAT_TOPICS_PREFIX.defaultValueAsString();
 
   private final DeltaSourceContext context;
   private final EventEmitter emitter;
@@ -60,10 +65,36 @@ public class MySqlRecordConsumer implements Consumer<SourceRecord> {
   private final Map<String, SourceTable> sourceTableMap;
   private final boolean replicateExistingData;
   private final SchemaMappingCache schemaMappingCache;
+  private final ChunkedSnapshotReader chunkedSnapshot;
+  private final IncrementalSnapshotReader incrementalSnapshot;
 
   public MySqlRecordConsumer(DeltaSourceContext context, EventEmitter emitter,
                              DdlParser ddlParser, MySqlValueConverters mySqlValueConverters,
                              Tables tables, Map<String, SourceTable> sourceTableMap, boolean replicateExistingData) {
+    this(context, emitter, ddlParser, mySqlValueConverters, tables, sourceTableMap, replicateExistingData, null);
+  }
+
+  /**
+   * Creates a consumer that reads the existing rows of the tables with the given reader once the schema only snapshot
+   * is complete, if they were not read yet.
+   */
+  public MySqlRecordConsumer(DeltaSourceContext context, EventEmitter emitter,
+                             DdlParser ddlParser, MySqlValueConverters mySqlValueConverters,
+                             Tables tables, Map<String, SourceTable> sourceTableMap, boolean replicateExistingData,
+                             @Nullable ChunkedSnapshotReader chunkedSnapshot) {
+    this(context, emitter, ddlParser, mySqlValueConverters, tables, sourceTableMap, replicateExistingData,
+         chunkedSnapshot, null);
+  }
+
+  /**
+   * Creates a consumer that reads the existing rows of the tables with the given incremental reader while changes are
+   * read from the binlog, if they were not read yet.
+   */
+  public MySqlRecordConsumer(DeltaSourceContext context, EventEmitter emitter,
+                             DdlParser ddlParser, MySqlValueConverters mySqlValueConverters,
+                             Tables tables, Map<String, SourceTable> sourceTableMap, boolean replicateExistingData,
+                             @Nullable ChunkedSnapshotReader chunkedSnapshot,
+                             @Nullable IncrementalSnapshotReader incrementalSnapshot) {
     this.context = context;
     this.emitter = emitter;
     this.ddlParser = ddlParser;
@@ -72,6 +103,8 @@ public class MySqlRecordConsumer implements Consumer<SourceRecord> {
     this.sourceTableMap = sourceTableMap;
     this.replicateExistingData = replicateExistingData;
     this.schemaMappingCache = new SchemaMappingCache();
+    this.chunkedSnapshot = chunkedSnapshot;
+    this.incrementalSnapshot = incrementalSnapshot;
   }
 
   @Override
@@ -123,6 +156,51 @@ public class MySqlRecordConsumer implements Consumer<SourceRecord> {
     if (sourceRecord.value() == null) {
       return;
     }
+    if (sourceRecord.topic().startsWith(HEARTBEAT_TOPIC_PREFIX)) {
+      // Debezium sends a heartbeat once the snapshot is complete, before it starts reading the binlog, and then
+      // regularly with the position the binlog was read up to
+      if (chunkedSnapshot != null && chunkedSnapshot.isPending()) {
+        readChunkedSnapshot(sourceRecord.sourceOffset());
+      }
+      if (incrementalSnapshot != null && incrementalSnapshot.isPending()) {
+        try {
+          incrementalSnapshot.heartbeat(sourceRecord.sourceOffset(), this::emit);
+        } catch (SQLException e) {
+          throw new RuntimeException("Unable to read existing rows of the tables.", e);
+        }
+      }
+      return;
+    }
+    // changes to the signal table are not replicated, they name tables whose rows are read again
+    boolean signal;
+    try {
+      signal = incrementalSnapshot != null && incrementalSnapshot.signal(sourceRecord);
+    } catch (SQLException e) {
+      throw new RuntimeException("Unable to list the tables to read again.", e);
+    }
+    // rows read by the incremental snapshot are emitted while it handles a change
+    if (incrementalSnapshot != null && incrementalSnapshot.isPending() &&
+      !sourceRecord.sourceOffset().containsKey(ChunkedSnapshotReader.TABLE)) {
+      incrementalSnapshot.beforeChange(sourceRecord, this::emit);
+      if (!signal) {
+        emit(sourceRecord);
+      }
+      try {
+        incrementalSnapshot.afterChange(sourceRecord, this::emit);
+      } catch (SQLException e) {
+        throw new RuntimeException("Unable to read existing rows of the tables.", e);
+      }
+      return;
+    }
+    if (!signal) {
+      emit(sourceRecord);
+    }
+  }
+
+  private void emit(SourceRecord sourceRecord) {
+    // schema history is written in the background, make sure it is persisted before emitting an event whose offset
+    // could be committed
+    DBSchemaHistory.flush();
 
     Map<String, String> deltaOffset = generateCdapOffsets(sourceRecord);
     Offset recordOffset = new Offset(deltaOffset);
@@ -134,7 +212,15 @@ public class MySqlRecordConsumer implements Consumer<SourceRecord> {
       // This should not happen, 'source' is a mandatory field in sourceRecord from debezium
       return;
     }
-    boolean isSnapshot = Boolean.parseBoolean(deltaOffset.get(MySqlConstantOffsetBackingStore.SNAPSHOT));
+    boolean isSnapshot = Boolean.parseBoolean(deltaOffset.get(MySqlConstantOffsetBackingStore.SNAPSHOT)) ||
+      deltaOffset.containsKey(ChunkedSnapshotReader.TABLE);
+    // until the existing rows are read, a restart has to resume reading them
+    if (chunkedSnapshot != null) {
+      chunkedSnapshot.addProgress(deltaOffset);
+    }
+    if (incrementalSnapshot != null) {
+      incrementalSnapshot.addProgress(deltaOffset);
+    }
     // If the map is empty, we should read all DDL/DML events and columns of all tables
     boolean readAllTables = sourceTableMap.isEmpty();
 
@@ -158,6 +244,21 @@ public class MySqlRecordConsumer implements Consumer<SourceRecord> {
     }
   }
 
+  /**
+   * Reads the existing rows of the tables, if they were not read yet, and emits them before any change.
+   *
+   * @param offset the binlog offset the changes are read from once the rows are read
+   */
+  void readChunkedSnapshot(Map<String, ?> offset) {
+    try {
+      chunkedSnapshot.read(offset, this);
+    } catch (InterruptedException e) {
+      throw new StopConnectorException("Interrupted while reading existing rows.");
+    } catch (SQLException e) {
+      throw new RuntimeException("Unable to read the existing rows of the tables.", e);
+    }
+  }
+
   private void handleDML(StructuredRecord source, StructuredRecord val, Offset recordOffset,
                          boolean isSnapshot, boolean readAllTables) throws InterruptedException {
     String databaseName = source.get("db");
@@ -392,6 +493,12 @@ public class MySqlRecordConsumer implements Consumer<SourceRecord> {
     if (gtidSet != null) {
       deltaOffset.put(MySqlConstantOffsetBackingStore.GTID_SET, gtidSet);
     }
+    // only set on the existing rows read in chunks
+    Object chunkTable = sourceOffset.get(ChunkedSnapshotReader.TABLE);
+    if (chunkTable != null) {
+      deltaOffset.put(ChunkedSnapshotReader.TABLE, (String) chunkTable);
+      deltaOffset.put(ChunkedSnapshotReader.START, (String) sourceOffset.get(ChunkedSnapshotReader.START));
+    }
 
     return deltaOffset;
   }
@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.mysql;
+
+import io.cdap.delta.plugin.common.DBSchemaHistory;
+import io.debezium.config.CommonConnectorConfig;
+import io.debezium.connector.mysql.MySqlValueConverters;
+import io.debezium.connector.mysql.antlr.MySqlAntlrDdlParser;
+import io.debezium.jdbc.JdbcValueConverters;
+import io.debezium.jdbc.TemporalPrecisionMode;
+import io.debezium.relational.ddl.DdlParser;
+
+/**
+ * MySQL schema history. MySQL history records only contain DDL statements, so compacting them requires a MySQL DDL
+ * parser.
+ */
+public class MySqlSchemaHistory extends DBSchemaHistory {
+
+  @Override
+  protected DdlParser createDdlParser() {
+    // value converters are only used to parse column defaults, tables that have them keep their DDL statements
+    MySqlValueConverters converters =
+      new MySqlValueConverters(JdbcValueConverters.DecimalMode.PRECISE,
+                               TemporalPrecisionMode.ADAPTIVE_TIME_MICROSECONDS,
+                               JdbcValueConverters.BigIntUnsignedMode.LONG,
+                               CommonConnectorConfig.BinaryHandlingMode.BYTES);
+    return new MySqlAntlrDdlParser(converters, tableId -> true);
+  }
+}
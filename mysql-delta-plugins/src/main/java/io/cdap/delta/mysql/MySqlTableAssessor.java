@@ -49,6 +49,7 @@ public class MySqlTableAssessor implements TableAssessor<TableDetail> {
   private static final Logger LOG = LoggerFactory.getLogger(MySqlTableAssessor.class);
   static final String COLUMN_LENGTH = "COLUMN_LENGTH";
   static final String SCALE = "SCALE";
+  static final String NO_PRIMARY_KEY = "No Primary Key";
 
   private final MySqlConfig conf;
   private final DriverCleanup driverCleanup;
@@ -80,7 +81,18 @@ public class MySqlTableAssessor implements TableAssessor<TableDetail> {
       columnAssessments.add(evaluateColumn(columnDetail).getAssessment());
     }
 
-    return new TableAssessment(columnAssessments, tableDetail.getFeatures());
+    List<Problem> features = tableDetail.getFeatures();
+    // the incremental snapshot matches the rows it reads to changes by their primary key
+    if (conf.getReplicateExistingData() && conf.getIncrementalSnapshot() && tableDetail.getPrimaryKey().isEmpty()) {
+      features = new ArrayList<>(features);
+      features.add(
+        new Problem(NO_PRIMARY_KEY,
+                    String.format("Table '%s' in database '%s' has no primary key, its existing rows can't be read "
+                                    + "while changes are read.", tableDetail.getTable(), tableDetail.getDatabase()),
+                    "Add a primary key to the table, or disable the incremental snapshot",
+                    "Only the changes made to the table will be replicated, not its existing rows"));
+    }
+    return new TableAssessment(columnAssessments, features);
   }
 
   // This is based on https://dev.mysql.com/doc/connector-j/5.1/en/connector-j-reference-type-conversions.html
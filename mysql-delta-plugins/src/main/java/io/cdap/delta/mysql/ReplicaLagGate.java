@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.mysql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Waits for a replica to apply the changes of its source up to the binlog offset a snapshot was taken at.
+ *
+ * Rows read from a replica that did not apply every change before that offset are older than the position the binlog
+ * of the source is read from, so those changes would never be replicated. With GTIDs, the replica caught up once it
+ * executed the GTID set of the offset. Without them, it caught up once it executed the binlog of its source up to the
+ * file and position of the offset, which requires the replica to replicate directly from the source.
+ */
+final class ReplicaLagGate {
+  private static final Logger LOG = LoggerFactory.getLogger(ReplicaLagGate.class);
+  private static final long POLL_INTERVAL_MS = 1000L;
+  private static final long LOG_INTERVAL_MS = 30000L;
+
+  private ReplicaLagGate() {
+  }
+
+  /**
+   * Blocks until the replica caught up to the offset.
+   *
+   * @param connection a connection to the replica
+   * @param offset the binlog offset of the source
+   * @param timeoutMs how long to wait for the replica
+   * @throws SQLException if the replica did not catch up in time
+   */
+  static void await(Connection connection, Map<String, ?> offset, long timeoutMs)
+    throws SQLException, InterruptedException {
+    long startTime = System.currentTimeMillis();
+    long nextLog = startTime;
+    String lag = getLag(connection, offset);
+    while (lag != null) {
+      long now = System.currentTimeMillis();
+      if (now - startTime >= timeoutMs) {
+        throw new SQLException(String.format("Snapshot host did not catch up to the source within %d seconds, %s.",
+                                             timeoutMs / 1000, lag));
+      }
+      if (now >= nextLog) {
+        LOG.info("Waiting for the snapshot host to catch up to the source, {}.", lag);
+        nextLog = now + LOG_INTERVAL_MS;
+      }
+      Thread.sleep(POLL_INTERVAL_MS);
+      lag = getLag(connection, offset);
+    }
+    LOG.info("Snapshot host caught up to the source after {} seconds.",
+             (System.currentTimeMillis() - startTime) / 1000);
+  }
+
+  /**
+   * @return how far the replica is behind the offset, or null if it caught up
+   */
+  @Nullable
+  static String getLag(Connection connection, Map<String, ?> offset) throws SQLException {
+    Object gtids = offset.get(MySqlConstantOffsetBackingStore.GTID_SET);
+    if (gtids != null && !gtids.toString().isEmpty()) {
+      try (PreparedStatement statement = connection.prepareStatement(
+        "SELECT GTID_SUBTRACT(?, @@GLOBAL.gtid_executed)")) {
+        statement.setString(1, gtids.toString());
+        try (ResultSet rs = statement.executeQuery()) {
+          String missing = rs.next() ? rs.getString(1) : null;
+          return missing == null || missing.isEmpty() ? null : "it did not execute the GTIDs " + missing;
+        }
+      }
+    }
+
+    IncrementalSnapshotReader.BinlogPosition target = IncrementalSnapshotReader.BinlogPosition.of(offset);
+    try (Statement statement = connection.createStatement();
+         ResultSet rs = statement.executeQuery("SHOW SLAVE STATUS")) {
+      if (!rs.next()) {
+        throw new SQLException("Snapshot host is not a replica, make sure it replicates from the source.");
+      }
+      // MySQL 8.0.22 renamed the columns of the replication status
+      IncrementalSnapshotReader.BinlogPosition executed = IncrementalSnapshotReader.BinlogPosition.of(
+        rs.getString(getColumn(rs, "Relay_Source_Log_File", "Relay_Master_Log_File")),
+        rs.getLong(getColumn(rs, "Exec_Source_Log_Pos", "Exec_Master_Log_Pos")));
+      return executed.compareTo(target) >= 0 ? null
+        : String.format("it executed the binlog up to %s instead of %s", executed, target);
+    }
+  }
+
+  private static String getColumn(ResultSet rs, String name, String oldName) throws SQLException {
+    ResultSetMetaData metaData = rs.getMetaData();
+    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+      if (name.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+        return name;
+      }
+    }
+    return oldName;
+  }
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.mysql;
+
+import com.github.shyiko.mysql.binlog.event.deserialization.ColumnType;
+import com.github.shyiko.mysql.binlog.event.deserialization.json.JsonFormatter;
+import com.github.shyiko.mysql.binlog.event.deserialization.json.JsonStringFormatter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * A {@link JsonFormatter} that writes the JSON text as UTF-8 straight into a reusable byte buffer, producing
+ * exactly the same output as {@link JsonStringFormatter} without going through a {@link StringBuilder}.
+ *
+ * The buffer grows as needed while a document is written. Calling {@link #reset()} before the next document
+ * keeps it for reuse, unless it grew beyond the configured retained size, in which case it is released so that
+ * one large document does not pin memory for the lifetime of the reader.
+ *
+ * Instances are not thread safe.
+ */
+public class Utf8JsonFormatter implements JsonFormatter {
+
+  static final int INITIAL_CAPACITY = 1024;
+
+  private static final byte[] HEX_CODES = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+  private static final int ESCAPE_NONE = 0;
+  private static final int ESCAPE_GENERIC = -1;
+  private static final int[] ESCAPES = new int[128];
+
+  static {
+    for (int i = 0; i < 32; i++) {
+      ESCAPES[i] = ESCAPE_GENERIC;
+    }
+    ESCAPES['"'] = '"';
+    ESCAPES['\\'] = '\\';
+    ESCAPES['\b'] = 'b';
+    ESCAPES['\t'] = 't';
+    ESCAPES['\f'] = 'f';
+    ESCAPES['\n'] = 'n';
+    ESCAPES['\r'] = 'r';
+  }
+
+  private final int maxRetainedBytes;
+  private byte[] buf;
+  private int length;
+
+  public Utf8JsonFormatter(int maxRetainedBytes) {
+    this.maxRetainedBytes = maxRetainedBytes;
+    this.buf = new byte[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Clears the written content so the formatter can be used for the next document. A buffer that grew beyond the
+   * retained size is dropped in favor of a new small one.
+   */
+  public void reset() {
+    length = 0;
+    if (buf.length > maxRetainedBytes) {
+      buf = new byte[Math.min(INITIAL_CAPACITY, Math.max(maxRetainedBytes, 1))];
+    }
+  }
+
+  /**
+   * @return the number of UTF-8 bytes written since the last {@link #reset()}
+   */
+  public int length() {
+    return length;
+  }
+
+  /**
+   * @return the capacity of the buffer currently held by this formatter
+   */
+  int capacity() {
+    return buf.length;
+  }
+
+  /**
+   * @return the written JSON text decoded as a {@link String}
+   */
+  public String getString() {
+    return new String(buf, 0, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return a copy of the written UTF-8 bytes, sized exactly to the content
+   */
+  public byte[] getBytes() {
+    return Arrays.copyOf(buf, length);
+  }
+
+  /**
+   * @return a copy of the written UTF-8 bytes wrapped in a {@link ByteBuffer}
+   */
+  public ByteBuffer getByteBuffer() {
+    return ByteBuffer.wrap(getBytes());
+  }
+
+  @Override
+  public String toString() {
+    return getString();
+  }
+
+  @Override
+  public void beginObject(int numElements) {
+    append('{');
+  }
+
+  @Override
+  public void beginArray(int numElements) {
+    append('[');
+  }
+
+  @Override
+  public void endObject() {
+    append('}');
+  }
+
+  @Override
+  public void endArray() {
+    append(']');
+  }
+
+  @Override
+  public void name(String name) {
+    append('"');
+    appendString(name);
+    append('"');
+    append(':');
+  }
+
+  @Override
+  public void value(String value) {
+    append('"');
+    appendString(value);
+    append('"');
+  }
+
+  @Override
+  public void value(int value) {
+    appendLong(value);
+  }
+
+  @Override
+  public void value(long value) {
+    appendLong(value);
+  }
+
+  @Override
+  public void value(double value) {
+    // same as JsonStringFormatter, scientific notation is written out in plain form
+    String str = Double.toString(value);
+    if (str.contains("E")) {
+      value(new BigDecimal(value));
+    } else {
+      appendAscii(str);
+    }
+  }
+
+  @Override
+  public void value(BigInteger value) {
+    value(new BigDecimal(value));
+  }
+
+  @Override
+  public void value(BigDecimal value) {
+    appendAscii(value.toPlainString());
+  }
+
+  @Override
+  public void value(boolean value) {
+    append(value ? TRUE : FALSE);
+  }
+
+  @Override
+  public void valueNull() {
+    append(NULL);
+  }
+
+  @Override
+  public void valueYear(int year) {
+    appendLong(year);
+  }
+
+  @Override
+  public void valueDate(int year, int month, int day) {
+    append('"');
+    appendDate(year, month, day);
+    append('"');
+  }
+
+  @Override
+  public void valueDatetime(int year, int month, int day, int hour, int min, int sec, int microSeconds) {
+    append('"');
+    appendDate(year, month, day);
+    append(' ');
+    appendTime(hour, min, sec, microSeconds);
+    append('"');
+  }
+
+  @Override
+  public void valueTime(int hour, int min, int sec, int microSeconds) {
+    append('"');
+    if (hour < 0) {
+      append('-');
+      hour = Math.abs(hour);
+    }
+    appendTime(hour, min, sec, microSeconds);
+    append('"');
+  }
+
+  @Override
+  public void valueTimestamp(long secondsPastEpoch, int microSeconds) {
+    appendLong(secondsPastEpoch);
+    appendSixDigitUnsignedInt(microSeconds, false);
+  }
+
+  @Override
+  public void valueOpaque(ColumnType type, byte[] value) {
+    append('"');
+    append(Base64.getEncoder().encode(value));
+    append('"');
+  }
+
+  @Override
+  public void nextEntry() {
+    append(',');
+  }
+
+  private void appendString(String original) {
+    int len = original.length();
+    for (int i = 0; i < len; i++) {
+      // worst case is four bytes for a surrogate pair, or six for a generic escape of a control character
+      ensureCapacity(6);
+      char c = original.charAt(i);
+      if (c < ESCAPES.length) {
+        int escape = ESCAPES[c];
+        if (escape == ESCAPE_NONE) {
+          buf[length++] = (byte) c;
+        } else if (escape > 0) {
+          append('\\');
+          append((char) escape);
+        } else {
+          unicodeEscape(c);
+        }
+      } else if (c < 0x800) {
+        buf[length++] = (byte) (0xC0 | (c >> 6));
+        buf[length++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(original.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, original.charAt(++i));
+        buf[length++] = (byte) (0xF0 | (codePoint >> 18));
+        buf[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        buf[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        buf[length++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        // unpaired surrogate, encoded the same way String.getBytes(UTF_8) does
+        buf[length++] = '?';
+      } else {
+        buf[length++] = (byte) (0xE0 | (c >> 12));
+        buf[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buf[length++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+  private void unicodeEscape(int charToEscape) {
+    ensureCapacity(6);
+    buf[length++] = '\\';
+    buf[length++] = 'u';
+    buf[length++] = '0';
+    buf[length++] = '0';
+    buf[length++] = HEX_CODES[charToEscape >> 4];
+    buf[length++] = HEX_CODES[charToEscape & 0xF];
+  }
+
+  private void appendTwoDigitUnsignedInt(int value) {
+    if (value < 10) {
+      append('0');
+    }
+    appendLong(value);
+  }
+
+  private void appendFourDigitUnsignedInt(int value) {
+    if (value < 10) {
+      appendAscii("000");
+    } else if (value < 100) {
+      appendAscii("00");
+    } else if (value < 1000) {
+      append('0');
+    }
+    appendLong(value);
+  }
+
+  // mirrors JsonStringFormatter, including that only the zero padding is written when not trimming
+  private void appendSixDigitUnsignedInt(int value, boolean trimTrailingZeros) {
+    if (value < 10) {
+      appendAscii("00000");
+    } else if (value < 100) {
+      appendAscii("0000");
+    } else if (value < 1000) {
+      appendAscii("000");
+    } else if (value < 10000) {
+      appendAscii("00");
+    } else if (value < 100000) {
+      append('0');
+    }
+    if (trimTrailingZeros) {
+      for (int i = 0; i != 6; i++) {
+        if (value % 10 == 0) {
+          value /= 10;
+        }
+      }
+      appendLong(value);
+    }
+  }
+
+  private void appendDate(int year, int month, int day) {
+    if (year < 0) {
+      append('-');
+      year = Math.abs(year);
+    }
+    appendFourDigitUnsignedInt(year);
+    append('-');
+    appendTwoDigitUnsignedInt(month);
+    append('-');
+    appendTwoDigitUnsignedInt(day);
+  }
+
+  private void appendTime(int hour, int min, int sec, int microSeconds) {
+    appendTwoDigitUnsignedInt(hour);
+    append(':');
+    appendTwoDigitUnsignedInt(min);
+    append(':');
+    appendTwoDigitUnsignedInt(sec);
+    if (microSeconds != 0) {
+      append('.');
+      appendSixDigitUnsignedInt(microSeconds, true);
+    }
+  }
+
+  private void appendLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      appendAscii(Long.toString(value));
+      return;
+    }
+    ensureCapacity(20);
+    if (value < 0) {
+      buf[length++] = '-';
+      value = -value;
+    }
+    int start = length;
+    do {
+      buf[length++] = (byte) ('0' + (value % 10));
+      value /= 10;
+    } while (value != 0);
+    // digits were written least significant first
+    for (int i = start, j = length - 1; i < j; i++, j--) {
+      byte tmp = buf[i];
+      buf[i] = buf[j];
+      buf[j] = tmp;
+    }
+  }
+
+  private void appendAscii(String str) {
+    int len = str.length();
+    ensureCapacity(len);
+    for (int i = 0; i < len; i++) {
+      buf[length++] = (byte) str.charAt(i);
+    }
+  }
+
+  private void append(byte[] bytes) {
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buf, length, bytes.length);
+    length += bytes.length;
+  }
+
+  private void append(char c) {
+    ensureCapacity(1);
+    buf[length++] = (byte) c;
+  }
+
+  private void ensureCapacity(int additional) {
+    int required = length + additional;
+    if (required > buf.length) {
+      buf = Arrays.copyOf(buf, Math.max(required, buf.length * 2));
+    }
+  }
+}
@@ -110,6 +110,68 @@ public class MySqlConnectorConfig extends RelationalDatabaseConnectorConfig {
     }
   }
 
+  /**
+   * ===================== This is a diff from the original file ===========================
+   * The set of predefined JsonHandlingMode options or aliases.
+   */
+  public enum JsonHandlingMode implements EnumeratedValue {
+    /**
+     * Represent {@code JSON} values as {@link String} values, same as the original connector.
+     */
+    STRING("string"),
+
+    /**
+     * Represent {@code JSON} values as UTF-8 encoded bytes, which avoids decoding the document into a
+     * {@link String} when the consumer only needs to forward it.
+     */
+    BYTES("bytes");
+
+    private final String value;
+
+    JsonHandlingMode(String value) {
+      this.value = value;
+    }
+
+    @Override
+    public String getValue() {
+      return value;
+    }
+
+    /**
+     * Determine if the supplied value is one of the predefined options.
+     *
+     * @param value the configuration property value; may not be null
+     * @return the matching option, or null if no match is found
+     */
+    public static JsonHandlingMode parse(String value) {
+      if (value == null) {
+        return null;
+      }
+      value = value.trim();
+      for (JsonHandlingMode option : JsonHandlingMode.values()) {
+        if (option.getValue().equalsIgnoreCase(value)) {
+          return option;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Determine if the supplied value is one of the predefined options.
+     *
+     * @param value the configuration property value; may not be null
+     * @param defaultValue the default value; may be null
+     * @return the matching option, or null if no match is found and the non-null default is invalid
+     */
+    public static JsonHandlingMode parse(String value, String defaultValue) {
+      JsonHandlingMode mode = parse(value);
+      if (mode == null && defaultValue != null) {
+        mode = parse(defaultValue);
+      }
+      return mode;
+    }
+  }
+
   /**
    * The set of predefined SnapshotMode options or aliases.
    */
@@ -978,6 +1040,30 @@ public class MySqlConnectorConfig extends RelationalDatabaseConnectorConfig {
         + "'warn' the problematic event and its binlog position will be logged and the event will be skipped;"
         + "'skip' the problematic event will be skipped.");
 
+  /**
+   * ===================== This is a diff from the original file ===========================
+   * Controls how JSON columns are represented and how much decoding scratch space is kept between values.
+   */
+  public static final Field JSON_HANDLING_MODE = Field.create("json.handling.mode")
+    .withDisplayName("JSON Handling")
+    .withEnum(JsonHandlingMode.class, JsonHandlingMode.STRING)
+    .withWidth(Width.SHORT)
+    .withImportance(Importance.LOW)
+    .withDescription("Specify how JSON columns should be represented in change events, including:"
+                       + "'string' (the default) represents values as JSON text; "
+                       + "'bytes' represents values as the UTF-8 encoded JSON text, without building a String.");
+
+  public static final Field JSON_BUFFER_MAX_RETAINED_BYTES = Field.create("json.buffer.max.retained.bytes")
+    .withDisplayName("JSON decoding buffer retained size")
+    .withType(Type.INT)
+    .withWidth(Width.SHORT)
+    .withImportance(Importance.LOW)
+    .withDefault(1024 * 1024)
+    .withValidation(Field::isNonNegativeInteger)
+    .withDescription("The largest JSON decoding buffer, in bytes, that is kept for reuse after a binlog JSON value "
+                       + "has been decoded. Larger documents are still decoded, but their buffer is released "
+                       + "afterwards so a single large document does not pin memory.");
+
   public static final Field ENABLE_TIME_ADJUSTER = Field.create("enable.time.adjuster")
     .withDisplayName("Enable Time Adjuster")
     .withType(Type.BOOLEAN)
@@ -1030,7 +1116,8 @@ public class MySqlConnectorConfig extends RelationalDatabaseConnectorConfig {
                                                    CommonConnectorConfig.TOMBSTONES_ON_DELETE, ENABLE_TIME_ADJUSTER,
                                                    CommonConnectorConfig.SOURCE_STRUCT_MAKER_VERSION,
                                                    CommonConnectorConfig.SKIPPED_OPERATIONS,
-                                                   BINARY_HANDLING_MODE);
+                                                   BINARY_HANDLING_MODE, JSON_HANDLING_MODE,
+                                                   JSON_BUFFER_MAX_RETAINED_BYTES);
 
   /**
    * The set of {@link Field}s that are included in the {@link #configDef() configuration definition}. This includes
@@ -1118,7 +1205,7 @@ public class MySqlConnectorConfig extends RelationalDatabaseConnectorConfig {
                 CommonConnectorConfig.MAX_BATCH_SIZE, CommonConnectorConfig.POLL_INTERVAL_MS,
                 SNAPSHOT_MODE, SNAPSHOT_LOCKING_MODE, SNAPSHOT_NEW_TABLES, TIME_PRECISION_MODE, DECIMAL_HANDLING_MODE,
                 BIGINT_UNSIGNED_HANDLING_MODE, SNAPSHOT_DELAY_MS, SNAPSHOT_FETCH_SIZE, ENABLE_TIME_ADJUSTER,
-                BINARY_HANDLING_MODE);
+                BINARY_HANDLING_MODE, JSON_HANDLING_MODE, JSON_BUFFER_MAX_RETAINED_BYTES);
     return config;
   }
 
@@ -5,6 +5,7 @@
  */
 package io.debezium.connector.mysql;
 
+import io.cdap.delta.plugin.common.ReaderContextRegistry;
 import io.debezium.config.CommonConnectorConfig;
 import io.debezium.config.CommonConnectorConfig.EventProcessingFailureHandlingMode;
 import io.debezium.config.Configuration;
@@ -13,7 +14,6 @@ import io.debezium.config.Field;
 import io.debezium.connector.mysql.MySqlConnectorConfig.SecureConnectionMode;
 import io.debezium.jdbc.JdbcConfiguration;
 import io.debezium.jdbc.JdbcConnection;
-import io.debezium.jdbc.JdbcConnection.ConnectionFactory;
 import io.debezium.relational.history.DatabaseHistory;
 import io.debezium.util.Strings;
 import org.apache.kafka.connect.errors.ConnectException;
@@ -51,12 +51,6 @@ public class MySqlJdbcContext implements AutoCloseable {
     "('character_set_server','collation_server')";
   private static final String SQL_SHOW_SESSION_VARIABLE_SSL_VERSION = "SHOW SESSION STATUS LIKE 'Ssl_version'";
 
-  /**
-   * ===================== This is a diff from the original file ===========================
-   * We intentionally make the 'connectionFactor' a public static variable, so that we can set the value in app source.
-   */
-  public static ConnectionFactory connectionFactory;
-
   protected final Logger logger = LoggerFactory.getLogger(getClass());
   protected final Configuration config;
   protected final JdbcConnection jdbc;
@@ -92,7 +86,10 @@ public class MySqlJdbcContext implements AutoCloseable {
 
     jdbcConfig = jdbcConfigBuilder.build();
     String driverClassName = jdbcConfig.getString(MySqlConnectorConfig.JDBC_DRIVER);
-    this.jdbc = new JdbcConnection(jdbcConfig, connectionFactory);
+    // ===================== This is a diff from the original file ===========================
+    // The connection factory loads the jdbc driver from the driver plugin, it comes from the event reader this
+    // context is created for.
+    this.jdbc = new JdbcConnection(jdbcConfig, ReaderContextRegistry.requireCurrent().getConnectionFactory());
   }
 
   public Configuration config() {
@@ -7,9 +7,13 @@ package io.debezium.connector.mysql;
 
 import com.github.shyiko.mysql.binlog.event.deserialization.AbstractRowsEventDataDeserializer;
 import com.github.shyiko.mysql.binlog.event.deserialization.json.JsonBinary;
+import io.cdap.delta.mysql.Utf8JsonFormatter;
+import io.cdap.delta.plugin.common.ReaderContext;
+import io.cdap.delta.plugin.common.ReaderContextRegistry;
 import io.debezium.DebeziumException;
 import io.debezium.annotation.Immutable;
 import io.debezium.config.CommonConnectorConfig.BinaryHandlingMode;
+import io.debezium.config.Configuration;
 import io.debezium.connector.mysql.antlr.MySqlAntlrDdlParser;
 import io.debezium.data.Json;
 import io.debezium.jdbc.JdbcValueConverters;
@@ -23,6 +27,7 @@ import org.apache.kafka.connect.data.Decimal;
 import org.apache.kafka.connect.data.Field;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
 import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.source.SourceRecord;
 import org.slf4j.Logger;
@@ -98,13 +103,9 @@ public class MySqlValueConverters extends JdbcValueConverters {
    */
   private static final Pattern TIMESTAMP_FIELD_PATTERN = Pattern.compile("([0-9]*)-([0-9]*)-([0-9]*) .*");
 
-  /**
-   * ===================== This is a diff from the original file ===========================
-   * It's a hacky way for us to intentionally pass in the jdbc class loader to load 'com.mysql.cj.CharsetMapping'
-   * class so that we can invoke the 'getJavaEncodingForMysqlCharset' static method. The usage of this class loader
-   * is in 'charsetFor(Column column) ' method from line 341 to 354.
-   */
-  public static ClassLoader jdbcClassLoader;
+  private static final int GEOMETRY_SRID_SIZE = 4;
+  private static final int WKB_POINT = 1;
+  private static final int WKB_POINT_SIZE = 21;
 
   /**
    * A utility method that adjusts <a href="https://dev.mysql.com/doc/refman/5.7/en/two-digit-years.html">ambiguous</a>
@@ -131,6 +132,20 @@ public class MySqlValueConverters extends JdbcValueConverters {
 
   private final ParsingErrorHandler parsingErrorHandler;
 
+  /**
+   * ===================== This is a diff from the original file ===========================
+   * Binlog JSON values are decoded into a per thread UTF-8 buffer rather than through a StringBuilder.
+   */
+  private final MySqlConnectorConfig.JsonHandlingMode jsonMode;
+  private final ThreadLocal<Utf8JsonFormatter> jsonFormatter;
+
+  /**
+   * ===================== This is a diff from the original file ===========================
+   * The jdbc class loader is used to load 'com.mysql.cj.CharsetMapping' so that we can invoke the
+   * 'getJavaEncodingForMysqlCharset' static method, see 'charsetFor(Column column)'.
+   */
+  private final ClassLoader jdbcClassLoader;
+
   /**
    * Create a new instance that always uses UTC for the default time zone when_needed converting values without
    * timezone information to values that require timezones.
@@ -169,6 +184,18 @@ public class MySqlValueConverters extends JdbcValueConverters {
                               TemporalAdjuster adjuster, ParsingErrorHandler parsingErrorHandler) {
     super(decimalMode, temporalPrecisionMode, ZoneOffset.UTC, adjuster, bigIntUnsignedMode, binaryMode);
     this.parsingErrorHandler = parsingErrorHandler;
+    // This is a change from the original file. Debezium's MySqlSchema creates this class without the connector
+    // configuration, so JSON handling and the jdbc class loader come from the event reader that is bound to the
+    // current thread. Defaults are used when there is none.
+    ReaderContext reader = ReaderContextRegistry.current();
+    Configuration config = reader == null ? Configuration.empty() : reader.getConfig();
+    this.jsonMode = MySqlConnectorConfig.JsonHandlingMode.parse(
+      config.getString(MySqlConnectorConfig.JSON_HANDLING_MODE),
+      MySqlConnectorConfig.JSON_HANDLING_MODE.defaultValueAsString());
+    int maxRetainedBytes = config.getInteger(MySqlConnectorConfig.JSON_BUFFER_MAX_RETAINED_BYTES);
+    this.jsonFormatter = ThreadLocal.withInitial(() -> new Utf8JsonFormatter(maxRetainedBytes));
+    this.jdbcClassLoader = reader == null || reader.getDriverClassLoader() == null ?
+      MySqlValueConverters.class.getClassLoader() : reader.getDriverClassLoader();
   }
 
   @Override
@@ -181,6 +208,10 @@ public class MySqlValueConverters extends JdbcValueConverters {
     // Handle a few MySQL-specific types based upon how they are handled by the MySQL binlog client ...
     String typeName = column.typeName().toUpperCase();
     if (matches(typeName, "JSON")) {
+      // This is a change from the original file, JSON can be represented as UTF-8 bytes instead of a string.
+      if (jsonMode == MySqlConnectorConfig.JsonHandlingMode.BYTES) {
+        return SchemaBuilder.bytes().name(Json.LOGICAL_NAME).version(1);
+      }
       return Json.builder();
     }
     if (matches(typeName, "POINT")) {
@@ -249,11 +280,14 @@ public class MySqlValueConverters extends JdbcValueConverters {
       || matches(typeName, "MULTILINESTRING")
       || matches(typeName, "MULTIPOLYGON")
       || isGeometryCollection(typeName)) {
-      return (data -> convertGeometry(column, fieldDefn, data));
+      // This is a change from the original file, the default value is only created for null values.
+      return (data -> data == null ? convertGeometry(column, fieldDefn, null)
+        : convertGeometry(column, fieldDefn, data, null));
     }
     if (matches(typeName, "POINT")) {
       // backwards compatibility
-      return (data -> convertPoint(column, fieldDefn, data));
+      return (data -> data == null ? convertPoint(column, fieldDefn, null)
+        : convertPoint(column, fieldDefn, data, null));
     }
     if (matches(typeName, "YEAR")) {
       return (data) -> convertYearToInt(column, fieldDefn, data);
@@ -407,25 +441,33 @@ public class MySqlValueConverters extends JdbcValueConverters {
    * @throws IllegalArgumentException if the value could not be converted but the column does not allow nulls
    */
   protected Object convertJson(Column column, Field fieldDefn, Object data) {
-    return convertValue(column, fieldDefn, data, "{}", (r) -> {
+    boolean asBytes = jsonMode == MySqlConnectorConfig.JsonHandlingMode.BYTES;
+    Object emptyJson = asBytes ? ByteBuffer.wrap("{}".getBytes(StandardCharsets.UTF_8)) : "{}";
+    return convertValue(column, fieldDefn, data, emptyJson, (r) -> {
       if (data instanceof byte[]) {
         // The BinlogReader sees these JSON values as binary encoded, so we use the binlog client library's utility
-        // to parse MySQL's internal binary representation into a JSON string, using the standard formatter.
+        // to parse MySQL's internal binary representation into JSON text.
 
         if (((byte[]) data).length == 0) {
-          r.deliver(column.isOptional() ? null : "{}");
+          r.deliver(column.isOptional() ? null : emptyJson);
         } else {
+          // This is a change from the original file, the JSON text is written as UTF-8 into a reused buffer
+          // instead of going through JsonBinary.parseAsString.
+          Utf8JsonFormatter formatter = jsonFormatter.get();
           try {
-            r.deliver(JsonBinary.parseAsString((byte[]) data));
+            JsonBinary.parse((byte[]) data, formatter);
+            r.deliver(asBytes ? formatter.getByteBuffer() : formatter.getString());
           } catch (IOException e) {
             parsingErrorHandler.error("Failed to parse and read a JSON value on '" + column + "' value " +
                                         Arrays.toString((byte[]) data), e);
-            r.deliver(column.isOptional() ? null : "{}");
+            r.deliver(column.isOptional() ? null : emptyJson);
+          } finally {
+            formatter.reset();
           }
         }
       } else if (data instanceof String) {
         // The SnapshotReader sees JSON values as UTF-8 encoded strings.
-        r.deliver(data);
+        r.deliver(asBytes ? ByteBuffer.wrap(((String) data).getBytes(StandardCharsets.UTF_8)) : data);
       }
     });
   }
@@ -618,20 +660,31 @@ public class MySqlValueConverters extends JdbcValueConverters {
    * @throws IllegalArgumentException if the value could not be converted but the column does not allow nulls
    */
   protected Object convertPoint(Column column, Field fieldDefn, Object data) {
-    final MySqlGeometry empty = MySqlGeometry.createEmpty();
-    return convertValue(column, fieldDefn, data,
-                        io.debezium.data.geometry.Geometry.createValue(fieldDefn.schema(), empty.getWkb(),
-                                                                       empty.getSrid()), (r) -> {
+    return convertPoint(column, fieldDefn, data, createEmptyGeometry(fieldDefn.schema()));
+  }
+
+  /**
+   * ===================== This is a diff from the original file ===========================
+   * Same as {@link #convertPoint(Column, Field, Object)}, but with the given default value, and reads the SRID,
+   * WKB and coordinates straight from the binlog bytes instead of copying them through {@link MySqlGeometry}.
+   */
+  private Object convertPoint(Column column, Field fieldDefn, Object data, Struct empty) {
+    return convertValue(column, fieldDefn, data, empty, (r) -> {
       if (data instanceof byte[]) {
-        // The binlog utility sends a byte array for any Geometry type, we will use our own binaryParse to parse the
-        // byte to WKB, hence to the suitable class
-        MySqlGeometry mySqlGeometry = MySqlGeometry.fromBytes((byte[]) data);
-        if (mySqlGeometry.isPoint()) {
-          r.deliver(io.debezium.data.geometry.Point.createValue(fieldDefn.schema(), mySqlGeometry.getWkb(),
-                                                                mySqlGeometry.getSrid()));
-        } else {
+        byte[] bytes = (byte[]) data;
+        if (bytes.length != GEOMETRY_SRID_SIZE + WKB_POINT_SIZE) {
           throw new ConnectException("Failed to parse and read a value of type POINT on " + column);
         }
+        ByteBuffer reader = ByteBuffer.wrap(bytes);
+        reader.order(bytes[GEOMETRY_SRID_SIZE] != 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int geomType = reader.getInt(GEOMETRY_SRID_SIZE + 1);
+        if (geomType != WKB_POINT) {
+          throw new IllegalArgumentException(String.format("Invalid WKB for 2D Point (wrong type %d)", geomType));
+        }
+        Struct point = createGeometry(fieldDefn.schema(), bytes);
+        point.put(io.debezium.data.geometry.Point.X_FIELD, reader.getDouble(GEOMETRY_SRID_SIZE + 5));
+        point.put(io.debezium.data.geometry.Point.Y_FIELD, reader.getDouble(GEOMETRY_SRID_SIZE + 13));
+        r.deliver(point);
       }
     });
   }
@@ -647,31 +700,58 @@ public class MySqlValueConverters extends JdbcValueConverters {
    * @throws IllegalArgumentException if the value could not be converted but the column does not allow nulls
    */
   protected Object convertGeometry(Column column, Field fieldDefn, Object data) {
-    final MySqlGeometry empty = MySqlGeometry.createEmpty();
-    return convertValue(column, fieldDefn, data,
-                        io.debezium.data.geometry.Geometry.createValue(fieldDefn.schema(), empty.getWkb(),
-                                                                       empty.getSrid()), (r) -> {
+    return convertGeometry(column, fieldDefn, data, createEmptyGeometry(fieldDefn.schema()));
+  }
+
+  /**
+   * ===================== This is a diff from the original file ===========================
+   * Same as {@link #convertGeometry(Column, Field, Object)}, but with the given default value, and reads the WKB
+   * from the binlog bytes instead of copying it through {@link MySqlGeometry}.
+   */
+  private Object convertGeometry(Column column, Field fieldDefn, Object data, Struct empty) {
+    return convertValue(column, fieldDefn, data, empty, (r) -> {
       if (data instanceof byte[]) {
-        // The binlog utility sends a byte array for any Geometry type, we will use our own binaryParse to parse the
-        // byte to WKB, hence to the suitable class
-        if (data instanceof byte[]) {
-          // The binlog utility sends a byte array for any Geometry type, we will use our own binaryParse to parse the
-          // byte to WKB, hence to the suitable class
-          MySqlGeometry mySqlGeometry = MySqlGeometry.fromBytes((byte[]) data);
-          r.deliver(io.debezium.data.geometry.Geometry.createValue(fieldDefn.schema(), mySqlGeometry.getWkb(),
-                                                                   mySqlGeometry.getSrid()));
-        }
+        // The binlog utility sends a byte array for any Geometry type, the first 4 bytes are the SRID and the
+        // rest is the WKB
+        r.deliver(createGeometry(fieldDefn.schema(), (byte[]) data));
       }
     });
   }
 
+  /**
+   * ===================== This is a diff from the original file ===========================
+   * Creates the value used for a null geometry in a non-nullable column.
+   */
+  private static Struct createEmptyGeometry(Schema schema) {
+    MySqlGeometry empty = MySqlGeometry.createEmpty();
+    return io.debezium.data.geometry.Geometry.createValue(schema, empty.getWkb(), empty.getSrid());
+  }
+
+  /**
+   * ===================== This is a diff from the original file ===========================
+   * Creates a geometry value from MySQL's internal geometry format: a little endian SRID followed by the WKB.
+   * The WKB is copied once into its own array, the same value {@link io.debezium.data.geometry.Geometry} creates.
+   */
+  private static Struct createGeometry(Schema schema, byte[] mysqlBytes) {
+    if (mysqlBytes.length < GEOMETRY_SRID_SIZE) {
+      throw new IllegalArgumentException("Invalid MySQL geometry of length " + mysqlBytes.length);
+    }
+    int srid = ByteBuffer.wrap(mysqlBytes).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    byte[] wkb = Arrays.copyOfRange(mysqlBytes, GEOMETRY_SRID_SIZE, mysqlBytes.length);
+    Struct result = new Struct(schema);
+    result.put(io.debezium.data.geometry.Geometry.WKB_FIELD, wkb);
+    if (srid != 0) {
+      result.put(io.debezium.data.geometry.Geometry.SRID_FIELD, srid);
+    }
+    return result;
+  }
+
   @Override
   protected ByteBuffer toByteBuffer(Column column, byte[] data) {
     // DBZ-254 right-pad fixed-length binary column values with 0x00 (zero byte)
     if (column.jdbcType() == Types.BINARY && data.length < column.length()) {
       data = Arrays.copyOf(data, column.length());
     }
-
     return super.toByteBuffer(column, data);
   }
 
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.mysql;
+
+import io.debezium.relational.Column;
+import io.debezium.relational.Table;
+import io.debezium.relational.TableId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link ChunkReader}.
+ */
+public class ChunkReaderTest {
+
+  @Test
+  public void testRowsOfTablesWithoutKeyAreStreamed() throws Exception {
+    Table table = Table.editor()
+      .tableId(new TableId("db", null, "log"))
+      .addColumns(Column.editor().name("message").jdbcType(Types.VARCHAR).type("VARCHAR").create(),
+                  Column.editor().name("level").jdbcType(Types.INTEGER).type("INT").create())
+      .create();
+    ResultSet rs = ResultSets.of(Arrays.asList(new Object[] { "started", 1 }, new Object[] { "stopped", 2 }));
+    Statement statement = Mockito.mock(Statement.class);
+    Mockito.when(statement.executeQuery("SELECT `message`, `level` FROM `db`.`log`")).thenReturn(rs);
+    Connection connection = Mockito.mock(Connection.class);
+    Mockito.when(connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY))
+      .thenReturn(statement);
+
+    List<Object[]> rows = new ArrayList<>();
+    long rowCount = ChunkReader.streamRows(connection, new ChunkSplitter(connection, table, 10), table, rows::add);
+    Assert.assertEquals(2, rowCount);
+    Assert.assertArrayEquals(new Object[] { "started", 1 }, rows.get(0));
+    Assert.assertArrayEquals(new Object[] { "stopped", 2 }, rows.get(1));
+    // the driver streams the rows instead of reading all of them first
+    Mockito.verify(statement).setFetchSize(Integer.MIN_VALUE);
+    Mockito.verify(rs).close();
+  }
+}
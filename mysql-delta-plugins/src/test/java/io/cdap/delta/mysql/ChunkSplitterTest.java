@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.mysql;
+
+import io.debezium.relational.Column;
+import io.debezium.relational.Table;
+import io.debezium.relational.TableId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link ChunkSplitter}.
+ */
+public class ChunkSplitterTest {
+  private static final TableId TABLE_ID = new TableId("db", null, "t");
+
+  @Test
+  public void testStep() {
+    Assert.assertEquals(1000, ChunkSplitter.getStep(1000000, 1000000, 1000));
+    // estimates can be lower than the actual number of rows
+    Assert.assertEquals(1000, ChunkSplitter.getStep(1000000, 2000000, 1000));
+    Assert.assertEquals(2500, ChunkSplitter.getStep(1000000, 400000, 1000));
+    Assert.assertEquals(0, ChunkSplitter.getStep(1000000, 1000, 1000));
+  }
+
+  @Test
+  public void testQueries() throws Exception {
+    Table table = Table.editor()
+      .tableId(TABLE_ID)
+      .addColumns(column("a", Types.VARCHAR), column("b", Types.INTEGER), column("c`d", Types.VARCHAR))
+      .setPrimaryKeyNames("a", "b")
+      .create();
+    ChunkSplitter splitter = new ChunkSplitter(null, table, 10);
+    Object[] start = new Object[] { "x", 1 };
+    Object[] end = new Object[] { "y", 2 };
+    Assert.assertEquals("SELECT `a`, `b`, `c``d` FROM `db`.`t`",
+                        splitter.getQuery(new ChunkSplitter.Chunk(TABLE_ID, null, null)));
+    Assert.assertEquals("SELECT `a`, `b`, `c``d` FROM `db`.`t` WHERE (`a`, `b`) >= (?, ?)",
+                        splitter.getQuery(new ChunkSplitter.Chunk(TABLE_ID, start, null)));
+    Assert.assertEquals("SELECT `a`, `b`, `c``d` FROM `db`.`t` WHERE (`a`, `b`) < (?, ?)",
+                        splitter.getQuery(new ChunkSplitter.Chunk(TABLE_ID, null, end)));
+    Assert.assertEquals("SELECT `a`, `b`, `c``d` FROM `db`.`t` WHERE (`a`, `b`) >= (?, ?) AND (`a`, `b`) < (?, ?)",
+                        splitter.getQuery(new ChunkSplitter.Chunk(TABLE_ID, start, end)));
+
+    Map<Integer, Object> parameters = new HashMap<>();
+    PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+    Mockito.doAnswer(invocation -> parameters.put(invocation.getArgument(0), invocation.getArgument(1)))
+      .when(statement).setObject(Mockito.anyInt(), Mockito.any());
+    ChunkSplitter.setParameters(statement, new ChunkSplitter.Chunk(TABLE_ID, start, end));
+    Assert.assertEquals(Arrays.asList("x", 1, "y", 2), new ArrayList<>(parameters.values()));
+  }
+
+  @Test
+  public void testIntegerKeysAreSplitIntoRanges() throws Exception {
+    Table table = Table.editor()
+      .tableId(TABLE_ID)
+      .addColumns(column("id", Types.BIGINT), column("name", Types.VARCHAR))
+      .setPrimaryKeyNames("id")
+      .create();
+    List<Object> keys = new ArrayList<>();
+    for (long i = 1; i <= 25; i++) {
+      keys.add(i);
+    }
+    ChunkSplitter splitter = new ChunkSplitter(database(keys, 25), table, 10);
+    assertChunks(Arrays.asList(null, 11L, 21L, null), splitter, null);
+    // resumes at a key
+    assertChunks(Arrays.asList(new BigDecimal(21), null), splitter, new Object[] { new BigDecimal(21) });
+
+    // keys that are too sparse are scanned
+    keys.add(1000L);
+    splitter = new ChunkSplitter(database(keys, 26), table, 10);
+    assertChunks(Arrays.asList(null, 11L, 21L, null), splitter, null);
+
+    // an empty table is one chunk
+    splitter = new ChunkSplitter(database(new ArrayList<>(), 0), table, 10);
+    assertChunks(Arrays.asList(null, null), splitter, null);
+  }
+
+  @Test
+  public void testOtherKeysAreScanned() throws Exception {
+    Table table = Table.editor()
+      .tableId(TABLE_ID)
+      .addColumns(column("id", Types.VARCHAR))
+      .setPrimaryKeyNames("id")
+      .create();
+    List<Object> keys = new ArrayList<>();
+    for (char c = 'a'; c <= 'z'; c++) {
+      keys.add(String.valueOf(c));
+    }
+    ChunkSplitter splitter = new ChunkSplitter(database(keys, 26), table, 10);
+    assertChunks(Arrays.asList(null, "k", "u", null), splitter, null);
+    assertChunks(Arrays.asList("m", "w", null), splitter, new Object[] { "m" });
+
+    // tables without a primary key are one chunk
+    table = Table.editor().tableId(TABLE_ID).addColumns(column("id", Types.VARCHAR)).create();
+    splitter = new ChunkSplitter(database(keys, 26), table, 10);
+    assertChunks(Arrays.asList(null, null), splitter, null);
+  }
+
+  /**
+   * Checks that the chunks are consecutive and have the given boundaries, where the first is the start of the first
+   * chunk and the others the ends of each chunk.
+   */
+  private static void assertChunks(List<Object> boundaries, ChunkSplitter splitter, Object[] start) throws Exception {
+    List<Object> actual = new ArrayList<>();
+    ChunkSplitter.Chunk chunk = splitter.first(start);
+    actual.add(chunk.getStart() == null ? null : chunk.getStart()[0]);
+    while (chunk != null) {
+      actual.add(chunk.getEnd() == null ? null : chunk.getEnd()[0]);
+      ChunkSplitter.Chunk next = splitter.next(chunk);
+      if (next != null) {
+        Assert.assertSame(chunk.getEnd(), next.getStart());
+      }
+      chunk = next;
+    }
+    Assert.assertEquals(boundaries, actual);
+  }
+
+  private static Column column(String name, int jdbcType) {
+    return Column.editor().name(name).jdbcType(jdbcType).type(jdbcType == Types.BIGINT ? "BIGINT" : "VARCHAR")
+      .create();
+  }
+
+  /**
+   * @return a connection to a database with a table that has the given sorted keys
+   */
+  @SuppressWarnings("unchecked")
+  private static Connection database(List<Object> keys, long estimatedRows) throws SQLException {
+    Connection connection = Mockito.mock(Connection.class);
+    Mockito.when(connection.prepareStatement(Mockito.anyString())).thenAnswer(prepare -> {
+      String query = prepare.getArgument(0);
+      Map<Integer, Object> parameters = new HashMap<>();
+      PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+      Mockito.doAnswer(invocation -> parameters.put(invocation.getArgument(0), invocation.getArgument(1)))
+        .when(statement).setObject(Mockito.anyInt(), Mockito.any());
+      Mockito.doAnswer(invocation -> parameters.put(invocation.getArgument(0), invocation.getArgument(1)))
+        .when(statement).setString(Mockito.anyInt(), Mockito.any());
+      Mockito.when(statement.executeQuery()).thenAnswer(execute -> {
+        List<Object[]> results = new ArrayList<>();
+        if (query.startsWith("SELECT MIN")) {
+          if (!keys.isEmpty()) {
+            results.add(new Object[] { keys.get(0), keys.get(keys.size() - 1) });
+          }
+        } else if (query.startsWith("SELECT TABLE_ROWS")) {
+          results.add(new Object[] { estimatedRows });
+        } else {
+          int offset = Integer.parseInt(query.substring(query.lastIndexOf(' ') + 1));
+          int index = 0;
+          if (parameters.containsKey(1)) {
+            Comparable<Object> start = (Comparable<Object>) parameters.get(1);
+            while (index < keys.size() && start.compareTo(keys.get(index)) > 0) {
+              index++;
+            }
+          }
+          if (index + offset < keys.size()) {
+            results.add(new Object[] { keys.get(index + offset) });
+          }
+        }
+        return ResultSets.of(results);
+      });
+      return statement;
+    });
+    return connection;
+  }
+}
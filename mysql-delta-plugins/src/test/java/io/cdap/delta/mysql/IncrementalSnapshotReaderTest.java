@@ -0,0 +1,377 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.mysql;
+
+import io.cdap.delta.plugin.common.SnapshotSignal;
+import io.debezium.config.CommonConnectorConfig;
+import io.debezium.config.Configuration;
+import io.debezium.connector.mysql.MySqlConnectorConfig;
+import io.debezium.connector.mysql.MySqlValueConverters;
+import io.debezium.jdbc.JdbcConnection;
+import io.debezium.jdbc.JdbcValueConverters;
+import io.debezium.jdbc.TemporalPrecisionMode;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Tests for {@link IncrementalSnapshotReader}.
+ */
+public class IncrementalSnapshotReaderTest {
+  private static final String BINLOG = "mysql-bin.000003";
+  private static final Schema KEY_SCHEMA = SchemaBuilder.struct().field("id", Schema.INT32_SCHEMA).build();
+  private static final Schema SOURCE_SCHEMA = SchemaBuilder.struct()
+    .field("db", Schema.STRING_SCHEMA)
+    .field("table", Schema.OPTIONAL_STRING_SCHEMA)
+    .field(MySqlConstantOffsetBackingStore.FILE, Schema.STRING_SCHEMA)
+    .field(MySqlConstantOffsetBackingStore.POS, Schema.INT64_SCHEMA)
+    .build();
+  private static final Schema SIGNAL_SCHEMA = SchemaBuilder.struct().optional()
+    .field("id", Schema.STRING_SCHEMA)
+    .field(SnapshotSignal.TYPE, Schema.STRING_SCHEMA)
+    .field(SnapshotSignal.DATA, Schema.STRING_SCHEMA)
+    .build();
+  private static final Schema CHANGE_SCHEMA = SchemaBuilder.struct()
+    .field("source", SOURCE_SCHEMA)
+    .field("op", Schema.STRING_SCHEMA)
+    .field("after", SIGNAL_SCHEMA)
+    .build();
+  private static final Schema DDL_SCHEMA = SchemaBuilder.struct()
+    .field("source", SOURCE_SCHEMA)
+    .field("ddl", Schema.STRING_SCHEMA)
+    .build();
+
+  @Test
+  public void testChangesDuringChunkReadReplaceItsRows() throws Exception {
+    AtomicLong binlogPosition = new AtomicLong(200);
+    List<Integer> selects = new ArrayList<>();
+    IncrementalSnapshotReader reader = createReader(binlogPosition, selects, Collections.emptyMap(), false);
+    List<SourceRecord> emitted = new ArrayList<>();
+
+    // the chunk is read at position 100 while the server is at 200 already, so its rows wait for the binlog
+    reader.heartbeat(offset(100), emitted::add);
+    Assert.assertTrue(emitted.isEmpty());
+    Assert.assertEquals(1, selects.size());
+
+    // a change made before the chunk was read replaces the row in the chunk
+    SourceRecord update = change("t", 2, 150);
+    reader.beforeChange(update, emitted::add);
+    emitted.add(update);
+    reader.afterChange(update, emitted::add);
+    // a change to another table doesn't
+    SourceRecord otherUpdate = change("other", 3, 160);
+    reader.beforeChange(otherUpdate, emitted::add);
+    emitted.add(otherUpdate);
+    reader.afterChange(otherUpdate, emitted::add);
+    Assert.assertEquals(Arrays.asList(update, otherUpdate), emitted);
+
+    // the rest of the rows are emitted before the first change after the high watermark
+    SourceRecord insert = change("t", 4, 200);
+    reader.beforeChange(insert, emitted::add);
+    Assert.assertEquals(Arrays.asList(2, 3, 1, 3), getIds(emitted));
+    Map<String, ?> rowOffset = emitted.get(2).sourceOffset();
+    Assert.assertEquals("t", rowOffset.get(ChunkedSnapshotReader.TABLE));
+    Assert.assertEquals("", rowOffset.get(ChunkedSnapshotReader.START));
+    Assert.assertEquals(160L, rowOffset.get(MySqlConstantOffsetBackingStore.POS));
+    Assert.assertFalse(reader.isPending());
+
+    Map<String, String> offset = new HashMap<>();
+    reader.addProgress(offset);
+    Assert.assertTrue(offset.isEmpty());
+  }
+
+  @Test
+  public void testIdleChunksAreEmittedRightAway() throws Exception {
+    AtomicLong binlogPosition = new AtomicLong(100);
+    List<Integer> selects = new ArrayList<>();
+    IncrementalSnapshotReader reader = createReader(binlogPosition, selects, Collections.emptyMap(), false);
+    List<SourceRecord> emitted = new ArrayList<>();
+
+    reader.heartbeat(offset(100), emitted::add);
+    Assert.assertEquals(Arrays.asList(1, 2, 3), getIds(emitted));
+    Assert.assertFalse(reader.isPending());
+  }
+
+  @Test
+  public void testSignalTableIsNotRead() throws Exception {
+    AtomicLong binlogPosition = new AtomicLong(100);
+    List<Integer> selects = new ArrayList<>();
+    // all tables of the database are read, except the one signals are inserted into
+    IncrementalSnapshotReader reader = createReader(binlogPosition, selects, Collections.emptyList(),
+                                                    Collections.emptyMap(), false, true);
+    List<SourceRecord> emitted = new ArrayList<>();
+
+    reader.heartbeat(offset(100), emitted::add);
+    Assert.assertEquals(Arrays.asList(1, 2, 3), getIds(emitted));
+    Assert.assertEquals(1, selects.size());
+    for (SourceRecord record : emitted) {
+      Assert.assertEquals("t", record.sourceOffset().get(ChunkedSnapshotReader.TABLE));
+    }
+    Assert.assertFalse(reader.isPending());
+  }
+
+  @Test
+  public void testTablesWithoutKeyAreSkipped() throws Exception {
+    AtomicLong binlogPosition = new AtomicLong(200);
+    List<Integer> selects = new ArrayList<>();
+    IncrementalSnapshotReader reader = createReader(binlogPosition, selects, Arrays.asList("log", "t"),
+                                                    Collections.emptyMap(), false, true);
+    List<SourceRecord> emitted = new ArrayList<>();
+
+    // the rows of log can't be matched to changes, so only the chunk of t is read
+    reader.heartbeat(offset(100), emitted::add);
+    Assert.assertEquals(Collections.singletonList(1), selects);
+    SourceRecord insert = change("log", 1, 150);
+    reader.beforeChange(insert, emitted::add);
+    emitted.add(insert);
+    reader.afterChange(insert, emitted::add);
+    Assert.assertEquals(Collections.singletonList(1), selects);
+
+    reader.heartbeat(offset(200), emitted::add);
+    Assert.assertEquals(Arrays.asList(1, 1, 2, 3), getIds(emitted));
+    Assert.assertFalse(reader.isPending());
+  }
+
+  @Test
+  public void testSchemaChangeReadsChunkAgain() throws Exception {
+    AtomicLong binlogPosition = new AtomicLong(200);
+    List<Integer> selects = new ArrayList<>();
+    IncrementalSnapshotReader reader = createReader(binlogPosition, selects, Collections.emptyMap(), false);
+    List<SourceRecord> emitted = new ArrayList<>();
+
+    reader.heartbeat(offset(100), emitted::add);
+    SourceRecord alter = new SourceRecord(Collections.emptyMap(), offset(150), "dummy", null, null, DDL_SCHEMA,
+                                          new Struct(DDL_SCHEMA).put("source", source("t", 150))
+                                            .put("ddl", "ALTER TABLE t ADD COLUMN c INT"));
+    reader.beforeChange(alter, emitted::add);
+    reader.afterChange(alter, emitted::add);
+    Assert.assertTrue(emitted.isEmpty());
+    Assert.assertEquals(2, selects.size());
+  }
+
+  @Test
+  public void testPausedAndResumed() throws Exception {
+    AtomicLong binlogPosition = new AtomicLong(100);
+    List<Integer> selects = new ArrayList<>();
+    Map<String, String> state = new HashMap<>();
+    state.put(ChunkedSnapshotReader.TABLE, "t");
+    state.put(ChunkedSnapshotReader.START, "[2]");
+    IncrementalSnapshotReader reader = createReader(binlogPosition, selects, state, true);
+    List<SourceRecord> emitted = new ArrayList<>();
+
+    reader.heartbeat(offset(100), emitted::add);
+    Assert.assertTrue(emitted.isEmpty());
+    Map<String, String> offset = new HashMap<>();
+    reader.addProgress(offset);
+    Assert.assertEquals(state, offset);
+
+    reader = createReader(binlogPosition, selects, state, false);
+    reader.heartbeat(offset(100), emitted::add);
+    Assert.assertEquals(Arrays.asList(2, 3), getIds(emitted));
+  }
+
+  @Test
+  public void testSignalReadsTablesAgain() throws Exception {
+    AtomicLong binlogPosition = new AtomicLong(100);
+    List<Integer> selects = new ArrayList<>();
+    IncrementalSnapshotReader reader = createReader(binlogPosition, selects, Collections.emptyMap(), false, false);
+    List<SourceRecord> emitted = new ArrayList<>();
+    Assert.assertFalse(reader.isPending());
+
+    // changes to other tables are not signals, and signals for tables that are not replicated are ignored
+    Assert.assertFalse(reader.signal(change("t", 1, 100)));
+    Assert.assertTrue(reader.signal(signal("other", 100)));
+    Assert.assertFalse(reader.isPending());
+
+    SourceRecord signal = signal("t", 100);
+    Assert.assertTrue(reader.signal(signal));
+    Assert.assertTrue(reader.isPending());
+    Map<String, String> offset = new HashMap<>();
+    reader.addProgress(offset);
+    Assert.assertEquals("", offset.get(ChunkedSnapshotReader.TABLE));
+    Assert.assertEquals("t", offset.get(IncrementalSnapshotReader.TABLES));
+
+    // the table is dropped and created again before its rows are emitted
+    reader.afterChange(signal, emitted::add);
+    reader.heartbeat(offset(100), emitted::add);
+    Assert.assertEquals(4, emitted.size());
+    String ddl = ((Struct) emitted.get(0).value()).getString("ddl");
+    Assert.assertTrue(ddl.contains("DROP TABLE IF EXISTS `db`.`t`"));
+    Assert.assertTrue(ddl.contains("CREATE TABLE `t`"));
+    Assert.assertEquals(Arrays.asList(1, 2, 3), getIds(emitted.subList(1, 4)));
+    Assert.assertFalse(reader.isPending());
+
+    // a restarted reader resumes at the chunk of the table it was in, without dropping the table again
+    Map<String, String> state = new HashMap<>();
+    state.put(ChunkedSnapshotReader.TABLE, "t");
+    state.put(ChunkedSnapshotReader.START, "[2]");
+    state.put(IncrementalSnapshotReader.TABLES, "");
+    Assert.assertTrue(IncrementalSnapshotReader.isSignalled(state));
+    reader = createReader(binlogPosition, selects, state, false, false);
+    emitted.clear();
+    reader.heartbeat(offset(100), emitted::add);
+    Assert.assertEquals(Arrays.asList(2, 3), getIds(emitted));
+  }
+
+  @Test
+  public void testBinlogPositions() {
+    IncrementalSnapshotReader.BinlogPosition position = IncrementalSnapshotReader.BinlogPosition.of(BINLOG, 100);
+    Assert.assertTrue(position.compareTo(IncrementalSnapshotReader.BinlogPosition.of(BINLOG, 101)) < 0);
+    Assert.assertEquals(0, position.compareTo(IncrementalSnapshotReader.BinlogPosition.of(BINLOG, 100)));
+    Assert.assertTrue(position.compareTo(IncrementalSnapshotReader.BinlogPosition.of("mysql-bin.000002", 500)) > 0);
+    Assert.assertTrue(position.compareTo(IncrementalSnapshotReader.BinlogPosition.of("mysql-bin.000010", 4)) < 0);
+  }
+
+  private static IncrementalSnapshotReader createReader(AtomicLong binlogPosition, List<Integer> selects,
+                                                        Map<String, String> state, boolean paused)
+    throws SQLException {
+    return createReader(binlogPosition, selects, state, paused, true);
+  }
+
+  private static IncrementalSnapshotReader createReader(AtomicLong binlogPosition, List<Integer> selects,
+                                                        Map<String, String> state, boolean paused,
+                                                        boolean readExisting) throws SQLException {
+    return createReader(binlogPosition, selects, Collections.singletonList("t"), state, paused, readExisting);
+  }
+
+  private static IncrementalSnapshotReader createReader(AtomicLong binlogPosition, List<Integer> selects,
+                                                        List<String> tables, Map<String, String> state,
+                                                        boolean paused, boolean readExisting) throws SQLException {
+    Configuration configuration = Configuration.create()
+      .with("database.server.name", "dummy")
+      .with(IncrementalSnapshotReader.PAUSED, paused)
+      .build();
+    MySqlValueConverters converters = new MySqlValueConverters(JdbcValueConverters.DecimalMode.PRECISE,
+                                                               TemporalPrecisionMode.ADAPTIVE_TIME_MICROSECONDS,
+                                                               JdbcValueConverters.BigIntUnsignedMode.LONG,
+                                                               CommonConnectorConfig.BinaryHandlingMode.BYTES);
+    Connection connection = database(binlogPosition, selects);
+    return new IncrementalSnapshotReader("db", tables, new MySqlConnectorConfig(configuration),
+                                         converters, () -> new JdbcConnection(configuration, c -> connection), state,
+                                         readExisting, "signals");
+  }
+
+  private static List<Integer> getIds(List<SourceRecord> records) {
+    return records.stream()
+      .map(r -> ((Struct) r.key()).getInt32("id"))
+      .collect(Collectors.toList());
+  }
+
+  private static Map<String, Object> offset(long position) {
+    Map<String, Object> offset = new HashMap<>();
+    offset.put(MySqlConstantOffsetBackingStore.FILE, BINLOG);
+    offset.put(MySqlConstantOffsetBackingStore.POS, position);
+    return offset;
+  }
+
+  private static Struct source(String table, long position) {
+    return new Struct(SOURCE_SCHEMA)
+      .put("db", "db")
+      .put("table", table)
+      .put(MySqlConstantOffsetBackingStore.FILE, BINLOG)
+      .put(MySqlConstantOffsetBackingStore.POS, position);
+  }
+
+  private static SourceRecord change(String table, int id, long position) {
+    return new SourceRecord(Collections.emptyMap(), offset(position), "dummy.db." + table,
+                            KEY_SCHEMA, new Struct(KEY_SCHEMA).put("id", id),
+                            CHANGE_SCHEMA,
+                            new Struct(CHANGE_SCHEMA).put("source", source(table, position)).put("op", "u"));
+  }
+
+  private static SourceRecord signal(String tables, long position) {
+    Struct after = new Struct(SIGNAL_SCHEMA)
+      .put("id", "1")
+      .put(SnapshotSignal.TYPE, SnapshotSignal.EXECUTE_SNAPSHOT)
+      .put(SnapshotSignal.DATA, tables);
+    return new SourceRecord(Collections.emptyMap(), offset(position), "dummy.db.signals", null, null, CHANGE_SCHEMA,
+                            new Struct(CHANGE_SCHEMA).put("source", source("signals", position)).put("op", "c")
+                              .put("after", after));
+  }
+
+  /**
+   * @return a connection to a database with a table t that has the ids 1 to 3, a table log without a primary key and
+   *   a signal table, and whose binlog is at the position
+   */
+  private static Connection database(AtomicLong binlogPosition, List<Integer> selects) throws SQLException {
+    Statement statement = Mockito.mock(Statement.class);
+    Mockito.when(statement.executeQuery(Mockito.anyString())).thenAnswer(invocation -> {
+      String query = invocation.getArgument(0);
+      if (query.equals("SHOW CREATE TABLE `db`.`log`")) {
+        return ResultSets.of(Collections.singletonList(new Object[] {
+          "log", "CREATE TABLE `log` (`message` varchar(10))" }));
+      }
+      if (query.startsWith("SHOW CREATE TABLE")) {
+        return ResultSets.of(Collections.singletonList(new Object[] {
+          "t", "CREATE TABLE `t` (`id` int NOT NULL, `name` varchar(10), PRIMARY KEY (`id`))" }));
+      }
+      if (query.startsWith("SHOW FULL TABLES")) {
+        return ResultSets.of(Arrays.asList(new Object[] { "signals" }, new Object[] { "t" }));
+      }
+      if (query.equals("SHOW MASTER STATUS")) {
+        return ResultSets.of(Collections.singletonList(new Object[] { BINLOG, binlogPosition.get() }));
+      }
+      throw new IllegalArgumentException("Unexpected query " + query);
+    });
+
+    Connection connection = Mockito.mock(Connection.class);
+    Mockito.when(connection.createStatement()).thenReturn(statement);
+    Mockito.when(connection.prepareStatement(Mockito.anyString())).thenAnswer(prepare -> {
+      String query = prepare.getArgument(0);
+      Map<Integer, Object> parameters = new HashMap<>();
+      PreparedStatement prepared = Mockito.mock(PreparedStatement.class);
+      Mockito.doAnswer(invocation -> parameters.put(invocation.getArgument(0), invocation.getArgument(1)))
+        .when(prepared).setObject(Mockito.anyInt(), Mockito.any());
+      Mockito.doAnswer(invocation -> parameters.put(invocation.getArgument(0), invocation.getArgument(1)))
+        .when(prepared).setString(Mockito.anyInt(), Mockito.any());
+      Mockito.when(prepared.executeQuery()).thenAnswer(execute -> {
+        if (query.startsWith("SELECT MIN")) {
+          return ResultSets.of(Collections.singletonList(new Object[] { 1, 3 }));
+        }
+        if (query.startsWith("SELECT TABLE_ROWS")) {
+          return ResultSets.of(Collections.singletonList(new Object[] { 3L }));
+        }
+        int start = parameters.containsKey(1) ? ((Number) parameters.get(1)).intValue() : 1;
+        selects.add(start);
+        List<Object[]> rows = new ArrayList<>();
+        for (int id = start; id <= 3; id++) {
+          rows.add(new Object[] { id, "name" + id });
+        }
+        return ResultSets.of(rows);
+      });
+      return prepared;
+    });
+    return connection;
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.mysql;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.delta.plugin.common.ReaderContext;
+import io.cdap.delta.plugin.common.ReaderContextRegistry;
+import io.cdap.delta.plugin.common.SchemaHistoryStore;
+import io.cdap.delta.plugin.mock.MockContext;
+import io.debezium.config.CommonConnectorConfig;
+import io.debezium.config.Configuration;
+import io.debezium.connector.mysql.MySqlConnectorConfig;
+import io.debezium.connector.mysql.MySqlJdbcContext;
+import io.debezium.connector.mysql.MySqlValueConverters;
+import io.debezium.jdbc.JdbcConnection;
+import io.debezium.jdbc.JdbcValueConverters;
+import io.debezium.jdbc.TemporalPrecisionMode;
+import io.debezium.relational.Column;
+import io.debezium.relational.history.DatabaseHistoryListener;
+import io.debezium.relational.history.HistoryRecord;
+import org.apache.kafka.connect.data.Schema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests that several readers can run in the same JVM without sharing state.
+ */
+public class MultipleReadersTest {
+  private static final int READERS = 8;
+  private static final int DDL_PER_READER = 50;
+
+  @Test
+  public void testConcurrentReaders() throws Exception {
+    List<MockContext> contexts = new ArrayList<>();
+    List<ReaderContext> readers = new ArrayList<>();
+    List<AtomicReference<String>> connectedAs = new ArrayList<>();
+    for (int i = 0; i < READERS; i++) {
+      MockContext context = new MockContext(null);
+      String name = "reader" + i;
+      Configuration config = Configuration.create()
+        .with("name", name)
+        .with(MySqlConnectorConfig.HOSTNAME, "localhost")
+        .with(MySqlConnectorConfig.JSON_HANDLING_MODE, i % 2 == 0 ? "string" : "bytes")
+        .build();
+      AtomicReference<String> connected = new AtomicReference<>();
+      JdbcConnection.ConnectionFactory factory = jdbcConfig -> {
+        connected.set(name);
+        throw new SQLException("No database in this test.");
+      };
+      ReaderContext reader = new ReaderContext(name, context, config, null, factory);
+      ReaderContextRegistry.register(reader);
+      contexts.add(context);
+      readers.add(reader);
+      connectedAs.add(connected);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(READERS);
+    CountDownLatch ready = new CountDownLatch(READERS);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < READERS; i++) {
+        int readerIndex = i;
+        futures.add(executor.submit(ReaderContextRegistry.bind(readers.get(i).getName(), () -> {
+          ready.countDown();
+          try {
+            ready.await();
+            runReader(readerIndex);
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        })));
+      }
+      for (Future<?> future : futures) {
+        future.get(1, TimeUnit.MINUTES);
+      }
+    } finally {
+      executor.shutdownNow();
+      readers.forEach(ReaderContextRegistry::unregister);
+    }
+
+    for (int i = 0; i < READERS; i++) {
+      Assert.assertEquals("reader" + i, connectedAs.get(i).get());
+      List<HistoryRecord> history = new SchemaHistoryStore(contexts.get(i)).getRecords();
+      Assert.assertEquals(DDL_PER_READER, history.size());
+      for (HistoryRecord record : history) {
+        Assert.assertEquals("reader" + i, record.document().getDocument(HistoryRecord.Fields.SOURCE)
+          .getString("server"));
+      }
+    }
+  }
+
+  private static void runReader(int readerIndex) throws Exception {
+    String name = "reader" + readerIndex;
+    // threads started by the reader see the same context
+    AtomicReference<String> childReader = new AtomicReference<>();
+    Thread child = new Thread(() -> childReader.set(ReaderContextRegistry.requireCurrent().getName()));
+    child.start();
+    child.join();
+    Assert.assertEquals(name, childReader.get());
+
+    // history is stored in the reader's own state
+    MySqlSchemaHistory history = new MySqlSchemaHistory();
+    history.configure(Configuration.empty(), null, DatabaseHistoryListener.NOOP, true);
+    history.start();
+    Map<String, Object> source = ImmutableMap.of("server", name);
+    for (int i = 0; i < DDL_PER_READER; i++) {
+      Map<String, Object> position = ImmutableMap.of("file", "mysql-bin.000001", "pos", 1000L + i);
+      history.record(source, position, "db", String.format("CREATE TABLE t%d (id INT PRIMARY KEY)", i));
+    }
+    history.stop();
+
+    // value converters use the reader's JSON handling mode
+    MySqlValueConverters converters =
+      new MySqlValueConverters(JdbcValueConverters.DecimalMode.PRECISE,
+                               TemporalPrecisionMode.ADAPTIVE_TIME_MICROSECONDS,
+                               JdbcValueConverters.BigIntUnsignedMode.LONG,
+                               CommonConnectorConfig.BinaryHandlingMode.BYTES);
+    Column json = Column.editor().name("j").type("JSON").optional(true).create();
+    Assert.assertEquals(readerIndex % 2 == 0 ? Schema.Type.STRING : Schema.Type.BYTES,
+                        converters.schemaBuilder(json).build().type());
+
+    // connections are opened through the reader's connection factory
+    MySqlJdbcContext jdbcContext =
+      new MySqlJdbcContext(new MySqlConnectorConfig(ReaderContextRegistry.requireCurrent().getConfig()));
+    try {
+      jdbcContext.jdbc().connection();
+      Assert.fail("The test connection factory should fail.");
+    } catch (SQLException e) {
+      // expected
+    }
+  }
+}
@@ -46,6 +46,8 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDate;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -245,6 +247,78 @@ public class MySqlEventReaderIntegrationTest {
     Assert.assertEquals(expected, row);
   }
 
+  @Test
+  public void testChunkedSnapshot() throws Exception {
+    SourceTable sourceTable = new SourceTable(DB, CUSTOMERS_TABLE, null,
+                                              Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+
+    MockContext context = new MockContext(Driver.class);
+    context.addRuntimeArgument(MySqlEventReader.SOURCE_CONNECTOR_PREFIX + ChunkedSnapshotReader.CHUNK_SIZE, "1");
+    MockEventEmitter eventEmitter = new MockEventEmitter(7);
+    MySqlConfig config = new MySqlConfig(HOST, port, USER, password, CONSUMER_ID, DB,
+                                         TimeZone.getDefault().getID(), 2);
+
+    MySqlEventReader eventReader = new MySqlEventReader(Collections.singleton(sourceTable), config,
+                                                        context, eventEmitter);
+    eventReader.start(new Offset());
+    eventEmitter.waitForExpectedEvents(30, TimeUnit.SECONDS);
+    eventReader.stop();
+
+    Assert.assertEquals(4, eventEmitter.getDdlEvents().size());
+    Assert.assertEquals(3, eventEmitter.getDmlEvents().size());
+    for (int i = 0; i < 3; i++) {
+      DMLEvent dmlEvent = eventEmitter.getDmlEvents().get(i);
+      Assert.assertEquals(DMLOperation.Type.INSERT, dmlEvent.getOperation().getType());
+      Assert.assertEquals(CUSTOMERS_TABLE, dmlEvent.getOperation().getTableName());
+      Assert.assertTrue(dmlEvent.isSnapshot());
+      Assert.assertEquals(i, (int) dmlEvent.getRow().get("id"));
+      Assert.assertEquals(CUSTOMERS_TABLE, dmlEvent.getOffset().get().get(ChunkedSnapshotReader.TABLE));
+    }
+
+    // restart in the middle of the table, only the rows from the chunk that was being read are read again
+    Map<String, String> state = new HashMap<>(eventEmitter.getDmlEvents().get(0).getOffset().get());
+    state.put(ChunkedSnapshotReader.START, "[1]");
+    eventEmitter = new MockEventEmitter(2);
+    eventReader = new MySqlEventReader(Collections.singleton(sourceTable), config, context, eventEmitter);
+    eventReader.start(new Offset(state));
+    eventEmitter.waitForExpectedEvents(30, TimeUnit.SECONDS);
+    eventReader.stop();
+
+    Assert.assertEquals(2, eventEmitter.getDmlEvents().size());
+    Assert.assertEquals(1, (int) eventEmitter.getDmlEvents().get(0).getRow().get("id"));
+    Assert.assertEquals(2, (int) eventEmitter.getDmlEvents().get(1).getRow().get("id"));
+  }
+
+  @Test
+  public void testIncrementalSnapshot() throws Exception {
+    SourceTable sourceTable = new SourceTable(DB, CUSTOMERS_TABLE, null,
+                                              Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+
+    MockContext context = new MockContext(Driver.class);
+    context.addRuntimeArgument(MySqlEventReader.SOURCE_CONNECTOR_PREFIX + ChunkedSnapshotReader.CHUNK_SIZE, "2");
+    MockEventEmitter eventEmitter = new MockEventEmitter(7);
+    MySqlConfig config = new MySqlConfig(HOST, port, USER, password, CONSUMER_ID, DB,
+                                         TimeZone.getDefault().getID(), null, true);
+
+    MySqlEventReader eventReader = new MySqlEventReader(Collections.singleton(sourceTable), config,
+                                                        context, eventEmitter);
+    eventReader.start(new Offset());
+    eventEmitter.waitForExpectedEvents(30, TimeUnit.SECONDS);
+    eventReader.stop();
+
+    Assert.assertEquals(4, eventEmitter.getDdlEvents().size());
+    Assert.assertEquals(3, eventEmitter.getDmlEvents().size());
+    for (int i = 0; i < 3; i++) {
+      DMLEvent dmlEvent = eventEmitter.getDmlEvents().get(i);
+      Assert.assertEquals(DMLOperation.Type.INSERT, dmlEvent.getOperation().getType());
+      Assert.assertTrue(dmlEvent.isSnapshot());
+      Assert.assertEquals(i, (int) dmlEvent.getRow().get("id"));
+    }
+    // rows carry the chunk they were read in, so a restart reads it again
+    Assert.assertEquals(CUSTOMERS_TABLE,
+                        eventEmitter.getDmlEvents().get(2).getOffset().get().get(ChunkedSnapshotReader.TABLE));
+  }
+
   @Test
   public void stopReaderTest() throws Exception {
     SourceTable sourceTable = new SourceTable(DB, CUSTOMERS_TABLE, null,
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.mysql;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.delta.plugin.common.DBSchemaHistory;
+import io.cdap.delta.plugin.common.ReaderContext;
+import io.cdap.delta.plugin.common.ReaderContextRegistry;
+import io.cdap.delta.plugin.common.SchemaHistoryStore;
+import io.cdap.delta.plugin.mock.MockContext;
+import io.debezium.config.CommonConnectorConfig;
+import io.debezium.config.Configuration;
+import io.debezium.connector.mysql.MySqlValueConverters;
+import io.debezium.connector.mysql.antlr.MySqlAntlrDdlParser;
+import io.debezium.jdbc.JdbcValueConverters;
+import io.debezium.jdbc.TemporalPrecisionMode;
+import io.debezium.relational.TableId;
+import io.debezium.relational.Tables;
+import io.debezium.relational.history.DatabaseHistoryListener;
+import io.debezium.relational.history.HistoryRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for compacting the schema history of MySQL with {@link MySqlSchemaHistory}.
+ */
+public class MySqlSchemaHistoryTest {
+  private static final Map<String, Object> SOURCE = ImmutableMap.of("server", "dummy");
+  private static final String READER = "mysql-history-test";
+  private static final int COUNT = 200;
+
+  @Test
+  public void testDefaultsSurviveCompaction() throws IOException {
+    MockContext context = new MockContext(null);
+    SchemaHistoryStore store = new SchemaHistoryStore(context);
+    store.append(record(0, "CREATE TABLE orders (id INT NOT NULL, status VARCHAR(10) DEFAULT 'new', "
+                             + "PRIMARY KEY (id))"));
+    store.append(record(1, "CREATE TABLE items (id INT NOT NULL, PRIMARY KEY (id))"));
+    store.append(record(2, "ALTER TABLE orders ADD COLUMN priority INT DEFAULT 3"));
+    for (int i = 3; i < COUNT; i++) {
+      store.append(record(i, String.format("ALTER TABLE items ADD COLUMN c%d BIGINT", i)));
+    }
+
+    Tables full = recover(context, 0);
+    Tables compacted = recover(context, 100);
+    List<HistoryRecord> records = new SchemaHistoryStore(context).getRecords();
+    // the items table is checkpointed, the statements of the orders table are kept
+    Assert.assertEquals(3, records.size());
+    Assert.assertEquals(full, compacted);
+
+    // recovering from the compacted history results in the same defaults
+    Tables fromCheckpoint = recover(context, 100);
+    TableId orders = new TableId("db", null, "orders");
+    Assert.assertEquals("new", fromCheckpoint.forTable(orders).columnWithName("status").defaultValue());
+    Assert.assertEquals(3, fromCheckpoint.forTable(orders).columnWithName("priority").defaultValue());
+    Assert.assertEquals(full.forTable(new TableId("db", null, "items")),
+                        fromCheckpoint.forTable(new TableId("db", null, "items")));
+  }
+
+  private static Tables recover(MockContext context, int threshold) {
+    Configuration config = Configuration.create().with(DBSchemaHistory.COMPACTION_THRESHOLD, threshold).build();
+    ReaderContext reader = new ReaderContext(READER, context, config, null, null);
+    ReaderContextRegistry.register(reader);
+    try {
+      return ReaderContextRegistry.call(READER, () -> {
+        MySqlSchemaHistory history = new MySqlSchemaHistory();
+        history.configure(config, null, DatabaseHistoryListener.NOOP, true);
+        Tables tables = new Tables();
+        MySqlValueConverters converters =
+          new MySqlValueConverters(JdbcValueConverters.DecimalMode.PRECISE,
+                                   TemporalPrecisionMode.ADAPTIVE_TIME_MICROSECONDS,
+                                   JdbcValueConverters.BigIntUnsignedMode.LONG,
+                                   CommonConnectorConfig.BinaryHandlingMode.BYTES);
+        history.recover(SOURCE, position(COUNT), tables, new MySqlAntlrDdlParser(converters, tableId -> true));
+        // persists the compacted history
+        history.stop();
+        return tables;
+      });
+    } finally {
+      ReaderContextRegistry.unregister(reader);
+    }
+  }
+
+  private static HistoryRecord record(int i, String ddl) {
+    return new HistoryRecord(SOURCE, position(i), "db", null, ddl, null);
+  }
+
+  private static Map<String, Object> position(int i) {
+    return ImmutableMap.of("file", "mysql-bin.000001", "pos", 1000L + i);
+  }
+}
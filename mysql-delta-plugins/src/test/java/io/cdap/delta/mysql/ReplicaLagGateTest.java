@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.mysql;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for {@link ReplicaLagGate}.
+ */
+public class ReplicaLagGateTest {
+  private static final String GTIDS = "3e11fa47-71ca-11e1-9e33-c80aa9429562:1-20";
+
+  @Test
+  public void testGtids() throws Exception {
+    AtomicReference<String> missing = new AtomicReference<>("3e11fa47-71ca-11e1-9e33-c80aa9429562:19-20");
+    Connection replica = replica(missing, null);
+    Map<String, Object> offset = offset("mysql-bin.000003", 100L);
+    offset.put(MySqlConstantOffsetBackingStore.GTID_SET, GTIDS);
+
+    Assert.assertEquals("it did not execute the GTIDs 3e11fa47-71ca-11e1-9e33-c80aa9429562:19-20",
+                        ReplicaLagGate.getLag(replica, offset));
+    missing.set("");
+    Assert.assertNull(ReplicaLagGate.getLag(replica, offset));
+    ReplicaLagGate.await(replica, offset, 0L);
+  }
+
+  @Test
+  public void testBinlogPosition() throws Exception {
+    Connection replica = replica(null, new Object[][] { { "mysql-bin.000002", 500L } },
+                                 "Relay_Source_Log_File", "Exec_Source_Log_Pos");
+    Map<String, Object> offset = offset("mysql-bin.000003", 100L);
+    // positions of an earlier file are behind, whatever their position in the file
+    Assert.assertEquals("it executed the binlog up to mysql-bin.000002:500 instead of mysql-bin.000003:100",
+                        ReplicaLagGate.getLag(replica, offset));
+    try {
+      ReplicaLagGate.await(replica, offset, 0L);
+      Assert.fail("Replica that did not catch up should time out.");
+    } catch (SQLException e) {
+      // expected
+    }
+
+    // replicas before MySQL 8.0.22 have the old column names
+    replica = replica(null, new Object[][] { { "mysql-bin.000003", 100L } },
+                      "Relay_Master_Log_File", "Exec_Master_Log_Pos");
+    Assert.assertNull(ReplicaLagGate.getLag(replica, offset));
+  }
+
+  @Test(expected = SQLException.class)
+  public void testNotReplica() throws Exception {
+    ReplicaLagGate.getLag(replica(null, new Object[0][]), offset("mysql-bin.000003", 100L));
+  }
+
+  private static Map<String, Object> offset(String file, long position) {
+    Map<String, Object> offset = new HashMap<>();
+    offset.put(MySqlConstantOffsetBackingStore.FILE, file);
+    offset.put(MySqlConstantOffsetBackingStore.POS, position);
+    return offset;
+  }
+
+  private static Connection replica(AtomicReference<String> missingGtids, Object[][] status) throws SQLException {
+    return replica(missingGtids, status, "Relay_Source_Log_File", "Exec_Source_Log_Pos");
+  }
+
+  /**
+   * @return a connection to a replica that is missing the GTIDs, and whose replication status has the rows
+   */
+  private static Connection replica(AtomicReference<String> missingGtids, Object[][] status, String... columns)
+    throws SQLException {
+    PreparedStatement prepared = Mockito.mock(PreparedStatement.class);
+    Mockito.doAnswer(invocation -> {
+      Assert.assertEquals(GTIDS, invocation.getArgument(1));
+      return null;
+    }).when(prepared).setString(Mockito.anyInt(), Mockito.anyString());
+    Mockito.when(prepared.executeQuery())
+      .thenAnswer(invocation -> ResultSets.of(Collections.singletonList(new Object[] { missingGtids.get() })));
+
+    Statement statement = Mockito.mock(Statement.class);
+    Mockito.when(statement.executeQuery("SHOW SLAVE STATUS"))
+      .thenAnswer(invocation -> ResultSets.of(Arrays.asList(status), columns));
+
+    Connection connection = Mockito.mock(Connection.class);
+    Mockito.when(connection.prepareStatement("SELECT GTID_SUBTRACT(?, @@GLOBAL.gtid_executed)")).thenReturn(prepared);
+    Mockito.when(connection.createStatement()).thenReturn(statement);
+    return connection;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.mysql;
+
+import org.mockito.Mockito;
+import org.mockito.stubbing.Answer;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fake result sets for tests that fake the queries of a database.
+ */
+final class ResultSets {
+
+  private ResultSets() {
+  }
+
+  /**
+   * @param rows the rows of the result set
+   * @param columns the labels of the columns, if they are read by label
+   * @return a result set with the rows, whose values can be read by index or label
+   */
+  static ResultSet of(List<Object[]> rows, String... columns) throws SQLException {
+    int[] position = new int[] { -1 };
+    Answer<Object> value = invocation -> {
+      Object column = invocation.getArgument(0);
+      int index = column instanceof Integer ? (Integer) column - 1 : Arrays.asList(columns).indexOf(column);
+      return rows.get(position[0])[index];
+    };
+    Answer<Long> longValue = invocation -> ((Number) value.answer(invocation)).longValue();
+
+    ResultSetMetaData metaData = Mockito.mock(ResultSetMetaData.class);
+    Mockito.when(metaData.getColumnCount()).thenReturn(columns.length);
+    Mockito.when(metaData.getColumnLabel(Mockito.anyInt()))
+      .thenAnswer(invocation -> columns[(Integer) invocation.getArgument(0) - 1]);
+
+    ResultSet rs = Mockito.mock(ResultSet.class);
+    Mockito.when(rs.next()).thenAnswer(invocation -> ++position[0] < rows.size());
+    Mockito.when(rs.getMetaData()).thenReturn(metaData);
+    Mockito.when(rs.getObject(Mockito.anyInt())).thenAnswer(value);
+    Mockito.when(rs.getString(Mockito.anyInt())).thenAnswer(value);
+    Mockito.when(rs.getString(Mockito.anyString())).thenAnswer(value);
+    Mockito.when(rs.getLong(Mockito.anyInt())).thenAnswer(longValue);
+    Mockito.when(rs.getLong(Mockito.anyString())).thenAnswer(longValue);
+    return rs;
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.mysql;
+
+import com.github.shyiko.mysql.binlog.event.deserialization.ColumnType;
+import com.github.shyiko.mysql.binlog.event.deserialization.json.JsonBinary;
+import com.github.shyiko.mysql.binlog.event.deserialization.json.JsonFormatter;
+import com.github.shyiko.mysql.binlog.event.deserialization.json.JsonStringFormatter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Tests for {@link Utf8JsonFormatter}.
+ */
+public class Utf8JsonFormatterTest {
+
+  @Test
+  public void testScalarsMatchStringFormatter() {
+    assertSameOutput(f -> {
+      f.beginArray(0);
+      f.value(0);
+      f.nextEntry();
+      f.value(Integer.MIN_VALUE);
+      f.nextEntry();
+      f.value(Long.MAX_VALUE);
+      f.nextEntry();
+      f.value(Long.MIN_VALUE);
+      f.nextEntry();
+      f.value(3.25d);
+      f.nextEntry();
+      f.value(1.0e-20d);
+      f.nextEntry();
+      f.value(new BigInteger("123456789012345678901234567890"));
+      f.nextEntry();
+      f.value(new BigDecimal("-0.000012300"));
+      f.nextEntry();
+      f.value(true);
+      f.nextEntry();
+      f.value(false);
+      f.nextEntry();
+      f.valueNull();
+      f.nextEntry();
+      f.valueYear(2021);
+      f.nextEntry();
+      f.valueDate(-5, 1, 9);
+      f.nextEntry();
+      f.valueDatetime(2020, 12, 31, 23, 59, 7, 120000);
+      f.nextEntry();
+      f.valueTime(-23, 59, 59, 5);
+      f.nextEntry();
+      f.valueTime(1, 2, 3, 0);
+      f.nextEntry();
+      f.valueTimestamp(1600000000L, 42);
+      f.nextEntry();
+      f.valueOpaque(ColumnType.BLOB, new byte[] { 0, 1, 2, (byte) 0xFF });
+      f.endArray();
+    });
+  }
+
+  @Test
+  public void testStringsMatchStringFormatter() {
+    assertSameOutput(f -> {
+      f.beginObject(3);
+      f.name("esc\"aped\\\b\t\f\n\r" + (char) 1 + (char) 0x1f);
+      f.value("plain ascii");
+      f.nextEntry();
+      f.name("caf" + (char) 0xe9);
+      f.value(new String(Character.toChars(0x4e2d)) + " " + new String(Character.toChars(0x1f600)) + " "
+                + (char) 0x7ff + (char) 0x800 + (char) 0xffff);
+      f.endObject();
+    });
+  }
+
+  @Test
+  public void testUnpairedSurrogates() {
+    String value = "a" + (char) 0xd800 + "b" + (char) 0xdc00;
+    JsonStringFormatter expected = new JsonStringFormatter();
+    expected.value(value);
+    Utf8JsonFormatter actual = new Utf8JsonFormatter(1024);
+    actual.value(value);
+    // the String output keeps the unpaired surrogates, which UTF-8 encodes as '?'
+    Assert.assertArrayEquals(expected.getString().getBytes(StandardCharsets.UTF_8), actual.getBytes());
+  }
+
+  @Test
+  public void testDocumentSizes() {
+    for (int size : new int[] { 1024, 100 * 1024, 5 * 1024 * 1024 }) {
+      assertSameOutput(f -> writeDocument(f, size));
+    }
+  }
+
+  @Test
+  public void testJsonBinary() throws Exception {
+    // a binary encoded JSON string scalar: type, length, utf-8 bytes
+    byte[] text = ("h" + (char) 0xe9 + "llo \"w" + (char) 0xf6 + "rld\"").getBytes(StandardCharsets.UTF_8);
+    byte[] data = new byte[text.length + 2];
+    data[0] = 0x0c;
+    data[1] = (byte) text.length;
+    System.arraycopy(text, 0, data, 2, text.length);
+
+    Utf8JsonFormatter formatter = new Utf8JsonFormatter(1024);
+    JsonBinary.parse(data, formatter);
+    Assert.assertEquals(JsonBinary.parseAsString(data), formatter.getString());
+    Assert.assertArrayEquals(JsonBinary.parseAsString(data).getBytes(StandardCharsets.UTF_8), formatter.getBytes());
+  }
+
+  @Test
+  public void testBufferRetention() {
+    Utf8JsonFormatter formatter = new Utf8JsonFormatter(64 * 1024);
+    writeDocument(formatter, 32 * 1024);
+    int capacity = formatter.capacity();
+    formatter.reset();
+    Assert.assertEquals(0, formatter.length());
+    // small enough documents keep their buffer for the next value
+    Assert.assertEquals(capacity, formatter.capacity());
+
+    writeDocument(formatter, 1024 * 1024);
+    Assert.assertTrue(formatter.capacity() > 64 * 1024);
+    formatter.reset();
+    // large documents do not pin their buffer
+    Assert.assertEquals(Utf8JsonFormatter.INITIAL_CAPACITY, formatter.capacity());
+    writeDocument(formatter, 1024);
+    Assert.assertEquals(expected(f -> writeDocument(f, 1024)), formatter.getString());
+  }
+
+  private static void writeDocument(JsonFormatter formatter, int approximateSize) {
+    formatter.beginObject(0);
+    int written = 0;
+    int i = 0;
+    while (written < approximateSize) {
+      if (i > 0) {
+        formatter.nextEntry();
+      }
+      String name = "key" + i;
+      String value = "value " + (char) 0xe9 + (char) 0x4e2d + " " + i;
+      formatter.name(name);
+      if (i % 3 == 0) {
+        formatter.value(value);
+      } else if (i % 3 == 1) {
+        formatter.value((long) i * 31);
+      } else {
+        formatter.beginArray(2);
+        formatter.value(i % 2 == 0);
+        formatter.nextEntry();
+        formatter.valueDatetime(2000 + i % 30, 1 + i % 12, 1 + i % 28, i % 24, i % 60, i % 60, i % 1000000);
+        formatter.endArray();
+      }
+      written += name.length() + value.length() + 8;
+      i++;
+    }
+    formatter.endObject();
+  }
+
+  private static String expected(Consumer<JsonFormatter> writer) {
+    JsonStringFormatter expected = new JsonStringFormatter();
+    writer.accept(expected);
+    return expected.getString();
+  }
+
+  private static void assertSameOutput(Consumer<JsonFormatter> writer) {
+    String expected = expected(writer);
+    Utf8JsonFormatter actual = new Utf8JsonFormatter(1024);
+    writer.accept(actual);
+    Assert.assertEquals(expected, actual.getString());
+    Assert.assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), actual.getBytes());
+  }
+}
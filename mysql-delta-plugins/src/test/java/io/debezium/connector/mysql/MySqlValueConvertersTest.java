@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.debezium.connector.mysql;
+
+import io.debezium.config.CommonConnectorConfig.BinaryHandlingMode;
+import io.debezium.data.geometry.Geometry;
+import io.debezium.data.geometry.Point;
+import io.debezium.jdbc.JdbcValueConverters;
+import io.debezium.jdbc.TemporalPrecisionMode;
+import io.debezium.relational.Column;
+import io.debezium.relational.ValueConverter;
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Struct;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tests for the changes made to {@link MySqlValueConverters}.
+ */
+public class MySqlValueConvertersTest {
+
+  private static final MySqlValueConverters CONVERTERS =
+    new MySqlValueConverters(JdbcValueConverters.DecimalMode.PRECISE, TemporalPrecisionMode.ADAPTIVE_TIME_MICROSECONDS,
+                             JdbcValueConverters.BigIntUnsignedMode.LONG, BinaryHandlingMode.BYTES);
+
+  @Test
+  public void testPoint() {
+    Column column = Column.editor().name("p").type("POINT").optional(true).create();
+    Field field = new Field("p", 0, CONVERTERS.schemaBuilder(column).optional().build());
+    ValueConverter converter = CONVERTERS.converter(column, field);
+
+    for (ByteOrder order : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN }) {
+      byte[] bytes = mysqlGeometry(4326, point(order, 1.5d, -73.25d));
+      Struct actual = (Struct) converter.convert(bytes);
+      MySqlGeometry geometry = MySqlGeometry.fromBytes(bytes);
+      Struct expected = Point.createValue(field.schema(), geometry.getWkb(), geometry.getSrid());
+      assertSameGeometry(expected, actual);
+      Assert.assertEquals(expected.getFloat64(Point.X_FIELD), actual.getFloat64(Point.X_FIELD));
+      Assert.assertEquals(expected.getFloat64(Point.Y_FIELD), actual.getFloat64(Point.Y_FIELD));
+    }
+  }
+
+  @Test
+  public void testPolygon() {
+    Column column = Column.editor().name("g").type("POLYGON").optional(true).create();
+    Field field = new Field("g", 0, CONVERTERS.schemaBuilder(column).optional().build());
+    ValueConverter converter = CONVERTERS.converter(column, field);
+
+    for (int srid : new int[] { 0, 3857 }) {
+      byte[] bytes = mysqlGeometry(srid, polygon(0, 0, 4, 0, 4, 4, 0, 0));
+      Struct actual = (Struct) converter.convert(bytes);
+      MySqlGeometry geometry = MySqlGeometry.fromBytes(bytes);
+      assertSameGeometry(Geometry.createValue(field.schema(), geometry.getWkb(), geometry.getSrid()), actual);
+    }
+  }
+
+  @Test
+  public void testEmptyDefaultIsNotShared() {
+    Column column = Column.editor().name("g").type("GEOMETRY").optional(false).create();
+    Field field = new Field("g", 0, CONVERTERS.schemaBuilder(column).build());
+    ValueConverter converter = CONVERTERS.converter(column, field);
+
+    Struct first = (Struct) converter.convert(null);
+    MySqlGeometry empty = MySqlGeometry.createEmpty();
+    assertSameGeometry(Geometry.createValue(field.schema(), empty.getWkb(), empty.getSrid()), first);
+    // structs are mutable, so a change to the value of one row must not change the others
+    first.put(Geometry.SRID_FIELD, 4326);
+    Struct second = (Struct) converter.convert(null);
+    Assert.assertNotSame(first, second);
+    assertSameGeometry(Geometry.createValue(field.schema(), empty.getWkb(), empty.getSrid()), second);
+  }
+
+  private static void assertSameGeometry(Struct expected, Struct actual) {
+    // the WKB is a byte array, the same as Debezium creates, so consumers can read it as one
+    Assert.assertArrayEquals(expected.getBytes(Geometry.WKB_FIELD), actual.getBytes(Geometry.WKB_FIELD));
+    Assert.assertEquals(expected.getInt32(Geometry.SRID_FIELD), actual.getInt32(Geometry.SRID_FIELD));
+  }
+
+  private static byte[] mysqlGeometry(int srid, byte[] wkb) {
+    return ByteBuffer.allocate(4 + wkb.length).order(ByteOrder.LITTLE_ENDIAN).putInt(srid).put(wkb).array();
+  }
+
+  private static byte[] point(ByteOrder order, double x, double y) {
+    return ByteBuffer.allocate(21).order(order)
+      .put((byte) (order == ByteOrder.LITTLE_ENDIAN ? 1 : 0)).putInt(1).putDouble(x).putDouble(y).array();
+  }
+
+  private static byte[] polygon(double... coordinates) {
+    ByteBuffer buffer = ByteBuffer.allocate(13 + 8 * coordinates.length).order(ByteOrder.LITTLE_ENDIAN)
+      .put((byte) 1).putInt(3).putInt(1).putInt(coordinates.length / 2);
+    for (double coordinate : coordinates) {
+      buffer.putDouble(coordinate);
+    }
+    return buffer.array();
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.sqlserver;
+
+import io.cdap.cdap.api.metrics.Metrics;
+import io.debezium.config.Configuration;
+
+import java.time.Duration;
+import javax.annotation.Nullable;
+
+/**
+ * Decides how many commits the streaming source reads from the change tables at a time, and how long it waits when
+ * there are no changes.
+ *
+ * Windows are counted in commits, since the commit LSNs in cdc.lsn_time_mapping are where a window can end. After
+ * every window its size is scaled towards the target number of rows, and at least halved if reading it took longer
+ * than the target latency. A window only grows if it was cut short and was read in less than half the target
+ * latency, a window that reached the latest change says nothing about how many more commits could have been read.
+ *
+ * When no changes are seen the poll interval doubles, up to a maximum, until the next change.
+ */
+public class ChangeWindowScheduler {
+  public static final String TARGET_ROWS = "cdc.window.target.rows";
+  public static final String MAX_COMMITS = "cdc.window.max.commits";
+  public static final String TARGET_LATENCY_MS = "cdc.window.target.latency.ms";
+  public static final String MAX_POLL_INTERVAL_MS = "cdc.max.poll.interval.ms";
+  static final int DEFAULT_TARGET_ROWS = 100000;
+  static final int DEFAULT_MAX_COMMITS = 100000;
+  static final long DEFAULT_TARGET_LATENCY_MS = 10000;
+  static final long DEFAULT_MAX_POLL_INTERVAL_MS = 5000;
+  static final int INITIAL_COMMITS = 1000;
+  static final String WINDOW_COMMITS_METRIC = "sqlserver.cdc.window.commits";
+
+  private final long targetRows;
+  private final int maxCommits;
+  private final long targetLatencyMillis;
+  private final Duration pollInterval;
+  private final Duration maxPollInterval;
+  private final Metrics metrics;
+  private int windowCommits;
+  private int idlePolls;
+
+  ChangeWindowScheduler(long targetRows, int maxCommits, long targetLatencyMillis, Duration pollInterval,
+                        Duration maxPollInterval, @Nullable Metrics metrics) {
+    this.targetRows = targetRows;
+    this.maxCommits = maxCommits;
+    this.targetLatencyMillis = targetLatencyMillis;
+    this.pollInterval = pollInterval;
+    this.maxPollInterval = maxPollInterval.compareTo(pollInterval) < 0 ? pollInterval : maxPollInterval;
+    this.metrics = metrics;
+    this.windowCommits = Math.min(INITIAL_COMMITS, maxCommits);
+  }
+
+  /**
+   * Creates a scheduler from the connection configuration of the connector.
+   *
+   * @param config the configuration of the connector's database connection
+   * @param pollInterval the poll interval of the connector, which is the shortest wait for changes
+   * @param metrics where the window size is reported, or null to not report it
+   */
+  public static ChangeWindowScheduler create(Configuration config, Duration pollInterval, @Nullable Metrics metrics) {
+    return new ChangeWindowScheduler(config.getLong(TARGET_ROWS, DEFAULT_TARGET_ROWS),
+                                     config.getInteger(MAX_COMMITS, DEFAULT_MAX_COMMITS),
+                                     config.getLong(TARGET_LATENCY_MS, DEFAULT_TARGET_LATENCY_MS),
+                                     pollInterval,
+                                     Duration.ofMillis(config.getLong(MAX_POLL_INTERVAL_MS,
+                                                                      DEFAULT_MAX_POLL_INTERVAL_MS)),
+                                     metrics);
+  }
+
+  /**
+   * @return the maximum number of commits to read in the next window
+   */
+  public int getWindowCommits() {
+    return windowCommits;
+  }
+
+  /**
+   * Records that a window was read, and sizes the next one.
+   *
+   * @param rows the number of change rows in the window
+   * @param latencyMillis how long it took to read the window
+   * @param cut whether the window ended before the latest change
+   */
+  public void windowRead(long rows, long latencyMillis, boolean cut) {
+    if (rows > 0 || cut) {
+      idlePolls = 0;
+    }
+    double factor = rows == 0 ? 2 : Math.max(0.5, Math.min(2, (double) targetRows / rows));
+    if (latencyMillis > targetLatencyMillis) {
+      factor = Math.min(factor, 0.5);
+    } else if (latencyMillis > targetLatencyMillis / 2) {
+      // a window twice as large could not be read in time
+      factor = Math.min(factor, 1);
+    }
+    if (!cut) {
+      factor = Math.min(factor, 1);
+    }
+    windowCommits = (int) Math.max(1, Math.min(maxCommits, (long) (windowCommits * factor)));
+    if (metrics != null) {
+      metrics.gauge(WINDOW_COMMITS_METRIC, windowCommits);
+    }
+  }
+
+  /**
+   * Records that no changes were seen.
+   *
+   * @return how long to wait before looking for changes again
+   */
+  public Duration idle() {
+    Duration interval = pollInterval;
+    for (int i = 0; i < idlePolls && interval.compareTo(maxPollInterval) < 0; i++) {
+      interval = interval.multipliedBy(2);
+    }
+    idlePolls++;
+    return interval.compareTo(maxPollInterval) < 0 ? interval : maxPollInterval;
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.sqlserver;
+
+import io.debezium.relational.Column;
+import io.debezium.relational.Table;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the queries that read the rows of a table in chunks of primary keys.
+ *
+ * SQL Server has no row value comparison, so a key is compared to a tuple of parameters column by column:
+ * (k1, k2) > (?, ?) is written as (k1 > ?) OR (k1 = ? AND k2 > ?).
+ */
+final class ChunkQuery {
+
+  private ChunkQuery() {
+  }
+
+  /**
+   * @param table the table to read
+   * @param limit the maximum number of rows to read, or 0 to read all of them
+   * @param conditions the conditions on the key the rows have to meet
+   * @param keys the primary key the rows are ordered by, or an empty list to not order them
+   * @return the query of the rows of the table
+   */
+  static String select(Table table, int limit, List<String> conditions, List<Column> keys) {
+    StringBuilder query = new StringBuilder("SELECT ");
+    if (limit > 0) {
+      query.append("TOP (").append(limit).append(") ");
+    }
+    query.append(table.columns().stream().map(c -> quote(c.name())).collect(Collectors.joining(", ")))
+      .append(" FROM ").append(quote(table.id().schema())).append('.').append(quote(table.id().table()));
+    appendWhere(query, conditions);
+    appendOrderBy(query, keys);
+    return query.toString();
+  }
+
+  /**
+   * @return the query of the key every given number of rows, which are the keys chunks of that size start at
+   */
+  static String selectChunkStarts(Table table, List<Column> keys, int chunkSize, List<String> conditions) {
+    String keyList = keys.stream().map(c -> quote(c.name())).collect(Collectors.joining(", "));
+    StringBuilder query = new StringBuilder("SELECT ").append(keyList)
+      .append(" FROM (SELECT ").append(keyList).append(", ROW_NUMBER() OVER (ORDER BY ").append(keyList)
+      .append(") AS [chunk_row] FROM ")
+      .append(quote(table.id().schema())).append('.').append(quote(table.id().table()));
+    appendWhere(query, conditions);
+    query.append(") AS [chunk_keys] WHERE ([chunk_row] - 1) % ").append(chunkSize).append(" = 0");
+    appendOrderBy(query, keys);
+    return query.toString();
+  }
+
+  /**
+   * @param operator '>' or '<'
+   * @param inclusive whether keys equal to the parameters meet the condition
+   * @return the condition of keys being on the given side of a tuple of parameters, which are bound with
+   *   {@link #bind(PreparedStatement, int, Object[], boolean)}
+   */
+  static String compare(List<Column> keys, String operator, boolean inclusive) {
+    List<String> terms = new ArrayList<>();
+    for (int i = 0; i < keys.size(); i++) {
+      StringBuilder term = new StringBuilder("(");
+      for (int j = 0; j < i; j++) {
+        term.append(quote(keys.get(j).name())).append(" = ? AND ");
+      }
+      terms.add(term.append(quote(keys.get(i).name())).append(' ').append(operator).append(" ?)").toString());
+    }
+    if (inclusive) {
+      terms.add(keys.stream().map(c -> quote(c.name()) + " = ?").collect(Collectors.joining(" AND ", "(", ")")));
+    }
+    return String.join(" OR ", terms);
+  }
+
+  /**
+   * Binds the parameters of a condition created by {@link #compare(List, String, boolean)}.
+   *
+   * @return the index of the parameter after the condition
+   */
+  static int bind(PreparedStatement statement, int index, Object[] key, boolean inclusive) throws SQLException {
+    for (int i = 0; i < key.length; i++) {
+      for (int j = 0; j <= i; j++) {
+        statement.setObject(index++, key[j]);
+      }
+    }
+    if (inclusive) {
+      for (Object value : key) {
+        statement.setObject(index++, value);
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Reads all rows of a table with a single query, and hands each of them over as it is read instead of holding them,
+   * for tables without a primary key to split them with. The driver buffers results adaptively, so only the rows
+   * being handed over are in memory.
+   *
+   * @return the number of rows read
+   */
+  static long readAll(Connection connection, Table table, RowHandler handler)
+    throws SQLException, InterruptedException {
+    List<Column> columns = table.columns();
+    long rowCount = 0;
+    try (Statement statement = connection.createStatement();
+         ResultSet rs = statement.executeQuery(select(table, 0, Collections.emptyList(), Collections.emptyList()))) {
+      while (rs.next()) {
+        handler.handle(readRow(rs, columns));
+        rowCount++;
+      }
+    }
+    return rowCount;
+  }
+
+  /**
+   * Reads the row the result set is at, which has the given columns in order.
+   *
+   * @return the values of the row by the position of their columns in the table
+   */
+  static Object[] readRow(ResultSet rs, List<Column> columns) throws SQLException {
+    Object[] row = new Object[columns.size()];
+    for (int i = 0; i < row.length; i++) {
+      row[columns.get(i).position() - 1] = getColumnValue(rs, i + 1);
+    }
+    return row;
+  }
+
+  /**
+   * Reads a value the same way as Debezium's snapshot, so it is converted the same way as its rows.
+   */
+  static Object getColumnValue(ResultSet rs, int index) throws SQLException {
+    return rs.getMetaData().getColumnType(index) == Types.TIME ? rs.getTimestamp(index) : rs.getObject(index);
+  }
+
+  static String quote(String name) {
+    return "[" + name.replace("]", "]]") + "]";
+  }
+
+  private static void appendWhere(StringBuilder query, List<String> conditions) {
+    if (!conditions.isEmpty()) {
+      query.append(" WHERE ").append(conditions.size() == 1
+                                       ? conditions.get(0)
+                                       : conditions.stream().collect(Collectors.joining(") AND (", "(", ")")));
+    }
+  }
+
+  private static void appendOrderBy(StringBuilder query, List<Column> keys) {
+    if (!keys.isEmpty()) {
+      query.append(" ORDER BY ").append(keys.stream().map(c -> quote(c.name())).collect(Collectors.joining(", ")));
+    }
+  }
+
+  /**
+   * Handles the rows read by {@link #readAll(Connection, Table, RowHandler)}.
+   */
+  interface RowHandler {
+
+    void handle(Object[] row) throws InterruptedException;
+  }
+}
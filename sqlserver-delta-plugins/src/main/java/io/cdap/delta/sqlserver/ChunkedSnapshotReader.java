@@ -0,0 +1,300 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.sqlserver;
+
+import io.cdap.delta.plugin.common.ChunkKeys;
+import io.cdap.delta.plugin.common.ChunkReadAhead;
+import io.debezium.config.Configuration;
+import io.debezium.connector.sqlserver.SqlServerConnection;
+import io.debezium.connector.sqlserver.SqlServerConnectorConfig;
+import io.debezium.connector.sqlserver.SqlServerDatabaseSchema;
+import io.debezium.connector.sqlserver.SqlServerOffsetContext;
+import io.debezium.jdbc.JdbcConnection;
+import io.debezium.pipeline.EventDispatcher;
+import io.debezium.relational.Column;
+import io.debezium.relational.SnapshotChangeRecordEmitter;
+import io.debezium.relational.Table;
+import io.debezium.relational.TableId;
+import io.debezium.util.Clock;
+import org.apache.kafka.connect.header.ConnectHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the existing rows of tables in chunks of primary keys, over several connections at the same time.
+ *
+ * It runs after Debezium took a schema only snapshot, which captured the maximum LSN, and before changes are streamed
+ * from that LSN. Each table is split at every chunk size rows of its primary key, and each chunk is read with a single
+ * query some time after that LSN, in snapshot isolation if the snapshot uses it. Change tables carry whole rows, so
+ * streaming the changes from that LSN brings every row to the same state as in the source. Chunks are read ahead at
+ * the same time, but their rows are dispatched in order, with the table and the start of their chunk in headers that
+ * the record consumer keeps in its offsets. A restarted reader resumes at the chunk it was in. Tables without a
+ * primary key are read with a single query instead, whose rows are dispatched as they are read.
+ */
+public class ChunkedSnapshotReader {
+  public static final String PARALLELISM = "snapshot.parallelism";
+  // offset keys and headers of the chunk being read, every offset has them until all tables were read
+  public static final String TABLE = "chunk.table";
+  public static final String START = "chunk.start";
+  private static final Logger LOG = LoggerFactory.getLogger(ChunkedSnapshotReader.class);
+
+  private final int parallelism;
+  private final int chunkSize;
+  private final boolean snapshotIsolation;
+  private final String resumeTable;
+  private final String resumeStart;
+  private boolean pending;
+
+  /**
+   * @param parallelism the number of connections to read chunks over, or 0 to not read any rows
+   * @param chunkSize the number of rows in a chunk
+   * @param snapshotIsolation whether to read chunks in snapshot isolation
+   * @param resumeTable the table to resume at as 'schema.table', or null to read all tables
+   * @param resumeStart the encoded key of the chunk to resume at, or null to read the whole table
+   */
+  ChunkedSnapshotReader(int parallelism, int chunkSize, boolean snapshotIsolation,
+                        @Nullable String resumeTable, @Nullable String resumeStart) {
+    this.parallelism = Math.max(0, parallelism);
+    this.chunkSize = Math.max(1, chunkSize);
+    this.snapshotIsolation = snapshotIsolation;
+    this.resumeTable = emptyToNull(resumeTable);
+    this.resumeStart = emptyToNull(resumeStart);
+    this.pending = this.parallelism > 0;
+  }
+
+  /**
+   * Creates a reader from the configuration of the connector, which resumes at the chunk it has to read.
+   */
+  public static ChunkedSnapshotReader create(SqlServerConnectorConfig connectorConfig) {
+    Configuration config = connectorConfig.getConfig();
+    return new ChunkedSnapshotReader(
+      config.getInteger(PARALLELISM, 0),
+      config.getInteger(TableSnapshotReader.CHUNK_SIZE, TableSnapshotReader.DEFAULT_CHUNK_SIZE),
+      connectorConfig.getSnapshotIsolationMode() == SqlServerConnectorConfig.SnapshotIsolationMode.SNAPSHOT,
+      config.getString(TABLE), config.getString(START));
+  }
+
+  /**
+   * @return whether the rows of the tables still have to be read
+   */
+  public boolean isPending() {
+    return pending;
+  }
+
+  /**
+   * Reads the rows of all tables that were not read yet, and dispatches them as read events at the given offset.
+   *
+   * @param connection the connection tables are split over, which creates the connections chunks are read over
+   * @param tables the tables to read
+   */
+  public void read(SqlServerConnection connection, SqlServerDatabaseSchema schema, Collection<TableId> tables,
+                   SqlServerOffsetContext offsetContext, EventDispatcher<TableId> dispatcher, Clock clock)
+    throws SQLException, InterruptedException {
+    long startTime = System.currentTimeMillis();
+    List<TableId> tableIds = tables.stream()
+      .sorted(Comparator.comparing(ChunkedSnapshotReader::getName))
+      .filter(id -> resumeTable == null || getName(id).compareTo(resumeTable) >= 0)
+      .collect(Collectors.toList());
+    try (ChunkReadAhead readAhead = new ChunkReadAhead(parallelism)) {
+      for (int i = 0; i < parallelism; i++) {
+        JdbcConnection chunkConnection = connection.createConnection();
+        readAhead.addConnection(chunkConnection);
+        if (snapshotIsolation) {
+          chunkConnection.execute("SET TRANSACTION ISOLATION LEVEL SNAPSHOT");
+        }
+      }
+      for (TableId tableId : tableIds) {
+        Table table = schema.tableFor(tableId);
+        Object[] start = getName(tableId).equals(resumeTable) ? decodeKey(resumeStart, table) : null;
+        readTable(connection, table, start, readAhead, offsetContext, dispatcher, clock);
+      }
+      pending = false;
+      LOG.info("Read the existing rows of {} tables in {} seconds.", tableIds.size(),
+               (System.currentTimeMillis() - startTime) / 1000);
+    }
+  }
+
+  private void readTable(SqlServerConnection connection, Table table, @Nullable Object[] start,
+                         ChunkReadAhead readAhead, SqlServerOffsetContext offsetContext,
+                         EventDispatcher<TableId> dispatcher, Clock clock)
+    throws SQLException, InterruptedException {
+    TableId tableId = table.id();
+    List<Column> keys = table.primaryKeyColumns();
+    if (keys.isEmpty()) {
+      readKeylessTable(connection, table, offsetContext, dispatcher, clock);
+      return;
+    }
+    List<String> conditions = start == null
+      ? Collections.emptyList() : Collections.singletonList(ChunkQuery.compare(keys, ">", true));
+    List<Object[]> starts = connection.prepareQueryAndMap(
+      ChunkQuery.selectChunkStarts(table, keys, chunkSize, conditions), statement -> {
+        if (start != null) {
+          ChunkQuery.bind(statement, 1, start, true);
+        }
+      }, rs -> {
+        List<Object[]> result = new ArrayList<>();
+        while (rs.next()) {
+          Object[] key = new Object[keys.size()];
+          for (int i = 0; i < key.length; i++) {
+            key[i] = ChunkQuery.getColumnValue(rs, i + 1);
+          }
+          result.add(key);
+        }
+        return result;
+      });
+    // Terminate the transaction, the chunks are read over other connections
+    connection.rollback();
+    LOG.info("Reading the rows of table {} in {} chunks over {} connections.", tableId, starts.size(), parallelism);
+
+    long rowCount = 0;
+    int next = 0;
+    for (int i = 0; i < starts.size(); i++) {
+      while (next < starts.size() && !readAhead.isFull()) {
+        Object[] chunkStart = starts.get(next);
+        Object[] chunkEnd = next + 1 < starts.size() ? starts.get(next + 1) : null;
+        readAhead.submit(jdbc -> readChunk(jdbc, table, chunkStart, chunkEnd));
+        next++;
+      }
+
+      List<Object[]> rows = readAhead.next();
+      ConnectHeaders headers = new ConnectHeaders();
+      headers.addString(TABLE, getName(tableId));
+      headers.addString(START, ChunkKeys.encode(starts.get(i)));
+      for (Object[] row : rows) {
+        offsetContext.event(tableId, clock.currentTimeAsInstant());
+        dispatcher.dispatchDataChangeEvent(tableId, new TableSnapshotReader.HeaderEmitter(
+          new SnapshotChangeRecordEmitter(offsetContext, row, clock), headers));
+      }
+      rowCount += rows.size();
+    }
+    LOG.info("Read {} rows of table {}.", rowCount, tableId);
+  }
+
+  /**
+   * Reads the rows of a table without a primary key, which can't be split into chunks, with a single query over a
+   * connection of its own. Its rows are dispatched as they are read rather than held by the read ahead, so the size
+   * of the table doesn't matter. A restarted reader reads the table from its first row.
+   */
+  private void readKeylessTable(SqlServerConnection connection, Table table, SqlServerOffsetContext offsetContext,
+                                EventDispatcher<TableId> dispatcher, Clock clock)
+    throws SQLException, InterruptedException {
+    TableId tableId = table.id();
+    LOG.info("Reading the rows of table {}, which has no primary key, with a single query.", tableId);
+    ConnectHeaders headers = new ConnectHeaders();
+    headers.addString(TABLE, getName(tableId));
+    headers.addString(START, ChunkKeys.encode(null));
+    long rowCount;
+    try (JdbcConnection jdbc = connection.createConnection()) {
+      if (snapshotIsolation) {
+        jdbc.execute("SET TRANSACTION ISOLATION LEVEL SNAPSHOT");
+      }
+      rowCount = ChunkQuery.readAll(jdbc.connection(), table, row -> {
+        offsetContext.event(tableId, clock.currentTimeAsInstant());
+        dispatcher.dispatchDataChangeEvent(tableId, new TableSnapshotReader.HeaderEmitter(
+          new SnapshotChangeRecordEmitter(offsetContext, row, clock), headers));
+      });
+      jdbc.rollback();
+    }
+    LOG.info("Read {} rows of table {}.", rowCount, tableId);
+  }
+
+  private static List<Object[]> readChunk(JdbcConnection jdbc, Table table,
+                                          @Nullable Object[] start, @Nullable Object[] end) throws SQLException {
+    List<Column> keys = table.primaryKeyColumns();
+    List<String> conditions = new ArrayList<>();
+    if (start != null) {
+      conditions.add(ChunkQuery.compare(keys, ">", true));
+    }
+    if (end != null) {
+      conditions.add(ChunkQuery.compare(keys, "<", false));
+    }
+    List<Column> columns = table.columns();
+    return jdbc.prepareQueryAndMap(ChunkQuery.select(table, 0, conditions, keys), statement -> {
+      int index = 1;
+      if (start != null) {
+        index = ChunkQuery.bind(statement, index, start, true);
+      }
+      if (end != null) {
+        ChunkQuery.bind(statement, index, end, false);
+      }
+    }, rs -> {
+      List<Object[]> rows = new ArrayList<>();
+      while (rs.next()) {
+        rows.add(ChunkQuery.readRow(rs, columns));
+      }
+      return rows;
+    });
+  }
+
+  private static String getName(TableId tableId) {
+    return tableId.schema() + "." + tableId.table();
+  }
+
+  /**
+   * Decodes a key encoded with {@link ChunkKeys#encode(Object[])}, with values that can be compared to the primary
+   * key of the table.
+   *
+   * @return the key, or null if there is none or it does not match the primary key of the table
+   */
+  @Nullable
+  static Object[] decodeKey(@Nullable String encoded, Table table) {
+    Object[] key = ChunkKeys.decode(encoded);
+    if (key == null) {
+      return null;
+    }
+    List<Column> keys = table.primaryKeyColumns();
+    if (key.length != keys.size()) {
+      LOG.warn("The primary key of table {} changed, its rows are read from the start.", table.id());
+      return null;
+    }
+    for (int i = 0; i < key.length; i++) {
+      if (key[i] instanceof String) {
+        key[i] = toKeyValue(keys.get(i), (String) key[i]);
+      }
+    }
+    return key;
+  }
+
+  // temporal values are encoded with toString, which SQL Server does not parse with all precisions
+  private static Object toKeyValue(Column column, String value) {
+    switch (column.jdbcType()) {
+      case Types.DATE:
+        return Date.valueOf(value);
+      case Types.TIME:
+      case Types.TIMESTAMP:
+        return Timestamp.valueOf(value);
+      default:
+        return value;
+    }
+  }
+
+  private static String emptyToNull(@Nullable String value) {
+    return value == null || value.isEmpty() ? null : value;
+  }
+}
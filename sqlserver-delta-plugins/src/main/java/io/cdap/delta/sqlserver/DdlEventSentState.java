@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.sqlserver;
+
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.delta.api.DeltaRuntimeContext;
+import io.debezium.util.Strings;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the tables that already had their DDL events sent.
+ *
+ * Tables are only ever added, so the set at any offset is a prefix of the tables in the order they were added. That
+ * list is saved in the state store whenever a table is added, and offsets only carry the length of the prefix as a
+ * version, instead of the names of all the tables.
+ */
+class DdlEventSentState {
+  static final String STATE_KEY = "sqlserver.ddl.event.sent";
+  private static final String SEPARATOR = "\n";
+
+  private final DeltaRuntimeContext context;
+  private final List<String> tables;
+  private final Set<String> tableSet;
+
+  DdlEventSentState(DeltaRuntimeContext context) {
+    this(context, new ArrayList<>());
+  }
+
+  private DdlEventSentState(DeltaRuntimeContext context, List<String> tables) {
+    this.context = context;
+    this.tables = tables;
+    this.tableSet = new HashSet<>(tables);
+  }
+
+  /**
+   * Restores the tables that had DDL events sent as of the given offset.
+   */
+  static DdlEventSentState load(DeltaRuntimeContext context, Map<String, String> offset) throws IOException {
+    // offsets written before the set was versioned contain all the tables
+    String legacy = offset.get(SqlServerOffset.DDL_EVENT_SENT);
+    if (!Strings.isNullOrEmpty(legacy)) {
+      DdlEventSentState state =
+        new DdlEventSentState(context, new ArrayList<>(Arrays.asList(legacy.split(SqlServerOffset.DELIMITER))));
+      state.save();
+      return state;
+    }
+    String version = offset.get(SqlServerOffset.DDL_EVENT_SENT_VERSION);
+    if (Strings.isNullOrEmpty(version)) {
+      return new DdlEventSentState(context);
+    }
+    byte[] bytes = context.getState(STATE_KEY);
+    List<String> saved = bytes == null || bytes.length == 0 ?
+      new ArrayList<>() : new ArrayList<>(Arrays.asList(Bytes.toString(bytes).split(SEPARATOR)));
+    // tables added after the offset was emitted are not part of its state
+    int size = Math.min(Integer.parseInt(version), saved.size());
+    return new DdlEventSentState(context, new ArrayList<>(saved.subList(0, size)));
+  }
+
+  boolean contains(String table) {
+    return tableSet.contains(table);
+  }
+
+  /**
+   * @return the version of the set, to be stored in offsets
+   */
+  int getVersion() {
+    return tables.size();
+  }
+
+  /**
+   * Adds a table to the set and saves it if it was not already there.
+   */
+  void add(String table) throws IOException {
+    if (tableSet.add(table)) {
+      tables.add(table);
+      save();
+    }
+  }
+
+  void clear() throws IOException {
+    tables.clear();
+    tableSet.clear();
+    save();
+  }
+
+  private void save() throws IOException {
+    context.putState(STATE_KEY, Bytes.toBytes(String.join(SEPARATOR, tables)));
+  }
+}
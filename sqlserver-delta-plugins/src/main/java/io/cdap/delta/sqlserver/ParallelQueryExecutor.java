@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.sqlserver;
+
+import io.debezium.jdbc.JdbcConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a set of queries over several connections at the same time, and hands all of their result sets to a single
+ * consumer, in the order of the queries.
+ *
+ * Queries are spread round robin over the connections, and each connection runs its share one after another. The
+ * result sets stay open until the consumer returns, so the consumer can read them in any order, for example to merge
+ * them.
+ */
+public class ParallelQueryExecutor implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(ParallelQueryExecutor.class);
+
+  private final List<JdbcConnection> connections;
+  private final ExecutorService executor;
+
+  public ParallelQueryExecutor(List<JdbcConnection> connections) {
+    this.connections = connections;
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(connections.size(), runnable -> {
+      Thread thread = new Thread(runnable, "change-table-query-" + threadCount.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Runs the queries and calls the consumer with their result sets.
+   *
+   * @param queries the queries to run
+   * @param preparers the preparer of each query
+   * @param consumer the consumer of the result sets, in the same order as the queries
+   */
+  public void prepareQuery(String[] queries, JdbcConnection.StatementPreparer[] preparers,
+                           JdbcConnection.BlockingMultiResultSetConsumer consumer)
+    throws SQLException, InterruptedException {
+    int partitions = Math.min(connections.size(), queries.length);
+    ResultSet[] resultSets = new ResultSet[queries.length];
+    List<CompletableFuture<Void>> fetched = new ArrayList<>(partitions);
+    List<Future<?>> workers = new ArrayList<>(partitions);
+    // released once the consumer is done with the result sets, which are closed when the queries return
+    CountDownLatch consumed = new CountDownLatch(1);
+    try {
+      for (int p = 0; p < partitions; p++) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = p; i < queries.length; i += partitions) {
+          indexes.add(i);
+        }
+        String[] partitionQueries = new String[indexes.size()];
+        JdbcConnection.StatementPreparer[] partitionPreparers = new JdbcConnection.StatementPreparer[indexes.size()];
+        for (int i = 0; i < indexes.size(); i++) {
+          partitionQueries[i] = queries[indexes.get(i)];
+          partitionPreparers[i] = preparers[indexes.get(i)];
+        }
+        JdbcConnection connection = connections.get(p);
+        CompletableFuture<Void> partitionFetched = new CompletableFuture<>();
+        fetched.add(partitionFetched);
+        workers.add(executor.submit(() -> {
+          try {
+            connection.prepareQuery(partitionQueries, partitionPreparers, partitionResults -> {
+              for (int i = 0; i < partitionResults.length; i++) {
+                resultSets[indexes.get(i)] = partitionResults[i];
+              }
+              partitionFetched.complete(null);
+              consumed.await();
+            });
+          } catch (Throwable t) {
+            partitionFetched.completeExceptionally(t);
+          }
+          return null;
+        }));
+      }
+
+      for (CompletableFuture<Void> partitionFetched : fetched) {
+        try {
+          partitionFetched.get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof SQLException) {
+            throw (SQLException) cause;
+          }
+          if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+          }
+          throw new SQLException("Unable to query change tables.", cause);
+        }
+      }
+      consumer.accept(resultSets);
+    } finally {
+      consumed.countDown();
+      for (Future<?> worker : workers) {
+        try {
+          worker.get();
+        } catch (ExecutionException e) {
+          // failures are reported through the fetched futures
+          LOG.trace("Change table query failed.", e);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    for (JdbcConnection connection : connections) {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        LOG.warn("Unable to close change table query connection.", e);
+      }
+    }
+  }
+}
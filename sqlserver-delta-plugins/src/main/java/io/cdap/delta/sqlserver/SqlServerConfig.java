@@ -26,6 +26,7 @@ import javax.annotation.Nullable;
  * Plugin configuration for the SqlServer source.
  */
 public class SqlServerConfig extends PluginConfig {
+  static final int DEFAULT_MAX_TRANSACTION_SIZE = 10000;
 
   @Description("Hostname or IP address of the SqlServer to read from.")
   private String host;
@@ -57,8 +58,67 @@ public class SqlServerConfig extends PluginConfig {
     "tables will be ignored and only changes happening after the pipeline started will be replicated.")
   private Boolean replicateExistingData;
 
+  @Nullable
+  @Description("Whether to only replicate the net changes of each row, for tables where CDC was enabled with net " +
+    "changes support. Several changes to a row that are read together are replicated as one change with the latest " +
+    "values of the row. The previous values of an update are not available, they are the same as its new values. " +
+    "Requires Group Transactions, since the changes of a transaction can't be told apart by their position. " +
+    "By default, every change is replicated.")
+  private Boolean netChanges;
+
+  @Nullable
+  @Description("Whether to replicate the changes of a transaction together. Changes are held until their transaction " +
+    "is read completely, and replication only moves past a transaction once all of its changes are replicated. " +
+    "By default, changes are replicated as they are read.")
+  private Boolean groupTransactions;
+
+  @Nullable
+  @Description("Maximum number of changes of a transaction to hold when transactions are grouped. Larger " +
+    "transactions are replicated while they are read, and replication still only moves past them once all of " +
+    "their changes are replicated. Defaults to 10000.")
+  private Integer maxTransactionSize;
+
+  @Nullable
+  @Description("Whether to read the initial snapshot in SNAPSHOT isolation, which needs ALLOW_SNAPSHOT_ISOLATION to " +
+    "be on for the database. The snapshot is then consistent without locking the tables. By default, or if the " +
+    "database does not allow snapshot isolation, the tables are locked while their schema is read.")
+  private Boolean snapshotIsolation;
+
+  @Nullable
+  @Description("Table to read signals from while changes are replicated, as 'schema.table'. CDC must be enabled for " +
+    "the table, and it must have the columns 'id', 'type' and 'data'. Inserting a row with the type " +
+    "'execute-snapshot' and a comma separated list of tables as 'schema.table' as data drops and creates those " +
+    "tables in the target, and reads their existing data again while changes are replicated. By default, no " +
+    "signals are read.")
+  private String signalTable;
+
+  @Nullable
+  @Description("Number of connections to read existing data over. When set, each table is split into chunks of " +
+    "primary key ranges that are read at the same time, and a restarted pipeline resumes reading existing data at " +
+    "the chunk it was in. By default, each table is read with a single query over one connection.")
+  private Integer snapshotParallelism;
+
   public SqlServerConfig(String host, int port, String user, String password,
                          String database, @Nullable String serverTimezone, String jdbcPluginName) {
+    this(host, port, user, password, database, serverTimezone, jdbcPluginName, null);
+  }
+
+  public SqlServerConfig(String host, int port, String user, String password,
+                         String database, @Nullable String serverTimezone, String jdbcPluginName,
+                         @Nullable Boolean snapshotIsolation) {
+    this(host, port, user, password, database, serverTimezone, jdbcPluginName, snapshotIsolation, null);
+  }
+
+  public SqlServerConfig(String host, int port, String user, String password,
+                         String database, @Nullable String serverTimezone, String jdbcPluginName,
+                         @Nullable Boolean snapshotIsolation, @Nullable String signalTable) {
+    this(host, port, user, password, database, serverTimezone, jdbcPluginName, snapshotIsolation, signalTable, null);
+  }
+
+  public SqlServerConfig(String host, int port, String user, String password,
+                         String database, @Nullable String serverTimezone, String jdbcPluginName,
+                         @Nullable Boolean snapshotIsolation, @Nullable String signalTable,
+                         @Nullable Integer snapshotParallelism) {
     this.host = host;
     this.port = port;
     this.user = user;
@@ -66,6 +126,9 @@ public class SqlServerConfig extends PluginConfig {
     this.database = database;
     this.serverTimezone = serverTimezone;
     this.jdbcPluginName = jdbcPluginName;
+    this.snapshotIsolation = snapshotIsolation;
+    this.signalTable = signalTable;
+    this.snapshotParallelism = snapshotParallelism;
   }
 
   public String getDatabase() {
@@ -96,6 +159,11 @@ public class SqlServerConfig extends PluginConfig {
     return serverTimezone == null || serverTimezone.isEmpty() ? "UTC" : serverTimezone;
   }
 
+  public String getJdbcURL() {
+    return String.format("jdbc:sqlserver://%s:%d;databaseName=%s;user=%s;password=%s",
+                         host, port, database, user, password);
+  }
+
   public String getJDBCPluginId() {
     return String.format("%s.%s.%s", "sqlserversource", "jbdc", jdbcPluginName);
   }
@@ -103,4 +171,48 @@ public class SqlServerConfig extends PluginConfig {
   public boolean getReplicateExistingData() {
     return replicateExistingData != null ? replicateExistingData : true;
   }
+
+  public boolean getNetChanges() {
+    return netChanges != null && netChanges;
+  }
+
+  /**
+   * Checks that the properties can be used together.
+   *
+   * @throws IllegalArgumentException if they can't
+   */
+  public void validate() {
+    // net changes of a transaction all have the same position, so a restart in the middle of a transaction can't
+    // tell which of them were replicated. Grouped transactions only move the offset past a transaction at its end
+    if (getNetChanges() && !getGroupTransactions()) {
+      throw new IllegalArgumentException("Replicate Net Changes Only requires Group Transactions to be enabled.");
+    }
+  }
+
+  public boolean getGroupTransactions() {
+    return groupTransactions != null && groupTransactions;
+  }
+
+  public int getMaxTransactionSize() {
+    return maxTransactionSize == null ? DEFAULT_MAX_TRANSACTION_SIZE : maxTransactionSize;
+  }
+
+  public boolean getSnapshotIsolation() {
+    return snapshotIsolation != null && snapshotIsolation;
+  }
+
+  /**
+   * @return the table signals are read from as 'schema.table', or null if no signals are read
+   */
+  @Nullable
+  public String getSignalTable() {
+    return signalTable == null || signalTable.trim().isEmpty() ? null : signalTable.trim();
+  }
+
+  /**
+   * @return the number of connections to read existing data over in chunks, or 0 to read it with Debezium's snapshot
+   */
+  public int getSnapshotParallelism() {
+    return snapshotParallelism == null ? 0 : Math.max(0, snapshotParallelism);
+  }
 }
@@ -35,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Driver;
+import java.util.UUID;
 
 /**
  * Sql Server delta source.
@@ -53,6 +54,7 @@ public class SqlServerDeltaSource implements DeltaSource {
 
   @Override
   public void configure(SourceConfigurer configurer) {
+    config.validate();
     // add Sql-Server JDBC Plugin usage
     configurer.usePluginClass("jdbc", config.getJdbcPluginName(), config.getJDBCPluginId(),
                               PluginProperties.builder().build());
@@ -79,6 +81,18 @@ public class SqlServerDeltaSource implements DeltaSource {
 
   @Override
   public TableAssessor<TableDetail> createTableAssessor(Configurer configurer) throws Exception {
-    return new SqlServerTableAssessor();
+    if (!config.getSnapshotIsolation()) {
+      return new SqlServerTableAssessor(config.getNetChanges());
+    }
+    // the database is only queried to check settings that were turned on
+    Class<? extends Driver> jdbcDriverClass = configurer.usePluginClass("jdbc", config.getJdbcPluginName(),
+                                                                        config.getJDBCPluginId() + "." +
+                                                                          UUID.randomUUID().toString(),
+                                                                        PluginProperties.builder().build());
+    if (jdbcDriverClass == null) {
+      throw new IllegalArgumentException("JDBC plugin " + config.getJdbcPluginName() + " not found.");
+    }
+    DriverCleanup cleanup = DriverCleanup.ensureJDBCDriverIsAvailable(jdbcDriverClass, config.getJdbcURL());
+    return new SqlServerTableAssessor(config, cleanup);
   }
 }
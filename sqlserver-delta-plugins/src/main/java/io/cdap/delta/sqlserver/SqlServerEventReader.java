@@ -21,26 +21,30 @@ import io.cdap.delta.api.DeltaSourceContext;
 import io.cdap.delta.api.EventEmitter;
 import io.cdap.delta.api.EventReader;
 import io.cdap.delta.api.Offset;
+import io.cdap.delta.api.SourceColumn;
 import io.cdap.delta.api.SourceTable;
 import io.cdap.delta.api.StopContext;
 import io.cdap.delta.plugin.common.DBSchemaHistory;
 import io.cdap.delta.plugin.common.NotifyingCompletionCallback;
+import io.cdap.delta.plugin.common.ReaderContext;
+import io.cdap.delta.plugin.common.ReaderContextRegistry;
 import io.cdap.delta.plugin.common.RuntimeArguments;
 import io.debezium.config.Configuration;
 import io.debezium.connector.sqlserver.SourceInfo;
 import io.debezium.connector.sqlserver.SqlServerConnection;
 import io.debezium.connector.sqlserver.SqlServerConnector;
-import io.debezium.connector.sqlserver.SqlServerErrorHandler;
+import io.debezium.connector.sqlserver.SqlServerConnectorConfig;
 import io.debezium.embedded.EmbeddedEngine;
+import io.debezium.heartbeat.Heartbeat;
 import io.debezium.jdbc.JdbcConfiguration;
 import io.debezium.jdbc.JdbcConnection;
-import io.debezium.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.sql.Connection;
 import java.sql.Driver;
-import java.util.Arrays;
+import java.sql.SQLException;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -54,7 +58,9 @@ import java.util.stream.Collectors;
  */
 public class SqlServerEventReader implements EventReader {
   private static final Logger LOG = LoggerFactory.getLogger(SqlServerEventReader.class);
-  private static final String SOURCE_CONNECTOR_PREFIX = "source.connector.";
+  static final String SOURCE_CONNECTOR_PREFIX = "source.connector.";
+  // heartbeats are only sent at the end of snapshots and windows of changes, this just needs to enable them
+  private static final int HEARTBEAT_INTERVAL_MS = 1000;
   private final SqlServerConfig config;
   private final EventEmitter emitter;
   private final DeltaSourceContext context;
@@ -63,6 +69,7 @@ public class SqlServerEventReader implements EventReader {
   private final Map<String, String> debeziumConnectorConfigs;
   private volatile boolean failedStopping;
   private EmbeddedEngine engine;
+  private ReaderContext readerContext;
 
   public SqlServerEventReader(Set<SourceTable> tables, SqlServerConfig config,
                               DeltaSourceContext context, EventEmitter emitter) {
@@ -78,21 +85,21 @@ public class SqlServerEventReader implements EventReader {
 
   @Override
   public void start(Offset offset) {
+    // pipelines deployed before the properties were validated are checked when they start
+    config.validate();
 
     LOG.info("starting event reader with offset:");
     for (Map.Entry<String, String> entry : offset.get().entrySet()) {
       LOG.info(" {} = {}", entry.getKey(), entry.getValue());
     }
-    // load sql server jdbc driver into class loader and use this loaded jdbc class to set the static factory
-    // variable in SqlServerConnection for instantiation purpose later on.
+    // load sql server jdbc driver into class loader, SqlServerConnection and SqlServerErrorHandler look up the
+    // connection factory and class loader built from it through the reader context registry.
     Class<? extends Driver> jdbcDriverClass = context.loadPluginClass(config.getJDBCPluginId());
     String urlPattern = "jdbc:sqlserver://${" + JdbcConfiguration.HOSTNAME + "}:${" +
       JdbcConfiguration.PORT + "};databaseName=${" + JdbcConfiguration.DATABASE + "}";
-    SqlServerConnection.factory = JdbcConnection.patternBasedFactory(urlPattern,
-                                                                     jdbcDriverClass.getName(),
-                                                                     jdbcDriverClass.getClassLoader());
+    JdbcConnection.ConnectionFactory connectionFactory =
+      JdbcConnection.patternBasedFactory(urlPattern, jdbcDriverClass.getName(), jdbcDriverClass.getClassLoader());
 
-    SqlServerErrorHandler.driverClassLoader = jdbcDriverClass.getClassLoader();
     // this is needed since sql server does not return the database information in the record
     String databaseName = config.getDatabase();
 
@@ -107,6 +114,16 @@ public class SqlServerEventReader implements EventReader {
     Map<String, String> state = offset.get(); // this will never be null
     // offset config
     String isSnapshotCompleted = state.getOrDefault(SqlServerConstantOffsetBackingStore.SNAPSHOT_COMPLETED, "");
+    boolean snapshotPending = state.isEmpty() || !"true".equalsIgnoreCase(isSnapshotCompleted);
+    // existing rows are read in chunks after Debezium read the schema, if they were not read yet
+    boolean chunkedSnapshot = config.getReplicateExistingData() && config.getSnapshotParallelism() > 0 &&
+      (snapshotPending || state.containsKey(ChunkedSnapshotReader.TABLE));
+    // changes of the signal table are read to find the signals, but they are not replicated
+    String signalTable = config.getSignalTable();
+    Set<String> includedTables = new HashSet<>(sourceTableMap.keySet());
+    if (signalTable != null && !includedTables.isEmpty()) {
+      includedTables.add(signalTable);
+    }
     String replicationConnectorName = "delta" + context.getInstanceId();
     Configuration.Builder configBuilder = Configuration.create()
       .with("connector.class", SqlServerConnector.class.getName())
@@ -125,11 +142,58 @@ public class SqlServerEventReader implements EventReader {
       .with("database.password", config.getPassword())
       .with("database.history", DBSchemaHistory.class.getName())
       .with("database.dbname", databaseName)
-      .with("table.whitelist", String.join(",", sourceTableMap.keySet()))
+      .with("table.whitelist", String.join(",", includedTables))
       .with("database.server.name", "dummy") // this is the kafka topic for hosted debezium - it doesn't matter
       .with("database.serverTimezone", config.getServerTimezone())
-      .with("snapshot.mode", config.getReplicateExistingData() ? "initial" : "schema_only")
-      .with(SqlServerConstantOffsetBackingStore.REPLICATION_CONNECTOR_NAME, replicationConnectorName);
+      .with("snapshot.mode", config.getReplicateExistingData() && !chunkedSnapshot ? "initial" : "schema_only")
+      .with(SqlServerConstantOffsetBackingStore.REPLICATION_CONNECTOR_NAME, replicationConnectorName)
+      // the tables whose rows were being read again when replication stopped, they are read again from the start
+      .with(TableSnapshotReader.TABLES, snapshotPending ? "" : state.getOrDefault(TableSnapshotReader.TABLES, ""));
+
+    if (signalTable != null) {
+      configBuilder = configBuilder.with(TableSnapshotReader.SIGNAL_TABLE, signalTable);
+    }
+    if (chunkedSnapshot) {
+      // the chunk that was being read when replication stopped, the rows are read again from its start
+      configBuilder = configBuilder
+        .with(ChunkedSnapshotReader.PARALLELISM, config.getSnapshotParallelism())
+        .with(ChunkedSnapshotReader.TABLE, snapshotPending ? "" : state.getOrDefault(ChunkedSnapshotReader.TABLE, ""))
+        .with(ChunkedSnapshotReader.START, snapshotPending ? "" : state.getOrDefault(ChunkedSnapshotReader.START, ""));
+    }
+
+    // only read the selected columns from the change tables
+    for (SourceTable table : tables) {
+      if (table.getSchema() != null && !table.getColumns().isEmpty()) {
+        configBuilder = configBuilder.with(
+          "database." + SqlServerConnection.CHANGE_TABLE_COLUMNS_PREFIX + table.getSchema() + "." + table.getTable(),
+          table.getColumns().stream().map(SourceColumn::getName).collect(Collectors.joining(",")));
+      }
+    }
+
+    if (config.getNetChanges()) {
+      configBuilder = configBuilder.with("database." + SqlServerConnection.CHANGE_TABLE_NET_CHANGES, true);
+    }
+
+    // the streaming source sends a heartbeat once it read all transactions of a window, which tells the record
+    // consumer that the last transaction is complete
+    int maxTransactionSize = config.getGroupTransactions() ? Math.max(1, config.getMaxTransactionSize()) : 0;
+    if (maxTransactionSize > 0) {
+      configBuilder = configBuilder.with(Heartbeat.HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL_MS);
+    }
+
+    // by default the snapshot locks each table exclusively while its schema is read, in snapshot isolation it reads
+    // a consistent version of the tables without taking any locks. Chunks of existing rows are read the same way
+    if (config.getSnapshotIsolation() && (snapshotPending || chunkedSnapshot) &&
+      !debeziumConnectorConfigs.containsKey(SqlServerConnectorConfig.SNAPSHOT_ISOLATION_MODE.name())) {
+      if (isSnapshotIsolationAllowed(connectionFactory, configBuilder.build())) {
+        configBuilder = configBuilder.with(SqlServerConnectorConfig.SNAPSHOT_ISOLATION_MODE,
+                                           SqlServerConnectorConfig.SnapshotIsolationMode.SNAPSHOT.getValue());
+      } else {
+        LOG.warn("Snapshot isolation is not allowed in database '{}', the tables will be locked while their schema "
+                   + "is read. Run 'ALTER DATABASE [{}] SET ALLOW_SNAPSHOT_ISOLATION ON' to allow it.",
+                 databaseName, databaseName);
+      }
+    }
 
     LOG.info("Overriding sql server connector configs with arguments {}", debeziumConnectorConfigs);
     for (Map.Entry<String, String> entry: debeziumConnectorConfigs.entrySet()) {
@@ -138,11 +202,18 @@ public class SqlServerEventReader implements EventReader {
 
     Configuration debeziumConf = configBuilder.build();
 
-    DBSchemaHistory.deltaRuntimeContext = context;
+    // debezium creates the history, connection and error handler itself, they find the context of this reader
+    // through the registry since the engine runs bound to it.
+    readerContext = new ReaderContext(ReaderContextRegistry.getReaderName(context, replicationConnectorName), context,
+                                      debeziumConf, jdbcDriverClass.getClassLoader(), connectionFactory);
+    ReaderContextRegistry.register(readerContext);
 
-    String ddlEventSentStr = state.get(SqlServerOffset.DDL_EVENT_SENT);
-    Set<String> ddlEventSent = Strings.isNullOrEmpty(ddlEventSentStr) ? new HashSet<>() :
-      new HashSet<>(Arrays.asList(ddlEventSentStr.split(SqlServerOffset.DELIMITER)));
+    DdlEventSentState ddlEventSent;
+    try {
+      ddlEventSent = DdlEventSentState.load(context, state);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to load the tables that had DDL events sent.", e);
+    }
 
     /*
      * All snapshot events or schema history record have same position/offset
@@ -150,11 +221,11 @@ public class SqlServerEventReader implements EventReader {
      * will resume from beginning.
      */
     if (offset.get().isEmpty() || !"true".equalsIgnoreCase(isSnapshotCompleted)) {
-      ddlEventSent.clear();
       try {
-        DBSchemaHistory.wipeHistory();
+        ddlEventSent.clear();
+        DBSchemaHistory.wipeHistory(context);
       } catch (IOException e) {
-        throw new RuntimeException("Unable to wipe schema history at start of replication.", e);
+        throw new RuntimeException("Unable to reset schema history and DDL state at start of replication.", e);
       }
     }
 
@@ -166,16 +237,28 @@ public class SqlServerEventReader implements EventReader {
       // Create the engine with this configuration ...
       engine = EmbeddedEngine.create()
         .notifying(new SqlServerRecordConsumer(context, emitter, databaseName, ddlEventSent, sourceTableMap, offset,
-                                               config.getReplicateExistingData()))
+                                               config.getReplicateExistingData(), maxTransactionSize,
+                                               signalTable))
         .using(debeziumConf)
         .using(new NotifyingCompletionCallback(context))
         .build();
-      executorService.submit(engine);
+      executorService.submit(ReaderContextRegistry.bind(readerContext.getName(), engine));
     } finally {
       Thread.currentThread().setContextClassLoader(oldCL);
     }
   }
 
+  private static boolean isSnapshotIsolationAllowed(JdbcConnection.ConnectionFactory connectionFactory,
+                                                    Configuration debeziumConf) {
+    JdbcConfiguration jdbcConfig = JdbcConfiguration.adapt(debeziumConf.subset("database.", true));
+    try (Connection connection = connectionFactory.connect(jdbcConfig)) {
+      return SqlServerTableAssessor.isSnapshotIsolationAllowed(connection, jdbcConfig.getDatabase());
+    } catch (SQLException e) {
+      LOG.warn("Unable to check if snapshot isolation is allowed, the snapshot will use the default isolation.", e);
+      return false;
+    }
+  }
+
   @Override
   public void stop(StopContext stopContext) throws InterruptedException {
     LOG.info("Stopping debezium engine, reason: " + stopContext.getOrigin());
@@ -186,6 +269,9 @@ public class SqlServerEventReader implements EventReader {
       failedStopping = true;
       LOG.warn("Unable to cleanly shutdown reader within the timeout.");
     }
+    if (readerContext != null) {
+      ReaderContextRegistry.unregister(readerContext);
+    }
   }
 
   @VisibleForTesting
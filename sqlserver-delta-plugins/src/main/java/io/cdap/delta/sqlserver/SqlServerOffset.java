@@ -20,26 +20,41 @@ import io.cdap.delta.api.Offset;
 import io.debezium.connector.sqlserver.Lsn;
 import io.debezium.connector.sqlserver.SourceInfo;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
+import javax.annotation.Nullable;
 
 /**
  * Record offset information for SqlServer.
  */
 public class SqlServerOffset {
   static final String DELIMITER = ",";
+  // only present in offsets written before the tables with DDL events sent were kept in DdlEventSentState
   static final String DDL_EVENT_SENT = "ddl_event_sent";
+  static final String DDL_EVENT_SENT_VERSION = "ddl_event_sent_version";
+  // offset keys of the existing rows being read, they are in every offset until the rows are read
+  static final List<String> PROGRESS_KEYS = Arrays.asList(TableSnapshotReader.TABLES, ChunkedSnapshotReader.TABLE,
+                                                          ChunkedSnapshotReader.START);
 
   private final String changeLsn;
   private final String commitLsn;
   private final Boolean isSnapshot;
   private final Boolean isSnapshotCompleted;
-  private final Set<String> ddlEventSent;
+  // where the rows being read resume at, which are not part of Debezium's offset
+  private final Map<String, String> progress;
 
-  SqlServerOffset(Map<String, ?> properties, Set<String> ddlEventSent) {
+  SqlServerOffset(Map<String, ?> properties) {
+    this(properties, Collections.emptyMap());
+  }
+
+  /**
+   * @param progress where the existing rows being read resume at, see {@link #PROGRESS_KEYS}
+   */
+  SqlServerOffset(Map<String, ?> properties, Map<String, String> progress) {
     this.changeLsn = (String) properties.get(SourceInfo.CHANGE_LSN_KEY);
     this.commitLsn = (String) properties.get(SourceInfo.COMMIT_LSN_KEY);
     if (properties.containsKey(SourceInfo.SNAPSHOT_KEY)) {
@@ -52,14 +67,17 @@ public class SqlServerOffset {
     } else {
       this.isSnapshotCompleted = true;
     }
-    this.ddlEventSent = ddlEventSent;
+    this.progress = progress;
   }
 
   boolean isSnapshot() {
     return isSnapshot;
   }
 
-  Offset getAsOffset() {
+  /**
+   * @param ddlEventSentVersion the version of the {@link DdlEventSentState} as of this offset
+   */
+  Offset getAsOffset(int ddlEventSentVersion) {
     Map<String, String> deltaOffset = new HashMap<>();
     if (changeLsn != null) {
       deltaOffset.put(SourceInfo.CHANGE_LSN_KEY, changeLsn);
@@ -73,24 +91,21 @@ public class SqlServerOffset {
     if (isSnapshotCompleted != null) {
       deltaOffset.put(SqlServerConstantOffsetBackingStore.SNAPSHOT_COMPLETED, String.valueOf(isSnapshotCompleted));
     }
-    if (ddlEventSent != null && !ddlEventSent.isEmpty()) {
-      deltaOffset.put(DDL_EVENT_SENT, String.join(DELIMITER, ddlEventSent));
+    deltaOffset.putAll(progress);
+    if (ddlEventSentVersion > 0) {
+      deltaOffset.put(DDL_EVENT_SENT_VERSION, String.valueOf(ddlEventSentVersion));
     }
 
     return new Offset(deltaOffset);
   }
 
-  /**
-   * Returns whether the this {@link SqlServerOffset SqlServerOffset} instance is before or at the specified delta
-   * offset. If it's true that means this {@link SqlServerOffset SqlServerOffset} was once seen by the SQLServer
-   * Debezium connector at the specified delta offset
-   * @param deltaOffset the delta offset to compare
-   * @return whether the this {@link SqlServerOffset SqlServerOffset} instance is before or at the specified delta
-   * offset.
-   */
-  public boolean isBeforeOrAt(Offset deltaOffset) {
-    return Lsn.valueOf(this.changeLsn)
-      .compareTo(Lsn.valueOf(deltaOffset.get().get(SourceInfo.CHANGE_LSN_KEY))) < 1;
+  Lsn getChangeLsn() {
+    return Lsn.valueOf(changeLsn);
+  }
+
+  @Nullable
+  String getCommitLsn() {
+    return commitLsn;
   }
 
   @Override
@@ -106,11 +121,11 @@ public class SqlServerOffset {
       && Objects.equals(commitLsn, that.commitLsn)
       && Objects.equals(isSnapshot, that.isSnapshot)
       && Objects.equals(isSnapshotCompleted, that.isSnapshotCompleted)
-      && Objects.equals(ddlEventSent, that.ddlEventSent);
+      && Objects.equals(progress, that.progress);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(changeLsn, commitLsn, isSnapshot, isSnapshotCompleted, ddlEventSent);
+    return Objects.hash(changeLsn, commitLsn, isSnapshot, isSnapshotCompleted, progress);
   }
 }
@@ -26,52 +26,97 @@ import io.cdap.delta.api.DeltaFailureRuntimeException;
 import io.cdap.delta.api.DeltaSourceContext;
 import io.cdap.delta.api.EventEmitter;
 import io.cdap.delta.api.Offset;
+import io.cdap.delta.api.SourceColumn;
 import io.cdap.delta.api.SourceTable;
+import io.cdap.delta.plugin.common.DBSchemaHistory;
 import io.cdap.delta.plugin.common.Records;
 import io.cdap.delta.plugin.common.SchemaMappingCache;
+import io.debezium.connector.sqlserver.Lsn;
+import io.debezium.connector.sqlserver.SourceInfo;
 import io.debezium.embedded.StopConnectorException;
+import io.debezium.heartbeat.Heartbeat;
 import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.header.Header;
 import org.apache.kafka.connect.source.SourceRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 /**
  * Sql server record consumer
  */
 public class SqlServerRecordConsumer implements Consumer<SourceRecord> {
   private static final Logger LOG = LoggerFactory.getLogger(SqlServerRecordConsumer.class);
+  private static final String HEARTBEAT_TOPIC_PREFIX = Heartbeat.HEARTBEAT_TOPICS_PREFIX.defaultValueAsString();
 
   private final DeltaSourceContext context;
   private final EventEmitter emitter;
   // we need this since there is no way to get the db information from the source record
   private final String databaseName;
   // record tables that already had DDL events sent
-  private final Set<String> ddlEventSent;
+  private final DdlEventSentState ddlEventSent;
   private final Map<String, SourceTable> sourceTableMap;
   private final boolean replicateExistingData;
-  private final Offset latestOffset;
+  // change LSN of the offset replication resumed from, parsed once. Cleared as soon as the stream moves past it,
+  // after which there can be no more duplicates and events skip the check
+  private Lsn resumeLsn;
+  // where the existing rows being read resume at as of the last event, empty if there are none
+  private Map<String, String> progress;
   private final SchemaMappingCache schemaMappingCache;
+  // topic names repeat for every event of a table, so everything derived from them is only computed once
+  private final Map<String, TableContext> tableContexts;
+  // holds the events of the transaction being read when transactions are grouped, null otherwise
+  private final TransactionBuffer transactionBuffer;
+  // the signal table as 'schema.table', its rows are not replicated. Null if there is none
+  private final String signalTable;
 
 
   SqlServerRecordConsumer(DeltaSourceContext context, EventEmitter emitter, String databaseName,
-                          Set<String> ddlEventSent, Map<String, SourceTable> sourceTableMap,
+                          DdlEventSentState ddlEventSent, Map<String, SourceTable> sourceTableMap,
                           Offset latestOffset, boolean replicateExistingData) {
+    this(context, emitter, databaseName, ddlEventSent, sourceTableMap, latestOffset, replicateExistingData, 0);
+  }
+
+  /**
+   * @param maxTransactionSize the number of events of a transaction to hold before emitting them, or 0 to not group
+   *   the events of a transaction
+   */
+  SqlServerRecordConsumer(DeltaSourceContext context, EventEmitter emitter, String databaseName,
+                          DdlEventSentState ddlEventSent, Map<String, SourceTable> sourceTableMap,
+                          Offset latestOffset, boolean replicateExistingData, int maxTransactionSize) {
+    this(context, emitter, databaseName, ddlEventSent, sourceTableMap, latestOffset, replicateExistingData,
+         maxTransactionSize, null);
+  }
+
+  /**
+   * @param signalTable the table signals are inserted into as 'schema.table', or null if there is none
+   */
+  SqlServerRecordConsumer(DeltaSourceContext context, EventEmitter emitter, String databaseName,
+                          DdlEventSentState ddlEventSent, Map<String, SourceTable> sourceTableMap,
+                          Offset latestOffset, boolean replicateExistingData, int maxTransactionSize,
+                          @Nullable String signalTable) {
     this.context = context;
     this.emitter = emitter;
     this.databaseName = databaseName;
     this.ddlEventSent = ddlEventSent;
     this.sourceTableMap = sourceTableMap;
-    this.latestOffset = latestOffset;
+    Lsn lsn = Lsn.valueOf(latestOffset.get().get(SourceInfo.CHANGE_LSN_KEY));
+    this.resumeLsn = lsn.isAvailable() ? lsn : null;
     this.replicateExistingData = replicateExistingData;
+    this.progress = getProgress(latestOffset.get()::get);
     this.schemaMappingCache = new SchemaMappingCache();
+    this.tableContexts = new HashMap<>();
+    this.transactionBuffer = maxTransactionSize > 0 ? new TransactionBuffer(maxTransactionSize, latestOffset) : null;
+    this.signalTable = signalTable;
   }
 
   @Override
@@ -84,16 +129,54 @@ public class SqlServerRecordConsumer implements Consumer<SourceRecord> {
     if (sourceRecord.value() == null) {
       return;
     }
+    String topicName = sourceRecord.topic();
+    if (topicName != null && topicName.startsWith(HEARTBEAT_TOPIC_PREFIX)) {
+      // heartbeats are sent after the snapshot and after every window of changes, by then every transaction read is
+      // complete
+      if (transactionBuffer != null) {
+        SqlServerOffset heartbeatOffset = new SqlServerOffset(sourceRecord.sourceOffset(), progress);
+        transactionBuffer.commit(heartbeatOffset.getAsOffset(ddlEventSent.getVersion()));
+      }
+      return;
+    }
+    // schema history is written in the background, make sure it is persisted before emitting an event whose offset
+    // could be committed
+    DBSchemaHistory.flush();
 
     // ignore duplicated CDC event
     // SQLServer connector will relay the last event at the offset
     // to be safe here we check whether it's before or at the same offset
     // snapshotting will resume from beginning, and the whole table that is partly snapshotted
     // is supposed to be dropped first , thus no need to consider
-    SqlServerOffset sqlServerOffset = new SqlServerOffset(sourceRecord.sourceOffset(), ddlEventSent);
-    if (!sqlServerOffset.isSnapshot() && sqlServerOffset.isBeforeOrAt(latestOffset)) {
-      LOG.debug("Got duplicated event {} ", sourceRecord);
-      return;
+    // existing rows read in chunks or named by signals are read by the streaming source, they have the offset of
+    // the last streamed change and where to resume reading them in their headers
+    progress = getProgress(name -> {
+      Header header = getHeader(sourceRecord, name);
+      return header == null ? null : (String) header.value();
+    });
+    Header rowHeader = getHeader(sourceRecord, TableSnapshotReader.ROW);
+    SqlServerOffset sqlServerOffset = new SqlServerOffset(sourceRecord.sourceOffset(), progress);
+    boolean isSnapshot = sqlServerOffset.isSnapshot() || rowHeader != null
+      || progress.containsKey(ChunkedSnapshotReader.TABLE);
+    if (resumeLsn != null && !isSnapshot) {
+      if (sqlServerOffset.getChangeLsn().compareTo(resumeLsn) <= 0) {
+        LOG.debug("Got duplicated event {} ", sourceRecord);
+        return;
+      }
+      resumeLsn = null;
+    }
+
+    // the events of a transaction are emitted with the offset the last transaction ended at, so that replication
+    // can't resume from the middle of a transaction. The last event of the transaction moves the offset past it
+    Offset eventOffset = sqlServerOffset.getAsOffset(ddlEventSent.getVersion());
+    String transactionId = isSnapshot ? null : sqlServerOffset.getCommitLsn();
+    if (transactionBuffer != null) {
+      if (transactionId == null) {
+        transactionBuffer.commit(eventOffset);
+      } else {
+        transactionBuffer.begin(transactionId, eventOffset);
+        eventOffset = transactionBuffer.getCommittedOffset();
+      }
     }
 
     StructuredRecord val = Records.convert((Struct) sourceRecord.value(), schemaMappingCache);
@@ -110,38 +193,34 @@ public class SqlServerRecordConsumer implements Consumer<SourceRecord> {
       return;
     }
 
-    String topicName = sourceRecord.topic();
     // the topic name will always be like this: [db.server.name].[schema].[table]
     if (topicName == null) {
       return; // safety check to avoid NPE
     }
-    String[] splits = topicName.split("\\.");
-    String schemaName = splits[1];
-    String tableName = splits[2];
-    String sourceTableId = schemaName + "." + tableName;
-    // If the map is empty, we should read all DDL/DML events and columns of all tables
-    boolean readAllTables = sourceTableMap.isEmpty();
-    SourceTable sourceTable = sourceTableMap.get(sourceTableId);
-    if (!readAllTables && sourceTable == null) {
+    TableContext tableContext = tableContexts.computeIfAbsent(topicName, this::createTableContext);
+    if (tableContext == null) {
       // shouldn't happen
       return;
     }
+    String schemaName = tableContext.schemaName;
+    String tableName = tableContext.tableName;
+    String sourceTableId = tableContext.sourceTableId;
+    if (rowHeader != null && Boolean.TRUE.equals(rowHeader.value())) {
+      // the rows of a table named by a signal are read again, it is dropped and created again before them even if it
+      // has none. The event that starts them has no row, the schema of its rows is in the schema of the event
+      Schema schema = tableContext.projectSchema(getSchema(sourceRecord.valueSchema().field("after").schema()));
+      emitCreateTable(tableContext, schema, getPrimaryFields(sourceRecord), eventOffset, isSnapshot, true);
+      markDdlEventSent(sourceTableId);
+      return;
+    }
     if (sourceRecord.key() == null) {
       throw new DeltaFailureRuntimeException(String.format("Table '%s' in database '%s' has no primary key. " +
                                                              "Tables without a primary key are" +
                                                              " not supported.", tableName, databaseName));
     }
 
-    StructuredRecord before = val.get("before");
-    StructuredRecord after = val.get("after");
-    if (!readAllTables) {
-      if (before != null) {
-        before = Records.keepSelectedColumns(before, sourceTable.getColumns());
-      }
-      if (after != null) {
-        after = Records.keepSelectedColumns(after, sourceTable.getColumns());
-      }
-    }
+    StructuredRecord before = tableContext.project(val.get("before"));
+    StructuredRecord after = tableContext.project(val.get("after"));
     StructuredRecord value = op == DMLOperation.Type.DELETE ? before : after;
 
     if (value == null) {
@@ -150,67 +229,30 @@ public class SqlServerRecordConsumer implements Consumer<SourceRecord> {
       return;
     }
 
-    Schema schema = value.getSchema();
     // send the ddl events only if we see the table at the first time
     // Note: the delta app itself have prevented adding CREATE_TABLE operation into DDL blacklist for all the tables.
     if (!ddlEventSent.contains(sourceTableId)) {
-      SqlServerOffset ddlRecordOffset = new SqlServerOffset(sourceRecord.sourceOffset(), ddlEventSent);
-
-      DDLEvent.Builder builder = DDLEvent.builder()
-        .setDatabaseName(databaseName)
-        .setSnapshot(ddlRecordOffset.isSnapshot())
-        .setOffset(ddlRecordOffset.getAsOffset());
-
-      StructuredRecord key = Records.convert((Struct) sourceRecord.key(), schemaMappingCache);
-      List<Schema.Field> fields = key.getSchema().getFields();
-      List<String> primaryFields = new ArrayList<>();
-      if (fields != null && !fields.isEmpty()) {
-        primaryFields = fields.stream().map(Schema.Field::getName).collect(Collectors.toList());
-      }
-
-      try {
-        if (replicateExistingData) {
-          // try to always drop the table before snapshot the schema.
-          emitter.emit(builder.setOperation(DDLOperation.Type.DROP_TABLE)
-                         .setTableName(tableName)
-                         .setSchemaName(schemaName)
-                         .build());
-        }
-
-        // try to emit create database event before create table event
-        emitter.emit(builder.setOperation(DDLOperation.Type.CREATE_DATABASE)
-                       .setSchemaName(schemaName)
-                       .build());
-
-        emitter.emit(builder.setOperation(DDLOperation.Type.CREATE_TABLE)
-                       .setTableName(tableName)
-                       .setSchemaName(schemaName)
-                       .setSchema(schema)
-                       .setPrimaryKey(primaryFields)
-                       .build());
-      } catch (InterruptedException e) {
-        // happens when the event reader is stopped. throwing this exception tells Debezium to stop right away
-        throw new StopConnectorException("Interrupted while emitting an event.");
-      }
+      emitCreateTable(tableContext, value.getSchema(), getPrimaryFields(sourceRecord), eventOffset, isSnapshot,
+                      replicateExistingData);
     }
 
-    if (!readAllTables && sourceTable.getDmlBlacklist().contains(op)) {
+    if (tableContext.isBlacklisted(op)) {
       // do nothing due to it was not set to read all tables and the DML op has been blacklisted for this table
       return;
     }
 
-    ddlEventSent.add(sourceTableId);
-    SqlServerOffset dmlRecordOffset = new SqlServerOffset(sourceRecord.sourceOffset(), ddlEventSent);
+    markDdlEventSent(sourceTableId);
     Long ingestTime = val.get("ts_ms");
+    Offset dmlOffset = sqlServerOffset.getAsOffset(ddlEventSent.getVersion());
     DMLEvent.Builder dmlBuilder = DMLEvent.builder()
-      .setOffset(dmlRecordOffset.getAsOffset())
+      .setOffset(dmlOffset)
       .setOperationType(op)
       .setDatabaseName(databaseName)
       .setSchemaName(schemaName)
       .setTableName(tableName)
       .setRow(value)
-      .setSnapshot(dmlRecordOffset.isSnapshot())
-      .setTransactionId(null)
+      .setSnapshot(isSnapshot)
+      .setTransactionId(transactionId)
       .setIngestTimestamp(ingestTime == null ? 0L : ingestTime);
 
     // It is required for the source to provide the previous row if the operation is 'UPDATE'
@@ -218,11 +260,274 @@ public class SqlServerRecordConsumer implements Consumer<SourceRecord> {
       dmlBuilder.setPreviousRow(before);
     }
 
+    if (transactionBuffer != null) {
+      if (transactionId != null) {
+        transactionBuffer.add(dmlBuilder, dmlOffset);
+        return;
+      }
+      // snapshot events are emitted right away, the next transaction starts from their offset
+      transactionBuffer.commit(dmlOffset);
+    }
+    emit(dmlBuilder.build());
+  }
+
+  /**
+   * Emits the events that create the table, after dropping it if its rows are read.
+   */
+  private void emitCreateTable(TableContext tableContext, Schema schema, List<String> primaryFields,
+                               Offset eventOffset, boolean isSnapshot, boolean drop) {
+    DDLEvent.Builder builder = DDLEvent.builder()
+      .setDatabaseName(databaseName)
+      .setSnapshot(isSnapshot)
+      .setOffset(eventOffset);
+    try {
+      if (drop) {
+        // try to always drop the table before snapshot the schema.
+        emitter.emit(builder.setOperation(DDLOperation.Type.DROP_TABLE)
+                       .setTableName(tableContext.tableName)
+                       .setSchemaName(tableContext.schemaName)
+                       .build());
+      }
+
+      // try to emit create database event before create table event
+      emitter.emit(builder.setOperation(DDLOperation.Type.CREATE_DATABASE)
+                     .setSchemaName(tableContext.schemaName)
+                     .build());
+
+      emitter.emit(builder.setOperation(DDLOperation.Type.CREATE_TABLE)
+                     .setTableName(tableContext.tableName)
+                     .setSchemaName(tableContext.schemaName)
+                     .setSchema(schema)
+                     .setPrimaryKey(primaryFields)
+                     .build());
+    } catch (InterruptedException e) {
+      // happens when the event reader is stopped. throwing this exception tells Debezium to stop right away
+      throw new StopConnectorException("Interrupted while emitting an event.");
+    }
+  }
+
+  private void markDdlEventSent(String sourceTableId) {
+    try {
+      ddlEventSent.add(sourceTableId);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to save the tables that had DDL events sent.", e);
+    }
+  }
+
+  private Schema getSchema(org.apache.kafka.connect.data.Schema rowSchema) {
+    Schema schema = schemaMappingCache.get(rowSchema);
+    if (schema == null) {
+      schema = Records.convert(rowSchema);
+      schema = schema.isNullable() ? schema.getNonNullable() : schema;
+      schemaMappingCache.put(rowSchema, schema);
+    }
+    return schema;
+  }
+
+  private static List<String> getPrimaryFields(SourceRecord sourceRecord) {
+    org.apache.kafka.connect.data.Schema keySchema = sourceRecord.keySchema();
+    if (keySchema == null) {
+      return new ArrayList<>();
+    }
+    return keySchema.fields().stream().map(org.apache.kafka.connect.data.Field::name).collect(Collectors.toList());
+  }
+
+  private void emit(DMLEvent event) {
     try {
-      emitter.emit(dmlBuilder.build());
+      emitter.emit(event);
     } catch (InterruptedException e) {
       // happens when the event reader is stopped. throwing this exception tells Debezium to stop right away
       throw new StopConnectorException("Interrupted while emitting an event.");
     }
   }
+
+  private static Map<String, String> getProgress(Function<String, String> values) {
+    Map<String, String> progress = new HashMap<>();
+    for (String key : SqlServerOffset.PROGRESS_KEYS) {
+      String value = values.apply(key);
+      if (value != null) {
+        progress.put(key, value);
+      }
+    }
+    return progress;
+  }
+
+  @Nullable
+  private static Header getHeader(SourceRecord sourceRecord, String name) {
+    return sourceRecord.headers() == null ? null : sourceRecord.headers().lastWithName(name);
+  }
+
+  /**
+   * Parses the topic name and looks up the table it belongs to.
+   *
+   * @return the context of the table, or null if the table is not replicated
+   */
+  @Nullable
+  private TableContext createTableContext(String topicName) {
+    String[] splits = topicName.split("\\.");
+    String schemaName = splits[1];
+    String tableName = splits[2];
+    String sourceTableId = schemaName + "." + tableName;
+    if (sourceTableId.equals(signalTable)) {
+      return null;
+    }
+    // If the map is empty, we should read all DDL/DML events and columns of all tables
+    if (sourceTableMap.isEmpty()) {
+      return new TableContext(schemaName, tableName, sourceTableId, null);
+    }
+    SourceTable sourceTable = sourceTableMap.get(sourceTableId);
+    return sourceTable == null ? null : new TableContext(schemaName, tableName, sourceTableId, sourceTable);
+  }
+
+  /**
+   * Holds the events of the transaction being read, and emits them together once the transaction is complete.
+   *
+   * Changes are read in commit order, so a transaction is complete once an event of another transaction, a snapshot
+   * event or a heartbeat is seen. Every event but the last is emitted with the offset of the previous transaction, the
+   * last one carries the offset of the last change of its transaction. If a transaction has more events than can be
+   * held, the events are emitted while it is read, still with the offset of the previous transaction.
+   */
+  private final class TransactionBuffer {
+    private final int maxEvents;
+    private final List<DMLEvent.Builder> events;
+    // offset of the last change of the last complete transaction
+    private Offset committedOffset;
+    private String transactionId;
+    // offset of the last change seen of the current transaction
+    private Offset lastOffset;
+    private boolean spilled;
+
+    private TransactionBuffer(int maxEvents, Offset committedOffset) {
+      this.maxEvents = maxEvents;
+      this.events = new ArrayList<>();
+      this.committedOffset = committedOffset;
+    }
+
+    private Offset getCommittedOffset() {
+      return committedOffset;
+    }
+
+    /**
+     * Records a change of the given transaction, after emitting the previous transaction if this one is different.
+     */
+    private void begin(String transactionId, Offset offset) {
+      if (!transactionId.equals(this.transactionId)) {
+        flush();
+        this.transactionId = transactionId;
+      }
+      lastOffset = offset;
+    }
+
+    private void add(DMLEvent.Builder event, Offset offset) {
+      events.add(event);
+      lastOffset = offset;
+      if (events.size() < maxEvents) {
+        return;
+      }
+      if (!spilled) {
+        LOG.warn("Transaction {} has more than {} changes, its changes will be replicated while it is read.",
+                 transactionId, maxEvents);
+        spilled = true;
+      }
+      // the last event is kept, it moves the offset past the transaction once the transaction is complete
+      DMLEvent.Builder last = events.remove(events.size() - 1);
+      for (DMLEvent.Builder builder : events) {
+        emit(builder.setOffset(committedOffset).build());
+      }
+      events.clear();
+      events.add(last);
+    }
+
+    /**
+     * Emits the current transaction, and moves the offset the next transaction is emitted with to the given one.
+     */
+    private void commit(Offset offset) {
+      flush();
+      committedOffset = offset;
+    }
+
+    /**
+     * Emits the events of the current transaction, which must be complete.
+     */
+    private void flush() {
+      if (transactionId == null) {
+        return;
+      }
+      for (int i = 0; i < events.size(); i++) {
+        emit(events.get(i).setOffset(i == events.size() - 1 ? lastOffset : committedOffset).build());
+      }
+      events.clear();
+      committedOffset = lastOffset;
+      transactionId = null;
+      lastOffset = null;
+      spilled = false;
+    }
+  }
+
+  /**
+   * Everything about a table that is needed to turn its change events into delta events.
+   */
+  private static final class TableContext {
+    private final String schemaName;
+    private final String tableName;
+    private final String sourceTableId;
+    // bit i is set if the DML operation with ordinal i is blacklisted
+    private final int dmlBlacklist;
+    // columns to keep, or null to keep all of them
+    private final List<String> columns;
+    // the projected schema of the last record schema seen, schemas are immutable so they are compared by reference
+    private Schema lastSchema;
+    private Schema lastProjectedSchema;
+
+    private TableContext(String schemaName, String tableName, String sourceTableId,
+                         @Nullable SourceTable sourceTable) {
+      this.schemaName = schemaName;
+      this.tableName = tableName;
+      this.sourceTableId = sourceTableId;
+      int blacklist = 0;
+      List<String> selected = null;
+      if (sourceTable != null) {
+        for (DMLOperation.Type type : sourceTable.getDmlBlacklist()) {
+          blacklist |= 1 << type.ordinal();
+        }
+        // If columns set is empty, it means user wanna have all the columns by default.
+        if (!sourceTable.getColumns().isEmpty()) {
+          selected = sourceTable.getColumns().stream().map(SourceColumn::getName).collect(Collectors.toList());
+        }
+      }
+      this.dmlBlacklist = blacklist;
+      this.columns = selected;
+    }
+
+    private boolean isBlacklisted(DMLOperation.Type op) {
+      return (dmlBlacklist & (1 << op.ordinal())) != 0;
+    }
+
+    @Nullable
+    private StructuredRecord project(@Nullable StructuredRecord record) {
+      if (record == null || columns == null) {
+        return record;
+      }
+      StructuredRecord.Builder builder = StructuredRecord.builder(projectSchema(record.getSchema()));
+      for (String column : columns) {
+        builder.set(column, record.get(column));
+      }
+      return builder.build();
+    }
+
+    private Schema projectSchema(Schema schema) {
+      if (columns == null) {
+        return schema;
+      }
+      if (schema != lastSchema) {
+        List<Schema.Field> fields = new ArrayList<>(columns.size());
+        for (String column : columns) {
+          fields.add(schema.getField(column));
+        }
+        lastProjectedSchema = Schema.recordOf(schema.getRecordName(), fields);
+        lastSchema = schema;
+      }
+      return lastProjectedSchema;
+    }
+  }
 }
@@ -17,25 +17,39 @@
 package io.cdap.delta.sqlserver;
 
 import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.delta.api.assessment.Assessment;
 import io.cdap.delta.api.assessment.ColumnAssessment;
 import io.cdap.delta.api.assessment.ColumnDetail;
 import io.cdap.delta.api.assessment.ColumnSuggestion;
 import io.cdap.delta.api.assessment.ColumnSupport;
+import io.cdap.delta.api.assessment.Problem;
 import io.cdap.delta.api.assessment.TableAssessment;
 import io.cdap.delta.api.assessment.TableAssessor;
 import io.cdap.delta.api.assessment.TableDetail;
 import io.cdap.delta.plugin.common.ColumnEvaluation;
+import io.cdap.delta.plugin.common.DriverCleanup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import javax.annotation.Nullable;
 
 /**
  * Sql server table assessor
  */
 public class SqlServerTableAssessor implements TableAssessor<TableDetail> {
+  private static final Logger LOG = LoggerFactory.getLogger(SqlServerTableAssessor.class);
   static final String COLUMN_LENGTH = "COLUMN_LENGTH";
   static final String SCALE = "SCALE";
   static final String TYPE_NAME = "TYPE_NAME";
@@ -44,6 +58,54 @@ public class SqlServerTableAssessor implements TableAssessor<TableDetail> {
   static final String DATETIME2 = "DATETIME2";
   public static final int MAX_SUPPORTED_SCALE = 6;
   public static final int MILLIS_SCALE = 3;
+  static final String NET_CHANGES = "Net Changes";
+  static final String NET_CHANGES_NOT_SUPPORTED = "Net Changes Not Supported";
+  static final String SNAPSHOT_ISOLATION_NOT_ALLOWED = "Snapshot Isolation Not Allowed";
+  // 1 means ON, the other states are OFF and the transitions between ON and OFF
+  private static final String SNAPSHOT_ISOLATION_STATE =
+    "SELECT snapshot_isolation_state FROM sys.databases WHERE name = ?";
+
+  private final boolean netChanges;
+  // only set if the database settings are checked
+  @Nullable
+  private final SqlServerConfig config;
+  @Nullable
+  private final DriverCleanup driverCleanup;
+
+  public SqlServerTableAssessor() {
+    this(false);
+  }
+
+  public SqlServerTableAssessor(boolean netChanges) {
+    this.netChanges = netChanges;
+    this.config = null;
+    this.driverCleanup = null;
+  }
+
+  /**
+   * Creates an assessor that also checks the settings of the database the config connects to.
+   */
+  public SqlServerTableAssessor(SqlServerConfig config, DriverCleanup driverCleanup) {
+    this.netChanges = config.getNetChanges();
+    this.config = config;
+    this.driverCleanup = driverCleanup;
+  }
+
+  @Override
+  public Assessment assess() {
+    List<Problem> featureProblems = new ArrayList<>();
+    if (config != null && config.getSnapshotIsolation()) {
+      checkSnapshotIsolation().ifPresent(featureProblems::add);
+    }
+    return new Assessment(featureProblems, Collections.emptyList());
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (driverCleanup != null) {
+      driverCleanup.close();
+    }
+  }
 
   @Override
   public TableAssessment assess(TableDetail tableDetail) {
@@ -52,7 +114,53 @@ public class SqlServerTableAssessor implements TableAssessor<TableDetail> {
       columnAssessments.add(evaluateColumn(columnDetail).getAssessment());
     }
 
-    return new TableAssessment(columnAssessments, tableDetail.getFeatures());
+    List<Problem> features = tableDetail.getFeatures();
+    // the table registry reports tables that can't be read as net changes, every change is read for those
+    if (netChanges && features.stream().noneMatch(problem -> NET_CHANGES_NOT_SUPPORTED.equals(problem.getName()))) {
+      String table = tableDetail.getSchema() == null ? tableDetail.getTable()
+                                                     : tableDetail.getSchema() + "." + tableDetail.getTable();
+      features = new ArrayList<>(features);
+      features.add(
+        new Problem(NET_CHANGES,
+                    String.format("Only the net changes of table '%s' in database '%s' will be replicated.",
+                                  table, tableDetail.getDatabase()),
+                    "Disable net changes to replicate every change",
+                    "Several changes to a row that are read together are replicated as one change, and updates do not "
+                      + "have the values of the row before the update"));
+    }
+    return new TableAssessment(columnAssessments, features);
+  }
+
+  /**
+   * @return whether the database allows transactions in SNAPSHOT isolation
+   */
+  static boolean isSnapshotIsolationAllowed(Connection connection, String database) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(SNAPSHOT_ISOLATION_STATE)) {
+      statement.setString(1, database);
+      try (ResultSet rs = statement.executeQuery()) {
+        return rs.next() && rs.getInt(1) == 1;
+      }
+    }
+  }
+
+  private Optional<Problem> checkSnapshotIsolation() {
+    String database = config.getDatabase();
+    try (Connection connection = DriverManager.getConnection(config.getJdbcURL())) {
+      if (isSnapshotIsolationAllowed(connection, database)) {
+        return Optional.empty();
+      }
+    } catch (Exception e) {
+      String msg = String.format("Unable to check if snapshot isolation is allowed in database '%s'", database);
+      LOG.error(msg, e);
+      return Optional.of(
+        new Problem("Unable To Check Snapshot Isolation", msg, "Check database connectivity and user permissions",
+                    "The replicated tables might be locked while their schema is read"));
+    }
+    return Optional.of(
+      new Problem(SNAPSHOT_ISOLATION_NOT_ALLOWED,
+                  String.format("Snapshot isolation is not allowed in database '%s'.", database),
+                  String.format("Run 'ALTER DATABASE [%s] SET ALLOW_SNAPSHOT_ISOLATION ON'", database),
+                  "The replicated tables will be locked while their schema is read, blocking writes to them"));
   }
 
   // This is based on https://docs.microsoft.com/en-us/sql/connect/jdbc/using-basic-data-types?view=sql-server-ver15
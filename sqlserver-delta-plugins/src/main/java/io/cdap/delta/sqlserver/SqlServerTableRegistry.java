@@ -36,6 +36,7 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.JDBCType;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -58,9 +59,7 @@ public class SqlServerTableRegistry implements TableRegistry {
   private final DriverCleanup driverCleanup;
 
   public SqlServerTableRegistry(SqlServerConfig config, DriverCleanup driverCleanup) {
-    this.jdbcUrl = String.format("jdbc:sqlserver://%s:%d;databaseName=%s;user=%s;password=%s",
-                                 config.getHost(), config.getPort(), config.getDatabase(), config.getUser(),
-                                 config.getPassword());
+    this.jdbcUrl = config.getJdbcURL();
     this.config = config;
     this.driverCleanup = driverCleanup;
   }
@@ -141,6 +140,9 @@ public class SqlServerTableRegistry implements TableRegistry {
           new Problem("Unable To Check If CDC Was Enabled", msg,
                       "Check database connectivity and table information", null));
       }
+      if (config.getNetChanges()) {
+        checkNetChanges(connection, db, schema, table).ifPresent(missingFeatures::add);
+      }
       return builder.setFeatures(missingFeatures).build();
     } catch (SQLException e) {
       throw new IOException(e.getMessage(), e);
@@ -167,6 +169,37 @@ public class SqlServerTableRegistry implements TableRegistry {
     driverCleanup.close();
   }
 
+  private Optional<Problem> checkNetChanges(Connection connection, String db, @Nullable String schema,
+                                            String table) {
+    String query = "SELECT ct.supports_net_changes FROM cdc.change_tables ct "
+      + "JOIN sys.tables t ON ct.source_object_id = t.object_id "
+      + "JOIN sys.schemas s ON t.schema_id = s.schema_id WHERE t.name = ?"
+      + (schema == null ? "" : " AND s.name = ?");
+    String tableName = schema == null ? table : schema + "." + table;
+    try (PreparedStatement statement = connection.prepareStatement(query)) {
+      statement.setString(1, table);
+      if (schema != null) {
+        statement.setString(2, schema);
+      }
+      try (ResultSet rs = statement.executeQuery()) {
+        // a table has two capture instances while its schema changes, net changes are read from those supporting them
+        while (rs.next()) {
+          if (rs.getBoolean(1)) {
+            return Optional.empty();
+          }
+        }
+      }
+    } catch (Exception e) {
+      LOG.warn("Unable to check if CDC for table '{}' in database '{}' supports net changes", tableName, db, e);
+    }
+    return Optional.of(
+      new Problem(SqlServerTableAssessor.NET_CHANGES_NOT_SUPPORTED,
+                  String.format("The CDC feature for table '%s' in database '%s' was not enabled with net changes "
+                                  + "support.", tableName, db),
+                  "Enable CDC for the table with @supports_net_changes = 1",
+                  "Every change to the table will be replicated"));
+  }
+
   private Optional<TableDetail.Builder> getTableDetailBuilder(DatabaseMetaData dbMeta, String db,
     @Nullable String schema, String table) throws SQLException {
     List<ColumnDetail> columns = new ArrayList<>();
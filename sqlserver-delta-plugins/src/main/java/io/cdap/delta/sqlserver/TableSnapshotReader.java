@@ -0,0 +1,292 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.sqlserver;
+
+import io.cdap.delta.plugin.common.SnapshotSignal;
+import io.debezium.config.Configuration;
+import io.debezium.connector.sqlserver.SqlServerConnection;
+import io.debezium.connector.sqlserver.SqlServerDatabaseSchema;
+import io.debezium.connector.sqlserver.SqlServerOffsetContext;
+import io.debezium.data.Envelope;
+import io.debezium.pipeline.EventDispatcher;
+import io.debezium.pipeline.spi.ChangeRecordEmitter;
+import io.debezium.pipeline.spi.OffsetContext;
+import io.debezium.relational.Column;
+import io.debezium.relational.SnapshotChangeRecordEmitter;
+import io.debezium.relational.Table;
+import io.debezium.relational.TableId;
+import io.debezium.schema.DataCollectionSchema;
+import io.debezium.util.Clock;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.header.ConnectHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the existing rows of tables named by signals while changes are streamed, one chunk of primary keys at a time
+ * in between windows of changes.
+ *
+ * Streaming is paused while a chunk is read, and the chunk is read after every change up to the streamed position was
+ * committed, so its rows are at least as recent as the changes streamed before them. Changes made after the
+ * streamed position are streamed after the rows, whether the rows already have them or not, so each row ends up in
+ * the same state as in the source.
+ *
+ * Each table starts with an event without a row, so the record consumer drops and creates it again even if it has no
+ * rows. The tables still to be read are in a header of every event until all of them are read, so the record consumer
+ * can keep them in its offsets. A restarted reader reads the table it was in again from its first row.
+ */
+public class TableSnapshotReader {
+  public static final String SIGNAL_TABLE = "signal.table";
+  public static final String TABLES = "snapshot.tables";
+  public static final String CHUNK_SIZE = "snapshot.chunk.size";
+  // header of the events of this reader, true on the event without a row that starts a table, false on its rows
+  static final String ROW = "snapshot.row";
+  static final int DEFAULT_CHUNK_SIZE = 10000;
+  private static final Logger LOG = LoggerFactory.getLogger(TableSnapshotReader.class);
+
+  private final String signalTable;
+  private final int chunkSize;
+  private final Deque<String> queue;
+  // the table being read as 'schema.table', or null if there is none
+  private String table;
+  // the primary key of the last row read of the table, or null if none was read yet
+  private Object[] lastKey;
+
+  TableSnapshotReader(@Nullable String signalTable, Collection<String> tables, int chunkSize) {
+    this.signalTable = signalTable;
+    this.chunkSize = Math.max(1, chunkSize);
+    this.queue = new ArrayDeque<>(tables);
+    this.table = queue.poll();
+    if (table != null) {
+      LOG.info("Reading the rows of tables {} again, starting with table {}.", tables, table);
+    }
+  }
+
+  /**
+   * Creates a reader from the configuration of the connector, which resumes at the tables it has to read.
+   */
+  public static TableSnapshotReader create(Configuration config) {
+    String signalTable = config.getString(SIGNAL_TABLE);
+    return new TableSnapshotReader(signalTable == null || signalTable.isEmpty() ? null : signalTable,
+                                   SnapshotSignal.decode(config.getString(TABLES)),
+                                   config.getInteger(CHUNK_SIZE, DEFAULT_CHUNK_SIZE));
+  }
+
+  /**
+   * @return whether changes of the table are signals
+   */
+  public boolean isSignal(TableId tableId) {
+    return signalTable != null && signalTable.equals(tableId.schema() + "." + tableId.table());
+  }
+
+  /**
+   * Handles a row inserted into the signal table, by adding the tables named by a snapshot signal to the tables to
+   * read.
+   */
+  public void signal(Table signals, Object[] row) {
+    Column type = signals.columnWithName(SnapshotSignal.TYPE);
+    Column data = signals.columnWithName(SnapshotSignal.DATA);
+    if (type == null || data == null) {
+      LOG.warn("Signal table {} does not have the columns '{}' and '{}', signals are ignored.",
+               signalTable, SnapshotSignal.TYPE, SnapshotSignal.DATA);
+      return;
+    }
+    List<String> added = new ArrayList<>();
+    for (String name : SnapshotSignal.getTables(row[type.position() - 1], row[data.position() - 1])) {
+      if (!queue.contains(name)) {
+        queue.add(name);
+        added.add(name);
+      }
+    }
+    if (!added.isEmpty()) {
+      LOG.info("Reading the rows of tables {} again.", added);
+    }
+    if (table == null) {
+      table = queue.poll();
+    }
+  }
+
+  /**
+   * @return whether there are rows to read
+   */
+  public boolean isPending() {
+    return table != null;
+  }
+
+  /**
+   * @return an emitter of the events of the given one, which adds the tables still to be read to them
+   */
+  public ChangeRecordEmitter withProgress(ChangeRecordEmitter emitter) {
+    return table == null ? emitter : new HeaderEmitter(emitter, headers(null));
+  }
+
+  /**
+   * Reads the next chunk of the table being read, and dispatches its rows as read events at the given offset.
+   */
+  public void readChunk(SqlServerConnection connection, SqlServerDatabaseSchema schema,
+                        SqlServerOffsetContext offsetContext, EventDispatcher<TableId> dispatcher, Clock clock)
+    throws SQLException, InterruptedException {
+    TableId tableId = schema.tableIds().stream()
+      .filter(id -> table.equals(id.schema() + "." + id.table()))
+      .findFirst().orElse(null);
+    if (tableId == null) {
+      LOG.warn("Table {} is not replicated, its rows are not read again.", table);
+      nextTable();
+      return;
+    }
+    if (lastKey == null) {
+      // the table is dropped and created again before its rows are read, whether it has any or not
+      offsetContext.event(tableId, clock.currentTimeAsInstant());
+      dispatcher.dispatchDataChangeEvent(tableId, new TableStartEmitter(offsetContext, clock, headers(true)));
+    }
+    Table definition = schema.tableFor(tableId);
+    List<Column> columns = definition.columns();
+    List<Column> keys = definition.primaryKeyColumns();
+    if (keys.isEmpty()) {
+      // rows of tables without a primary key are read with a single query, and dispatched as they are read
+      ChunkQuery.readAll(connection.connection(), definition,
+                         row -> dispatch(tableId, row, offsetContext, dispatcher, clock));
+      nextTable();
+      return;
+    }
+    String query = getQuery(definition, keys, chunkSize, lastKey != null);
+    List<Object[]> rows = connection.prepareQueryAndMap(query, statement -> setParameters(statement, lastKey), rs -> {
+      List<Object[]> result = new ArrayList<>();
+      while (rs.next()) {
+        result.add(ChunkQuery.readRow(rs, columns));
+      }
+      return result;
+    });
+
+    for (Object[] row : rows) {
+      dispatch(tableId, row, offsetContext, dispatcher, clock);
+    }
+    if (rows.size() < chunkSize) {
+      nextTable();
+    } else {
+      Object[] last = rows.get(rows.size() - 1);
+      lastKey = keys.stream().map(key -> last[key.position() - 1]).toArray();
+    }
+  }
+
+  private void dispatch(TableId tableId, Object[] row, SqlServerOffsetContext offsetContext,
+                        EventDispatcher<TableId> dispatcher, Clock clock) throws InterruptedException {
+    offsetContext.event(tableId, clock.currentTimeAsInstant());
+    ChangeRecordEmitter emitter = new SnapshotChangeRecordEmitter(offsetContext, row, clock);
+    dispatcher.dispatchDataChangeEvent(tableId, new HeaderEmitter(emitter, headers(false)));
+  }
+
+  private void nextTable() {
+    LOG.info("Read the rows of table {} again.", table);
+    table = queue.poll();
+    lastKey = null;
+  }
+
+  private ConnectHeaders headers(@Nullable Boolean firstRow) {
+    List<String> tables = new ArrayList<>();
+    tables.add(table);
+    tables.addAll(queue);
+    ConnectHeaders headers = new ConnectHeaders();
+    headers.addString(TABLES, SnapshotSignal.encode(tables));
+    if (firstRow != null) {
+      headers.addBoolean(ROW, firstRow);
+    }
+    return headers;
+  }
+
+  /**
+   * @return the query of the chunk after the given key, ordered by primary key
+   */
+  static String getQuery(Table table, List<Column> keys, int limit, boolean afterKey) {
+    return ChunkQuery.select(table, limit, afterKey ? Collections.singletonList(ChunkQuery.compare(keys, ">", false))
+      : Collections.emptyList(), keys);
+  }
+
+  static void setParameters(PreparedStatement statement, @Nullable Object[] key) throws SQLException {
+    if (key != null) {
+      ChunkQuery.bind(statement, 1, key, false);
+    }
+  }
+
+  /**
+   * Emits a read event without a row, which starts the rows of a table that are read again.
+   */
+  static final class TableStartEmitter implements ChangeRecordEmitter {
+    private final OffsetContext offsetContext;
+    private final Clock clock;
+    private final ConnectHeaders headers;
+
+    TableStartEmitter(OffsetContext offsetContext, Clock clock, ConnectHeaders headers) {
+      this.offsetContext = offsetContext;
+      this.clock = clock;
+      this.headers = headers;
+    }
+
+    @Override
+    public void emitChangeRecords(DataCollectionSchema schema, Receiver receiver) throws InterruptedException {
+      Struct value = new Struct(schema.getEnvelopeSchema().schema())
+        .put(Envelope.FieldName.OPERATION, Envelope.Operation.READ.code())
+        .put(Envelope.FieldName.SOURCE, offsetContext.getSourceInfo())
+        .put(Envelope.FieldName.TIMESTAMP, clock.currentTimeInMillis());
+      receiver.changeRecord(schema, Envelope.Operation.READ, null, value, offsetContext, headers);
+    }
+
+    @Override
+    public OffsetContext getOffset() {
+      return offsetContext;
+    }
+  }
+
+  /**
+   * Adds headers to the events of an emitter.
+   */
+  static final class HeaderEmitter implements ChangeRecordEmitter {
+    private final ChangeRecordEmitter emitter;
+    private final ConnectHeaders headers;
+
+    HeaderEmitter(ChangeRecordEmitter emitter, ConnectHeaders headers) {
+      this.emitter = emitter;
+      this.headers = headers;
+    }
+
+    @Override
+    public void emitChangeRecords(DataCollectionSchema schema, Receiver receiver) throws InterruptedException {
+      emitter.emitChangeRecords(schema, (recordSchema, operation, key, value, offset, recordHeaders) -> {
+        ConnectHeaders merged = new ConnectHeaders(headers);
+        if (recordHeaders != null) {
+          recordHeaders.forEach(merged::add);
+        }
+        receiver.changeRecord(recordSchema, operation, key, value, offset, merged);
+      });
+    }
+
+    @Override
+    public OffsetContext getOffset() {
+      return emitter.getOffset();
+    }
+  }
+}
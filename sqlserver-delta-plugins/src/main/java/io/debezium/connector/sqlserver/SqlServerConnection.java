@@ -6,6 +6,8 @@
 
 package io.debezium.connector.sqlserver;
 
+import io.cdap.delta.plugin.common.ReaderContextRegistry;
+import io.cdap.delta.sqlserver.ParallelQueryExecutor;
 import io.debezium.config.CommonConnectorConfig;
 import io.debezium.config.Configuration;
 import io.debezium.jdbc.JdbcConfiguration;
@@ -29,13 +31,19 @@ import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
 /**
  * {@link JdbcConnection} extension to be used with Microsoft SQL Server
@@ -47,6 +55,15 @@ public class SqlServerConnection extends JdbcConnection {
 
   public static final String SERVER_TIMEZONE_PROP_NAME = "server.timezone";
   public static final String INSTANCE_NAME = "instance";
+  // Note: this is a change from the original file. Number of connections change tables are queried over,
+  // more than one queries them in parallel.
+  public static final String CHANGE_TABLE_QUERY_CONNECTIONS = "cdc.query.connections";
+  // Note: this is a change from the original file. Prefix of the comma separated list of columns to read from the
+  // change table of a table, followed by '<schema>.<table>'. Other columns are not queried.
+  public static final String CHANGE_TABLE_COLUMNS_PREFIX = "cdc.columns.";
+  // Note: this is a change from the original file. Whether to read the net changes of every poll window, for the
+  // tables whose capture instance supports them, instead of every change.
+  public static final String CHANGE_TABLE_NET_CHANGES = "cdc.net.changes";
 
   private static final String GET_DATABASE_NAME = "SELECT db_name()";
 
@@ -58,9 +75,21 @@ public class SqlServerConnection extends JdbcConnection {
   private static final String LOCK_TABLE = "SELECT * FROM [#] WITH (TABLOCKX)";
   private static final String SQL_SERVER_VERSION = "SELECT @@VERSION AS 'SQL Server Version'";
   private final String lsnToTimestamp;
+  // Note: this is a change from the original file. Resolves the timestamps of a batch of commit LSNs at once.
+  private final String lsnToTimestampBatch;
+  private static final int LSN_TO_TIMESTAMP_BATCH_SIZE = 1000;
   private static final String INCREMENT_LSN = "SELECT sys.fn_cdc_increment_lsn(?)";
+  // Note: this is a change from the original file. Finds the LSN of the last of a number of commits.
+  private static final String GET_WINDOW_END_LSN = "SELECT MAX(start_lsn) FROM (SELECT TOP (?) start_lsn"
+    + " FROM cdc.lsn_time_mapping WHERE start_lsn >= ? AND start_lsn <= ? ORDER BY start_lsn) t";
   private static final String GET_ALL_CHANGES_FOR_TABLE
     = "SELECT * FROM cdc.[fn_cdc_get_all_changes_#](?, ?, N'all update old')";
+  // Note: this is a change from the original file. The CDC metadata columns that come before the data columns in
+  // the result of fn_cdc_get_all_changes, they are always read.
+  private static final List<String> CHANGE_TABLE_METADATA_COLUMNS =
+    Collections.unmodifiableList(Arrays.asList("__$start_lsn", "__$seqval", "__$operation", "__$update_mask"));
+  private static final Pattern MISSING_NET_CHANGES_FUNCTION_ERROR =
+    Pattern.compile("Invalid object name 'cdc.fn_cdc_get_net_changes_(.*)'\\.");
   private static final String GET_LIST_OF_CDC_ENABLED_TABLES = "EXEC sys.sp_cdc_help_change_data_capture";
   private static final String GET_LIST_OF_NEW_CDC_ENABLED_TABLES
     = "SELECT * FROM cdc.change_tables WHERE start_lsn BETWEEN ? AND ?";
@@ -73,10 +102,6 @@ public class SqlServerConnection extends JdbcConnection {
     + JdbcConfiguration.PORT + "};databaseName=${"
     + JdbcConfiguration.DATABASE + "}";
 
-  // Note: this line is the only change from the original file. Renamed variable to factory and
-  // made it public and non-final
-  public static ConnectionFactory factory;
-
   /**
    * actual name of the database, which could differ in casing from the database name given in the connector config.
    */
@@ -88,6 +113,24 @@ public class SqlServerConnection extends JdbcConnection {
 
   private final BoundedConcurrentHashMap<Lsn, Instant> lsnToInstantCache;
   private final SqlServerDefaultValueConverter defaultValueConverter;
+  private final ConnectionFactory connectionFactory;
+  private final Supplier<ClassLoader> classLoaderSupplier;
+  private final int changeTableQueryConnections;
+  private final Map<String, Set<String>> changeTableColumns;
+  private final boolean netChanges;
+  // capture instances that were enabled with net changes support
+  private final Set<String> netChangesCaptureInstances = ConcurrentHashMap.newKeySet();
+  // Note: this is a change from the original file. Metadata of capture instances, keyed by capture instance and change
+  // table object id. It only changes when capture instances are created, so it is cleared when new change tables are
+  // reported.
+  private final Map<String, Table> sourceTableSchemas = new ConcurrentHashMap<>();
+  private final Map<String, Table> changeTableSchemas = new ConcurrentHashMap<>();
+  private final Map<String, Lsn> minLsns = new ConcurrentHashMap<>();
+  private ParallelQueryExecutor changeTableQueryExecutor;
+  private volatile boolean batchLsnToTimestamp = true;
+  private volatile boolean windowChanges = true;
+  // the timestamps of the last batch of commit LSNs that was resolved
+  private volatile Map<Lsn, Instant> lsnToInstantBatch = Collections.emptyMap();
 
   /**
    * Creates a new connection using the supplied configuration.
@@ -114,16 +157,27 @@ public class SqlServerConnection extends JdbcConnection {
   public SqlServerConnection(Configuration config, Clock clock, SourceTimestampMode sourceTimestampMode,
                              SqlServerValueConverters valueConverters,
                              Supplier<ClassLoader> classLoaderSupplier) {
-    super(config, factory, classLoaderSupplier);
+    // Note: this is a change from the original file. The connection factory loads the jdbc driver from the driver
+    // plugin, it comes from the event reader this connection is created for.
+    super(config, ReaderContextRegistry.requireCurrent().getConnectionFactory(), classLoaderSupplier);
+    this.connectionFactory = ReaderContextRegistry.requireCurrent().getConnectionFactory();
+    this.classLoaderSupplier = classLoaderSupplier;
     lsnToInstantCache = new BoundedConcurrentHashMap<>(100);
     realDatabaseName = retrieveRealDatabaseName();
     boolean supportsAtTimeZone = supportsAtTimeZone();
     transactionTimezone = retrieveTransactionTimezone(supportsAtTimeZone);
     lsnToTimestamp = getLsnToTimestamp(supportsAtTimeZone);
+    lsnToTimestampBatch = getLsnToTimestampBatch(supportsAtTimeZone);
     this.clock = clock;
     this.sourceTimestampMode = sourceTimestampMode;
     defaultValueConverter = new SqlServerDefaultValueConverter(this::connection, valueConverters);
     this.queryFetchSize = config().getInteger(CommonConnectorConfig.QUERY_FETCH_SIZE);
+    this.changeTableQueryConnections = config().getInteger(CHANGE_TABLE_QUERY_CONNECTIONS, 1);
+    this.changeTableColumns = new HashMap<>();
+    config().subset(CHANGE_TABLE_COLUMNS_PREFIX, true).asMap().forEach((table, columns) -> {
+      changeTableColumns.put(table, new HashSet<>(Arrays.asList(columns.split(","))));
+    });
+    this.netChanges = config().getBoolean(CHANGE_TABLE_NET_CHANGES, false);
   }
 
   /**
@@ -144,6 +198,17 @@ public class SqlServerConnection extends JdbcConnection {
     return lsnToTimestamp;
   }
 
+  /**
+   * Note: this is a change from the original file.
+   * Returns the query for the timestamps of the commit LSNs starting at a given LSN, normalized to UTC the same way
+   * as {@link #getLsnToTimestamp(boolean)}.
+   */
+  private static String getLsnToTimestampBatch(boolean supportsAtTimeZone) {
+    return "SELECT TOP (" + LSN_TO_TIMESTAMP_BATCH_SIZE + ") start_lsn, tran_end_time"
+      + (supportsAtTimeZone ? " AT TIME ZONE 'UTC'" : "")
+      + " FROM cdc.lsn_time_mapping WHERE start_lsn >= ? ORDER BY start_lsn";
+  }
+
   /**
    * @return the current largest log sequence number
    */
@@ -202,7 +267,13 @@ public class SqlServerConnection extends JdbcConnection {
 
     int idx = 0;
     for (SqlServerChangeTable changeTable : changeTables) {
-      final String query = GET_ALL_CHANGES_FOR_TABLE.replace(STATEMENTS_PLACEHOLDER, changeTable.getCaptureInstance());
+      // Note: this is a change from the original file. Only the selected columns are queried, and only the net
+      // changes if they are enabled.
+      final List<String> columns = getColumnsToQuery(changeTable);
+      final String query = isNetChanges(changeTable)
+        ? getNetChangesQuery(changeTable.getCaptureInstance(),
+                             columns == null ? changeTable.getCapturedColumns() : columns)
+        : getChangesQuery(changeTable.getCaptureInstance(), columns);
       queries[idx] = query;
       // If the table was added in the middle of queried buffer we need
       // to adjust from to the first LSN available
@@ -218,13 +289,185 @@ public class SqlServerConnection extends JdbcConnection {
 
       idx++;
     }
-    prepareQuery(queries, preparers, consumer);
+    // Note: this is a change from the original file. The consumer merges the result sets by change position, so they
+    // can be fetched over several connections at the same time without affecting the order of events.
+    try {
+      if (changeTableQueryConnections > 1 && changeTables.length > 1) {
+        getChangeTableQueryExecutor().prepareQuery(queries, preparers, consumer);
+        return;
+      }
+      prepareQuery(queries, preparers, consumer);
+    } catch (SQLException e) {
+      // Note: this is a change from the original file. The cleanup job may have moved the minimum LSN of a table past
+      // the cached one, read it again on the next attempt.
+      minLsns.clear();
+      // Note: this is a change from the original file. The streaming source recognizes a capture instance that was
+      // dropped by the name of the all changes function, so the error is reported the same way for net changes.
+      Matcher matcher = MISSING_NET_CHANGES_FUNCTION_ERROR.matcher(String.valueOf(e.getMessage()));
+      if (matcher.matches()) {
+        throw new SQLException("Invalid object name 'cdc.fn_cdc_get_all_changes_" + matcher.group(1) + "'.",
+                               e.getSQLState(), e.getErrorCode(), e);
+      }
+      throw e;
+    }
+  }
+
+  // Note: this is a change from the original file.
+  private boolean isNetChanges(SqlServerChangeTable changeTable) {
+    return netChanges && changeTable.getCapturedColumns() != null
+      && netChangesCaptureInstances.contains(changeTable.getCaptureInstance());
+  }
+
+  // Note: this is a change from the original file.
+  private synchronized ParallelQueryExecutor getChangeTableQueryExecutor() {
+    if (changeTableQueryExecutor == null) {
+      List<JdbcConnection> connections = new ArrayList<>(changeTableQueryConnections);
+      for (int i = 0; i < changeTableQueryConnections; i++) {
+        connections.add(createConnection());
+      }
+      changeTableQueryExecutor = new ParallelQueryExecutor(connections);
+    }
+    return changeTableQueryExecutor;
+  }
+
+  /**
+   * Note: this is a change from the original file.
+   * Creates another connection to the same database, to run queries in parallel with this one.
+   */
+  public JdbcConnection createConnection() {
+    return new JdbcConnection(config(), connectionFactory, classLoaderSupplier);
+  }
+
+  // Note: this is a change from the original file. Closes the connections used to query change tables in parallel.
+  @Override
+  public synchronized void close() throws SQLException {
+    if (changeTableQueryExecutor != null) {
+      changeTableQueryExecutor.close();
+      changeTableQueryExecutor = null;
+    }
+    super.close();
+  }
+
+  /**
+   * Note: this is a change from the original file.
+   * Returns the data columns to read from a change table: the selected columns and the primary key, in the order
+   * they were captured.
+   *
+   * @return the columns to read, or null to read all of them
+   */
+  @Nullable
+  List<String> getColumnsToQuery(SqlServerChangeTable changeTable) {
+    TableId tableId = changeTable.getSourceTableId();
+    Set<String> selected = changeTableColumns.get(tableId.schema() + "." + tableId.table());
+    Table sourceTable = changeTable.getSourceTable();
+    if (selected == null || sourceTable == null || changeTable.getCapturedColumns() == null) {
+      return null;
+    }
+    List<String> keyColumns = sourceTable.primaryKeyColumnNames();
+    return changeTable.getCapturedColumns().stream()
+      .filter(column -> selected.contains(column) || keyColumns.contains(column))
+      .collect(Collectors.toList());
+  }
+
+  /**
+   * Note: this is a change from the original file.
+   * Returns the query for the changes of a capture instance, reading only the given data columns.
+   *
+   * @param captureInstance the capture instance to read
+   * @param columns the data columns to read, or null to read all of them
+   */
+  static String getChangesQuery(String captureInstance, @Nullable List<String> columns) {
+    if (columns == null) {
+      return GET_ALL_CHANGES_FOR_TABLE.replace(STATEMENTS_PLACEHOLDER, captureInstance);
+    }
+    String selectList = Stream.concat(CHANGE_TABLE_METADATA_COLUMNS.stream(), columns.stream())
+      .map(column -> "[" + column.replace("]", "]]") + "]")
+      .collect(Collectors.joining(", "));
+    return "SELECT " + selectList + " FROM cdc.[fn_cdc_get_all_changes_" + captureInstance
+      + "](?, ?, N'all update old')";
+  }
+
+  /**
+   * Note: this is a change from the original file.
+   * Returns the query for the net changes of a capture instance, in the same layout as {@link #getChangesQuery}.
+   * Net changes have no sequence value and report an update as a single row, so the commit LSN stands in for the
+   * sequence value and every update is read as a before and an after row, both with the values after the update.
+   * There is no real before image of an update. Since all net changes of a transaction have the same position, a
+   * restart can only resume at the start of a transaction, which is why net changes require grouped transactions.
+   *
+   * @param captureInstance the capture instance to read
+   * @param columns the data columns to read
+   */
+  static String getNetChangesQuery(String captureInstance, List<String> columns) {
+    String selectList = Stream.concat(
+      Stream.of("n.[__$start_lsn]", "n.[__$start_lsn] AS [__$seqval]", "o.[__$operation]", "n.[__$update_mask]"),
+      columns.stream().map(column -> "n.[" + column.replace("]", "]]") + "]"))
+      .collect(Collectors.joining(", "));
+    return "SELECT " + selectList
+      + " FROM (SELECT *, ROW_NUMBER() OVER (ORDER BY [__$start_lsn]) AS [__$row]"
+      + " FROM cdc.[fn_cdc_get_net_changes_" + captureInstance + "](?, ?, N'all with mask')) n"
+      + " CROSS APPLY (SELECT 3 AS [__$operation] WHERE n.[__$operation] = 4"
+      + " UNION ALL SELECT n.[__$operation]) o"
+      + " ORDER BY n.[__$row], o.[__$operation]";
   }
 
   private Lsn getFromLsn(SqlServerChangeTable changeTable, Lsn intervalFromLsn) throws SQLException {
     Lsn fromLsn = changeTable.getStartLsn().compareTo(intervalFromLsn) > 0 ? changeTable.getStartLsn() :
       intervalFromLsn;
-    return fromLsn.getBinary() != null ? fromLsn : getMinLsn(changeTable.getCaptureInstance());
+    if (fromLsn.getBinary() != null) {
+      return fromLsn;
+    }
+    // Note: this is a change from the original file. The minimum LSN is only read once per capture instance.
+    String key = metadataKey(changeTable);
+    Lsn minLsn = minLsns.get(key);
+    if (minLsn == null) {
+      minLsn = getMinLsn(changeTable.getCaptureInstance());
+      if (minLsn.isAvailable()) {
+        minLsns.put(key, minLsn);
+      }
+    }
+    return minLsn;
+  }
+
+  // Note: this is a change from the original file.
+  private static String metadataKey(SqlServerChangeTable changeTable) {
+    return changeTable.getCaptureInstance() + "." + changeTable.getChangeTableObjectId();
+  }
+
+  // Note: this is a change from the original file.
+  private void clearMetadata() {
+    sourceTableSchemas.clear();
+    changeTableSchemas.clear();
+    minLsns.clear();
+  }
+
+  /**
+   * Note: this is a change from the original file.
+   * Returns where a window of changes that starts at the given LSN ends, so that it spans at most the given number
+   * of commits.
+   *
+   * @param fromLsn the first LSN of the window
+   * @param maxLsn the latest LSN the window can end at
+   * @param commits the maximum number of commits in the window
+   * @return the LSN of the last commit in the window, or the latest LSN if the commits are not known
+   */
+  public Lsn getWindowEndLsn(Lsn fromLsn, Lsn maxLsn, int commits) {
+    if (!windowChanges || !fromLsn.isAvailable() || !maxLsn.isAvailable()) {
+      return maxLsn;
+    }
+    try {
+      Lsn endLsn = prepareQueryAndMap(GET_WINDOW_END_LSN, statement -> {
+        statement.setInt(1, commits);
+        statement.setBytes(2, fromLsn.getBinary());
+        statement.setBytes(3, maxLsn.getBinary());
+      }, rs -> rs.next() ? Lsn.valueOf(rs.getBytes(1)) : Lsn.NULL);
+      return endLsn.isAvailable() ? endLsn : maxLsn;
+    } catch (SQLException e) {
+      LOGGER.warn("Unable to read commits from cdc.lsn_time_mapping, all changes up to the latest LSN will be read "
+                    + "at once.", e);
+      windowChanges = false;
+      return maxLsn;
+    }
   }
 
   /**
@@ -268,6 +511,18 @@ public class SqlServerConnection extends JdbcConnection {
       return cachedInstant;
     }
 
+    // Note: this is a change from the original file. Changes are processed in commit LSN order, so the timestamps
+    // of the following commits are resolved in the same round trip.
+    if (batchLsnToTimestamp) {
+      Instant instant = lsnToInstantBatch.get(lsn);
+      if (instant == null) {
+        instant = timestampsFromLsn(lsn);
+      }
+      if (instant != null) {
+        return instant;
+      }
+    }
+
     return prepareQueryAndMap(lsnToTimestamp, statement -> {
       statement.setBytes(1, lsn.getBinary());
     }, singleResultMapper(rs -> {
@@ -281,6 +536,37 @@ public class SqlServerConnection extends JdbcConnection {
     }, "LSN to timestamp query must return exactly one value"));
   }
 
+  /**
+   * Note: this is a change from the original file.
+   * Resolves the timestamps of a batch of commit LSNs, starting at the given one.
+   *
+   * @return the timestamp of the given LSN, or null if it is not a commit LSN known to the mapping table
+   */
+  private Instant timestampsFromLsn(Lsn lsn) {
+    try {
+      Map<Lsn, Instant> batch = prepareQueryAndMap(lsnToTimestampBatch,
+                                                   statement -> statement.setBytes(1, lsn.getBinary()), rs -> {
+        Map<Lsn, Instant> timestamps = new HashMap<>();
+        while (rs.next()) {
+          Timestamp ts = rs.getTimestamp(2);
+          if (ts != null) {
+            timestamps.put(Lsn.valueOf(rs.getBytes(1)), normalize(ts));
+          }
+        }
+        return timestamps;
+      });
+      lsnToInstantBatch = batch;
+      Instant instant = batch.get(lsn);
+      LOGGER.trace("Timestamp of lsn {} is {}", lsn, instant);
+      return instant;
+    } catch (SQLException e) {
+      // the mapping table may not be readable by the connector user, fall back to resolving one LSN at a time
+      LOGGER.warn("Unable to read cdc.lsn_time_mapping, commit timestamps will be looked up one at a time.", e);
+      batchLsnToTimestamp = false;
+      return null;
+    }
+  }
+
   private Instant normalize(Timestamp timestamp) {
     Instant instant = timestamp.toInstant();
 
@@ -343,6 +629,10 @@ public class SqlServerConnection extends JdbcConnection {
     return queryAndMap(query, rs -> {
       final Set<SqlServerChangeTable> changeTables = new HashSet<>();
       while (rs.next()) {
+        // Note: this is a change from the original file.
+        if (rs.getBoolean(8)) {
+          netChangesCaptureInstances.add(rs.getString(3));
+        }
         changeTables.add(
           new SqlServerChangeTable(
             new TableId(realDatabaseName, rs.getString(1), rs.getString(2)),
@@ -360,25 +650,37 @@ public class SqlServerConnection extends JdbcConnection {
   public Set<SqlServerChangeTable> listOfNewChangeTables(Lsn fromLsn, Lsn toLsn) throws SQLException {
     final String query = GET_LIST_OF_NEW_CDC_ENABLED_TABLES;
 
-    return prepareQueryAndMap(query,
-                              ps -> {
-                                ps.setBytes(1, fromLsn.getBinary());
-                                ps.setBytes(2, toLsn.getBinary());
-                              },
-                              rs -> {
-                                final Set<SqlServerChangeTable> changeTables = new HashSet<>();
-                                while (rs.next()) {
-                                  changeTables.add(new SqlServerChangeTable(
-                                    rs.getString(4),
-                                    rs.getInt(1),
-                                    Lsn.valueOf(rs.getBytes(5)),
-                                    Lsn.valueOf(rs.getBytes(6))));
-                                }
-                                return changeTables;
-                              });
+    final Set<SqlServerChangeTable> newChangeTables = prepareQueryAndMap(query,
+      ps -> {
+        ps.setBytes(1, fromLsn.getBinary());
+        ps.setBytes(2, toLsn.getBinary());
+      },
+      rs -> {
+        final Set<SqlServerChangeTable> changeTables = new HashSet<>();
+        while (rs.next()) {
+          changeTables.add(new SqlServerChangeTable(
+            rs.getString(4),
+            rs.getInt(1),
+            Lsn.valueOf(rs.getBytes(5)),
+            Lsn.valueOf(rs.getBytes(6))));
+        }
+        return changeTables;
+      });
+    // Note: this is a change from the original file.
+    if (!newChangeTables.isEmpty()) {
+      LOGGER.debug("New change tables {}, clearing the cached change table metadata", newChangeTables);
+      clearMetadata();
+    }
+    return newChangeTables;
   }
 
   public Table getTableSchemaFromTable(SqlServerChangeTable changeTable) throws SQLException {
+    // Note: this is a change from the original file.
+    final String key = metadataKey(changeTable);
+    final Table cached = sourceTableSchemas.get(key);
+    if (cached != null) {
+      return cached;
+    }
     final DatabaseMetaData metadata = connection().getMetaData();
 
     List<Column> columns = new ArrayList<>();
@@ -399,14 +701,22 @@ public class SqlServerConnection extends JdbcConnection {
 
     final List<String> pkColumnNames = readPrimaryKeyOrUniqueIndexNames(metadata, changeTable.getSourceTableId());
     Collections.sort(columns);
-    return Table.editor()
+    final Table table = Table.editor()
       .tableId(changeTable.getSourceTableId())
       .addColumns(columns)
       .setPrimaryKeyNames(pkColumnNames)
       .create();
+    sourceTableSchemas.put(key, table);
+    return table;
   }
 
   public Table getTableSchemaFromChangeTable(SqlServerChangeTable changeTable) throws SQLException {
+    // Note: this is a change from the original file.
+    final String key = metadataKey(changeTable);
+    final Table cached = changeTableSchemas.get(key);
+    if (cached != null) {
+      return cached;
+    }
     final DatabaseMetaData metadata = connection().getMetaData();
     final TableId changeTableId = changeTable.getChangeTableId();
 
@@ -430,11 +740,13 @@ public class SqlServerConnection extends JdbcConnection {
       }
     });
     Collections.sort(columns);
-    return Table.editor()
+    final Table table = Table.editor()
       .tableId(changeTable.getSourceTableId())
       .addColumns(columns)
       .setPrimaryKeyNames(pkColumnNames)
       .create();
+    changeTableSchemas.put(key, table);
+    return table;
   }
 
   public String getNameOfChangeTable(String captureName) {
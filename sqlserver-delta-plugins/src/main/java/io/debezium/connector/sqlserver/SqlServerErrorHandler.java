@@ -5,6 +5,7 @@
  */
 package io.debezium.connector.sqlserver;
 
+import io.cdap.delta.plugin.common.ReaderContextRegistry;
 import io.debezium.connector.base.ChangeEventQueue;
 import io.debezium.pipeline.ErrorHandler;
 
@@ -17,10 +18,11 @@ public class SqlServerErrorHandler extends ErrorHandler {
   // This class is copied from debezium. driverClassLoader variable is added to the
   // original class. This class loader is the jdbc plugin class loader and is required
   // to load the SQLServerException class from the user uploaded jdbc jar rather than looking
-  // into the debezium connector jar.
-  public static ClassLoader driverClassLoader;
+  // into the debezium connector jar. It comes from the event reader this handler is created for.
+  private final ClassLoader driverClassLoader;
   public SqlServerErrorHandler(String logicalName, ChangeEventQueue<?> queue) {
     super(SqlServerConnector.class, logicalName, queue);
+    this.driverClassLoader = ReaderContextRegistry.requireCurrent().getDriverClassLoader();
   }
 
   @Override
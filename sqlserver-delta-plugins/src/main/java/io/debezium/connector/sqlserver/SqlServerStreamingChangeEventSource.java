@@ -0,0 +1,460 @@
+/*
+ * Copyright Debezium Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.debezium.connector.sqlserver;
+
+import io.cdap.cdap.api.metrics.Metrics;
+import io.cdap.delta.plugin.common.ReaderContext;
+import io.cdap.delta.plugin.common.ReaderContextRegistry;
+import io.cdap.delta.sqlserver.ChangeWindowScheduler;
+import io.cdap.delta.sqlserver.ChunkedSnapshotReader;
+import io.cdap.delta.sqlserver.TableSnapshotReader;
+import io.debezium.pipeline.ErrorHandler;
+import io.debezium.pipeline.EventDispatcher;
+import io.debezium.pipeline.source.spi.StreamingChangeEventSource;
+import io.debezium.relational.Table;
+import io.debezium.relational.TableId;
+import io.debezium.schema.SchemaChangeEvent.SchemaChangeEventType;
+import io.debezium.util.Clock;
+import io.debezium.util.Metronome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * <p>A {@link StreamingChangeEventSource} based on SQL Server change data capture functionality.
+ * A main loop polls database DDL change and change data tables and turns them into change events.</p>
+ *
+ * <p>The connector uses CDC functionality of SQL Server that is implemented as as a process that monitors
+ * source table and write changes from the table into the change table.</p>
+ *
+ * <p>The main loop keeps a pointer to the LSN of changes that were already processed. It queries all change
+ * tables and get result set of changes. It always finds the smallest LSN across all tables and the change
+ * is converted into the event message and sent downstream. The process repeats until all result sets are
+ * empty. The LSN is marked and the procedure repeats.</p>
+ *
+ * <p>The schema changes detection follows the procedure recommended by SQL Server CDC documentation.
+ * The database operator should create one more capture process (and table) when a table schema is updated.
+ * The code detects presence of two change tables for a single source table. It decides which table is the new one
+ * depending on LSNs stored in them. The loop streams changes from the older table till there are events in new
+ * table with the LSN larger than in the old one. Then the change table is switched and streaming is executed
+ * from the new one.</p>
+ *
+ * @author Jiri Pechanec
+ */
+public class SqlServerStreamingChangeEventSource implements StreamingChangeEventSource {
+  // This class is copied from debezium. The changes are read in windows of a bounded number of commits instead of
+  // everything up to the latest LSN at once, and the poll interval backs off while there are no changes.
+
+  private static final Pattern MISSING_CDC_FUNCTION_CHANGES_ERROR =
+    Pattern.compile("Invalid object name 'cdc.fn_cdc_get_all_changes_(.*)'\\.");
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SqlServerStreamingChangeEventSource.class);
+
+  /**
+   * Connection used for reading CDC tables.
+   */
+  private final SqlServerConnection dataConnection;
+
+  /**
+   * A separate connection for retrieving timestamps; without it, adaptive
+   * buffering will not work.
+   *
+   * @see <a href="https://docs.microsoft.com/en-us/sql/connect/jdbc/using-adaptive-buffering?view=sql-server-2017">
+   *   Using adaptive buffering</a>
+   */
+  private final SqlServerConnection metadataConnection;
+
+  private final EventDispatcher<TableId> dispatcher;
+  private final ErrorHandler errorHandler;
+  private final Clock clock;
+  private final SqlServerDatabaseSchema schema;
+  private final SqlServerOffsetContext offsetContext;
+  private final Duration pollInterval;
+  private final SqlServerConnectorConfig connectorConfig;
+  // Note: this is a change from the original file.
+  private final ChangeWindowScheduler windowScheduler;
+  // Note: this is a change from the original file.
+  private final TableSnapshotReader tableSnapshot;
+  // Note: this is a change from the original file.
+  private final ChunkedSnapshotReader chunkedSnapshot;
+
+  public SqlServerStreamingChangeEventSource(SqlServerConnectorConfig connectorConfig,
+                                             SqlServerOffsetContext offsetContext,
+                                             SqlServerConnection dataConnection,
+                                             SqlServerConnection metadataConnection,
+                                             EventDispatcher<TableId> dispatcher, ErrorHandler errorHandler,
+                                             Clock clock, SqlServerDatabaseSchema schema) {
+    this.connectorConfig = connectorConfig;
+    this.dataConnection = dataConnection;
+    this.metadataConnection = metadataConnection;
+    this.dispatcher = dispatcher;
+    this.errorHandler = errorHandler;
+    this.clock = clock;
+    this.schema = schema;
+    this.offsetContext = offsetContext;
+    this.pollInterval = connectorConfig.getPollInterval();
+    // Note: this is a change from the original file.
+    ReaderContext readerContext = ReaderContextRegistry.current();
+    Metrics metrics = readerContext == null || readerContext.getRuntimeContext() == null
+      ? null : readerContext.getRuntimeContext().getMetrics();
+    this.windowScheduler = ChangeWindowScheduler.create(connectorConfig.getConfig().subset("database.", true),
+                                                        pollInterval, metrics);
+    this.tableSnapshot = TableSnapshotReader.create(connectorConfig.getConfig());
+    this.chunkedSnapshot = ChunkedSnapshotReader.create(connectorConfig);
+  }
+
+  @Override
+  public void execute(ChangeEventSourceContext context) throws InterruptedException {
+    if (connectorConfig.getSnapshotMode().equals(SqlServerConnectorConfig.SnapshotMode.INITIAL_ONLY)) {
+      LOGGER.info("Streaming is not enabled in current configuration");
+      return;
+    }
+
+    final Metronome metronome = Metronome.sleeper(pollInterval, clock);
+    final Queue<SqlServerChangeTable> schemaChangeCheckpoints =
+      new PriorityQueue<>((x, y) -> x.getStopLsn().compareTo(y.getStopLsn()));
+    try {
+      // Note: this is a change from the original file. The existing rows are read after the schema only snapshot,
+      // before the changes made since it are streamed.
+      if (chunkedSnapshot.isPending()) {
+        final List<TableId> tables = schema.tableIds().stream()
+          .filter(tableId -> !tableSnapshot.isSignal(tableId))
+          .collect(Collectors.toList());
+        chunkedSnapshot.read(dataConnection, schema, tables, offsetContext, dispatcher, clock);
+      }
+      final AtomicReference<SqlServerChangeTable[]> tablesSlot = new AtomicReference<>(getCdcTablesToQuery());
+
+      final TxLogPosition lastProcessedPositionOnStart = offsetContext.getChangePosition();
+      final long lastProcessedEventSerialNoOnStart = offsetContext.getEventSerialNo();
+      LOGGER.info("Last position recorded in offsets is {}[{}]", lastProcessedPositionOnStart,
+                  lastProcessedEventSerialNoOnStart);
+      final AtomicBoolean changesStoppedBeingMonotonic = new AtomicBoolean(false);
+
+      TxLogPosition lastProcessedPosition = lastProcessedPositionOnStart;
+
+      // LSN should be increased for the first run only immediately after snapshot completion
+      // otherwise we might skip an incomplete transaction after restart
+      boolean shouldIncreaseFromLsn = offsetContext.isSnapshotCompleted();
+      while (context.isRunning()) {
+        if (connectorConfig.isReadOnlyDatabaseConnection()) {
+          dataConnection.commit();
+        }
+        final Lsn currentMaxLsn = dataConnection.getMaxLsn();
+
+        // Shouldn't happen if the agent is running, but it is better to guard against such situation
+        if (!currentMaxLsn.isAvailable()) {
+          LOGGER.warn("No maximum LSN recorded in the database; please ensure that the SQL Server Agent is running");
+          metronome.pause();
+          continue;
+        }
+        // Note: this is a change from the original file. Every change up to the last processed position has been
+        // dispatched, so a chunk of the tables named by signals is read in between windows.
+        if (tableSnapshot.isPending()) {
+          tableSnapshot.readChunk(dataConnection, schema, offsetContext, dispatcher, clock);
+          dataConnection.rollback();
+        }
+        // There is no change in the database
+        if (currentMaxLsn.equals(lastProcessedPosition.getCommitLsn()) && shouldIncreaseFromLsn) {
+          LOGGER.debug("No change in the database");
+          // Note: this is a change from the original file. The wait grows while there are no changes, and there is
+          // no wait while there are rows to read.
+          if (!tableSnapshot.isPending()) {
+            pause(windowScheduler.idle());
+          }
+          continue;
+        }
+
+        // Reading interval is inclusive so we need to move LSN forward but not for first
+        // run as TX might not be streamed completely
+        final Lsn fromLsn = lastProcessedPosition.getCommitLsn().isAvailable() && shouldIncreaseFromLsn
+          ? dataConnection.incrementLsn(lastProcessedPosition.getCommitLsn())
+          : lastProcessedPosition.getCommitLsn();
+        shouldIncreaseFromLsn = true;
+
+        // Note: this is a change from the original file. The window ends after a bounded number of commits instead
+        // of at the latest LSN, the rest of the changes are read by the next iterations.
+        final Lsn toLsn = dataConnection.getWindowEndLsn(fromLsn, currentMaxLsn, windowScheduler.getWindowCommits());
+        final boolean windowCut = toLsn.compareTo(currentMaxLsn) < 0;
+        final AtomicLong windowRows = new AtomicLong();
+
+        while (!schemaChangeCheckpoints.isEmpty()) {
+          migrateTable(schemaChangeCheckpoints);
+        }
+        if (!dataConnection.listOfNewChangeTables(fromLsn, toLsn).isEmpty()) {
+          final SqlServerChangeTable[] tables = getCdcTablesToQuery();
+          tablesSlot.set(tables);
+          for (SqlServerChangeTable table : tables) {
+            if (table.getStartLsn().isBetween(fromLsn, toLsn)) {
+              LOGGER.info("Schema will be changed for {}", table);
+              schemaChangeCheckpoints.add(table);
+            }
+          }
+        }
+        try {
+          final long windowStart = clock.currentTimeInMillis();
+          dataConnection.getChangesForTables(tablesSlot.get(), fromLsn, toLsn, resultSets -> {
+
+            long eventSerialNoInInitialTx = 1;
+            final int tableCount = resultSets.length;
+            final SqlServerChangeTablePointer[] changeTables = new SqlServerChangeTablePointer[tableCount];
+            final SqlServerChangeTable[] tables = tablesSlot.get();
+
+            for (int i = 0; i < tableCount; i++) {
+              changeTables[i] = new SqlServerChangeTablePointer(tables[i], resultSets[i]);
+              changeTables[i].next();
+            }
+
+            for (;;) {
+              SqlServerChangeTablePointer tableWithSmallestLsn = null;
+              for (SqlServerChangeTablePointer changeTable : changeTables) {
+                if (changeTable.isCompleted()) {
+                  continue;
+                }
+                if (tableWithSmallestLsn == null || changeTable.compareTo(tableWithSmallestLsn) < 0) {
+                  tableWithSmallestLsn = changeTable;
+                }
+              }
+              if (tableWithSmallestLsn == null) {
+                // No more LSNs available
+                break;
+              }
+              windowRows.incrementAndGet();
+
+              if (!(tableWithSmallestLsn.getChangePosition().isAvailable()
+                && tableWithSmallestLsn.getChangePosition().getInTxLsn().isAvailable())) {
+                LOGGER.error("Skipping change {} as its LSN is NULL which is not expected", tableWithSmallestLsn);
+                tableWithSmallestLsn.next();
+                continue;
+              }
+
+              if (tableWithSmallestLsn.isNewTransaction() && changesStoppedBeingMonotonic.get()) {
+                LOGGER.info("Resetting changesStoppedBeingMonotonic as transaction changes");
+                changesStoppedBeingMonotonic.set(false);
+              }
+
+              // After restart for changes that are not monotonic to avoid data loss
+              if (tableWithSmallestLsn.isCurrentPositionSmallerThanPreviousPosition()) {
+                LOGGER.info("Disabling skipping changes due to not monotonic order of changes");
+                changesStoppedBeingMonotonic.set(true);
+              }
+
+              // After restart for changes that were executed before the last committed offset
+              if (!changesStoppedBeingMonotonic.get()
+                && tableWithSmallestLsn.getChangePosition().compareTo(lastProcessedPositionOnStart) < 0) {
+                LOGGER.info("Skipping change {} as its position is smaller than the last recorded position {}",
+                            tableWithSmallestLsn, lastProcessedPositionOnStart);
+                tableWithSmallestLsn.next();
+                continue;
+              }
+              // After restart for change that was the last committed and operations in it before the last
+              // committed offset
+              if (!changesStoppedBeingMonotonic.get()
+                && tableWithSmallestLsn.getChangePosition().compareTo(lastProcessedPositionOnStart) == 0
+                && eventSerialNoInInitialTx <= lastProcessedEventSerialNoOnStart) {
+                LOGGER.info("Skipping change {} as its order in the transaction {} is smaller than or equal to "
+                              + "the last recorded operation {}[{}]", tableWithSmallestLsn, eventSerialNoInInitialTx,
+                            lastProcessedPositionOnStart, lastProcessedEventSerialNoOnStart);
+                eventSerialNoInInitialTx++;
+                tableWithSmallestLsn.next();
+                continue;
+              }
+              if (tableWithSmallestLsn.getChangeTable().getStopLsn().isAvailable()
+                && tableWithSmallestLsn.getChangeTable().getStopLsn()
+                .compareTo(tableWithSmallestLsn.getChangePosition().getCommitLsn()) <= 0) {
+                LOGGER.debug("Skipping table change {} as its stop LSN is smaller than the last recorded LSN {}",
+                             tableWithSmallestLsn, tableWithSmallestLsn.getChangePosition());
+                tableWithSmallestLsn.next();
+                continue;
+              }
+              LOGGER.trace("Processing change {}", tableWithSmallestLsn);
+              LOGGER.trace("Schema change checkpoints {}", schemaChangeCheckpoints);
+              if (!schemaChangeCheckpoints.isEmpty()) {
+                if (tableWithSmallestLsn.getChangePosition().getCommitLsn()
+                  .compareTo(schemaChangeCheckpoints.peek().getStartLsn()) >= 0) {
+                  migrateTable(schemaChangeCheckpoints);
+                }
+              }
+              final TableId tableId = tableWithSmallestLsn.getChangeTable().getSourceTableId();
+              final int operation = tableWithSmallestLsn.getOperation();
+              final Object[] data = tableWithSmallestLsn.getData();
+
+              // UPDATE consists of two consecutive events, first event contains
+              // the row before it was updated and the second the row after
+              // it was updated
+              int eventCount = 1;
+              if (operation == SqlServerChangeRecordEmitter.OP_UPDATE_BEFORE) {
+                if (!tableWithSmallestLsn.next()
+                  || tableWithSmallestLsn.getOperation() != SqlServerChangeRecordEmitter.OP_UPDATE_AFTER) {
+                  throw new IllegalStateException("The update before event at "
+                                                    + tableWithSmallestLsn.getChangePosition() + " for table "
+                                                    + tableId + " was not followed by after event.\n Please report "
+                                                    + "this as a bug together with a events around given LSN.");
+                }
+                eventCount = 2;
+              }
+              final Object[] dataNext = (operation == SqlServerChangeRecordEmitter.OP_UPDATE_BEFORE)
+                ? tableWithSmallestLsn.getData() : null;
+
+              // Note: this is a change from the original file. Signals are not replicated.
+              if (tableSnapshot.isSignal(tableId)) {
+                if (operation == SqlServerChangeRecordEmitter.OP_INSERT) {
+                  tableSnapshot.signal(schema.tableFor(tableId), data);
+                }
+                tableWithSmallestLsn.next();
+                continue;
+              }
+
+              offsetContext.setChangePosition(tableWithSmallestLsn.getChangePosition(), eventCount);
+              offsetContext.event(tableWithSmallestLsn.getChangeTable().getSourceTableId(),
+                                  metadataConnection.timestampOfLsn(
+                                    tableWithSmallestLsn.getChangePosition().getCommitLsn()));
+
+              dispatcher
+                .dispatchDataChangeEvent(
+                  tableId,
+                  // Note: this is a change from the original file.
+                  tableSnapshot.withProgress(new SqlServerChangeRecordEmitter(
+                    offsetContext,
+                    operation,
+                    data,
+                    dataNext,
+                    clock)));
+              tableWithSmallestLsn.next();
+            }
+          });
+          lastProcessedPosition = TxLogPosition.valueOf(toLsn);
+          // Terminate the transaction otherwise CDC could not be disabled for tables
+          dataConnection.rollback();
+
+          // Note: this is a change from the original file.
+          windowScheduler.windowRead(windowRows.get(), clock.currentTimeInMillis() - windowStart, windowCut);
+          if (windowRows.get() > 0) {
+            // every transaction of the window has been read, the heartbeat lets the consumer know that the last one
+            // is complete. Nothing is sent if heartbeats are not enabled
+            dispatcher.alwaysDispatchHeartbeatEvent(offsetContext);
+          }
+          if (windowRows.get() == 0 && !windowCut && !tableSnapshot.isPending()) {
+            pause(windowScheduler.idle());
+          }
+        } catch (SQLException e) {
+          tablesSlot.set(processErrorFromChangeTableQuery(e, tablesSlot.get()));
+        }
+      }
+    } catch (Exception e) {
+      errorHandler.setProducerThrowable(e);
+    }
+  }
+
+  // Note: this is a change from the original file.
+  private void pause(Duration interval) throws InterruptedException {
+    Metronome.sleeper(interval, clock).pause();
+  }
+
+  private void migrateTable(final Queue<SqlServerChangeTable> schemaChangeCheckpoints)
+    throws InterruptedException, SQLException {
+    final SqlServerChangeTable newTable = schemaChangeCheckpoints.poll();
+    LOGGER.info("Migrating schema to {}", newTable);
+    Table tableSchema = metadataConnection.getTableSchemaFromTable(newTable);
+    dispatcher.dispatchSchemaChangeEvent(newTable.getSourceTableId(),
+                                         new SqlServerSchemaChangeEventEmitter(offsetContext, newTable, tableSchema,
+                                                                               SchemaChangeEventType.ALTER));
+    newTable.setSourceTable(tableSchema);
+  }
+
+  private SqlServerChangeTable[] processErrorFromChangeTableQuery(SQLException exception,
+                                                                  SqlServerChangeTable[] currentChangeTables)
+    throws Exception {
+    final Matcher m = MISSING_CDC_FUNCTION_CHANGES_ERROR.matcher(exception.getMessage());
+    if (m.matches()) {
+      final String captureName = m.group(1);
+      LOGGER.info("Table is no longer captured with capture instance {}", captureName);
+      return Arrays.asList(currentChangeTables).stream()
+        .filter(x -> !x.getCaptureInstance().equals(captureName))
+        .collect(Collectors.toList()).toArray(new SqlServerChangeTable[0]);
+    }
+    throw exception;
+  }
+
+  private SqlServerChangeTable[] getCdcTablesToQuery() throws SQLException, InterruptedException {
+    final Set<SqlServerChangeTable> cdcEnabledTables = dataConnection.listOfChangeTables();
+    if (cdcEnabledTables.isEmpty()) {
+      LOGGER.warn("No table has enabled CDC or security constraints prevents getting the list of change tables");
+    }
+
+    final Map<TableId, List<SqlServerChangeTable>> includeListCdcEnabledTables = cdcEnabledTables.stream()
+      .filter(changeTable -> {
+        if (connectorConfig.getTableFilters().dataCollectionFilter().isIncluded(changeTable.getSourceTableId())) {
+          return true;
+        } else {
+          LOGGER.info("CDC is enabled for table {} but the table is not whitelisted by connector", changeTable);
+          return false;
+        }
+      })
+      .collect(Collectors.groupingBy(x -> x.getSourceTableId()));
+
+    if (includeListCdcEnabledTables.isEmpty()) {
+      LOGGER.warn("No whitelisted table has enabled CDC, whitelisted table list does not contain any table with CDC "
+                    + "enabled or no table match the white/blacklist filter(s)");
+    }
+
+    final List<SqlServerChangeTable> tables = new ArrayList<>();
+    for (List<SqlServerChangeTable> captures : includeListCdcEnabledTables.values()) {
+      SqlServerChangeTable currentTable = captures.get(0);
+      if (captures.size() > 1) {
+        SqlServerChangeTable futureTable;
+        if (captures.get(0).getStartLsn().compareTo(captures.get(1).getStartLsn()) < 0) {
+          futureTable = captures.get(1);
+        } else {
+          currentTable = captures.get(1);
+          futureTable = captures.get(0);
+        }
+        currentTable.setStopLsn(futureTable.getStartLsn());
+        futureTable.setSourceTable(dataConnection.getTableSchemaFromTable(futureTable));
+        tables.add(futureTable);
+        LOGGER.info("Multiple capture instances present for the same table: {} and {}", currentTable, futureTable);
+      }
+      if (schema.tableFor(currentTable.getSourceTableId()) == null) {
+        LOGGER.info("Table {} is new to be monitored by capture instance {}", currentTable.getSourceTableId(),
+                    currentTable.getCaptureInstance());
+        // We need to read the source table schema - nullability information cannot be obtained from change table
+        // There might be no start LSN in the new change table at this time so current timestamp is used
+        offsetContext.event(currentTable.getSourceTableId(), Instant.now());
+        dispatcher.dispatchSchemaChangeEvent(
+          currentTable.getSourceTableId(),
+          new SqlServerSchemaChangeEventEmitter(
+            offsetContext,
+            currentTable,
+            dataConnection.getTableSchemaFromTable(currentTable),
+            SchemaChangeEventType.CREATE));
+      }
+
+      // If a column was renamed, then the old capture instance had been dropped and a new one
+      // created. In consequence, a table with out-dated schema might be assigned here.
+      // A proper value will be set when migration happens.
+      currentTable.setSourceTable(schema.tableFor(currentTable.getSourceTableId()));
+      tables.add(currentTable);
+    }
+
+    return tables.toArray(new SqlServerChangeTable[tables.size()]);
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.sqlserver;
+
+import io.cdap.cdap.api.metrics.Metrics;
+import io.debezium.config.Configuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link ChangeWindowScheduler}.
+ */
+public class ChangeWindowSchedulerTest {
+  private static final Duration POLL_INTERVAL = Duration.ofMillis(500);
+
+  @Test
+  public void testBacklogIsReadInBoundedWindows() {
+    List<Long> gauges = new ArrayList<>();
+    ChangeWindowScheduler scheduler =
+      new ChangeWindowScheduler(100000, 1000000, 10000, POLL_INTERVAL, Duration.ofSeconds(5), metrics(gauges));
+    // a backlog of a million commits with five rows each, read at 100 rows per millisecond
+    long backlog = 1000000;
+    long largestWindow = 0;
+    int windows = 0;
+    while (backlog > 0) {
+      long commits = Math.min(scheduler.getWindowCommits(), backlog);
+      backlog -= commits;
+      long rows = commits * 5;
+      largestWindow = Math.max(largestWindow, rows);
+      scheduler.windowRead(rows, rows / 100, backlog > 0);
+      windows++;
+    }
+    Assert.assertEquals(100000, largestWindow);
+    Assert.assertTrue(windows < 60);
+    Assert.assertEquals(windows, gauges.size());
+    Assert.assertEquals(Long.valueOf(20000), gauges.get(gauges.size() - 2));
+  }
+
+  @Test
+  public void testSlowWindowsShrink() {
+    ChangeWindowScheduler scheduler =
+      new ChangeWindowScheduler(100000, 1000000, 1000, POLL_INTERVAL, Duration.ofSeconds(5), null);
+    // reading is much slower than the latency target, so windows shrink until they are read in time
+    for (int i = 0; i < 20; i++) {
+      long rows = scheduler.getWindowCommits();
+      scheduler.windowRead(rows, rows * 10, true);
+    }
+    Assert.assertTrue(scheduler.getWindowCommits() * 10 <= 1000);
+    Assert.assertTrue(scheduler.getWindowCommits() * 10 > 1000 / 4);
+  }
+
+  @Test
+  public void testWindowsThatReachTheLatestChangeDoNotGrow() {
+    ChangeWindowScheduler scheduler =
+      new ChangeWindowScheduler(100000, 1000000, 10000, POLL_INTERVAL, Duration.ofSeconds(5), null);
+    int initial = scheduler.getWindowCommits();
+    for (int i = 0; i < 10; i++) {
+      scheduler.windowRead(10, 1, false);
+    }
+    Assert.assertEquals(initial, scheduler.getWindowCommits());
+    scheduler.windowRead(10, 1, true);
+    Assert.assertEquals(initial * 2, scheduler.getWindowCommits());
+  }
+
+  @Test
+  public void testIdleBackoff() {
+    ChangeWindowScheduler scheduler = ChangeWindowScheduler.create(
+      Configuration.create().with(ChangeWindowScheduler.MAX_POLL_INTERVAL_MS, 3000).build(), POLL_INTERVAL, null);
+    List<Long> waits = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      waits.add(scheduler.idle().toMillis());
+    }
+    Assert.assertEquals(Arrays.asList(500L, 1000L, 2000L, 3000L, 3000L, 3000L), waits);
+
+    // empty windows keep backing off, a change resets the wait
+    scheduler.windowRead(0, 1, false);
+    Assert.assertEquals(3000L, scheduler.idle().toMillis());
+    scheduler.windowRead(1, 1, false);
+    Assert.assertEquals(500L, scheduler.idle().toMillis());
+  }
+
+  private static Metrics metrics(List<Long> gauges) {
+    return new Metrics() {
+      @Override
+      public void count(String metricName, int delta) {
+        // no-op
+      }
+
+      @Override
+      public void gauge(String metricName, long value) {
+        Assert.assertEquals(ChangeWindowScheduler.WINDOW_COMMITS_METRIC, metricName);
+        gauges.add(value);
+      }
+
+      @Override
+      public Metrics child(Map<String, String> tags) {
+        return this;
+      }
+
+      @Override
+      public Map<String, String> getTags() {
+        return Collections.emptyMap();
+      }
+    };
+  }
+}
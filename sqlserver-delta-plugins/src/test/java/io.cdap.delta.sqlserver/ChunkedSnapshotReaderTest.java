@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.sqlserver;
+
+import io.cdap.delta.plugin.common.ChunkKeys;
+import io.debezium.relational.Column;
+import io.debezium.relational.Table;
+import io.debezium.relational.TableId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link ChunkedSnapshotReader} and the queries it reads chunks with.
+ */
+public class ChunkedSnapshotReaderTest {
+  private static final Table TABLE = Table.editor()
+    .tableId(new TableId("db", "dbo", "orders"))
+    .addColumns(column("region", Types.VARCHAR, 1), column("created", Types.TIMESTAMP, 2),
+                column("day", Types.DATE, 3), column("total", Types.DECIMAL, 4))
+    .setPrimaryKeyNames("region", "created", "day")
+    .create();
+
+  @Test
+  public void testChunkQueries() {
+    Assert.assertEquals("SELECT [region], [created], [day] FROM (SELECT [region], [created], [day], ROW_NUMBER() OVER "
+                          + "(ORDER BY [region], [created], [day]) AS [chunk_row] FROM [dbo].[orders]) AS [chunk_keys] "
+                          + "WHERE ([chunk_row] - 1) % 1000 = 0 ORDER BY [region], [created], [day]",
+                        ChunkQuery.selectChunkStarts(TABLE, TABLE.primaryKeyColumns(), 1000,
+                                                     Collections.emptyList()));
+
+    String after = ChunkQuery.compare(TABLE.primaryKeyColumns(), ">", true);
+    Assert.assertEquals("([region] > ?) OR ([region] = ? AND [created] > ?) "
+                          + "OR ([region] = ? AND [created] = ? AND [day] > ?) "
+                          + "OR ([region] = ? AND [created] = ? AND [day] = ?)", after);
+    String before = ChunkQuery.compare(TABLE.primaryKeyColumns(), "<", false);
+    Assert.assertEquals("SELECT [region], [created], [day], [total] FROM [dbo].[orders] WHERE (" + after + ") AND ("
+                          + before + ") ORDER BY [region], [created], [day]",
+                        ChunkQuery.select(TABLE, 0, Arrays.asList(after, before), TABLE.primaryKeyColumns()));
+  }
+
+  @Test
+  public void testBind() throws Exception {
+    PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+    int next = ChunkQuery.bind(statement, 1, new Object[] { "a", "b" }, true);
+    next = ChunkQuery.bind(statement, next, new Object[] { "c", "d" }, false);
+    Assert.assertEquals(9, next);
+
+    InOrder inOrder = Mockito.inOrder(statement);
+    Object[] expected = { "a", "a", "b", "a", "b", "c", "c", "d" };
+    for (int i = 0; i < expected.length; i++) {
+      inOrder.verify(statement).setObject(i + 1, expected[i]);
+    }
+  }
+
+  @Test
+  public void testReadAll() throws Exception {
+    Table log = Table.editor()
+      .tableId(new TableId("db", "dbo", "log"))
+      .addColumns(column("message", Types.VARCHAR, 1), column("level", Types.INTEGER, 2))
+      .create();
+    ResultSetMetaData metaData = Mockito.mock(ResultSetMetaData.class);
+    Mockito.when(metaData.getColumnType(Mockito.anyInt())).thenReturn(Types.VARCHAR);
+    ResultSet rs = Mockito.mock(ResultSet.class);
+    Mockito.when(rs.getMetaData()).thenReturn(metaData);
+    Mockito.when(rs.next()).thenReturn(true, true, false);
+    Mockito.when(rs.getObject(1)).thenReturn("started", "stopped");
+    Mockito.when(rs.getObject(2)).thenReturn(1, 2);
+    Statement statement = Mockito.mock(Statement.class);
+    Mockito.when(statement.executeQuery("SELECT [message], [level] FROM [dbo].[log]")).thenReturn(rs);
+    Connection connection = Mockito.mock(Connection.class);
+    Mockito.when(connection.createStatement()).thenReturn(statement);
+
+    // rows are handed over while the result set is read, not after all of them were read
+    List<Object[]> rows = new ArrayList<>();
+    long rowCount = ChunkQuery.readAll(connection, log, row -> {
+      try {
+        Mockito.verify(rs, Mockito.never()).close();
+      } catch (SQLException e) {
+        throw new AssertionError(e);
+      }
+      rows.add(row);
+    });
+    Assert.assertEquals(2, rowCount);
+    Assert.assertArrayEquals(new Object[] { "started", 1 }, rows.get(0));
+    Assert.assertArrayEquals(new Object[] { "stopped", 2 }, rows.get(1));
+    Mockito.verify(rs).close();
+    Mockito.verify(statement).close();
+  }
+
+  @Test
+  public void testKeyEncoding() {
+    Object[] key = { "west", Timestamp.valueOf("2023-01-02 03:04:05.1234567"), Date.valueOf("2023-01-02") };
+    String encoded = ChunkKeys.encode(key);
+    Assert.assertArrayEquals(key, ChunkedSnapshotReader.decodeKey(encoded, TABLE));
+
+    Table numbers = Table.editor()
+      .tableId(new TableId("db", "dbo", "numbers"))
+      .addColumns(column("id", Types.BIGINT, 1), column("hash", Types.BINARY, 2))
+      .setPrimaryKeyNames("id", "hash")
+      .create();
+    Object[] decoded = ChunkedSnapshotReader.decodeKey(
+      ChunkKeys.encode(new Object[] { 12345678901L, new byte[] { 1, 2 } }), numbers);
+    Assert.assertEquals(new BigDecimal(12345678901L), decoded[0]);
+    Assert.assertArrayEquals(new byte[] { 1, 2 }, (byte[]) decoded[1]);
+
+    // keys that don't match the primary key anymore are read from the start of the table
+    Assert.assertNull(ChunkedSnapshotReader.decodeKey("[1]", numbers));
+    Assert.assertNull(ChunkedSnapshotReader.decodeKey("", numbers));
+  }
+
+  private static Column column(String name, int jdbcType, int position) {
+    return Column.editor().name(name).type("type").jdbcType(jdbcType).position(position).create();
+  }
+}
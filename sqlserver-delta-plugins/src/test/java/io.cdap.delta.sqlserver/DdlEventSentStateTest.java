@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.sqlserver;
+
+import com.microsoft.sqlserver.jdbc.SQLServerDriver;
+import io.cdap.delta.plugin.mock.MockContext;
+import io.debezium.connector.sqlserver.SourceInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for {@link DdlEventSentState}.
+ */
+public class DdlEventSentStateTest {
+
+  @Test
+  public void testOffsetOnlyCarriesVersion() throws IOException {
+    MockContext context = new MockContext(SQLServerDriver.class);
+    DdlEventSentState state = new DdlEventSentState(context);
+    for (int i = 0; i < 2000; i++) {
+      state.add("dbo.table" + i);
+    }
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(SourceInfo.CHANGE_LSN_KEY, "00000025:00000d98:0003");
+    Map<String, String> offset = new SqlServerOffset(properties).getAsOffset(state.getVersion()).get();
+    Assert.assertEquals("2000", offset.get(SqlServerOffset.DDL_EVENT_SENT_VERSION));
+    Assert.assertFalse(offset.containsKey(SqlServerOffset.DDL_EVENT_SENT));
+
+    DdlEventSentState restored = DdlEventSentState.load(context, offset);
+    Assert.assertEquals(2000, restored.getVersion());
+    Assert.assertTrue(restored.contains("dbo.table1999"));
+  }
+
+  @Test
+  public void testTablesAddedAfterOffsetAreDropped() throws IOException {
+    MockContext context = new MockContext(SQLServerDriver.class);
+    DdlEventSentState state = new DdlEventSentState(context);
+    state.add("dbo.a");
+    state.add("dbo.b");
+    Map<String, String> offset = new SqlServerOffset(Collections.emptyMap()).getAsOffset(state.getVersion()).get();
+    // saved, but the offset that includes it was never committed
+    state.add("dbo.c");
+
+    DdlEventSentState restored = DdlEventSentState.load(context, offset);
+    Assert.assertTrue(restored.contains("dbo.b"));
+    Assert.assertFalse(restored.contains("dbo.c"));
+    restored.add("dbo.d");
+    Assert.assertEquals(3, restored.getVersion());
+    Map<String, String> next = Collections.singletonMap(SqlServerOffset.DDL_EVENT_SENT_VERSION, "3");
+    Assert.assertTrue(DdlEventSentState.load(context, next).contains("dbo.d"));
+    Assert.assertFalse(DdlEventSentState.load(context, next).contains("dbo.c"));
+  }
+
+  @Test
+  public void testLegacyOffset() throws IOException {
+    MockContext context = new MockContext(SQLServerDriver.class);
+    Map<String, String> offset = Collections.singletonMap(SqlServerOffset.DDL_EVENT_SENT, "dbo.a,dbo.b");
+    DdlEventSentState restored = DdlEventSentState.load(context, offset);
+    Assert.assertEquals(2, restored.getVersion());
+    Assert.assertTrue(restored.contains("dbo.a"));
+    Assert.assertTrue(restored.contains("dbo.b"));
+    Map<String, String> next = Collections.singletonMap(SqlServerOffset.DDL_EVENT_SENT_VERSION, "2");
+    Assert.assertTrue(DdlEventSentState.load(context, next).contains("dbo.b"));
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.sqlserver;
+
+import io.debezium.config.Configuration;
+import io.debezium.connector.sqlserver.Lsn;
+import io.debezium.jdbc.JdbcConnection;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link ParallelQueryExecutor}, against connections that serve canned change table rows.
+ */
+public class ParallelQueryExecutorTest {
+  private static final int TABLES = 300;
+  private static final int ROWS_PER_TABLE = 10;
+  private static final long QUERY_LATENCY_MILLIS = 5;
+  private static final int CONNECTIONS = 8;
+
+  @Test
+  public void testParallelPolling() throws Exception {
+    String[] queries = new String[TABLES];
+    JdbcConnection.StatementPreparer[] preparers = new JdbcConnection.StatementPreparer[TABLES];
+    for (int i = 0; i < TABLES; i++) {
+      queries[i] = "SELECT * FROM cdc.[fn_cdc_get_all_changes_dbo_t" + i + "](?, ?, N'all update old')";
+      preparers[i] = statement -> { };
+    }
+
+    List<Row> serial = new ArrayList<>();
+    JdbcConnection single = connection();
+    long start = System.nanoTime();
+    single.prepareQuery(queries, preparers, resultSets -> merge(resultSets, serial));
+    long serialMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    single.close();
+
+    List<Row> parallel = new ArrayList<>();
+    List<JdbcConnection> connections = new ArrayList<>();
+    for (int i = 0; i < CONNECTIONS; i++) {
+      connections.add(connection());
+    }
+    try (ParallelQueryExecutor executor = new ParallelQueryExecutor(connections)) {
+      start = System.nanoTime();
+      executor.prepareQuery(queries, preparers, resultSets -> merge(resultSets, parallel));
+      long parallelMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      Assert.assertTrue(parallelMillis < serialMillis);
+    }
+
+    // the merged events are the same, in change position order
+    Assert.assertEquals(TABLES * ROWS_PER_TABLE, parallel.size());
+    Assert.assertEquals(serial, parallel);
+    for (int i = 1; i < parallel.size(); i++) {
+      Assert.assertTrue(Row.ORDER.compare(parallel.get(i - 1), parallel.get(i)) <= 0);
+    }
+  }
+
+  @Test
+  public void testQueryFailure() throws Exception {
+    List<JdbcConnection> connections = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      connections.add(connection());
+    }
+    String[] queries = { "SELECT 1", "missing", "SELECT 2" };
+    JdbcConnection.StatementPreparer[] preparers = new JdbcConnection.StatementPreparer[3];
+    Arrays.fill(preparers, (JdbcConnection.StatementPreparer) statement -> { });
+    try (ParallelQueryExecutor executor = new ParallelQueryExecutor(connections)) {
+      executor.prepareQuery(queries, preparers, resultSets -> Assert.fail("Consumer should not be called."));
+      Assert.fail("Query should fail.");
+    } catch (SQLException e) {
+      Assert.assertEquals("Invalid object name 'cdc.fn_cdc_get_all_changes_missing'.", e.getMessage());
+    }
+  }
+
+  /**
+   * Merges the change table rows by (commit LSN, change LSN, sequence value), the same way the streaming source does.
+   */
+  private static void merge(ResultSet[] resultSets, List<Row> merged) throws SQLException {
+    PriorityQueue<Row> heads = new PriorityQueue<>(Row.ORDER);
+    for (ResultSet resultSet : resultSets) {
+      if (resultSet.next()) {
+        heads.add(new Row(resultSet));
+      }
+    }
+    while (!heads.isEmpty()) {
+      Row row = heads.poll();
+      merged.add(row);
+      if (row.resultSet.next()) {
+        heads.add(new Row(row.resultSet));
+      }
+    }
+  }
+
+  private static JdbcConnection connection() {
+    return new JdbcConnection(Configuration.empty(), config -> {
+      Connection connection = Mockito.mock(Connection.class);
+      Mockito.when(connection.prepareStatement(Mockito.anyString()))
+        .thenAnswer(invocation -> statement(invocation.getArgument(0)));
+      return connection;
+    });
+  }
+
+  private static PreparedStatement statement(String query) throws SQLException {
+    PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+    Mockito.when(statement.executeQuery()).thenAnswer(invocation -> {
+      TimeUnit.MILLISECONDS.sleep(QUERY_LATENCY_MILLIS);
+      if (query.equals("missing")) {
+        throw new SQLException("Invalid object name 'cdc.fn_cdc_get_all_changes_missing'.");
+      }
+      return changeTable(query.hashCode());
+    });
+    return statement;
+  }
+
+  /**
+   * Rows of a change table, with commit LSN, change LSN and sequence value columns.
+   */
+  private static ResultSet changeTable(int seed) throws SQLException {
+    int[] row = { -1 };
+    ResultSet resultSet = Mockito.mock(ResultSet.class);
+    Mockito.when(resultSet.next()).thenAnswer(invocation -> ++row[0] < ROWS_PER_TABLE);
+    Mockito.when(resultSet.getBytes(Mockito.anyInt())).thenAnswer(invocation -> {
+      // transactions touch every table, so the rows of all tables interleave
+      int column = invocation.getArgument(0);
+      int value = column == 1 ? row[0] : Math.floorMod(seed * 31 + row[0] * column, 1000);
+      return ByteBuffer.allocate(10).putInt(6, value).array();
+    });
+    return resultSet;
+  }
+
+  /**
+   * A change table row.
+   */
+  private static class Row {
+    private static final Comparator<Row> ORDER = Comparator.<Row, Lsn>comparing(r -> r.commitLsn)
+      .thenComparing(r -> r.changeLsn)
+      .thenComparing(r -> r.seqval);
+
+    private final ResultSet resultSet;
+    private final Lsn commitLsn;
+    private final Lsn changeLsn;
+    private final Lsn seqval;
+
+    Row(ResultSet resultSet) throws SQLException {
+      this.resultSet = resultSet;
+      this.commitLsn = Lsn.valueOf(resultSet.getBytes(1));
+      this.changeLsn = Lsn.valueOf(resultSet.getBytes(2));
+      this.seqval = Lsn.valueOf(resultSet.getBytes(3));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Row)) {
+        return false;
+      }
+      Row that = (Row) o;
+      return commitLsn.equals(that.commitLsn) && changeLsn.equals(that.changeLsn) && seqval.equals(that.seqval);
+    }
+
+    @Override
+    public int hashCode() {
+      return commitLsn.hashCode();
+    }
+  }
+}
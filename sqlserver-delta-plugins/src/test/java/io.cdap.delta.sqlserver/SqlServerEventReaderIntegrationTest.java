@@ -34,6 +34,8 @@ import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -46,6 +48,8 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDate;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -58,6 +62,7 @@ import java.util.concurrent.TimeUnit;
  * are some classloading issues due to copied debezium classes.
  */
 public class SqlServerEventReaderIntegrationTest {
+  private static final Logger LOG = LoggerFactory.getLogger(SqlServerEventReaderIntegrationTest.class);
   private static final String DB = "test6";
   private static final String CUSTOMERS_TABLE = "customers";
   private static final Schema CUSTOMERS_SCHEMA = Schema.recordOf(
@@ -237,6 +242,137 @@ public class SqlServerEventReaderIntegrationTest {
     }
   }
 
+  @Test
+  public void testSnapshotIsolation() throws Exception {
+    SqlServerConfig config = new SqlServerConfig(HOST, port, USER, password, DB, null, "mssql", true);
+    String connectionUrlForDB = connectionUrl + ";databaseName=" + DB;
+    try (Connection connection = DriverManager.getConnection(connectionUrlForDB)) {
+      Assert.assertFalse(SqlServerTableAssessor.isSnapshotIsolationAllowed(connection, DB));
+      Assert.assertEquals(SqlServerTableAssessor.SNAPSHOT_ISOLATION_NOT_ALLOWED,
+                          new SqlServerTableAssessor(config, null).assess().getFeatures().get(0).getName());
+      try (Statement statement = connection.createStatement()) {
+        statement.execute(String.format("ALTER DATABASE %s SET ALLOW_SNAPSHOT_ISOLATION ON", DB));
+      }
+      Assert.assertTrue(SqlServerTableAssessor.isSnapshotIsolationAllowed(connection, DB));
+      Assert.assertTrue(new SqlServerTableAssessor(config, null).assess().getFeatures().isEmpty());
+    }
+
+    SourceTable sourceTable = new SourceTable(DB, CUSTOMERS_TABLE, "dbo",
+                                              Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+    DeltaSourceContext context = new MockContext(SQLServerDriver.class);
+    MockEventEmitter eventEmitter = new MockEventEmitter(6);
+    SqlServerEventReader eventReader = new SqlServerEventReader(Collections.singleton(sourceTable), config,
+                                                                context, eventEmitter);
+
+    // an open write transaction blocks the exclusive table lock of the default snapshot, but not a snapshot read
+    try (Connection writer = DriverManager.getConnection(connectionUrlForDB)) {
+      writer.setAutoCommit(false);
+      try (Statement statement = writer.createStatement()) {
+        statement.executeUpdate(String.format("UPDATE %s SET name = 'eve' WHERE id = 0", CUSTOMERS_TABLE));
+      }
+
+      eventReader.start(new Offset());
+      try {
+        eventEmitter.waitForExpectedEvents(30, TimeUnit.SECONDS);
+        Assert.assertEquals(3, eventEmitter.getDmlEvents().size());
+        // the snapshot reads the last committed version of the row
+        Assert.assertEquals("alice", eventEmitter.getDmlEvents().get(0).getRow().get("name"));
+      } finally {
+        eventReader.stop();
+        writer.rollback();
+      }
+    } finally {
+      try (Connection connection = DriverManager.getConnection(connectionUrlForDB);
+           Statement statement = connection.createStatement()) {
+        statement.execute(String.format("ALTER DATABASE %s SET ALLOW_SNAPSHOT_ISOLATION OFF", DB));
+      }
+    }
+  }
+
+  @Test
+  public void testChunkedSnapshot() throws Exception {
+    SourceTable sourceTable = new SourceTable(DB, CUSTOMERS_TABLE, "dbo",
+                                              Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+    MockContext context = new MockContext(SQLServerDriver.class);
+    context.addRuntimeArgument(SqlServerEventReader.SOURCE_CONNECTOR_PREFIX + TableSnapshotReader.CHUNK_SIZE, "1");
+    MockEventEmitter eventEmitter = new MockEventEmitter(6);
+    SqlServerConfig config = new SqlServerConfig(HOST, port, USER, password, DB, null, "mssql", null, null, 2);
+
+    SqlServerEventReader eventReader = new SqlServerEventReader(Collections.singleton(sourceTable), config,
+                                                                context, eventEmitter);
+    eventReader.start(new Offset());
+    eventEmitter.waitForExpectedEvents(30, TimeUnit.SECONDS);
+    eventReader.stop();
+
+    Assert.assertEquals(3, eventEmitter.getDdlEvents().size());
+    Assert.assertEquals(3, eventEmitter.getDmlEvents().size());
+    for (int i = 0; i < 3; i++) {
+      DMLEvent dmlEvent = eventEmitter.getDmlEvents().get(i);
+      Assert.assertEquals(DMLOperation.Type.INSERT, dmlEvent.getOperation().getType());
+      Assert.assertEquals(CUSTOMERS_TABLE, dmlEvent.getOperation().getTableName());
+      Assert.assertTrue(dmlEvent.isSnapshot());
+      Assert.assertEquals(i, (int) dmlEvent.getRow().get("id"));
+      Assert.assertEquals("dbo." + CUSTOMERS_TABLE, dmlEvent.getOffset().get().get(ChunkedSnapshotReader.TABLE));
+      Assert.assertEquals("[" + i + "]", dmlEvent.getOffset().get().get(ChunkedSnapshotReader.START));
+    }
+
+    // restart in the middle of the table, only the rows from the chunk that was being read are read again
+    Map<String, String> state = new HashMap<>(eventEmitter.getDmlEvents().get(0).getOffset().get());
+    state.put(ChunkedSnapshotReader.START, "[1]");
+    eventEmitter = new MockEventEmitter(2);
+    eventReader = new SqlServerEventReader(Collections.singleton(sourceTable), config, context, eventEmitter);
+    eventReader.start(new Offset(state));
+    eventEmitter.waitForExpectedEvents(30, TimeUnit.SECONDS);
+    eventReader.stop();
+
+    Assert.assertEquals(2, eventEmitter.getDmlEvents().size());
+    Assert.assertEquals(1, (int) eventEmitter.getDmlEvents().get(0).getRow().get("id"));
+    Assert.assertEquals(2, (int) eventEmitter.getDmlEvents().get(1).getRow().get("id"));
+  }
+
+  /**
+   * Compares how fast existing rows are read by Debezium's snapshot and in chunks over several connections.
+   */
+  @Test
+  public void testChunkedSnapshotThroughput() throws Exception {
+    String table = "events";
+    int rows = 200000;
+    String connectionUrlForDB = connectionUrl + ";databaseName=" + DB;
+    try (Connection connection = DriverManager.getConnection(connectionUrlForDB);
+         Statement statement = connection.createStatement()) {
+      statement.execute(String.format("CREATE TABLE %s (id int PRIMARY KEY, payload varchar(100) not null)", table));
+      statement.execute(String.format("WITH n AS (SELECT TOP (%d) ROW_NUMBER() OVER (ORDER BY (SELECT NULL)) AS id "
+                                        + "FROM sys.all_objects a CROSS JOIN sys.all_objects b) "
+                                        + "INSERT INTO %s SELECT id, REPLICATE('x', 100) FROM n", rows, table));
+      statement.execute(String.format("EXEC sys.sp_cdc_enable_table @source_schema = N'dbo', @source_name = N'%s', "
+                                        + "@role_name = NULL", table));
+    }
+
+    SourceTable sourceTable = new SourceTable(DB, table, "dbo",
+                                              Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+    for (int parallelism : new int[] { 0, 1, 4 }) {
+      DeltaSourceContext context = new MockContext(SQLServerDriver.class);
+      // 3 DDL events are sent before the rows
+      MockEventEmitter eventEmitter = new MockEventEmitter(rows + 3);
+      SqlServerConfig config = new SqlServerConfig(HOST, port, USER, password, DB, null, "mssql", null, null,
+                                                   parallelism);
+      SqlServerEventReader eventReader = new SqlServerEventReader(Collections.singleton(sourceTable), config,
+                                                                  context, eventEmitter);
+      long start = System.currentTimeMillis();
+      eventReader.start(new Offset());
+      try {
+        eventEmitter.waitForExpectedEvents(5, TimeUnit.MINUTES);
+      } finally {
+        eventReader.stop();
+      }
+      long millis = Math.max(1, System.currentTimeMillis() - start);
+      LOG.info("Read {} rows with snapshot parallelism {} in {} ms, {} rows per second",
+               eventEmitter.getDmlEvents().size(), parallelism, millis,
+               eventEmitter.getDmlEvents().size() * 1000L / millis);
+      Assert.assertEquals(rows, eventEmitter.getDmlEvents().size());
+    }
+  }
+
   @Test
   public void testEventReaderStop() throws Exception {
     SourceTable sourceTable = new SourceTable(DB, CUSTOMERS_TABLE, "dbo",
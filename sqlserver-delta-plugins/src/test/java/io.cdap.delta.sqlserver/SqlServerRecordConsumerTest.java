@@ -17,37 +17,63 @@
 package io.cdap.delta.sqlserver;
 
 import com.microsoft.sqlserver.jdbc.SQLServerDriver;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.delta.api.DDLEvent;
+import io.cdap.delta.api.DDLOperation;
+import io.cdap.delta.api.DMLEvent;
+import io.cdap.delta.api.DMLOperation;
 import io.cdap.delta.api.DeltaFailureRuntimeException;
 import io.cdap.delta.api.DeltaSourceContext;
 import io.cdap.delta.api.Offset;
+import io.cdap.delta.api.SourceColumn;
+import io.cdap.delta.api.SourceTable;
 import io.cdap.delta.plugin.mock.MockContext;
 import io.cdap.delta.plugin.mock.MockEventEmitter;
+import io.debezium.connector.sqlserver.SourceInfo;
 import org.apache.kafka.connect.data.ConnectSchema;
 import org.apache.kafka.connect.data.Field;
 import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
 import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.header.ConnectHeaders;
 import org.apache.kafka.connect.source.SourceRecord;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @RunWith(MockitoJUnitRunner.class)
 public class SqlServerRecordConsumerTest {
   private static final String DATABASE = "AdventureWorks2014";
   private static final String TOPICNAME = "dbo.testreplication.npe";
+  private static final Schema KEY_SCHEMA = SchemaBuilder.struct().name("key").field("id", Schema.INT32_SCHEMA).build();
+  private static final Schema ROW_SCHEMA = SchemaBuilder.struct().name("row").optional()
+    .field("id", Schema.INT32_SCHEMA)
+    .field("name", Schema.OPTIONAL_STRING_SCHEMA)
+    .build();
+  private static final Schema VALUE_SCHEMA = SchemaBuilder.struct().name("envelope")
+    .field("op", Schema.STRING_SCHEMA)
+    .field("before", ROW_SCHEMA)
+    .field("after", ROW_SCHEMA)
+    .build();
+  private static final Schema HEARTBEAT_SCHEMA = SchemaBuilder.struct().name("heartbeat")
+    .field("ts_ms", Schema.INT64_SCHEMA)
+    .build();
 
   @Test(expected = DeltaFailureRuntimeException.class)
   public void testTableWithoutPrimaryKey() {
     DeltaSourceContext context = new MockContext(SQLServerDriver.class);
     MockEventEmitter eventEmitter = new MockEventEmitter(5);
     SqlServerRecordConsumer sqlServerRecordConsumer = new SqlServerRecordConsumer
-      (context, eventEmitter, DATABASE, new HashSet<>(), new HashMap<>(), new Offset(), true);
+      (context, eventEmitter, DATABASE, new DdlEventSentState(context), new HashMap<>(), new Offset(), true);
     SourceRecord sourceRecordMock = Mockito.mock(SourceRecord.class);
     // the topic name should be in this form: [db.server.name].[schema].[table]
     Mockito.when(sourceRecordMock.topic()).thenReturn(TOPICNAME);
@@ -64,4 +90,243 @@ public class SqlServerRecordConsumerTest {
     sqlServerRecordConsumer.accept(sourceRecordMock);
   }
 
+  @Test
+  public void testSelectedColumnsAndBlacklist() {
+    DeltaSourceContext context = new MockContext(SQLServerDriver.class);
+    MockEventEmitter eventEmitter = new MockEventEmitter(6);
+    SourceTable sourceTable = new SourceTable(DATABASE, "npe", "testreplication",
+                                              Collections.singleton(new SourceColumn("id")),
+                                              Collections.singleton(DMLOperation.Type.DELETE),
+                                              Collections.emptySet());
+    Map<String, SourceTable> sourceTables = new HashMap<>();
+    sourceTables.put("testreplication.npe", sourceTable);
+    SqlServerRecordConsumer sqlServerRecordConsumer = new SqlServerRecordConsumer
+      (context, eventEmitter, DATABASE, new DdlEventSentState(context), sourceTables, new Offset(), false);
+
+    for (int i = 0; i < 4; i++) {
+      Map<String, Object> offset = new HashMap<>();
+      offset.put("snapshot", true);
+      sqlServerRecordConsumer.accept(record(i, i == 3 ? "d" : "c", offset));
+    }
+
+    // DDL events are only sent for the first event of the table
+    Assert.assertEquals(2, eventEmitter.getDdlEvents().size());
+    // the delete is blacklisted
+    List<DMLEvent> dmlEvents = eventEmitter.getDmlEvents();
+    Assert.assertEquals(3, dmlEvents.size());
+    for (int i = 0; i < dmlEvents.size(); i++) {
+      StructuredRecord row = dmlEvents.get(i).getRow();
+      Assert.assertEquals(1, row.getSchema().getFields().size());
+      Assert.assertEquals(i, (int) row.get("id"));
+      Assert.assertEquals("testreplication", dmlEvents.get(i).getOperation().getSchemaName());
+      Assert.assertEquals("npe", dmlEvents.get(i).getOperation().getTableName());
+    }
+    // the projected schema is reused for rows with the same schema
+    Assert.assertSame(dmlEvents.get(0).getRow().getSchema(), dmlEvents.get(2).getRow().getSchema());
+  }
+
+  @Test
+  public void testDuplicatesBeforeResumeOffsetAreSkipped() {
+    DeltaSourceContext context = new MockContext(SQLServerDriver.class);
+    MockEventEmitter eventEmitter = new MockEventEmitter(6);
+    Offset resumeOffset = new Offset(Collections.singletonMap(SourceInfo.CHANGE_LSN_KEY, "00000025:00000d98:0003"));
+    SqlServerRecordConsumer sqlServerRecordConsumer = new SqlServerRecordConsumer
+      (context, eventEmitter, DATABASE, new DdlEventSentState(context), new HashMap<>(), resumeOffset, false);
+
+    String[] changeLsns = {
+      "00000025:00000d98:0002", "00000025:00000d98:0003", "00000025:00000d99:0001",
+      // once past the resume offset, events are no longer compared with it
+      "00000025:00000d98:0001"
+    };
+    for (int i = 0; i < changeLsns.length; i++) {
+      Map<String, Object> offset = new HashMap<>();
+      offset.put(SourceInfo.CHANGE_LSN_KEY, changeLsns[i]);
+      sqlServerRecordConsumer.accept(record(i, "c", offset));
+    }
+
+    List<DMLEvent> dmlEvents = eventEmitter.getDmlEvents();
+    Assert.assertEquals(2, dmlEvents.size());
+    Assert.assertEquals(2, (int) dmlEvents.get(0).getRow().get("id"));
+    Assert.assertEquals(3, (int) dmlEvents.get(1).getRow().get("id"));
+  }
+
+  @Test
+  public void testTransactionIds() {
+    DeltaSourceContext context = new MockContext(SQLServerDriver.class);
+    MockEventEmitter eventEmitter = new MockEventEmitter(6);
+    SqlServerRecordConsumer sqlServerRecordConsumer = new SqlServerRecordConsumer
+      (context, eventEmitter, DATABASE, new DdlEventSentState(context), new HashMap<>(), new Offset(), true);
+
+    Map<String, Object> snapshotOffset = new HashMap<>();
+    snapshotOffset.put(SourceInfo.SNAPSHOT_KEY, true);
+    snapshotOffset.put(SourceInfo.COMMIT_LSN_KEY, "00000025:00000d98:0001");
+    sqlServerRecordConsumer.accept(record(0, "r", snapshotOffset));
+    sqlServerRecordConsumer.accept(record(1, "c", offset("00000025:00000d99:0005", "00000025:00000d99:0002")));
+    sqlServerRecordConsumer.accept(record(2, "c", offset("00000025:00000d99:0005", "00000025:00000d99:0003")));
+
+    List<DMLEvent> dmlEvents = eventEmitter.getDmlEvents();
+    Assert.assertEquals(3, dmlEvents.size());
+    // snapshot events are not part of a transaction, changes are identified by the LSN they were committed at
+    Assert.assertNull(dmlEvents.get(0).getTransactionId());
+    Assert.assertEquals("00000025:00000d99:0005", dmlEvents.get(1).getTransactionId());
+    Assert.assertEquals("00000025:00000d99:0005", dmlEvents.get(2).getTransactionId());
+  }
+
+  @Test
+  public void testTransactionsAreGrouped() {
+    DeltaSourceContext context = new MockContext(SQLServerDriver.class);
+    MockEventEmitter eventEmitter = new MockEventEmitter(7);
+    Map<String, String> resumeState = new HashMap<>();
+    resumeState.put(SourceInfo.COMMIT_LSN_KEY, "00000025:00000d90:0005");
+    resumeState.put(SourceInfo.CHANGE_LSN_KEY, "00000025:00000d90:0002");
+    Offset resumeOffset = new Offset(resumeState);
+    SqlServerRecordConsumer sqlServerRecordConsumer = new SqlServerRecordConsumer
+      (context, eventEmitter, DATABASE, new DdlEventSentState(context), new HashMap<>(), resumeOffset, false, 10);
+
+    for (int i = 0; i < 3; i++) {
+      sqlServerRecordConsumer.accept(record(i, "c", offset("00000025:00000d98:0005", "00000025:00000d98:000" + i)));
+    }
+    // the transaction is held until it is complete, the DDL events of its table can be emitted right away
+    Assert.assertEquals(2, eventEmitter.getDdlEvents().size());
+    Assert.assertEquals(resumeOffset, eventEmitter.getDdlEvents().get(0).getOffset());
+    Assert.assertTrue(eventEmitter.getDmlEvents().isEmpty());
+
+    for (int i = 3; i < 5; i++) {
+      sqlServerRecordConsumer.accept(record(i, "c", offset("00000025:00000d99:0005", "00000025:00000d99:000" + i)));
+    }
+    List<DMLEvent> dmlEvents = eventEmitter.getDmlEvents();
+    Assert.assertEquals(3, dmlEvents.size());
+    sqlServerRecordConsumer.accept(heartbeat(offset("00000025:00000d99:0005", "00000025:00000d99:0004")));
+    Assert.assertEquals(5, dmlEvents.size());
+
+    // only the last event of a transaction moves the offset past it
+    List<Offset> offsets = dmlEvents.stream().map(DMLEvent::getOffset).collect(Collectors.toList());
+    Assert.assertEquals(resumeOffset, offsets.get(0));
+    Assert.assertEquals(resumeOffset, offsets.get(1));
+    Assert.assertEquals("00000025:00000d98:0002", offsets.get(2).get().get(SourceInfo.CHANGE_LSN_KEY));
+    Assert.assertEquals(offsets.get(2), offsets.get(3));
+    Assert.assertEquals("00000025:00000d99:0004", offsets.get(4).get().get(SourceInfo.CHANGE_LSN_KEY));
+    for (int i = 0; i < dmlEvents.size(); i++) {
+      Assert.assertEquals(i, (int) dmlEvents.get(i).getRow().get("id"));
+      Assert.assertEquals(i < 3 ? "00000025:00000d98:0005" : "00000025:00000d99:0005",
+                          dmlEvents.get(i).getTransactionId());
+    }
+  }
+
+  @Test
+  public void testLargeTransactionsAreEmittedWhileRead() {
+    DeltaSourceContext context = new MockContext(SQLServerDriver.class);
+    MockEventEmitter eventEmitter = new MockEventEmitter(7);
+    SqlServerRecordConsumer sqlServerRecordConsumer = new SqlServerRecordConsumer
+      (context, eventEmitter, DATABASE, new DdlEventSentState(context), new HashMap<>(), new Offset(), false, 2);
+
+    Map<String, Object> snapshotOffset = new HashMap<>();
+    snapshotOffset.put(SourceInfo.SNAPSHOT_KEY, true);
+    snapshotOffset.put(SourceInfo.COMMIT_LSN_KEY, "00000025:00000d90:0001");
+    sqlServerRecordConsumer.accept(record(0, "r", snapshotOffset));
+    Assert.assertEquals(1, eventEmitter.getDmlEvents().size());
+    Offset snapshotEventOffset = eventEmitter.getDmlEvents().get(0).getOffset();
+
+    for (int i = 1; i <= 5; i++) {
+      sqlServerRecordConsumer.accept(record(i, "u", offset("00000025:00000d98:0005", "00000025:00000d98:000" + i)));
+    }
+    // no more than the maximum transaction size is held, the offset stays at the end of the snapshot
+    List<DMLEvent> dmlEvents = eventEmitter.getDmlEvents();
+    Assert.assertEquals(5, dmlEvents.size());
+    for (int i = 1; i < 5; i++) {
+      Assert.assertEquals(snapshotEventOffset, dmlEvents.get(i).getOffset());
+    }
+    sqlServerRecordConsumer.accept(heartbeat(offset("00000025:00000d98:0005", "00000025:00000d98:0005")));
+    Assert.assertEquals(6, dmlEvents.size());
+    Assert.assertEquals(5, (int) dmlEvents.get(5).getRow().get("id"));
+    Assert.assertEquals("00000025:00000d98:0005", dmlEvents.get(5).getOffset().get().get(SourceInfo.CHANGE_LSN_KEY));
+  }
+
+  @Test
+  public void testNetChangesResumeAtTransactionStart() {
+    // net changes of a transaction all have its commit LSN as their change LSN
+    String commitLsn = "00000025:00000d98:0005";
+    Map<String, String> previousState = new HashMap<>();
+    previousState.put(SourceInfo.COMMIT_LSN_KEY, "00000025:00000d90:0005");
+    previousState.put(SourceInfo.CHANGE_LSN_KEY, "00000025:00000d90:0002");
+    Offset previousTransaction = new Offset(previousState);
+    DeltaSourceContext context = new MockContext(SQLServerDriver.class);
+    MockEventEmitter eventEmitter = new MockEventEmitter(7);
+    SqlServerRecordConsumer consumer = new SqlServerRecordConsumer
+      (context, eventEmitter, DATABASE, new DdlEventSentState(context), new HashMap<>(), previousTransaction, false, 2);
+    for (int i = 0; i < 3; i++) {
+      consumer.accept(record(i, "u", offset(commitLsn, commitLsn)));
+    }
+    // the transaction is larger than the maximum transaction size, some of its changes are replicated before the
+    // restart, all with the offset of the previous transaction
+    List<DMLEvent> beforeRestart = eventEmitter.getDmlEvents();
+    Assert.assertEquals(2, beforeRestart.size());
+    Assert.assertEquals(previousTransaction, beforeRestart.get(0).getOffset());
+    Offset restartOffset = beforeRestart.get(1).getOffset();
+    Assert.assertEquals(previousTransaction, restartOffset);
+
+    // after the restart, the whole transaction is read again and none of its changes are skipped
+    MockEventEmitter restartedEmitter = new MockEventEmitter(7);
+    SqlServerRecordConsumer restarted = new SqlServerRecordConsumer
+      (context, restartedEmitter, DATABASE, new DdlEventSentState(context), new HashMap<>(), restartOffset, false, 2);
+    for (int i = 0; i < 3; i++) {
+      restarted.accept(record(i, "u", offset(commitLsn, commitLsn)));
+    }
+    restarted.accept(heartbeat(offset(commitLsn, commitLsn)));
+    List<DMLEvent> afterRestart = restartedEmitter.getDmlEvents();
+    Assert.assertEquals(3, afterRestart.size());
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(i, (int) afterRestart.get(i).getRow().get("id"));
+    }
+    Assert.assertEquals(commitLsn, afterRestart.get(2).getOffset().get().get(SourceInfo.CHANGE_LSN_KEY));
+  }
+
+  @Test
+  public void testSignalledTableIsCreatedAgainWithoutRows() {
+    DeltaSourceContext context = new MockContext(SQLServerDriver.class);
+    MockEventEmitter eventEmitter = new MockEventEmitter(5);
+    DdlEventSentState ddlEventSent = new DdlEventSentState(context);
+    SqlServerRecordConsumer sqlServerRecordConsumer = new SqlServerRecordConsumer
+      (context, eventEmitter, DATABASE, ddlEventSent, new HashMap<>(), new Offset(), false);
+    Map<String, Object> offset = offset("00000025:00000d99:0005", "00000025:00000d99:0002");
+
+    // the event that starts the rows of the table has no row, the table is created with the schema of its rows
+    ConnectHeaders headers = new ConnectHeaders();
+    headers.addString(TableSnapshotReader.TABLES, "testreplication.npe");
+    headers.addBoolean(TableSnapshotReader.ROW, true);
+    sqlServerRecordConsumer.accept(new SourceRecord(Collections.emptyMap(), offset, TOPICNAME, null, KEY_SCHEMA, null,
+                                                    VALUE_SCHEMA, new Struct(VALUE_SCHEMA).put("op", "r"), null,
+                                                    headers));
+    List<DDLEvent> ddlEvents = eventEmitter.getDdlEvents();
+    Assert.assertEquals(Arrays.asList(DDLOperation.Type.DROP_TABLE, DDLOperation.Type.CREATE_DATABASE,
+                                      DDLOperation.Type.CREATE_TABLE),
+                        ddlEvents.stream().map(e -> e.getOperation().getType()).collect(Collectors.toList()));
+    DDLEvent createTable = ddlEvents.get(2);
+    Assert.assertEquals("npe", createTable.getOperation().getTableName());
+    Assert.assertEquals(Collections.singletonList("id"), createTable.getPrimaryKey());
+    Assert.assertEquals(Arrays.asList("id", "name"), createTable.getSchema().getFields().stream()
+      .map(io.cdap.cdap.api.data.schema.Schema.Field::getName).collect(Collectors.toList()));
+    Assert.assertTrue(eventEmitter.getDmlEvents().isEmpty());
+    Assert.assertTrue(ddlEventSent.contains("testreplication.npe"));
+  }
+
+  private static Map<String, Object> offset(String commitLsn, String changeLsn) {
+    Map<String, Object> offset = new HashMap<>();
+    offset.put(SourceInfo.COMMIT_LSN_KEY, commitLsn);
+    offset.put(SourceInfo.CHANGE_LSN_KEY, changeLsn);
+    return offset;
+  }
+
+  private static SourceRecord heartbeat(Map<String, Object> offset) {
+    return new SourceRecord(Collections.emptyMap(), offset, "__debezium-heartbeat.dummy", null, null,
+                            HEARTBEAT_SCHEMA, new Struct(HEARTBEAT_SCHEMA).put("ts_ms", 0L));
+  }
+
+  private static SourceRecord record(int id, String op, Map<String, Object> offset) {
+    Struct row = new Struct(ROW_SCHEMA).put("id", id).put("name", "name" + id);
+    Struct value = new Struct(VALUE_SCHEMA).put("op", op);
+    value.put("d".equals(op) ? "before" : "after", row);
+    return new SourceRecord(Collections.emptyMap(), offset, TOPICNAME, KEY_SCHEMA,
+                            new Struct(KEY_SCHEMA).put("id", id), VALUE_SCHEMA, value);
+  }
 }
@@ -19,16 +19,26 @@ import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.delta.api.assessment.ColumnAssessment;
 import io.cdap.delta.api.assessment.ColumnDetail;
 import io.cdap.delta.api.assessment.ColumnSupport;
+import io.cdap.delta.api.assessment.Problem;
 import io.cdap.delta.api.assessment.TableAssessment;
 import io.cdap.delta.api.assessment.TableDetail;
 import io.cdap.delta.plugin.common.ColumnEvaluation;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.Mockito;
 
+import java.sql.Connection;
 import java.sql.JDBCType;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 public class SqlServerTableAssessorTest {
 
@@ -155,4 +165,61 @@ public class SqlServerTableAssessorTest {
     Assert.assertEquals(1, assessment.getColumns().size());
     Assert.assertEquals(ColumnSupport.YES, assessment.getColumns().get(0).getSupport());
   }
+
+  @Test
+  public void testNetChanges() {
+    Map<String, String> props = new HashMap<>();
+    props.put(SqlServerTableAssessor.TYPE_NAME, TIME);
+    props.put(SqlServerTableAssessor.SCALE, SCALE_MILLIS);
+    ColumnDetail columnDetail = new ColumnDetail(UPDATED_TIME_COLUMN, JDBCType.TIME, true, props);
+    TableDetail tableDetail = new TableDetail.Builder(DB, TABLE, SCHEMA)
+      .setColumns(Arrays.asList(columnDetail)).build();
+
+    Assert.assertTrue(tableAssessor.assess(tableDetail).getFeatureProblems().isEmpty());
+    List<Problem> features = new SqlServerTableAssessor(true).assess(tableDetail).getFeatureProblems();
+    Assert.assertEquals(1, features.size());
+    Assert.assertEquals(SqlServerTableAssessor.NET_CHANGES, features.get(0).getName());
+
+    // tables without net changes support only have that reported
+    Problem notSupported = new Problem(SqlServerTableAssessor.NET_CHANGES_NOT_SUPPORTED, "", "", "");
+    tableDetail = new TableDetail.Builder(DB, TABLE, SCHEMA)
+      .setColumns(Arrays.asList(columnDetail))
+      .setFeatures(new ArrayList<>(Collections.singletonList(notSupported)))
+      .build();
+    features = new SqlServerTableAssessor(true).assess(tableDetail).getFeatureProblems();
+    Assert.assertEquals(Collections.singletonList(notSupported), features);
+  }
+
+  @Test
+  public void testSnapshotIsolationCheck() throws Exception {
+    // the database settings are only checked when the assessor has a config
+    Assert.assertTrue(tableAssessor.assess().getFeatures().isEmpty());
+
+    List<Object> parameters = new ArrayList<>();
+    Assert.assertTrue(SqlServerTableAssessor.isSnapshotIsolationAllowed(connection(1, parameters), DB));
+    Assert.assertEquals(Collections.singletonList(DB), parameters);
+    // 0 is OFF, 2 and 3 are the transitions to OFF and ON
+    for (Integer state : Arrays.asList(0, 2, 3, null)) {
+      Assert.assertFalse(SqlServerTableAssessor.isSnapshotIsolationAllowed(connection(state, parameters), DB));
+    }
+  }
+
+  /**
+   * @return a connection to a database with the given snapshot isolation state, or to no database if it is null
+   */
+  private static Connection connection(@Nullable Integer snapshotIsolationState,
+                                       List<Object> parameters) throws SQLException {
+    ResultSet rs = Mockito.mock(ResultSet.class);
+    Mockito.when(rs.next()).thenReturn(snapshotIsolationState != null, false);
+    if (snapshotIsolationState != null) {
+      Mockito.when(rs.getInt(1)).thenReturn(snapshotIsolationState);
+    }
+    PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+    Mockito.doAnswer(invocation -> parameters.add(invocation.getArgument(1)))
+      .when(statement).setString(Mockito.anyInt(), Mockito.anyString());
+    Mockito.when(statement.executeQuery()).thenReturn(rs);
+    Connection connection = Mockito.mock(Connection.class);
+    Mockito.when(connection.prepareStatement(Mockito.anyString())).thenReturn(statement);
+    return connection;
+  }
 }
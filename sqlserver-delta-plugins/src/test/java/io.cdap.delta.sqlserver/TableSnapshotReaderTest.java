@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.delta.sqlserver;
+
+import io.cdap.delta.plugin.common.SnapshotSignal;
+import io.debezium.config.Configuration;
+import io.debezium.data.Envelope;
+import io.debezium.pipeline.spi.ChangeRecordEmitter;
+import io.debezium.pipeline.spi.OffsetContext;
+import io.debezium.relational.Column;
+import io.debezium.relational.Table;
+import io.debezium.relational.TableId;
+import io.debezium.schema.DataCollectionSchema;
+import io.debezium.util.Clock;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.header.ConnectHeaders;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link TableSnapshotReader}.
+ */
+public class TableSnapshotReaderTest {
+  private static final TableId SIGNALS = new TableId("db", "dbo", "signals");
+
+  @Test
+  public void testQuery() {
+    Table table = Table.editor()
+      .tableId(new TableId("db", "dbo", "my]table"))
+      .addColumns(column("a", 1), column("b", 2), column("c", 3))
+      .setPrimaryKeyNames("a", "b")
+      .create();
+
+    Assert.assertEquals("SELECT TOP (10) [a], [b], [c] FROM [dbo].[my]]table] ORDER BY [a], [b]",
+                        TableSnapshotReader.getQuery(table, table.primaryKeyColumns(), 10, false));
+    Assert.assertEquals("SELECT TOP (10) [a], [b], [c] FROM [dbo].[my]]table] WHERE ([a] > ?) OR ([a] = ? AND [b] > ?) "
+                          + "ORDER BY [a], [b]",
+                        TableSnapshotReader.getQuery(table, table.primaryKeyColumns(), 10, true));
+    Assert.assertEquals("SELECT [a], [b], [c] FROM [dbo].[my]]table]",
+                        TableSnapshotReader.getQuery(table, Collections.emptyList(), 0, false));
+  }
+
+  @Test
+  public void testSignal() throws InterruptedException {
+    Table signals = Table.editor()
+      .tableId(SIGNALS)
+      .addColumns(column("id", 1), column(SnapshotSignal.TYPE, 2), column(SnapshotSignal.DATA, 3))
+      .setPrimaryKeyNames("id")
+      .create();
+    TableSnapshotReader reader = TableSnapshotReader.create(Configuration.create()
+                                                              .with(TableSnapshotReader.SIGNAL_TABLE, "dbo.signals")
+                                                              .build());
+    Assert.assertTrue(reader.isSignal(SIGNALS));
+    Assert.assertFalse(reader.isSignal(new TableId("db", "dbo", "t1")));
+    Assert.assertFalse(reader.isPending());
+
+    reader.signal(signals, new Object[] { "1", "log", "dbo.t1" });
+    Assert.assertFalse(reader.isPending());
+    Assert.assertNull(headers(reader).lastWithName(TableSnapshotReader.TABLES));
+
+    reader.signal(signals, new Object[] { "2", SnapshotSignal.EXECUTE_SNAPSHOT, "dbo.t1,dbo.t2" });
+    reader.signal(signals, new Object[] { "3", SnapshotSignal.EXECUTE_SNAPSHOT, "dbo.t2,dbo.t3" });
+    Assert.assertTrue(reader.isPending());
+    ConnectHeaders headers = headers(reader);
+    Assert.assertEquals("dbo.t1,dbo.t2,dbo.t3", headers.lastWithName(TableSnapshotReader.TABLES).value());
+    Assert.assertNull(headers.lastWithName(TableSnapshotReader.ROW));
+    // headers of the change are kept
+    Assert.assertEquals("v", headers.lastWithName("h").value());
+  }
+
+  @Test
+  public void testTableStart() throws InterruptedException {
+    Schema sourceSchema = SchemaBuilder.struct().field("table", Schema.STRING_SCHEMA).build();
+    Envelope envelope = Envelope.defineSchema()
+      .withName("envelope")
+      .withRecord(SchemaBuilder.struct().optional().field("id", Schema.INT32_SCHEMA).build())
+      .withSource(sourceSchema)
+      .build();
+    DataCollectionSchema schema = Mockito.mock(DataCollectionSchema.class);
+    Mockito.when(schema.getEnvelopeSchema()).thenReturn(envelope);
+    OffsetContext offsetContext = Mockito.mock(OffsetContext.class);
+    Mockito.when(offsetContext.getSourceInfo()).thenReturn(new Struct(sourceSchema).put("table", "t1"));
+    ConnectHeaders headers = new ConnectHeaders();
+    headers.addBoolean(TableSnapshotReader.ROW, true);
+
+    // the event that starts a table is a read without a row
+    List<Struct> values = new ArrayList<>();
+    new TableSnapshotReader.TableStartEmitter(offsetContext, Clock.system(), headers).emitChangeRecords(
+      schema, (recordSchema, operation, key, value, offset, recordHeaders) -> {
+        Assert.assertEquals(Envelope.Operation.READ, operation);
+        Assert.assertNull(key);
+        Assert.assertSame(headers, recordHeaders);
+        values.add(value);
+      });
+    Assert.assertEquals(1, values.size());
+    Struct value = values.get(0);
+    value.validate();
+    Assert.assertEquals("r", value.getString(Envelope.FieldName.OPERATION));
+    Assert.assertNull(value.get(Envelope.FieldName.AFTER));
+    Assert.assertEquals("t1", value.getStruct(Envelope.FieldName.SOURCE).getString("table"));
+  }
+
+  @Test
+  public void testResume() {
+    TableSnapshotReader reader = TableSnapshotReader.create(Configuration.create()
+                                                              .with(TableSnapshotReader.TABLES, "dbo.t2,dbo.t3")
+                                                              .build());
+    Assert.assertTrue(reader.isPending());
+    Assert.assertFalse(reader.isSignal(SIGNALS));
+  }
+
+  private static ConnectHeaders headers(TableSnapshotReader reader) throws InterruptedException {
+    List<ConnectHeaders> emitted = new ArrayList<>();
+    ChangeRecordEmitter emitter = new ChangeRecordEmitter() {
+      @Override
+      public void emitChangeRecords(DataCollectionSchema schema, Receiver receiver) throws InterruptedException {
+        ConnectHeaders headers = new ConnectHeaders();
+        headers.addString("h", "v");
+        receiver.changeRecord(schema, Envelope.Operation.CREATE, null, null, null, headers);
+      }
+
+      @Override
+      public OffsetContext getOffset() {
+        return null;
+      }
+    };
+    reader.withProgress(emitter).emitChangeRecords(null, (schema, operation, key, value, offset, headers) -> {
+      emitted.add(headers);
+    });
+    Assert.assertEquals(1, emitted.size());
+    return emitted.get(0);
+  }
+
+  private static Column column(String name, int position) {
+    return Column.editor().name(name).type("varchar").jdbcType(Types.VARCHAR).position(position).create();
+  }
+}
@@ -0,0 +1,474 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.debezium.connector.sqlserver;
+
+import io.cdap.delta.plugin.common.ReaderContext;
+import io.cdap.delta.plugin.common.ReaderContextRegistry;
+import io.debezium.config.Configuration;
+import io.debezium.relational.Column;
+import io.debezium.relational.Table;
+import io.debezium.relational.TableId;
+import io.debezium.util.Clock;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.stubbing.Answer;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tests for {@link SqlServerConnection}, against a stand-in for the database.
+ */
+public class SqlServerConnectionTest {
+  private static final int TRANSACTIONS = 5000;
+  private static final long START_MILLIS = 1600000000000L;
+  private static final int UPDATES = 10000;
+  private static final int HOT_ROWS = 20;
+  private static final List<String> CHANGE_COLUMNS =
+    Arrays.asList("__$start_lsn", "__$seqval", "__$operation", "__$update_mask", "id", "value");
+
+  @Test
+  public void testBatchedLsnToTimestamp() throws Exception {
+    FakeDatabase database = new FakeDatabase(true);
+    SqlServerConnection connection = connect(database);
+    for (int i = 1; i <= TRANSACTIONS; i++) {
+      Assert.assertEquals(Instant.ofEpochMilli(START_MILLIS + i), connection.timestampOfLsn(lsn(i)));
+    }
+    connection.close();
+    Assert.assertEquals(TRANSACTIONS / 1000, database.batchQueries.get());
+    Assert.assertEquals(0, database.singleQueries.get());
+  }
+
+  @Test
+  public void testMappingTableNotReadable() throws Exception {
+    FakeDatabase database = new FakeDatabase(false);
+    SqlServerConnection connection = connect(database);
+    for (int i = 1; i <= 10; i++) {
+      Assert.assertEquals(Instant.ofEpochMilli(START_MILLIS + i), connection.timestampOfLsn(lsn(i)));
+    }
+    connection.close();
+    // the mapping table is only tried once
+    Assert.assertEquals(1, database.batchQueries.get());
+    Assert.assertEquals(10, database.singleQueries.get());
+  }
+
+  @Test
+  public void testChangesQuery() {
+    Assert.assertEquals("SELECT * FROM cdc.[fn_cdc_get_all_changes_dbo_orders](?, ?, N'all update old')",
+                        SqlServerConnection.getChangesQuery("dbo_orders", null));
+    Assert.assertEquals("SELECT [__$start_lsn], [__$seqval], [__$operation], [__$update_mask], [id], [odd]]name] "
+                          + "FROM cdc.[fn_cdc_get_all_changes_dbo_orders](?, ?, N'all update old')",
+                        SqlServerConnection.getChangesQuery("dbo_orders", Arrays.asList("id", "odd]name")));
+  }
+
+  @Test
+  public void testSelectedColumnsAreQueried() throws Exception {
+    Configuration config = Configuration.create()
+      .with(SqlServerConnection.CHANGE_TABLE_COLUMNS_PREFIX + "dbo.orders", "name,total")
+      .build();
+    SqlServerConnection connection = connect(new FakeDatabase(true), config);
+    Table table = Table.editor()
+      .tableId(new TableId("db", "dbo", "orders"))
+      .addColumn(Column.editor().name("id").type("INT").jdbcType(Types.INTEGER).position(1).create())
+      .addColumn(Column.editor().name("name").type("VARCHAR").jdbcType(Types.VARCHAR).position(2).create())
+      .addColumn(Column.editor().name("notes").type("VARCHAR").jdbcType(Types.VARCHAR).position(3).create())
+      .addColumn(Column.editor().name("total").type("INT").jdbcType(Types.INTEGER).position(4).create())
+      .setPrimaryKeyNames("id")
+      .create();
+    SqlServerChangeTable changeTable = new SqlServerChangeTable(table.id(), "dbo_orders", 1, Lsn.NULL, Lsn.NULL,
+                                                                Arrays.asList("id", "name", "notes", "total"));
+    changeTable.setSourceTable(table);
+    // the key is always read, other columns only if they are selected
+    List<String> columns = connection.getColumnsToQuery(changeTable);
+    Assert.assertEquals(Arrays.asList("id", "name", "total"), columns);
+
+    // tables without a selection read all columns
+    SqlServerChangeTable other = new SqlServerChangeTable(new TableId("db", "dbo", "other"), "dbo_other", 2,
+                                                          Lsn.NULL, Lsn.NULL, Arrays.asList("id", "name"));
+    other.setSourceTable(table);
+    Assert.assertNull(connection.getColumnsToQuery(other));
+    connection.close();
+
+    // rows with only the queried columns are still mapped to the right columns of the table
+    List<String> resultColumns = new ArrayList<>(Arrays.asList("__$start_lsn", "__$seqval", "__$operation",
+                                                               "__$update_mask"));
+    resultColumns.addAll(columns);
+    List<Object[]> rows = new ArrayList<>();
+    rows.add(new Object[] { lsn(1).getBinary(), lsn(1).getBinary(), 2, null, 7, "widget", 42 });
+    SqlServerChangeTablePointer pointer = new SqlServerChangeTablePointer(changeTable, resultSet(resultColumns, rows));
+    Assert.assertTrue(pointer.next());
+    Assert.assertEquals(2, pointer.getOperation());
+    Assert.assertArrayEquals(new Object[] { 7, "widget", null, 42 }, pointer.getData());
+  }
+
+  @Test
+  public void testNetChangesQuery() {
+    Assert.assertEquals("SELECT n.[__$start_lsn], n.[__$start_lsn] AS [__$seqval], o.[__$operation], "
+                          + "n.[__$update_mask], n.[id], n.[odd]]name] "
+                          + "FROM (SELECT *, ROW_NUMBER() OVER (ORDER BY [__$start_lsn]) AS [__$row] "
+                          + "FROM cdc.[fn_cdc_get_net_changes_dbo_orders](?, ?, N'all with mask')) n "
+                          + "CROSS APPLY (SELECT 3 AS [__$operation] WHERE n.[__$operation] = 4 "
+                          + "UNION ALL SELECT n.[__$operation]) o ORDER BY n.[__$row], o.[__$operation]",
+                        SqlServerConnection.getNetChangesQuery("dbo_orders", Arrays.asList("id", "odd]name")));
+  }
+
+  @Test
+  public void testNetChangesOfUpdateStorm() throws Exception {
+    Configuration config = Configuration.create().with(SqlServerConnection.CHANGE_TABLE_NET_CHANGES, true).build();
+    FakeDatabase database = new FakeDatabase(true);
+    SqlServerConnection connection = connect(database, config);
+    Map<String, SqlServerChangeTable> changeTables = listOfChangeTables(connection);
+
+    Map<Integer, Integer> netValues = new HashMap<>();
+    int netEvents = readChanges(connection, changeTables.get("dbo_orders"), netValues);
+    // the table without net changes support still has every change read
+    Map<Integer, Integer> allValues = new HashMap<>();
+    int allEvents = readChanges(connection, changeTables.get("dbo_history"), allValues);
+    connection.close();
+    Assert.assertEquals(Arrays.asList("fn_cdc_get_net_changes_dbo_orders", "fn_cdc_get_all_changes_dbo_history"),
+                        database.changeFunctions);
+
+    // net changes are off by default
+    SqlServerConnection defaultConnection = connect(database);
+    Map<Integer, Integer> defaultValues = new HashMap<>();
+    int defaultEvents = readChanges(defaultConnection, listOfChangeTables(defaultConnection).get("dbo_orders"),
+                                    defaultValues);
+    defaultConnection.close();
+
+    Assert.assertEquals(HOT_ROWS, netEvents);
+    Assert.assertEquals(UPDATES, allEvents);
+    Assert.assertEquals(UPDATES, defaultEvents);
+    // every row still ends up with its latest value
+    Assert.assertEquals(allValues, netValues);
+    Assert.assertEquals(allValues, defaultValues);
+  }
+
+  @Test
+  public void testWindowEndLsn() throws Exception {
+    SqlServerConnection connection = connect(new FakeDatabase(true));
+    Assert.assertEquals(lsn(1100), connection.getWindowEndLsn(lsn(101), lsn(TRANSACTIONS), 1000));
+    // the window never goes past the latest LSN
+    Assert.assertEquals(lsn(TRANSACTIONS), connection.getWindowEndLsn(lsn(4500), lsn(TRANSACTIONS), 1000));
+    // without a position to start from, everything up to the latest LSN is read
+    Assert.assertEquals(lsn(TRANSACTIONS), connection.getWindowEndLsn(Lsn.NULL, lsn(TRANSACTIONS), 1000));
+    connection.close();
+
+    // if the commits can't be read, everything up to the latest LSN is read
+    connection = connect(new FakeDatabase(false));
+    Assert.assertEquals(lsn(TRANSACTIONS), connection.getWindowEndLsn(lsn(101), lsn(TRANSACTIONS), 1000));
+    connection.close();
+  }
+
+  @Test
+  public void testChangeTableMetadataIsCached() throws Exception {
+    FakeDatabase database = new FakeDatabase(true);
+    // a new capture instance is created half way through
+    database.newChangeTableLsn = 50;
+    SqlServerConnection connection = connect(database);
+    SqlServerChangeTable changeTable = new SqlServerChangeTable(new TableId("db", "dbo", "orders"), "dbo_orders", 1,
+                                                                Lsn.NULL, Lsn.NULL, Arrays.asList("id", "value"));
+    int polls = 100;
+    Table sourceSchema = null;
+    Table changeTableSchema = null;
+    for (int i = 1; i <= polls; i++) {
+      connection.listOfNewChangeTables(lsn(i), lsn(i));
+      sourceSchema = connection.getTableSchemaFromTable(changeTable);
+      changeTableSchema = connection.getTableSchemaFromChangeTable(changeTable);
+      connection.getChangesForTables(new SqlServerChangeTable[] { changeTable }, Lsn.NULL, lsn(i), resultSets -> { });
+    }
+    connection.close();
+
+    // the columns and key of the table and of its change table, and the minimum LSN, are read at the start and again
+    // once the new capture instance is reported
+    Assert.assertEquals(2 * 5, database.metadataQueries.get());
+    Assert.assertEquals(Arrays.asList("id", "value"), sourceSchema.retrieveColumnNames());
+    Assert.assertEquals(Collections.singletonList("id"), sourceSchema.primaryKeyColumnNames());
+    Assert.assertEquals(Arrays.asList("id", "value"), changeTableSchema.retrieveColumnNames());
+    Assert.assertEquals(Collections.singletonList("id"), changeTableSchema.primaryKeyColumnNames());
+  }
+
+  private static Map<String, SqlServerChangeTable> listOfChangeTables(SqlServerConnection connection)
+    throws SQLException {
+    Map<String, SqlServerChangeTable> changeTables = new HashMap<>();
+    for (SqlServerChangeTable changeTable : connection.listOfChangeTables()) {
+      changeTable.setSourceTable(Table.editor()
+                                   .tableId(changeTable.getSourceTableId())
+                                   .addColumn(Column.editor().name("id").type("INT").jdbcType(Types.INTEGER)
+                                                .position(1).create())
+                                   .addColumn(Column.editor().name("value").type("INT").jdbcType(Types.INTEGER)
+                                                .position(2).create())
+                                   .setPrimaryKeyNames("id")
+                                   .create());
+      changeTables.put(changeTable.getCaptureInstance(), changeTable);
+    }
+    return changeTables;
+  }
+
+  /**
+   * Reads the changes of a table the way the streaming source does, and keeps the latest value of every row.
+   *
+   * @return the number of events
+   */
+  private static int readChanges(SqlServerConnection connection, SqlServerChangeTable changeTable,
+                                 Map<Integer, Integer> values) throws Exception {
+    AtomicInteger events = new AtomicInteger();
+    connection.getChangesForTables(new SqlServerChangeTable[] { changeTable }, lsn(1), lsn(UPDATES), resultSets -> {
+      SqlServerChangeTablePointer pointer = new SqlServerChangeTablePointer(changeTable, resultSets[0]);
+      while (pointer.next()) {
+        if (pointer.getOperation() == SqlServerChangeRecordEmitter.OP_UPDATE_BEFORE) {
+          Assert.assertTrue(pointer.next());
+          Assert.assertEquals(SqlServerChangeRecordEmitter.OP_UPDATE_AFTER, pointer.getOperation());
+        }
+        Object[] data = pointer.getData();
+        values.put((Integer) data[0], (Integer) data[1]);
+        events.incrementAndGet();
+      }
+    });
+    return events.get();
+  }
+
+  private static SqlServerConnection connect(FakeDatabase database) {
+    return connect(database, Configuration.empty());
+  }
+
+  private static SqlServerConnection connect(FakeDatabase database, Configuration config) {
+    ReaderContext readerContext = new ReaderContext("sqlserver-connection-test", null, config, null,
+                                                    jdbcConfig -> database.connection());
+    ReaderContextRegistry.register(readerContext);
+    try {
+      return ReaderContextRegistry.call(readerContext.getName(), () -> new SqlServerConnection(
+        config, Clock.system(), SourceTimestampMode.COMMIT, new SqlServerValueConverters()));
+    } finally {
+      ReaderContextRegistry.unregister(readerContext);
+    }
+  }
+
+  private static Lsn lsn(int i) {
+    return Lsn.valueOf(ByteBuffer.allocate(10).putInt(6, i).array());
+  }
+
+  private static int value(byte[] lsn) {
+    return ByteBuffer.wrap(lsn).getInt(6);
+  }
+
+  /**
+   * Serves the queries the connection runs, and counts the round trips for commit timestamps.
+   * Its change tables have a storm of updates to a few rows, update i sets the value of row i % HOT_ROWS to i.
+   */
+  private static class FakeDatabase {
+    private final boolean mappingTableReadable;
+    private final AtomicInteger roundTrips = new AtomicInteger();
+    private final AtomicInteger batchQueries = new AtomicInteger();
+    private final AtomicInteger singleQueries = new AtomicInteger();
+    private final List<String> changeFunctions = new ArrayList<>();
+    private final AtomicInteger metadataQueries = new AtomicInteger();
+    // LSN the capture instance reported as new by cdc.change_tables started at
+    private int newChangeTableLsn = -1;
+
+    FakeDatabase(boolean mappingTableReadable) {
+      this.mappingTableReadable = mappingTableReadable;
+    }
+
+    Connection connection() throws SQLException {
+      Statement statement = Mockito.mock(Statement.class);
+      Mockito.when(statement.executeQuery(Mockito.anyString()))
+        .thenAnswer(invocation -> query(invocation.getArgument(0)));
+      DatabaseMetaData metaData = metaData();
+      Connection connection = Mockito.mock(Connection.class);
+      Mockito.when(connection.createStatement()).thenReturn(statement);
+      Mockito.when(connection.prepareStatement(Mockito.anyString()))
+        .thenAnswer(invocation -> preparedStatement(invocation.getArgument(0)));
+      Mockito.when(connection.getMetaData()).thenReturn(metaData);
+      return connection;
+    }
+
+    private ResultSet query(String query) throws SQLException {
+      List<Object[]> rows = new ArrayList<>();
+      if (query.equals("SELECT db_name()")) {
+        rows.add(new Object[] { "db" });
+      } else if (query.startsWith("SELECT @@VERSION")) {
+        rows.add(new Object[] { "Microsoft SQL Server 2019 (RTM)" });
+      } else if (query.equals("EXEC sys.sp_cdc_help_change_data_capture")) {
+        rows.add(changeTable("orders", 1, true));
+        rows.add(changeTable("history", 2, false));
+      } else if (query.startsWith("SELECT sys.fn_cdc_get_min_lsn")) {
+        metadataQueries.incrementAndGet();
+        rows.add(new Object[] { lsn(1).getBinary() });
+      }
+      return resultSet(rows);
+    }
+
+    private DatabaseMetaData metaData() throws SQLException {
+      DatabaseMetaData metaData = Mockito.mock(DatabaseMetaData.class);
+      Mockito.when(metaData.getColumns(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+        .thenAnswer(invocation -> {
+          metadataQueries.incrementAndGet();
+          // change tables have five metadata columns before the captured columns and one after them
+          List<String> columns = invocation.<String>getArgument(2).endsWith("_CT")
+            ? Arrays.asList("__$start_lsn", "__$end_lsn", "__$seqval", "__$operation", "__$update_mask", "id",
+                            "value", "__$command_id")
+            : Arrays.asList("id", "value");
+          List<Object[]> rows = new ArrayList<>();
+          for (int i = 0; i < columns.size(); i++) {
+            Object[] row = new Object[24];
+            row[3] = columns.get(i);
+            row[4] = Types.INTEGER;
+            row[5] = "int";
+            row[6] = 10;
+            row[10] = DatabaseMetaData.columnNullable;
+            row[16] = i + 1;
+            rows.add(row);
+          }
+          return resultSet(rows);
+        });
+      Mockito.when(metaData.getPrimaryKeys(Mockito.any(), Mockito.any(), Mockito.any()))
+        .thenAnswer(invocation -> {
+          metadataQueries.incrementAndGet();
+          return resultSet(Collections.singletonList(new Object[] {
+            "db", invocation.getArgument(1), invocation.getArgument(2), "id", 1 }));
+        });
+      return metaData;
+    }
+
+    private Object[] changeTable(String table, int objectId, boolean supportsNetChanges) {
+      return new Object[] { "dbo", table, "dbo_" + table, objectId, objectId + 100, lsn(1).getBinary(), null,
+        supportsNetChanges, false, null, "PK_" + table, "PRIMARY", null, "[id]", "[id], [value]" };
+    }
+
+    private List<Object[]> allChanges() {
+      List<Object[]> rows = new ArrayList<>();
+      for (int i = 1; i <= UPDATES; i++) {
+        byte[] lsn = lsn(i).getBinary();
+        rows.add(new Object[] { lsn, lsn, 3, null, i % HOT_ROWS, Math.max(i - HOT_ROWS, 0) });
+        rows.add(new Object[] { lsn, lsn, 4, null, i % HOT_ROWS, i });
+      }
+      return rows;
+    }
+
+    // the net change of each row is its last update, in the layout of SqlServerConnection#getNetChangesQuery
+    private List<Object[]> netChanges() {
+      List<Object[]> rows = new ArrayList<>();
+      for (int i = UPDATES - HOT_ROWS + 1; i <= UPDATES; i++) {
+        byte[] lsn = lsn(i).getBinary();
+        rows.add(new Object[] { lsn, lsn, 3, null, i % HOT_ROWS, i });
+        rows.add(new Object[] { lsn, lsn, 4, null, i % HOT_ROWS, i });
+      }
+      return rows;
+    }
+
+    private PreparedStatement preparedStatement(String query) throws SQLException {
+      Map<Integer, Object> parameters = new HashMap<>();
+      Answer<Void> setParameter = invocation -> {
+        parameters.put(invocation.getArgument(0), invocation.getArgument(1));
+        return null;
+      };
+      PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+      Mockito.doAnswer(setParameter).when(statement).setBytes(Mockito.anyInt(), Mockito.any());
+      Mockito.doAnswer(setParameter).when(statement).setInt(Mockito.anyInt(), Mockito.anyInt());
+      Mockito.when(statement.executeQuery()).thenAnswer(invocation -> {
+        roundTrips.incrementAndGet();
+        List<Object[]> rows = new ArrayList<>();
+        if (query.startsWith("SELECT MAX(start_lsn)")) {
+          if (!mappingTableReadable) {
+            throw new SQLException("The SELECT permission was denied on the object 'lsn_time_mapping'.");
+          }
+          // the last of a number of commits, every LSN up to TRANSACTIONS is a commit
+          int commits = (Integer) parameters.get(1);
+          int end = Math.min(value((byte[]) parameters.get(2)) + commits - 1,
+                             Math.min(value((byte[]) parameters.get(3)), TRANSACTIONS));
+          rows.add(new Object[] { lsn(end).getBinary() });
+          return resultSet(rows);
+        }
+        if (query.contains("cdc.index_columns")) {
+          metadataQueries.incrementAndGet();
+          rows.add(new Object[] { parameters.get(1), "id" });
+          return resultSet(rows);
+        }
+        int from = value((byte[]) parameters.get(1));
+        if (query.contains("cdc.change_tables")) {
+          if (newChangeTableLsn >= from && newChangeTableLsn <= value((byte[]) parameters.get(2))) {
+            rows.add(new Object[] { 3, null, null, "dbo_orders_v2", lsn(newChangeTableLsn).getBinary(), null });
+          }
+          return resultSet(rows);
+        }
+        if (query.contains("cdc.lsn_time_mapping")) {
+          batchQueries.incrementAndGet();
+          if (!mappingTableReadable) {
+            throw new SQLException("The SELECT permission was denied on the object 'lsn_time_mapping'.");
+          }
+          for (int i = from; i < from + 1000 && i <= TRANSACTIONS; i++) {
+            rows.add(new Object[] { lsn(i).getBinary(), new Timestamp(START_MILLIS + i) });
+          }
+        } else if (query.contains("fn_cdc_map_lsn_to_time")) {
+          singleQueries.incrementAndGet();
+          rows.add(new Object[] { new Timestamp(START_MILLIS + from) });
+        } else if (query.contains("fn_cdc_get_")) {
+          Matcher matcher = Pattern.compile("fn_cdc_get_\\w+").matcher(query);
+          Assert.assertTrue(matcher.find());
+          changeFunctions.add(matcher.group());
+          return resultSet(CHANGE_COLUMNS, query.contains("fn_cdc_get_net_changes") ? netChanges() : allChanges());
+        }
+        return resultSet(rows);
+      });
+      return statement;
+    }
+  }
+
+  private static ResultSet resultSet(List<Object[]> rows) throws SQLException {
+    return resultSet(Collections.emptyList(), rows);
+  }
+
+  private static ResultSet resultSet(List<String> columns, List<Object[]> rows) throws SQLException {
+    ResultSetMetaData metaData = Mockito.mock(ResultSetMetaData.class);
+    Mockito.when(metaData.getColumnCount()).thenReturn(columns.size());
+    Mockito.when(metaData.getColumnName(Mockito.anyInt()))
+      .thenAnswer(invocation -> columns.get(invocation.<Integer>getArgument(0) - 1));
+    Mockito.when(metaData.getColumnType(Mockito.anyInt())).thenReturn(Types.OTHER);
+
+    int[] row = { -1 };
+    Answer<Object> value = invocation -> rows.get(row[0])[invocation.<Integer>getArgument(0) - 1];
+    ResultSet resultSet = Mockito.mock(ResultSet.class);
+    Mockito.when(resultSet.next()).thenAnswer(invocation -> ++row[0] < rows.size());
+    Mockito.when(resultSet.getMetaData()).thenReturn(metaData);
+    Mockito.when(resultSet.getBytes(Mockito.anyInt())).thenAnswer(value);
+    Mockito.when(resultSet.getTimestamp(Mockito.anyInt())).thenAnswer(value);
+    Mockito.when(resultSet.getString(Mockito.anyInt())).thenAnswer(value);
+    Mockito.when(resultSet.getObject(Mockito.anyInt())).thenAnswer(value);
+    Mockito.when(resultSet.getInt(Mockito.anyInt())).thenAnswer(value);
+    Mockito.when(resultSet.getBoolean(Mockito.anyInt())).thenAnswer(value);
+    return resultSet;
+  }
+}